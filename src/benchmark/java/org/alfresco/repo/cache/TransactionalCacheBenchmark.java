@@ -0,0 +1,225 @@
+/*
+ * #%L
+ * Alfresco Repository
+ * %%
+ * Copyright (C) 2005 - 2016 Alfresco Software Limited
+ * %%
+ * This file is part of the Alfresco software. 
+ * If the software was purchased under a paid Alfresco license, the terms of 
+ * the paid license agreement will prevail.  Otherwise, the software is 
+ * provided under the following open source license terms:
+ * 
+ * Alfresco is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * 
+ * Alfresco is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ * 
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with Alfresco. If not, see <http://www.gnu.org/licenses/>.
+ * #L%
+ */
+package org.alfresco.repo.cache;
+
+import java.io.Serializable;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+import org.alfresco.repo.cache.TransactionalCache.ValueHolder;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+import org.springframework.transaction.TransactionDefinition;
+import org.springframework.transaction.TransactionStatus;
+import org.springframework.transaction.support.AbstractPlatformTransactionManager;
+import org.springframework.transaction.support.DefaultTransactionStatus;
+import org.springframework.transaction.support.TransactionCallback;
+import org.springframework.transaction.support.TransactionTemplate;
+
+/**
+ * Measures {@link TransactionalCache} reads and writes, both outside of a transaction and
+ * within short read-only and read-write transactions that include the commit to the shared cache.
+ * <p/>
+ * Transactions are driven by a Spring transaction manager that does no work of its own, so that
+ * only the cost of the transaction synchronization and the cache itself is measured.
+ * 
+ * @since 5.2
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class TransactionalCacheBenchmark
+{
+    @Param({"1000", "100000"})
+    public int keyCount;
+    
+    @Param({"10", "100"})
+    public int opsPerTxn;
+    
+    private TransactionalCache<Long, String> cache;
+    private TransactionTemplate readOnlyTxn;
+    private TransactionTemplate readWriteTxn;
+    
+    @Setup(Level.Trial)
+    public void setUp() throws Exception
+    {
+        SimpleCache<Serializable, ValueHolder<String>> sharedCache =
+                new DefaultSimpleCache<Serializable, ValueHolder<String>>(keyCount * 2, "cache.benchmarkSharedCache");
+        cache = new TransactionalCache<Long, String>();
+        cache.setSharedCache(sharedCache);
+        cache.setName("cache.benchmarkTransactionalCache");
+        cache.setMaxCacheSize(Math.max(opsPerTxn, 1000));
+        cache.setMutable(true);
+        cache.afterPropertiesSet();
+        
+        NoOpTransactionManager txnManager = new NoOpTransactionManager();
+        readWriteTxn = new TransactionTemplate(txnManager);
+        readOnlyTxn = new TransactionTemplate(txnManager);
+        readOnlyTxn.setReadOnly(true);
+        
+        // Populate the shared cache
+        readWriteTxn.execute(new TransactionCallback<Void>()
+        {
+            @Override
+            public Void doInTransaction(TransactionStatus status)
+            {
+                for (long i = 0; i < keyCount; i++)
+                {
+                    cache.put(i, "VALUE-" + i);
+                }
+                return null;
+            }
+        });
+    }
+    
+    private long nextKey()
+    {
+        return ThreadLocalRandom.current().nextLong(keyCount);
+    }
+    
+    @Benchmark
+    public void getNoTxn(Blackhole bh)
+    {
+        for (int i = 0; i < opsPerTxn; i++)
+        {
+            bh.consume(cache.get(nextKey()));
+        }
+    }
+    
+    @Benchmark
+    public void getReadOnlyTxn(final Blackhole bh)
+    {
+        readOnlyTxn.execute(new TransactionCallback<Void>()
+        {
+            @Override
+            public Void doInTransaction(TransactionStatus status)
+            {
+                for (int i = 0; i < opsPerTxn; i++)
+                {
+                    bh.consume(cache.get(nextKey()));
+                }
+                return null;
+            }
+        });
+    }
+    
+    @Benchmark
+    public void getReadWriteTxn(final Blackhole bh)
+    {
+        readWriteTxn.execute(new TransactionCallback<Void>()
+        {
+            @Override
+            public Void doInTransaction(TransactionStatus status)
+            {
+                for (int i = 0; i < opsPerTxn; i++)
+                {
+                    bh.consume(cache.get(nextKey()));
+                }
+                return null;
+            }
+        });
+    }
+    
+    @Benchmark
+    public void putReadWriteTxn()
+    {
+        readWriteTxn.execute(new TransactionCallback<Void>()
+        {
+            @Override
+            public Void doInTransaction(TransactionStatus status)
+            {
+                for (int i = 0; i < opsPerTxn; i++)
+                {
+                    long key = nextKey();
+                    cache.put(key, "VALUE-" + key);
+                }
+                return null;
+            }
+        });
+    }
+    
+    @Benchmark
+    public void removeReadWriteTxn()
+    {
+        readWriteTxn.execute(new TransactionCallback<Void>()
+        {
+            @Override
+            public Void doInTransaction(TransactionStatus status)
+            {
+                for (int i = 0; i < opsPerTxn; i++)
+                {
+                    long key = nextKey();
+                    cache.remove(key);
+                    // Put it back so that the hit ratio of the other benchmarks stays stable
+                    cache.put(key, "VALUE-" + key);
+                }
+                return null;
+            }
+        });
+    }
+    
+    /**
+     * Activates transaction synchronization but has no resources of its own.
+     */
+    @SuppressWarnings("serial")
+    private static class NoOpTransactionManager extends AbstractPlatformTransactionManager
+    {
+        @Override
+        protected Object doGetTransaction()
+        {
+            return new Object();
+        }
+        
+        @Override
+        protected void doBegin(Object transaction, TransactionDefinition definition)
+        {
+        }
+        
+        @Override
+        protected void doCommit(DefaultTransactionStatus status)
+        {
+        }
+        
+        @Override
+        protected void doRollback(DefaultTransactionStatus status)
+        {
+        }
+    }
+}
@@ -0,0 +1,151 @@
+/*
+ * #%L
+ * Alfresco Repository
+ * %%
+ * Copyright (C) 2005 - 2016 Alfresco Software Limited
+ * %%
+ * This file is part of the Alfresco software. 
+ * If the software was purchased under a paid Alfresco license, the terms of 
+ * the paid license agreement will prevail.  Otherwise, the software is 
+ * provided under the following open source license terms:
+ * 
+ * Alfresco is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * 
+ * Alfresco is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ * 
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with Alfresco. If not, see <http://www.gnu.org/licenses/>.
+ * #L%
+ */
+package org.alfresco.repo.cache.lookup;
+
+import java.io.Serializable;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.alfresco.repo.cache.DefaultSimpleCache;
+import org.alfresco.repo.cache.lookup.EntityLookupCache.EntityLookupCallbackDAOAdaptor;
+import org.alfresco.util.Pair;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Measures {@link EntityLookupCache} lookups by key and by value against an in-memory
+ * {@link EntityLookupCache.EntityLookupCallbackDAO DAO}, so that only the cache overhead is measured.
+ * <p/>
+ * The cache is sized to hold a fraction of the entities, giving a mix of hits and DAO callbacks.
+ * 
+ * @since 5.2
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class EntityLookupCacheBenchmark
+{
+    @Param({"10000"})
+    public int entityCount;
+    
+    /** Cache size as a percentage of the entity count */
+    @Param({"10", "100"})
+    public int cachePercent;
+    
+    private EntityLookupCache<Long, String, String> lookupCache;
+    
+    @Setup(Level.Trial)
+    public void setUp()
+    {
+        InMemoryDAO dao = new InMemoryDAO();
+        int cacheSize = Math.max(1, entityCount * cachePercent / 100) * 2;    // Keys and values are both cached
+        DefaultSimpleCache<Serializable, Object> cache = new DefaultSimpleCache<Serializable, Object>(cacheSize, "cache.benchmarkLookupCache");
+        lookupCache = new EntityLookupCache<Long, String, String>(cache, "Benchmark", dao);
+        for (int i = 0; i < entityCount; i++)
+        {
+            lookupCache.getOrCreateByValue("VALUE-" + i);
+        }
+    }
+    
+    @Benchmark
+    public Pair<Long, String> getByKey()
+    {
+        // IDs are allocated from 1
+        long key = ThreadLocalRandom.current().nextLong(entityCount) + 1L;
+        return lookupCache.getByKey(key);
+    }
+    
+    @Benchmark
+    public Pair<Long, String> getByValue()
+    {
+        int index = ThreadLocalRandom.current().nextInt(entityCount);
+        return lookupCache.getByValue("VALUE-" + index);
+    }
+    
+    @Benchmark
+    @Threads(4)
+    public Pair<Long, String> getByKeyContended()
+    {
+        long key = ThreadLocalRandom.current().nextLong(entityCount) + 1L;
+        return lookupCache.getByKey(key);
+    }
+    
+    /**
+     * Holds the entities in maps, standing in for the database.
+     */
+    private static class InMemoryDAO extends EntityLookupCallbackDAOAdaptor<Long, String, String>
+    {
+        private final AtomicLong nextId = new AtomicLong(1L);
+        private final Map<Long, String> valuesById = new ConcurrentHashMap<Long, String>();
+        private final Map<String, Long> idsByValue = new ConcurrentHashMap<String, Long>();
+        
+        @Override
+        public String getValueKey(String value)
+        {
+            return value;
+        }
+        
+        @Override
+        public Pair<Long, String> findByKey(Long key)
+        {
+            String value = valuesById.get(key);
+            return value == null ? null : new Pair<Long, String>(key, value);
+        }
+        
+        @Override
+        public Pair<Long, String> findByValue(String value)
+        {
+            Long id = idsByValue.get(value);
+            return id == null ? null : new Pair<Long, String>(id, value);
+        }
+        
+        @Override
+        public Pair<Long, String> createValue(String value)
+        {
+            Long id = nextId.getAndIncrement();
+            valuesById.put(id, value);
+            idsByValue.put(value, id);
+            return new Pair<Long, String>(id, value);
+        }
+    }
+}
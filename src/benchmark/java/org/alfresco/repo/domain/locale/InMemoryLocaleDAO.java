@@ -0,0 +1,78 @@
+/*
+ * #%L
+ * Alfresco Repository
+ * %%
+ * Copyright (C) 2005 - 2016 Alfresco Software Limited
+ * %%
+ * This file is part of the Alfresco software. 
+ * If the software was purchased under a paid Alfresco license, the terms of 
+ * the paid license agreement will prevail.  Otherwise, the software is 
+ * provided under the following open source license terms:
+ * 
+ * Alfresco is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * 
+ * Alfresco is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ * 
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with Alfresco. If not, see <http://www.gnu.org/licenses/>.
+ * #L%
+ */
+package org.alfresco.repo.domain.locale;
+
+import java.io.Serializable;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.alfresco.repo.cache.DefaultSimpleCache;
+import org.alfresco.repo.cache.SimpleCache;
+
+/**
+ * Locale DAO that keeps its entities in memory in place of the <b>alf_locale</b> table.
+ * The lookups pass through the same cache as the database-backed implementation.
+ * 
+ * @since 5.2
+ */
+public class InMemoryLocaleDAO extends AbstractLocaleDAOImpl
+{
+    private final AtomicLong nextId = new AtomicLong(1L);
+    private final Map<Long, LocaleEntity> localesById = new ConcurrentHashMap<Long, LocaleEntity>();
+    private final Map<String, LocaleEntity> localesByStr = new ConcurrentHashMap<String, LocaleEntity>();
+    
+    @SuppressWarnings({ "unchecked", "rawtypes" })
+    public InMemoryLocaleDAO()
+    {
+        SimpleCache cache = new DefaultSimpleCache<Serializable, Object>(1000, "cache.benchmarkLocaleCache");
+        setLocaleEntityCache(cache);
+    }
+    
+    @Override
+    protected LocaleEntity getLocaleEntity(Long id)
+    {
+        return localesById.get(id);
+    }
+
+    @Override
+    protected LocaleEntity getLocaleEntity(String locale)
+    {
+        return localesByStr.get(locale);
+    }
+
+    @Override
+    protected synchronized LocaleEntity createLocaleEntity(String locale)
+    {
+        LocaleEntity entity = new LocaleEntity();
+        entity.setId(nextId.getAndIncrement());
+        entity.setVersion(LocaleEntity.CONST_LONG_ZERO);
+        entity.setLocaleStr(locale);
+        localesById.put(entity.getId(), entity);
+        localesByStr.put(locale, entity);
+        return entity;
+    }
+}
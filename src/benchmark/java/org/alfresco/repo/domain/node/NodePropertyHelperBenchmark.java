@@ -0,0 +1,188 @@
+/*
+ * #%L
+ * Alfresco Repository
+ * %%
+ * Copyright (C) 2005 - 2016 Alfresco Software Limited
+ * %%
+ * This file is part of the Alfresco software. 
+ * If the software was purchased under a paid Alfresco license, the terms of 
+ * the paid license agreement will prevail.  Otherwise, the software is 
+ * provided under the following open source license terms:
+ * 
+ * Alfresco is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * 
+ * Alfresco is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ * 
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with Alfresco. If not, see <http://www.gnu.org/licenses/>.
+ * #L%
+ */
+package org.alfresco.repo.domain.node;
+
+import java.io.Serializable;
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import org.alfresco.model.ContentModel;
+import org.alfresco.repo.domain.contentdata.ContentDataDAO;
+import org.alfresco.repo.domain.locale.InMemoryLocaleDAO;
+import org.alfresco.repo.domain.qname.InMemoryQNameDAO;
+import org.alfresco.service.cmr.dictionary.DataTypeDefinition;
+import org.alfresco.service.cmr.dictionary.DictionaryService;
+import org.alfresco.service.cmr.dictionary.PropertyDefinition;
+import org.alfresco.service.cmr.repository.MLText;
+import org.alfresco.service.cmr.repository.NodeRef;
+import org.alfresco.service.cmr.repository.StoreRef;
+import org.alfresco.service.namespace.QName;
+import org.alfresco.util.GUID;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Measures the conversion of node properties between their public and persisted forms by
+ * {@link NodePropertyHelper}.
+ * <p/>
+ * The QName and locale DAOs are {@link InMemoryQNameDAO in-memory} stand-ins and the dictionary
+ * only knows the handful of properties used, so that only the conversion itself is measured.
+ * 
+ * @since 5.2
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class NodePropertyHelperBenchmark
+{
+    private static final QName PROP_RESIDUAL = QName.createQName("http://www.alfresco.org/test/benchmark", "residual");
+    
+    private NodePropertyHelper helper;
+    private Map<QName, Serializable> publicProperties;
+    private Map<NodePropertyKey, NodePropertyValue> persistentProperties;
+    
+    @Setup(Level.Trial)
+    public void setUp()
+    {
+        Map<QName, PropertyDefinition> propertyDefs = new HashMap<QName, PropertyDefinition>();
+        propertyDefs.put(ContentModel.PROP_NAME, propertyDef(ContentModel.PROP_NAME, DataTypeDefinition.TEXT, false));
+        propertyDefs.put(ContentModel.PROP_TITLE, propertyDef(ContentModel.PROP_TITLE, DataTypeDefinition.MLTEXT, false));
+        propertyDefs.put(ContentModel.PROP_DESCRIPTION, propertyDef(ContentModel.PROP_DESCRIPTION, DataTypeDefinition.MLTEXT, false));
+        propertyDefs.put(ContentModel.PROP_CREATED, propertyDef(ContentModel.PROP_CREATED, DataTypeDefinition.DATETIME, false));
+        propertyDefs.put(ContentModel.PROP_MODIFIED, propertyDef(ContentModel.PROP_MODIFIED, DataTypeDefinition.DATETIME, false));
+        propertyDefs.put(ContentModel.PROP_CREATOR, propertyDef(ContentModel.PROP_CREATOR, DataTypeDefinition.TEXT, false));
+        propertyDefs.put(ContentModel.PROP_MODIFIER, propertyDef(ContentModel.PROP_MODIFIER, DataTypeDefinition.TEXT, false));
+        propertyDefs.put(ContentModel.PROP_NODE_DBID, propertyDef(ContentModel.PROP_NODE_DBID, DataTypeDefinition.LONG, false));
+        propertyDefs.put(ContentModel.PROP_TAGS, propertyDef(ContentModel.PROP_TAGS, DataTypeDefinition.CATEGORY, true));
+        DictionaryService dictionaryService = stub(DictionaryService.class, "getProperty", propertyDefs);
+        ContentDataDAO contentDataDAO = stub(ContentDataDAO.class, "getContentData", new HashMap<Object, Object>());
+        
+        helper = new NodePropertyHelper(dictionaryService, new InMemoryQNameDAO(), new InMemoryLocaleDAO(), contentDataDAO);
+        
+        StoreRef storeRef = StoreRef.STORE_REF_WORKSPACE_SPACESSTORE;
+        List<NodeRef> tags = new ArrayList<NodeRef>();
+        for (int i = 0; i < 5; i++)
+        {
+            tags.add(new NodeRef(storeRef, GUID.generate()));
+        }
+        publicProperties = new HashMap<QName, Serializable>();
+        publicProperties.put(ContentModel.PROP_NAME, "Benchmark Document.txt");
+        publicProperties.put(ContentModel.PROP_TITLE, new MLText(Locale.ENGLISH, "Benchmark Document"));
+        publicProperties.put(ContentModel.PROP_DESCRIPTION, new MLText(Locale.FRENCH, "Document de test"));
+        publicProperties.put(ContentModel.PROP_CREATED, new Date());
+        publicProperties.put(ContentModel.PROP_MODIFIED, new Date());
+        publicProperties.put(ContentModel.PROP_CREATOR, "admin");
+        publicProperties.put(ContentModel.PROP_MODIFIER, "admin");
+        publicProperties.put(ContentModel.PROP_NODE_DBID, 12345L);
+        publicProperties.put(ContentModel.PROP_TAGS, (Serializable) tags);
+        publicProperties.put(PROP_RESIDUAL, "Residual value");
+        
+        persistentProperties = helper.convertToPersistentProperties(publicProperties);
+    }
+    
+    private static PropertyDefinition propertyDef(QName propertyQName, QName dataTypeQName, boolean multiValued)
+    {
+        Map<String, Object> dataTypeValues = new HashMap<String, Object>();
+        dataTypeValues.put("getName", dataTypeQName);
+        DataTypeDefinition dataTypeDef = stub(DataTypeDefinition.class, dataTypeValues);
+        Map<String, Object> propertyValues = new HashMap<String, Object>();
+        propertyValues.put("getName", propertyQName);
+        propertyValues.put("getDataType", dataTypeDef);
+        propertyValues.put("isMultiValued", multiValued);
+        return stub(PropertyDefinition.class, propertyValues);
+    }
+    
+    /**
+     * @return          a stand-in whose named single-argument method is looked up in the map;
+     *                  all other methods return <tt>null</tt>
+     */
+    private static <T> T stub(Class<T> clazz, final String methodName, final Map<?, ?> valuesByArgument)
+    {
+        return clazz.cast(Proxy.newProxyInstance(clazz.getClassLoader(), new Class<?>[] {clazz}, new InvocationHandler()
+        {
+            @Override
+            public Object invoke(Object proxy, Method method, Object[] args) throws Exception
+            {
+                if (method.getDeclaringClass() == Object.class)
+                {
+                    return method.invoke(this, args);
+                }
+                return method.getName().equals(methodName) ? valuesByArgument.get(args[0]) : null;
+            }
+        }));
+    }
+    
+    /**
+     * @return          a stand-in whose no-argument methods return the values mapped by method name
+     */
+    private static <T> T stub(Class<T> clazz, final Map<String, Object> valuesByMethod)
+    {
+        return clazz.cast(Proxy.newProxyInstance(clazz.getClassLoader(), new Class<?>[] {clazz}, new InvocationHandler()
+        {
+            @Override
+            public Object invoke(Object proxy, Method method, Object[] args) throws Exception
+            {
+                if (method.getDeclaringClass() == Object.class)
+                {
+                    return method.invoke(this, args);
+                }
+                return valuesByMethod.get(method.getName());
+            }
+        }));
+    }
+    
+    @Benchmark
+    public Map<NodePropertyKey, NodePropertyValue> convertToPersistentProperties()
+    {
+        return helper.convertToPersistentProperties(publicProperties);
+    }
+    
+    @Benchmark
+    public Map<QName, Serializable> convertToPublicProperties()
+    {
+        return helper.convertToPublicProperties(persistentProperties);
+    }
+}
@@ -0,0 +1,125 @@
+/*
+ * #%L
+ * Alfresco Repository
+ * %%
+ * Copyright (C) 2005 - 2016 Alfresco Software Limited
+ * %%
+ * This file is part of the Alfresco software. 
+ * If the software was purchased under a paid Alfresco license, the terms of 
+ * the paid license agreement will prevail.  Otherwise, the software is 
+ * provided under the following open source license terms:
+ * 
+ * Alfresco is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * 
+ * Alfresco is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ * 
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with Alfresco. If not, see <http://www.gnu.org/licenses/>.
+ * #L%
+ */
+package org.alfresco.repo.domain.qname;
+
+import java.io.Serializable;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.alfresco.repo.cache.DefaultSimpleCache;
+import org.alfresco.repo.cache.SimpleCache;
+
+/**
+ * QName DAO that keeps its entities in memory in place of the <b>alf_namespace</b> and
+ * <b>alf_qname</b> tables.  The lookups pass through the same caches as the database-backed
+ * implementation, so benchmarks measure the cached path.
+ * 
+ * @since 5.2
+ */
+public class InMemoryQNameDAO extends AbstractQNameDAOImpl
+{
+    private final AtomicLong nextId = new AtomicLong(1L);
+    private final Map<Long, NamespaceEntity> namespacesById = new ConcurrentHashMap<Long, NamespaceEntity>();
+    private final Map<String, NamespaceEntity> namespacesByUri = new ConcurrentHashMap<String, NamespaceEntity>();
+    private final Map<Long, QNameEntity> qnamesById = new ConcurrentHashMap<Long, QNameEntity>();
+    private final Map<String, QNameEntity> qnamesByName = new ConcurrentHashMap<String, QNameEntity>();
+    
+    @SuppressWarnings({ "unchecked", "rawtypes" })
+    public InMemoryQNameDAO()
+    {
+        SimpleCache cache = new DefaultSimpleCache<Serializable, Object>(10000, "cache.benchmarkQNameCache");
+        setNamespaceCache(cache);
+        setQnameCache(cache);
+    }
+    
+    @Override
+    protected NamespaceEntity findNamespaceEntityById(Long id)
+    {
+        return namespacesById.get(id);
+    }
+
+    @Override
+    protected NamespaceEntity findNamespaceEntityByUri(String uri)
+    {
+        return namespacesByUri.get(uri);
+    }
+
+    @Override
+    protected synchronized NamespaceEntity createNamespaceEntity(String uri)
+    {
+        NamespaceEntity entity = new NamespaceEntity();
+        entity.setId(nextId.getAndIncrement());
+        entity.setVersion(NamespaceEntity.CONST_LONG_ZERO);
+        entity.setUri(uri);
+        namespacesById.put(entity.getId(), entity);
+        namespacesByUri.put(uri, entity);
+        return entity;
+    }
+
+    @Override
+    protected int updateNamespaceEntity(NamespaceEntity entity, String uri)
+    {
+        throw new UnsupportedOperationException();
+    }
+
+    @Override
+    protected QNameEntity findQNameEntityById(Long id)
+    {
+        return qnamesById.get(id);
+    }
+
+    @Override
+    protected QNameEntity findQNameEntityByNamespaceAndLocalName(Long nsId, String localName)
+    {
+        return qnamesByName.get(nsId + "/" + localName);
+    }
+
+    @Override
+    protected synchronized QNameEntity createQNameEntity(Long nsId, String localName)
+    {
+        QNameEntity entity = new QNameEntity();
+        entity.setId(nextId.getAndIncrement());
+        entity.setVersion(QNameEntity.CONST_LONG_ZERO);
+        entity.setNamespaceId(nsId);
+        entity.setLocalName(localName);
+        qnamesById.put(entity.getId(), entity);
+        qnamesByName.put(nsId + "/" + localName, entity);
+        return entity;
+    }
+
+    @Override
+    protected int updateQNameEntity(QNameEntity entity, Long nsId, String localName)
+    {
+        throw new UnsupportedOperationException();
+    }
+
+    @Override
+    protected int deleteQNameEntity(QNameEntity entity)
+    {
+        throw new UnsupportedOperationException();
+    }
+}
@@ -0,0 +1,126 @@
+/*
+ * #%L
+ * Alfresco Repository
+ * %%
+ * Copyright (C) 2005 - 2016 Alfresco Software Limited
+ * %%
+ * This file is part of the Alfresco software. 
+ * If the software was purchased under a paid Alfresco license, the terms of 
+ * the paid license agreement will prevail.  Otherwise, the software is 
+ * provided under the following open source license terms:
+ * 
+ * Alfresco is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * 
+ * Alfresco is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ * 
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with Alfresco. If not, see <http://www.gnu.org/licenses/>.
+ * #L%
+ */
+package org.alfresco.repo.domain.qname;
+
+import java.io.Serializable;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+import org.alfresco.service.namespace.NamespaceService;
+import org.alfresco.service.namespace.QName;
+import org.alfresco.util.Pair;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Measures {@link QName} construction and the ID lookups made through the {@link QNameDAO}
+ * caches, which are on the path of every node property and aspect read.
+ * 
+ * @since 5.2
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class QNameBenchmark
+{
+    private static final int QNAME_COUNT = 500;
+    
+    private String[] localNames;
+    private String[] qnameStrings;
+    private QName[] qnames;
+    private Long[] qnameIds;
+    private Map<QName, Serializable> properties;
+    private QNameDAO qnameDAO;
+    
+    @Setup(Level.Trial)
+    public void setUp()
+    {
+        qnameDAO = new InMemoryQNameDAO();
+        localNames = new String[QNAME_COUNT];
+        qnameStrings = new String[QNAME_COUNT];
+        qnames = new QName[QNAME_COUNT];
+        qnameIds = new Long[QNAME_COUNT];
+        properties = new HashMap<QName, Serializable>();
+        for (int i = 0; i < QNAME_COUNT; i++)
+        {
+            localNames[i] = "property" + i;
+            qnames[i] = QName.createQName(NamespaceService.CONTENT_MODEL_1_0_URI, localNames[i]);
+            qnameStrings[i] = qnames[i].toString();
+            qnameIds[i] = qnameDAO.getOrCreateQName(qnames[i]).getFirst();
+            properties.put(qnames[i], "VALUE-" + i);
+        }
+    }
+    
+    private int nextIndex()
+    {
+        return ThreadLocalRandom.current().nextInt(QNAME_COUNT);
+    }
+    
+    @Benchmark
+    public QName createQName()
+    {
+        return QName.createQName(NamespaceService.CONTENT_MODEL_1_0_URI, localNames[nextIndex()]);
+    }
+    
+    @Benchmark
+    public QName parseQName()
+    {
+        return QName.createQName(qnameStrings[nextIndex()]);
+    }
+    
+    @Benchmark
+    public Serializable mapLookupWithNewQName()
+    {
+        QName qname = QName.createQName(NamespaceService.CONTENT_MODEL_1_0_URI, localNames[nextIndex()]);
+        return properties.get(qname);
+    }
+    
+    @Benchmark
+    public Pair<Long, QName> getQNameById()
+    {
+        return qnameDAO.getQName(qnameIds[nextIndex()]);
+    }
+    
+    @Benchmark
+    public Pair<Long, QName> getQNameByValue()
+    {
+        return qnameDAO.getQName(qnames[nextIndex()]);
+    }
+}
@@ -0,0 +1,195 @@
+/*
+ * #%L
+ * Alfresco Repository
+ * %%
+ * Copyright (C) 2005 - 2016 Alfresco Software Limited
+ * %%
+ * This file is part of the Alfresco software. 
+ * If the software was purchased under a paid Alfresco license, the terms of 
+ * the paid license agreement will prevail.  Otherwise, the software is 
+ * provided under the following open source license terms:
+ * 
+ * Alfresco is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * 
+ * Alfresco is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ * 
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with Alfresco. If not, see <http://www.gnu.org/licenses/>.
+ * #L%
+ */
+package org.alfresco.repo.policy;
+
+import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+import org.alfresco.model.ContentModel;
+import org.alfresco.repo.dictionary.CompiledModelsCache;
+import org.alfresco.repo.dictionary.DictionaryBootstrap;
+import org.alfresco.repo.dictionary.DictionaryComponent;
+import org.alfresco.repo.dictionary.DictionaryDAOImpl;
+import org.alfresco.repo.node.NodeServicePolicies;
+import org.alfresco.repo.node.NodeServicePolicies.OnUpdatePropertiesPolicy;
+import org.alfresco.repo.tenant.SingleTServiceImpl;
+import org.alfresco.repo.tenant.TenantService;
+import org.alfresco.service.cmr.repository.NodeRef;
+import org.alfresco.service.cmr.repository.StoreRef;
+import org.alfresco.service.namespace.QName;
+import org.alfresco.util.GUID;
+import org.alfresco.util.ThreadPoolExecutorFactoryBean;
+import org.alfresco.util.cache.DefaultAsynchronouslyRefreshedCacheRegistry;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Measures the per-invocation overhead of firing
+ * {@link OnUpdatePropertiesPolicy#onUpdateProperties(NodeRef, Map, Map) onUpdateProperties}
+ * through the {@link PolicyComponentImpl} with 30 bound Java behaviours.
+ * <p/>
+ * The behaviours are spread over the type hierarchy and the aspects of a <b>cm:content</b>
+ * node, and the policy is resolved the way the node service resolves it for every update:
+ * once per invocation against the node's type and aspects.  Only the dictionary is started,
+ * so the figures are the cost of policy resolution and dispatch alone.
+ * 
+ * @since 5.2
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class PolicyComponentBenchmark
+{
+    private static final int BEHAVIOURS_PER_CLASS = 5;
+    
+    private ClassPolicyDelegate<OnUpdatePropertiesPolicy> delegate;
+    private NodeRef nodeRef;
+    private Set<QName> typeAndAspects;
+    private Map<QName, Serializable> before;
+    private Map<QName, Serializable> after;
+    
+    @Setup(Level.Trial)
+    public void setUp() throws Exception
+    {
+        TenantService tenantService = new SingleTServiceImpl();
+        DictionaryDAOImpl dictionaryDAO = new DictionaryDAOImpl();
+        dictionaryDAO.setTenantService(tenantService);
+        CompiledModelsCache compiledModelsCache = new CompiledModelsCache();
+        compiledModelsCache.setDictionaryDAO(dictionaryDAO);
+        compiledModelsCache.setTenantService(tenantService);
+        compiledModelsCache.setRegistry(new DefaultAsynchronouslyRefreshedCacheRegistry());
+        ThreadPoolExecutorFactoryBean threadPoolfactory = new ThreadPoolExecutorFactoryBean();
+        threadPoolfactory.afterPropertiesSet();
+        compiledModelsCache.setThreadPoolExecutor((ThreadPoolExecutor) threadPoolfactory.getObject());
+        dictionaryDAO.setDictionaryRegistryCache(compiledModelsCache);
+        dictionaryDAO.init();
+        
+        DictionaryBootstrap bootstrap = new DictionaryBootstrap();
+        List<String> bootstrapModels = new ArrayList<String>();
+        bootstrapModels.add("alfresco/model/dictionaryModel.xml");
+        bootstrapModels.add("alfresco/model/systemModel.xml");
+        bootstrapModels.add("alfresco/model/contentModel.xml");
+        bootstrap.setModels(bootstrapModels);
+        bootstrap.setDictionaryDAO(dictionaryDAO);
+        bootstrap.setTenantService(tenantService);
+        bootstrap.bootstrap();
+        
+        DictionaryComponent dictionary = new DictionaryComponent();
+        dictionary.setDictionaryDAO(dictionaryDAO);
+        PolicyComponentImpl policyComponent = new PolicyComponentImpl(dictionary);
+        delegate = policyComponent.registerClassPolicy(OnUpdatePropertiesPolicy.class);
+        
+        // 6 classes x 5 behaviours = 30 behaviours for the node
+        QName[] boundClasses = new QName[] {
+                ContentModel.TYPE_BASE,
+                ContentModel.TYPE_CMOBJECT,
+                ContentModel.TYPE_CONTENT,
+                ContentModel.ASPECT_TITLED,
+                ContentModel.ASPECT_AUDITABLE,
+                ContentModel.ASPECT_VERSIONABLE };
+        for (QName boundClass : boundClasses)
+        {
+            for (int i = 0; i < BEHAVIOURS_PER_CLASS; i++)
+            {
+                policyComponent.bindClassBehaviour(
+                        NodeServicePolicies.OnUpdatePropertiesPolicy.QNAME,
+                        boundClass,
+                        new JavaBehaviour(new UpdateBehaviour(), "onUpdateProperties"));
+            }
+        }
+        
+        nodeRef = new NodeRef(StoreRef.STORE_REF_WORKSPACE_SPACESSTORE, GUID.generate());
+        typeAndAspects = new HashSet<QName>();
+        typeAndAspects.add(ContentModel.TYPE_CONTENT);
+        typeAndAspects.add(ContentModel.ASPECT_TITLED);
+        typeAndAspects.add(ContentModel.ASPECT_AUDITABLE);
+        typeAndAspects.add(ContentModel.ASPECT_VERSIONABLE);
+        
+        before = new HashMap<QName, Serializable>();
+        before.put(ContentModel.PROP_NAME, "before.txt");
+        after = new HashMap<QName, Serializable>();
+        after.put(ContentModel.PROP_NAME, "after.txt");
+    }
+    
+    /**
+     * Resolve and fire the policy for the node's type and aspects, as the node service does.
+     */
+    @Benchmark
+    public void onUpdatePropertiesTypeAndAspects()
+    {
+        delegate.get(nodeRef, typeAndAspects).onUpdateProperties(nodeRef, before, after);
+    }
+    
+    /**
+     * Resolve and fire the policy for the node's type only (15 behaviours).
+     */
+    @Benchmark
+    public void onUpdatePropertiesType()
+    {
+        delegate.get(nodeRef, ContentModel.TYPE_CONTENT).onUpdateProperties(nodeRef, before, after);
+    }
+    
+    @Benchmark
+    @Threads(4)
+    public void onUpdatePropertiesTypeAndAspectsContended()
+    {
+        delegate.get(nodeRef, typeAndAspects).onUpdateProperties(nodeRef, before, after);
+    }
+    
+    /**
+     * A behaviour that does just enough work not to be optimised away.
+     */
+    public static class UpdateBehaviour implements OnUpdatePropertiesPolicy
+    {
+        private volatile int lastSize;
+        
+        @Override
+        public void onUpdateProperties(NodeRef nodeRef, Map<QName, Serializable> before, Map<QName, Serializable> after)
+        {
+            lastSize = before.size() + after.size();
+        }
+    }
+}
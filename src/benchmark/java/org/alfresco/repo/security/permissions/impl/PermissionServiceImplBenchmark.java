@@ -0,0 +1,204 @@
+/*
+ * #%L
+ * Alfresco Repository
+ * %%
+ * Copyright (C) 2005 - 2016 Alfresco Software Limited
+ * %%
+ * This file is part of the Alfresco software. 
+ * If the software was purchased under a paid Alfresco license, the terms of 
+ * the paid license agreement will prevail.  Otherwise, the software is 
+ * provided under the following open source license terms:
+ * 
+ * Alfresco is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * 
+ * Alfresco is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ * 
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with Alfresco. If not, see <http://www.gnu.org/licenses/>.
+ * #L%
+ */
+package org.alfresco.repo.security.permissions.impl;
+
+import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+import org.alfresco.model.ContentModel;
+import org.alfresco.repo.security.authentication.AuthenticationUtil;
+import org.alfresco.repo.security.authentication.AuthenticationUtil.RunAsWork;
+import org.alfresco.repo.transaction.RetryingTransactionHelper;
+import org.alfresco.repo.transaction.RetryingTransactionHelper.RetryingTransactionCallback;
+import org.alfresco.service.ServiceRegistry;
+import org.alfresco.service.cmr.repository.NodeRef;
+import org.alfresco.service.cmr.repository.NodeService;
+import org.alfresco.service.cmr.repository.StoreRef;
+import org.alfresco.service.cmr.security.AccessStatus;
+import org.alfresco.service.cmr.security.PermissionService;
+import org.alfresco.service.cmr.security.PersonService;
+import org.alfresco.service.namespace.NamespaceService;
+import org.alfresco.service.namespace.QName;
+import org.alfresco.util.ApplicationContextHelper;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+import org.springframework.context.ApplicationContext;
+
+/**
+ * Measures {@link PermissionServiceImpl#hasPermission(NodeRef, String)} for a non-admin user
+ * over a folder tree with inherited and explicitly set permissions.
+ * <p/>
+ * This starts the full repository context and therefore needs the same database settings
+ * (<b>db.*</b> properties) as the repository tests. Checks are made in read-only transactions
+ * so that the node, ACL and permission caches are warm, as they would be for a folder listing.
+ * 
+ * @since 5.2
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 5, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class PermissionServiceImplBenchmark
+{
+    private static final String USER = "permissionBenchmarkUser";
+    private static final int FOLDER_COUNT = 10;
+    private static final int FILES_PER_FOLDER = 50;
+    private static final int CHECKS_PER_TXN = 100;
+    
+    private NodeService nodeService;
+    private PermissionServiceImpl permissionServiceImpl;
+    private RetryingTransactionHelper txnHelper;
+    private StoreRef storeRef;
+    private List<NodeRef> nodeRefs;
+    
+    @Setup(Level.Trial)
+    public void setUp()
+    {
+        ApplicationContext ctx = ApplicationContextHelper.getApplicationContext();
+        ServiceRegistry serviceRegistry = (ServiceRegistry) ctx.getBean(ServiceRegistry.SERVICE_REGISTRY);
+        nodeService = (NodeService) ctx.getBean("nodeService");
+        permissionServiceImpl = (PermissionServiceImpl) ctx.getBean("permissionServiceImpl");
+        txnHelper = serviceRegistry.getRetryingTransactionHelper();
+        final PersonService personService = serviceRegistry.getPersonService();
+        
+        AuthenticationUtil.setAdminUserAsFullyAuthenticatedUser();
+        nodeRefs = txnHelper.doInTransaction(new RetryingTransactionCallback<List<NodeRef>>()
+        {
+            @Override
+            public List<NodeRef> execute() throws Throwable
+            {
+                if (!personService.personExists(USER))
+                {
+                    Map<QName, Serializable> personProps = new HashMap<QName, Serializable>();
+                    personProps.put(ContentModel.PROP_USERNAME, USER);
+                    personService.createPerson(personProps);
+                }
+                
+                storeRef = nodeService.createStore(StoreRef.PROTOCOL_WORKSPACE, "PermissionBenchmark-" + System.nanoTime());
+                NodeRef rootNodeRef = nodeService.getRootNode(storeRef);
+                NodeRef topNodeRef = createNode(rootNodeRef, "top", ContentModel.TYPE_FOLDER);
+                permissionServiceImpl.setPermission(topNodeRef, USER, PermissionService.CONSUMER, true);
+                
+                List<NodeRef> nodeRefs = new ArrayList<NodeRef>();
+                for (int i = 0; i < FOLDER_COUNT; i++)
+                {
+                    NodeRef folderNodeRef = createNode(topNodeRef, "folder-" + i, ContentModel.TYPE_FOLDER);
+                    if (i % 2 == 0)
+                    {
+                        // Give half of the folders their own ACL
+                        permissionServiceImpl.setPermission(folderNodeRef, USER, PermissionService.EDITOR, true);
+                    }
+                    nodeRefs.add(folderNodeRef);
+                    for (int j = 0; j < FILES_PER_FOLDER; j++)
+                    {
+                        nodeRefs.add(createNode(folderNodeRef, "file-" + j, ContentModel.TYPE_CONTENT));
+                    }
+                }
+                return nodeRefs;
+            }
+        });
+        AuthenticationUtil.clearCurrentSecurityContext();
+    }
+    
+    private NodeRef createNode(NodeRef parentNodeRef, String name, QName type)
+    {
+        Map<QName, Serializable> props = new HashMap<QName, Serializable>();
+        props.put(ContentModel.PROP_NAME, name);
+        QName assocQName = QName.createQName(NamespaceService.CONTENT_MODEL_1_0_URI, name);
+        return nodeService.createNode(parentNodeRef, ContentModel.ASSOC_CONTAINS, assocQName, type, props).getChildRef();
+    }
+    
+    @TearDown(Level.Trial)
+    public void tearDown()
+    {
+        AuthenticationUtil.setAdminUserAsFullyAuthenticatedUser();
+        txnHelper.doInTransaction(new RetryingTransactionCallback<Void>()
+        {
+            @Override
+            public Void execute() throws Throwable
+            {
+                nodeService.deleteStore(storeRef);
+                return null;
+            }
+        });
+        AuthenticationUtil.clearCurrentSecurityContext();
+    }
+    
+    private void checkPermissions(final String permission, final Blackhole bh)
+    {
+        AuthenticationUtil.runAs(new RunAsWork<Void>()
+        {
+            @Override
+            public Void doWork() throws Exception
+            {
+                return txnHelper.doInTransaction(new RetryingTransactionCallback<Void>()
+                {
+                    @Override
+                    public Void execute() throws Throwable
+                    {
+                        for (int i = 0; i < CHECKS_PER_TXN; i++)
+                        {
+                            NodeRef nodeRef = nodeRefs.get(ThreadLocalRandom.current().nextInt(nodeRefs.size()));
+                            AccessStatus status = permissionServiceImpl.hasPermission(nodeRef, permission);
+                            bh.consume(status);
+                        }
+                        return null;
+                    }
+                }, true, false);
+            }
+        }, USER);
+    }
+    
+    @Benchmark
+    public void hasReadPermission(Blackhole bh)
+    {
+        checkPermissions(PermissionService.READ, bh);
+    }
+    
+    @Benchmark
+    public void hasWritePermission(Blackhole bh)
+    {
+        checkPermissions(PermissionService.WRITE, bh);
+    }
+}
@@ -38,6 +38,8 @@ import java.net.URL;
 import java.sql.SQLException;
 import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
 import java.util.Date;
 import java.util.HashMap;
 import java.util.HashSet;
@@ -227,85 +229,70 @@ public abstract class FeedTaskProcessor
                     
                     int excludedConnections = 0;
                     
-                    for (String recipient : recipients)
+                    //MNT-9104 If username contains uppercase letters the action of joining a site will not be displayed in "My activities" 
+                    if (! userNamesAreCaseSensitive)
                     {
-                        List<FeedControlEntity> feedControls = null;
-                        if (! recipient.equals(""))
+                        postingUserId = postingUserId.toLowerCase();
+                    }
+                    
+                    // the activity summary is the same for every recipient - allows JSON to simply pass straight through
+                    String activitySummary = activityPost.getActivityData();
+                    
+                    if (activitySummary.equals(""))
+                    {
+                        if (logger.isDebugEnabled())
                         {
-                            // Get user's feed controls
-                            feedControls = userFeedControls.get(recipient);
-                            if (feedControls == null)
-                            {
-                                feedControls = getFeedControls(recipient);
-                                userFeedControls.put(recipient, feedControls);
-                            }
+                            logger.debug("Empty template result for activityType '" + activityType + "' using format '" + FeedTaskProcessor.FEED_FORMAT_JSON + "' hence skip feed entries (activity post " + activityPost.getId() + ")");
                         }
+                    }
+                    else if (activitySummary.length() > ActivityFeedDAO.MAX_LEN_ACTIVITY_SUMMARY)
+                    {
+                        logger.warn("Skip feed entries (activity post " + activityPost.getId() + ") since activity summary - exceeds " + ActivityFeedDAO.MAX_LEN_ACTIVITY_SUMMARY + " chars: " + activitySummary);
+                    }
+                    else
+                    {
+                        // Get the feed controls of any recipients not yet seen in this run - in one go
+                        loadFeedControls(recipients, userFeedControls);
                         
-                        // filter based on opt-out feed controls (if any)
-                        if (! acceptActivity(activityPost, feedControls))
-                        {
-                            excludedConnections++;
-                        }
-                        else
+                        Date feedDate = new Date();
+                        List<ActivityFeedEntity> feeds = new ArrayList<ActivityFeedEntity>(recipients.size());
+                        
+                        for (String recipient : recipients)
                         {
-                            // node read permission check (if nodeRef is present)
-                            if (! canRead(ctx, recipient, model))
+                            List<FeedControlEntity> feedControls = (recipient.equals("") ? null : userFeedControls.get(recipient));
+                            
+                            // filter based on opt-out feed controls (if any)
+                            if (! acceptActivity(activityPost, feedControls))
                             {
                                 excludedConnections++;
                                 continue;
                             }
                             
-                            for (String fmTemplate : fmTemplates)
+                            // node read permission check (if nodeRef is present)
+                            if (! canRead(ctx, recipient, model))
                             {
-                                String formatFound = FeedTaskProcessor.FEED_FORMAT_JSON;
-                                
-                                ActivityFeedEntity feed = new ActivityFeedEntity();
-                                
-                                // Generate activity feed summary 
-                                //MNT-9104 If username contains uppercase letters the action of joining a site will not be displayed in "My activities" 
-                                if (! userNamesAreCaseSensitive)
-                                {
-                                    recipient = recipient.toLowerCase();
-                                    postingUserId = postingUserId.toLowerCase();
-                                }
-                                feed.setFeedUserId(recipient);
-                                feed.setPostUserId(postingUserId);
-                                feed.setActivityType(activityType);
-                                
-                                String activitySummary = null;
-                                    // allows JSON to simply pass straight through
-                                    activitySummary = activityPost.getActivityData();
-                                
-                                if (! activitySummary.equals(""))
-                                {
-                                    if (activitySummary.length() > ActivityFeedDAO.MAX_LEN_ACTIVITY_SUMMARY)
-                                    {
-                                        logger.warn("Skip feed entry (activity post " + activityPost.getId() + ") since activity summary - exceeds " + ActivityFeedDAO.MAX_LEN_ACTIVITY_SUMMARY + " chars: " + activitySummary);
-                                    }
-                                    else
-                                    {
-                                        feed.setActivitySummary(activitySummary);
-                                        feed.setSiteNetwork(thisSite);
-                                        feed.setAppTool(activityPost.getAppTool());
-                                        feed.setPostDate(activityPost.getPostDate());
-                                        feed.setPostId(activityPost.getId());
-                                        feed.setFeedDate(new Date());
-                                        
-                                        // Insert activity feed
-                                        insertFeedEntry(feed); // ignore returned feedId
-                                        
-                                        totalGenerated++;
-                                    }
-                                }
-                                else
-                                {
-                                    if (logger.isDebugEnabled())
-                                    {
-                                        logger.debug("Empty template result for activityType '" + activityType + "' using format '" + formatFound + "' hence skip feed entry (activity post " + activityPost.getId() + ")");
-                                    }
-                                }
+                                excludedConnections++;
+                                continue;
                             }
+                            
+                            ActivityFeedEntity feed = new ActivityFeedEntity();
+                            
+                            //MNT-9104 If username contains uppercase letters the action of joining a site will not be displayed in "My activities" 
+                            feed.setFeedUserId(userNamesAreCaseSensitive ? recipient : recipient.toLowerCase());
+                            feed.setPostUserId(postingUserId);
+                            feed.setActivityType(activityType);
+                            feed.setActivitySummary(activitySummary);
+                            feed.setSiteNetwork(thisSite);
+                            feed.setAppTool(activityPost.getAppTool());
+                            feed.setPostDate(activityPost.getPostDate());
+                            feed.setPostId(activityPost.getId());
+                            feed.setFeedDate(feedDate);
+                            
+                            feeds.add(feed);
                         }
+                        
+                        // Insert activity feeds (batched)
+                        totalGenerated += insertFeedEntries(feeds);
                     }
                     
                     updatePostStatus(activityPost.getId(), ActivityPostEntity.STATUS.PROCESSED);
@@ -443,8 +430,40 @@ public abstract class FeedTaskProcessor
 
     public abstract List<FeedControlEntity> selectUserFeedControls(String userId) throws SQLException;
 
+    /**
+     * Select the feed controls for several users. Override to fetch them in bulk - by default each user is selected in turn.
+     * 
+     * @return map of user id to feed controls
+     * @since 5.2
+     */
+    public Map<String, List<FeedControlEntity>> selectUserFeedControls(Collection<String> userIds) throws SQLException
+    {
+        Map<String, List<FeedControlEntity>> feedControls = new HashMap<String, List<FeedControlEntity>>(userIds.size() * 2);
+        for (String userId : userIds)
+        {
+            feedControls.put(userId, selectUserFeedControls(userId));
+        }
+        return feedControls;
+    }
+
     public abstract long insertFeedEntry(ActivityFeedEntity feed) throws SQLException;
 
+    /**
+     * Insert the feed entries generated for an activity post. Override to insert them in batches - by default each
+     * feed entry is inserted in turn.
+     * 
+     * @return the number of feed entries inserted
+     * @since 5.2
+     */
+    public int insertFeedEntries(List<ActivityFeedEntity> feeds) throws SQLException
+    {
+        for (ActivityFeedEntity feed : feeds)
+        {
+            insertFeedEntry(feed); // ignore returned feedId
+        }
+        return feeds.size();
+    }
+
     public abstract int updatePostStatus(long id, ActivityPostEntity.STATUS status) throws SQLException;
 
     protected String callWebScript(String urlString, String ticket) throws MalformedURLException, URISyntaxException, IOException
@@ -661,6 +680,73 @@ public abstract class FeedTaskProcessor
         return selectUserFeedControls(connectedUser);
     }
 
+    /**
+     * Get the feed controls for several connected users at once.
+     * 
+     * @return map of connected user (as given) to feed controls
+     * @since 5.2
+     */
+    protected Map<String, List<FeedControlEntity>> getFeedControls(Collection<String> connectedUsers) throws SQLException
+    {
+        Set<String> userIds = new HashSet<String>(connectedUsers.size() * 2);
+        for (String connectedUser : connectedUsers)
+        {
+            //MNT-9104 If username contains uppercase letters the action of joining a site will not be displayed in "My activities" 
+            userIds.add(userNamesAreCaseSensitive ? connectedUser : connectedUser.toLowerCase());
+        }
+        
+        Map<String, List<FeedControlEntity>> selected = selectUserFeedControls(userIds);
+        if (! userNamesAreCaseSensitive)
+        {
+            // the selected feed controls may be keyed by the user ids as stored, so group them by user regardless of case
+            Map<String, List<FeedControlEntity>> selectedByUser = new HashMap<String, List<FeedControlEntity>>(selected.size() * 2);
+            for (Map.Entry<String, List<FeedControlEntity>> entry : selected.entrySet())
+            {
+                String userId = entry.getKey().toLowerCase();
+                List<FeedControlEntity> userFeedControls = selectedByUser.get(userId);
+                if (userFeedControls == null)
+                {
+                    selectedByUser.put(userId, entry.getValue());
+                }
+                else if (userFeedControls != entry.getValue())
+                {
+                    userFeedControls = new ArrayList<FeedControlEntity>(userFeedControls);
+                    userFeedControls.addAll(entry.getValue());
+                    selectedByUser.put(userId, userFeedControls);
+                }
+            }
+            selected = selectedByUser;
+        }
+        
+        Map<String, List<FeedControlEntity>> feedControls = new HashMap<String, List<FeedControlEntity>>(connectedUsers.size() * 2);
+        for (String connectedUser : connectedUsers)
+        {
+            List<FeedControlEntity> userFeedControls = selected.get(userNamesAreCaseSensitive ? connectedUser : connectedUser.toLowerCase());
+            feedControls.put(connectedUser, (userFeedControls != null ? userFeedControls : Collections.<FeedControlEntity>emptyList()));
+        }
+        return feedControls;
+    }
+
+    /**
+     * Add the feed controls of those recipients that are not yet in the given cache (which is for this run of activity posts)
+     */
+    private void loadFeedControls(Set<String> recipients, Map<String, List<FeedControlEntity>> userFeedControls) throws SQLException
+    {
+        List<String> connectedUsers = new ArrayList<String>();
+        for (String recipient : recipients)
+        {
+            if ((! recipient.equals("")) && (! userFeedControls.containsKey(recipient)))
+            {
+                connectedUsers.add(recipient);
+            }
+        }
+        
+        if (connectedUsers.size() > 0)
+        {
+            userFeedControls.putAll(getFeedControls(connectedUsers));
+        }
+    }
+
     protected boolean acceptActivity(ActivityPostEntity activityPost, List<FeedControlEntity> feedControls)
     {
         if (feedControls == null)
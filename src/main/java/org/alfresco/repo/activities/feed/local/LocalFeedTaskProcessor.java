@@ -28,6 +28,7 @@ package org.alfresco.repo.activities.feed.local;
 import java.io.IOException;
 import java.sql.SQLException;
 import java.util.ArrayList;
+import java.util.Collection;
 import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
@@ -215,6 +216,20 @@ public class LocalFeedTaskProcessor extends FeedTaskProcessor implements Applica
         return feedDAO.insertFeedEntry(feed);
     }
 
+    @Override
+    public int insertFeedEntries(List<ActivityFeedEntity> feeds) throws SQLException
+    {
+        if (feeds.isEmpty())
+        {
+            return 0;
+        }
+        if (logger.isDebugEnabled())
+        {
+            logger.debug("Inserting " + feeds.size() + " feed entries for activity post: " + feeds.get(0).getPostId());
+        }
+        return feedDAO.insertFeedEntries(feeds);
+    }
+
     public int updatePostStatus(long id, ActivityPostEntity.STATUS status) throws SQLException
     {
         if (logger.isDebugEnabled())
@@ -240,6 +255,16 @@ public class LocalFeedTaskProcessor extends FeedTaskProcessor implements Applica
         }
         return userFeedControls;
     }
+
+    @Override
+    public Map<String, List<FeedControlEntity>> selectUserFeedControls(Collection<String> userIds) throws SQLException
+    {
+        if (logger.isDebugEnabled())
+        {
+            logger.debug("Selecting feed controls for " + userIds.size() + " users");
+        }
+        return feedControlDAO.selectFeedControls(userIds);
+    }
     
     @Override
     protected String getTenantName(String name, String tenantDomain)
@@ -86,6 +86,7 @@ public class AuditComponentImpl implements AuditComponent
     private TransactionService transactionService;
     private AuditFilter auditFilter;
     private UserAuditFilter userAuditFilter;
+    private AuditEntryWriter auditEntryWriter;
     
     /**
      * Default constructor
@@ -142,6 +143,16 @@ public class AuditComponentImpl implements AuditComponent
         this.userAuditFilter = userAuditFilter;
     }
 
+    /**
+     * Set the component that writes audit entries after commit.  When it is absent or
+     * disabled, audit entries are written within the audited transaction.
+     * @since 5.2
+     */
+    public void setAuditEntryWriter(AuditEntryWriter auditEntryWriter)
+    {
+        this.auditEntryWriter = auditEntryWriter;
+    }
+
     /**
      * {@inheritDoc}
      * @since 3.2
@@ -583,10 +594,17 @@ public class AuditComponentImpl implements AuditComponent
         
         // We have something to record.  Start a transaction, if necessary
         TxnReadState txnState = AlfrescoTransactionSupport.getTransactionReadState();
+        boolean writeAfterCommit = auditEntryWriter != null && auditEntryWriter.isEnabled();
         switch (txnState)
         {
-        case TXN_NONE:
         case TXN_READ_ONLY:
+            if (writeAfterCommit)
+            {
+                // The entries are only queued here; the writer uses its own transactions
+                return recordAuditValuesImpl(mappedValues);
+            }
+            // Fall through to write in a new transaction
+        case TXN_NONE:
             // New transaction
             RetryingTransactionCallback<Map<String, Serializable>> callback =
                     new RetryingTransactionCallback<Map<String,Serializable>>()
@@ -597,8 +615,11 @@ public class AuditComponentImpl implements AuditComponent
                 }
             };
             RetryingTransactionHelper txnHelper = transactionService.getRetryingTransactionHelper();
-            txnHelper.setForceWritable(true);
-            return txnHelper.doInTransaction(callback, false, true);
+            if (!writeAfterCommit)
+            {
+                txnHelper.setForceWritable(true);
+            }
+            return txnHelper.doInTransaction(callback, writeAfterCommit, true);
         case TXN_READ_WRITE:
             return recordAuditValuesImpl(mappedValues);
         default:
@@ -754,7 +775,15 @@ public class AuditComponentImpl implements AuditComponent
             boolean justGatherPreCallData = application.isApplicationJustGeneratingPreCallData();
             if (!justGatherPreCallData)
             {
-                entryId = auditDAO.createAuditEntry(applicationId, time, username, auditData);
+                if (auditEntryWriter != null && auditEntryWriter.isEnabled())
+                {
+                    // Written after commit unless the writer is too far behind; the entry ID is only known when written now
+                    entryId = auditEntryWriter.queueAuditEntry(applicationId, time, username, auditData);
+                }
+                else
+                {
+                    entryId = auditDAO.createAuditEntry(applicationId, time, username, auditData);
+                }
             }
             // Done
             if (logger.isDebugEnabled())
@@ -0,0 +1,543 @@
+/*
+ * #%L
+ * Alfresco Repository
+ * %%
+ * Copyright (C) 2005 - 2016 Alfresco Software Limited
+ * %%
+ * This file is part of the Alfresco software. 
+ * If the software was purchased under a paid Alfresco license, the terms of 
+ * the paid license agreement will prevail.  Otherwise, the software is 
+ * provided under the following open source license terms:
+ * 
+ * Alfresco is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * 
+ * Alfresco is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ * 
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with Alfresco. If not, see <http://www.gnu.org/licenses/>.
+ * #L%
+ */
+package org.alfresco.repo.audit;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileLock;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.zip.CRC32;
+
+import org.alfresco.error.AlfrescoRuntimeException;
+import org.alfresco.repo.domain.audit.AuditDAO.AuditEntryInfo;
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+
+/**
+ * Local journal of the audit entries waiting to be written to the database by the {@link AuditEntryWriter}.
+ * <p/>
+ * Entries are appended to segment files and forced to disk before {@link #append(List)} returns.
+ * A single reader takes them back in order with {@link #read(int)} and, once they are in the
+ * database, {@link #acknowledge() acknowledges} them, or {@link #rewind() rewinds} to read them
+ * again later.  The acknowledged position is kept in a checkpoint file, so entries that were not
+ * acknowledged when the server stopped are read again when the journal is next opened.  Each
+ * record carries a checksum and a record that was only partly written is ignored.
+ * <p/>
+ * The journal directory is locked while the journal is open, so it cannot be shared by servers.
+ * 
+ * @since 5.2
+ */
+public class AuditEntryJournal
+{
+    private static final String SEGMENT_PREFIX = "audit-";
+    private static final String SEGMENT_SUFFIX = ".journal";
+    private static final String CHECKPOINT_FILE = "checkpoint";
+    private static final String LOCK_FILE = "journal.lock";
+    /** Each record starts with the length and the CRC of its data */
+    private static final int RECORD_HEADER_SIZE = 8;
+    private static final int MAX_RECORD_SIZE = 64 * 1024 * 1024;
+
+    private static Log logger = LogFactory.getLog(AuditEntryJournal.class);
+
+    /** Directories open in this JVM; closing another handle on a locked file would release its lock */
+    private static final Set<File> OPEN_DIRECTORIES = new HashSet<File>();
+
+    private final File directory;
+    private final long maxSegmentSize;
+
+    private File lockedDirectory;
+    private RandomAccessFile lockFile;
+    private FileLock lock;
+
+    /* Appended entries, guarded by this */
+    private long writeSegment;
+    private FileChannel writeChannel;
+    private long writeLength;
+    private long pendingCount;
+
+    /* Acknowledged position and read position, only used by the reader */
+    private long checkpointSegment;
+    private long checkpointOffset;
+    private long readSegment;
+    private long readOffset;
+    private FileChannel readChannel;
+    private int readCount;
+
+    /**
+     * @param directory         the directory holding the journal files
+     * @param maxSegmentSize    the size (bytes) above which appends go to a new segment file
+     */
+    public AuditEntryJournal(File directory, long maxSegmentSize)
+    {
+        this.directory = directory;
+        this.maxSegmentSize = maxSegmentSize;
+    }
+
+    /**
+     * @return                  the directory holding the journal files
+     */
+    public File getDirectory()
+    {
+        return directory;
+    }
+
+    /**
+     * Lock the journal directory, drop the segments that have been acknowledged in full and
+     * count the entries still to be read.  Entries are appended to a new segment.
+     */
+    public synchronized void open()
+    {
+        if (lock != null)
+        {
+            return;
+        }
+        try
+        {
+            if (!directory.isDirectory() && !directory.mkdirs())
+            {
+                throw new AlfrescoRuntimeException("Failed to create the audit journal directory " + directory);
+            }
+            File canonicalDirectory = directory.getCanonicalFile();
+            synchronized (OPEN_DIRECTORIES)
+            {
+                if (!OPEN_DIRECTORIES.add(canonicalDirectory))
+                {
+                    throw new AlfrescoRuntimeException("The audit journal directory " + directory + " is already in use.");
+                }
+            }
+            lockedDirectory = canonicalDirectory;
+            lockFile = new RandomAccessFile(new File(directory, LOCK_FILE), "rw");
+            lock = lockFile.getChannel().tryLock();
+            if (lock == null)
+            {
+                throw new AlfrescoRuntimeException("The audit journal directory " + directory + " is in use by another process.");
+            }
+
+            List<Long> segments = listSegments();
+            readCheckpoint(segments);
+            long lastSegment = checkpointSegment;
+            for (Long segment : segments)
+            {
+                if (segment < checkpointSegment)
+                {
+                    deleteSegment(segment);
+                }
+                lastSegment = Math.max(lastSegment, segment);
+            }
+
+            // Never append after a record that may only have been partly written
+            writeSegment = lastSegment + 1L;
+            writeChannel = FileChannel.open(segmentFile(writeSegment).toPath(), StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+            writeLength = 0L;
+
+            rewind();
+            long count = 0L;
+            for (List<AuditEntryInfo> entries = read(1000); !entries.isEmpty(); entries = read(1000))
+            {
+                count += entries.size();
+            }
+            rewind();
+            pendingCount = count;
+        }
+        catch (IOException e)
+        {
+            close();
+            throw new AlfrescoRuntimeException("Failed to open the audit journal in " + directory, e);
+        }
+        catch (RuntimeException e)
+        {
+            close();
+            throw e;
+        }
+        if (logger.isDebugEnabled())
+        {
+            logger.debug("Opened the audit journal in " + directory + " with " + pendingCount + " entries to write.");
+        }
+    }
+
+    /**
+     * Release the journal directory.  Entries that have not been acknowledged stay in the journal.
+     */
+    public synchronized void close()
+    {
+        closeReadChannel();
+        try
+        {
+            if (writeChannel != null)
+            {
+                writeChannel.close();
+            }
+            if (lock != null)
+            {
+                lock.release();
+            }
+            if (lockFile != null)
+            {
+                lockFile.close();
+            }
+        }
+        catch (IOException e)
+        {
+            logger.warn("Failed to close the audit journal in " + directory, e);
+        }
+        writeChannel = null;
+        lock = null;
+        lockFile = null;
+        if (lockedDirectory != null)
+        {
+            synchronized (OPEN_DIRECTORIES)
+            {
+                OPEN_DIRECTORIES.remove(lockedDirectory);
+            }
+            lockedDirectory = null;
+        }
+    }
+
+    /**
+     * @return                  the number of entries appended and not yet acknowledged
+     */
+    public synchronized long getPendingCount()
+    {
+        return pendingCount;
+    }
+
+    /**
+     * Append entries to the journal, forcing them to disk
+     * 
+     * @param entries           the entries to append
+     */
+    public synchronized void append(List<AuditEntryInfo> entries)
+    {
+        if (writeChannel == null)
+        {
+            throw new IllegalStateException("The audit journal in " + directory + " is not open.");
+        }
+        try
+        {
+            ByteArrayOutputStream records = new ByteArrayOutputStream(256 * entries.size());
+            for (AuditEntryInfo entry : entries)
+            {
+                writeRecord(records, entry);
+            }
+            if (writeLength > 0L && writeLength + records.size() > maxSegmentSize)
+            {
+                writeChannel.close();
+                writeSegment++;
+                writeChannel = FileChannel.open(segmentFile(writeSegment).toPath(), StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+                writeLength = 0L;
+            }
+            // Anything left by a failed append is overwritten; readers only go up to the written length
+            ByteBuffer buffer = ByteBuffer.wrap(records.toByteArray());
+            long position = writeLength;
+            while (buffer.hasRemaining())
+            {
+                position += writeChannel.write(buffer, position);
+            }
+            writeChannel.force(false);
+            writeLength = position;
+            pendingCount += entries.size();
+        }
+        catch (IOException e)
+        {
+            throw new AlfrescoRuntimeException("Failed to append " + entries.size() + " entries to the audit journal in " + directory, e);
+        }
+    }
+
+    /**
+     * Read the next entries after those already read.  Only one thread may read at a time.
+     * 
+     * @param maxEntries        the maximum number of entries to read
+     * @return                  the entries, in the order they were appended; empty if all have been read
+     */
+    public List<AuditEntryInfo> read(int maxEntries)
+    {
+        List<AuditEntryInfo> entries = new ArrayList<AuditEntryInfo>(Math.min(maxEntries, 1000));
+        try
+        {
+            while (entries.size() < maxEntries)
+            {
+                long lastSegment;
+                long limit;
+                synchronized (this)
+                {
+                    lastSegment = writeSegment;
+                    limit = (readSegment == writeSegment) ? writeLength : Long.MAX_VALUE;
+                }
+                if (readChannel == null && segmentFile(readSegment).exists())
+                {
+                    readChannel = FileChannel.open(segmentFile(readSegment).toPath(), StandardOpenOption.READ);
+                }
+                if (readChannel != null && readRecord(limit, entries))
+                {
+                    continue;
+                }
+                if (readSegment >= lastSegment)
+                {
+                    // Everything appended has been read
+                    break;
+                }
+                closeReadChannel();
+                readSegment++;
+                readOffset = 0L;
+            }
+        }
+        catch (IOException e)
+        {
+            throw new AlfrescoRuntimeException("Failed to read the audit journal in " + directory, e);
+        }
+        readCount += entries.size();
+        return entries;
+    }
+
+    /**
+     * Record that the entries read so far do not need to be read again.  Segments that have been
+     * read in full are deleted.
+     */
+    public void acknowledge()
+    {
+        try
+        {
+            writeCheckpoint(readSegment, readOffset);
+        }
+        catch (IOException e)
+        {
+            throw new AlfrescoRuntimeException("Failed to update the audit journal checkpoint in " + directory, e);
+        }
+        for (long segment = checkpointSegment; segment < readSegment; segment++)
+        {
+            deleteSegment(segment);
+        }
+        checkpointSegment = readSegment;
+        checkpointOffset = readOffset;
+        synchronized (this)
+        {
+            pendingCount -= readCount;
+        }
+        readCount = 0;
+    }
+
+    /**
+     * Go back to the last acknowledged position, so that the entries read since are read again
+     */
+    public void rewind()
+    {
+        closeReadChannel();
+        readSegment = checkpointSegment;
+        readOffset = checkpointOffset;
+        readCount = 0;
+    }
+
+    /**
+     * Read the record at the read position, if it was written in full
+     * 
+     * @return                  <tt>true</tt> if a record was read, <tt>false</tt> at the end of the segment
+     */
+    private boolean readRecord(long limit, List<AuditEntryInfo> entries) throws IOException
+    {
+        long size = Math.min(limit, readChannel.size());
+        if (readOffset + RECORD_HEADER_SIZE > size)
+        {
+            warnIfIncomplete(size);
+            return false;
+        }
+        ByteBuffer header = ByteBuffer.allocate(RECORD_HEADER_SIZE);
+        readFully(header, readOffset);
+        header.flip();
+        int length = header.getInt();
+        int crc = header.getInt();
+        if (length < 0 || length > MAX_RECORD_SIZE || readOffset + RECORD_HEADER_SIZE + length > size)
+        {
+            warnIfIncomplete(size);
+            return false;
+        }
+        ByteBuffer data = ByteBuffer.allocate(length);
+        readFully(data, readOffset + RECORD_HEADER_SIZE);
+        CRC32 check = new CRC32();
+        check.update(data.array());
+        if ((int) check.getValue() != crc)
+        {
+            warnIfIncomplete(size);
+            return false;
+        }
+        readOffset += RECORD_HEADER_SIZE + length;
+
+        ObjectInputStream in = new ObjectInputStream(new ByteArrayInputStream(data.array()));
+        try
+        {
+            entries.add((AuditEntryInfo) in.readObject());
+        }
+        catch (ClassNotFoundException | ClassCastException e)
+        {
+            logger.error("Discarding an unreadable record in audit journal segment " + segmentFile(readSegment), e);
+        }
+        finally
+        {
+            in.close();
+        }
+        return true;
+    }
+
+    private void warnIfIncomplete(long size)
+    {
+        if (readOffset < size)
+        {
+            logger.warn("Ignoring " + (size - readOffset) + " bytes that were not completely written at the end of audit journal segment " + segmentFile(readSegment));
+        }
+    }
+
+    private void readFully(ByteBuffer buffer, long position) throws IOException
+    {
+        while (buffer.hasRemaining())
+        {
+            int read = readChannel.read(buffer, position);
+            if (read < 0)
+            {
+                throw new EOFException("Unexpected end of audit journal segment " + segmentFile(readSegment));
+            }
+            position += read;
+        }
+    }
+
+    private void closeReadChannel()
+    {
+        if (readChannel != null)
+        {
+            try
+            {
+                readChannel.close();
+            }
+            catch (IOException e)
+            {
+                logger.warn("Failed to close audit journal segment " + segmentFile(readSegment), e);
+            }
+            readChannel = null;
+        }
+    }
+
+    private static void writeRecord(ByteArrayOutputStream records, AuditEntryInfo entry) throws IOException
+    {
+        ByteArrayOutputStream data = new ByteArrayOutputStream(256);
+        ObjectOutputStream out = new ObjectOutputStream(data);
+        out.writeObject(entry);
+        out.close();
+        byte[] bytes = data.toByteArray();
+        CRC32 crc = new CRC32();
+        crc.update(bytes);
+        ByteBuffer header = ByteBuffer.allocate(RECORD_HEADER_SIZE);
+        header.putInt(bytes.length);
+        header.putInt((int) crc.getValue());
+        records.write(header.array());
+        records.write(bytes);
+    }
+
+    private void readCheckpoint(List<Long> segments) throws IOException
+    {
+        File file = new File(directory, CHECKPOINT_FILE);
+        if (file.exists())
+        {
+            String[] position = new String(Files.readAllBytes(file.toPath()), StandardCharsets.UTF_8).trim().split(" ");
+            checkpointSegment = Long.parseLong(position[0]);
+            checkpointOffset = Long.parseLong(position[1]);
+        }
+        else
+        {
+            checkpointSegment = segments.isEmpty() ? 1L : segments.get(0);
+            checkpointOffset = 0L;
+        }
+    }
+
+    private void writeCheckpoint(long segment, long offset) throws IOException
+    {
+        File tempFile = new File(directory, CHECKPOINT_FILE + ".tmp");
+        FileOutputStream out = new FileOutputStream(tempFile);
+        try
+        {
+            out.write((segment + " " + offset).getBytes(StandardCharsets.UTF_8));
+            out.getFD().sync();
+        }
+        finally
+        {
+            out.close();
+        }
+        Files.move(tempFile.toPath(), new File(directory, CHECKPOINT_FILE).toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    private List<Long> listSegments()
+    {
+        List<Long> segments = new ArrayList<Long>();
+        String[] names = directory.list();
+        if (names != null)
+        {
+            for (String name : names)
+            {
+                if (name.startsWith(SEGMENT_PREFIX) && name.endsWith(SEGMENT_SUFFIX))
+                {
+                    try
+                    {
+                        segments.add(Long.parseLong(name.substring(SEGMENT_PREFIX.length(), name.length() - SEGMENT_SUFFIX.length())));
+                    }
+                    catch (NumberFormatException e)
+                    {
+                        // Not a segment
+                    }
+                }
+            }
+        }
+        Collections.sort(segments);
+        return segments;
+    }
+
+    private void deleteSegment(long segment)
+    {
+        File file = segmentFile(segment);
+        if (file.exists() && !file.delete())
+        {
+            logger.warn("Failed to delete audit journal segment " + file);
+        }
+    }
+
+    private File segmentFile(long segment)
+    {
+        return new File(directory, String.format("%s%020d%s", SEGMENT_PREFIX, segment, SEGMENT_SUFFIX));
+    }
+}
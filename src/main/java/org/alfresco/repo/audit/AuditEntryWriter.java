@@ -0,0 +1,475 @@
+/*
+ * #%L
+ * Alfresco Repository
+ * %%
+ * Copyright (C) 2005 - 2016 Alfresco Software Limited
+ * %%
+ * This file is part of the Alfresco software. 
+ * If the software was purchased under a paid Alfresco license, the terms of 
+ * the paid license agreement will prevail.  Otherwise, the software is 
+ * provided under the following open source license terms:
+ * 
+ * Alfresco is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * 
+ * Alfresco is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ * 
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with Alfresco. If not, see <http://www.gnu.org/licenses/>.
+ * #L%
+ */
+package org.alfresco.repo.audit;
+
+import java.io.File;
+import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import org.alfresco.repo.domain.audit.AuditDAO;
+import org.alfresco.repo.domain.audit.AuditDAO.AuditEntryInfo;
+import org.alfresco.repo.transaction.AlfrescoTransactionSupport;
+import org.alfresco.repo.transaction.AlfrescoTransactionSupport.TxnReadState;
+import org.alfresco.repo.transaction.RetryingTransactionHelper.RetryingTransactionCallback;
+import org.alfresco.repo.transaction.TransactionListenerAdapter;
+import org.alfresco.repo.transaction.TransactionalResourceHelper;
+import org.alfresco.service.transaction.TransactionService;
+import org.alfresco.util.PropertyCheck;
+import org.alfresco.util.TraceableThreadFactory;
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.springframework.context.ApplicationEvent;
+import org.springframework.dao.DataAccessResourceFailureException;
+import org.springframework.extensions.surf.util.AbstractLifecycleBean;
+
+/**
+ * Writes audit entries on a background thread once the transaction that generated them
+ * has committed.
+ * <p/>
+ * Entries are gathered per transaction and only handed over after a successful commit,
+ * so rolled back work is never audited.  They are then appended to a local
+ * {@link AuditEntryJournal journal}, which is forced to disk, and a single writer thread
+ * reads them back and creates them in batches, using batched inserts.  Entries are only
+ * removed from the journal once they have been committed to the database, so entries
+ * left over when the server stops are written after the next start.  An entry can be
+ * written twice if the server dies after its batch is committed and before the journal
+ * records it.  Entries are lost if the server dies between the commit of the audited
+ * transaction and the journal write, or if the journal cannot be written and neither can
+ * the database.
+ * <p/>
+ * If a batch cannot be written, its entries are written again one per transaction so that
+ * only the entries that fail on their own are discarded.  If the database cannot be reached
+ * the entries stay in the journal and writing resumes on the next commit.
+ * <p/>
+ * When the journal already holds {@link #setQueueSize(int) queueSize} entries, audited
+ * read-write transactions create their entries themselves, as they do when the writer is
+ * disabled.  This bounds the backlog by slowing the writers down rather than dropping audit
+ * data.  Read-only transactions always go through the journal.
+ * <p/>
+ * Each server needs its own journal directory.
+ * 
+ * @since 5.2
+ */
+public class AuditEntryWriter extends AbstractLifecycleBean
+{
+    private static final String KEY_PENDING_ENTRIES = AuditEntryWriter.class.getName() + ".pendingEntries";
+    private static final long JOURNAL_SEGMENT_SIZE = 16L * 1024L * 1024L;
+
+    private static Log logger = LogFactory.getLog(AuditEntryWriter.class);
+
+    private TransactionService transactionService;
+    private AuditDAO auditDAO;
+    private File journalDirectory;
+    private boolean enabled = false;
+    private int queueSize = 10000;
+    private int batchSize = 100;
+
+    private volatile AuditEntryJournal journal;
+    private ThreadPoolExecutor flushExecutor;
+    private final AtomicBoolean flushScheduled = new AtomicBoolean(false);
+    private final Object flushLock = new Object();
+    private volatile boolean stalled = false;
+    private final PendingAuditEntriesListener pendingEntriesListener = new PendingAuditEntriesListener();
+
+    /**
+     * Set the service used to start the write transactions
+     */
+    public void setTransactionService(TransactionService transactionService)
+    {
+        this.transactionService = transactionService;
+    }
+
+    /**
+     * Set the DAO used to persist the audit entries
+     */
+    public void setAuditDAO(AuditDAO auditDAO)
+    {
+        this.auditDAO = auditDAO;
+    }
+
+    /**
+     * @param journalDirectory  the directory holding the entries waiting to be written.
+     *                          It must not be shared with other servers.
+     */
+    public void setJournalDirectory(File journalDirectory)
+    {
+        this.journalDirectory = journalDirectory;
+    }
+
+    /**
+     * @param enabled           <tt>true</tt> to write audit entries after commit on a background
+     *                          thread or <tt>false</tt> (default) to write them in the audited transaction
+     */
+    public void setEnabled(boolean enabled)
+    {
+        this.enabled = enabled;
+    }
+
+    /**
+     * @return                  <tt>true</tt> if audit entries are written asynchronously
+     */
+    public boolean isEnabled()
+    {
+        return enabled;
+    }
+
+    /**
+     * @param queueSize         the number of journalled entries above which audited read-write
+     *                          transactions create their entries themselves
+     */
+    public void setQueueSize(int queueSize)
+    {
+        this.queueSize = queueSize;
+    }
+
+    /**
+     * @return                  the number of journalled entries above which audited read-write
+     *                          transactions create their entries themselves
+     */
+    public int getQueueSize()
+    {
+        return queueSize;
+    }
+
+    /**
+     * @param batchSize         the maximum number of entries written in one transaction
+     */
+    public void setBatchSize(int batchSize)
+    {
+        this.batchSize = batchSize;
+    }
+
+    public void init()
+    {
+        PropertyCheck.mandatory(this, "transactionService", transactionService);
+        PropertyCheck.mandatory(this, "auditDAO", auditDAO);
+        PropertyCheck.mandatory(this, "journalDirectory", journalDirectory);
+        if (queueSize < 0 || batchSize < 1)
+        {
+            throw new IllegalArgumentException("The audit writer queue size must not be negative and the batch size must be positive.");
+        }
+
+        TraceableThreadFactory threadFactory = new TraceableThreadFactory();
+        threadFactory.setThreadDaemon(true);
+        threadFactory.setNamePrefix("AuditEntryWriter");
+        flushExecutor = new ThreadPoolExecutor(
+                1, 1,
+                60L, TimeUnit.SECONDS,
+                new LinkedBlockingQueue<Runnable>(),
+                threadFactory);
+
+        // Pick up entries left over by an earlier run, even if the writer is now disabled
+        if (journalDirectory.isDirectory())
+        {
+            try
+            {
+                getJournal();
+            }
+            catch (RuntimeException e)
+            {
+                logger.warn("Unable to open the audit journal in " + journalDirectory + "; it will be opened when first needed.", e);
+            }
+        }
+    }
+
+    /**
+     * Queue an audit entry for writing once the current transaction commits.  The transaction
+     * may be read-only.  If the transaction is read-write and the journal already holds
+     * <tt>queueSize</tt> entries, the entry is created now instead.
+     * 
+     * @param applicationId     the ID of the application
+     * @param time              the time (ms since epoch) to record
+     * @param username          the username
+     * @param values            the values to record
+     * @return                  the ID of the entry if it was created now, otherwise <tt>null</tt>
+     */
+    public Long queueAuditEntry(Long applicationId, long time, String username, Map<String, Serializable> values)
+    {
+        AlfrescoTransactionSupport.checkTransactionReadState(false);
+
+        AuditEntryJournal currentJournal = journal;
+        if (currentJournal != null && currentJournal.getPendingCount() >= queueSize &&
+                AlfrescoTransactionSupport.getTransactionReadState() == TxnReadState.TXN_READ_WRITE)
+        {
+            return auditDAO.createAuditEntry(applicationId, time, username, values);
+        }
+
+        List<AuditEntryInfo> pendingEntries = TransactionalResourceHelper.getList(KEY_PENDING_ENTRIES);
+        if (pendingEntries.isEmpty())
+        {
+            AlfrescoTransactionSupport.bindListener(pendingEntriesListener);
+        }
+        pendingEntries.add(new AuditEntryInfo(applicationId, time, username, values));
+        return null;
+    }
+
+    /**
+     * Write all journalled entries on the calling thread.
+     * 
+     * @return                  the number of entries written
+     */
+    public int flush()
+    {
+        AuditEntryJournal currentJournal = journal;
+        if (currentJournal == null)
+        {
+            return 0;
+        }
+        int written = 0;
+        synchronized (flushLock)
+        {
+            stalled = false;
+            try
+            {
+                for (List<AuditEntryInfo> batch = currentJournal.read(batchSize); !batch.isEmpty(); batch = currentJournal.read(batchSize))
+                {
+                    written += writeBatch(batch);
+                    currentJournal.acknowledge();
+                }
+            }
+            catch (RuntimeException e)
+            {
+                // Keep the entries for the next flush
+                currentJournal.rewind();
+                stalled = true;
+                logger.warn("Stopped writing journalled audit entries; " + currentJournal.getPendingCount() + " are waiting in " + currentJournal.getDirectory(), e);
+            }
+        }
+        return written;
+    }
+
+    /**
+     * Open the journal, if it is not already open
+     */
+    private synchronized AuditEntryJournal getJournal()
+    {
+        if (journal == null)
+        {
+            AuditEntryJournal newJournal = new AuditEntryJournal(journalDirectory, JOURNAL_SEGMENT_SIZE);
+            newJournal.open();
+            journal = newJournal;
+        }
+        return journal;
+    }
+
+    private synchronized void closeJournal()
+    {
+        if (journal != null)
+        {
+            journal.close();
+            journal = null;
+        }
+    }
+
+    private void scheduleFlush()
+    {
+        if (flushScheduled.compareAndSet(false, true))
+        {
+            try
+            {
+                flushExecutor.execute(new FlushTask());
+            }
+            catch (RejectedExecutionException e)
+            {
+                // Shutting down: the entries are written at shutdown or after the next start
+                flushScheduled.set(false);
+            }
+        }
+    }
+
+    /**
+     * Write the entries in a single new transaction or, if that fails, in one transaction each.
+     * A failure to reach the database is passed on, so that the entries can be written later.
+     * 
+     * @return                  the number of entries written
+     */
+    private int writeBatch(List<AuditEntryInfo> batch)
+    {
+        try
+        {
+            int written = writeEntries(batch);
+            if (logger.isDebugEnabled())
+            {
+                logger.debug("Wrote " + written + " journalled audit entries.");
+            }
+            return written;
+        }
+        catch (DataAccessResourceFailureException e)
+        {
+            throw e;
+        }
+        catch (Throwable e)
+        {
+            if (batch.size() == 1)
+            {
+                logger.error("Failed to write audit entry " + batch.get(0) + "; it has been discarded.", e);
+                return 0;
+            }
+            logger.warn("Failed to write " + batch.size() + " audit entries together; writing them one at a time.", e);
+        }
+        int written = 0;
+        for (AuditEntryInfo entry : batch)
+        {
+            try
+            {
+                written += writeEntries(Collections.singletonList(entry));
+            }
+            catch (DataAccessResourceFailureException e)
+            {
+                throw e;
+            }
+            catch (Throwable e)
+            {
+                logger.error("Failed to write audit entry " + entry + "; it has been discarded.", e);
+            }
+        }
+        return written;
+    }
+
+    /**
+     * Write the entries in a single new transaction
+     * 
+     * @return                  the number of entries written
+     */
+    private int writeEntries(final List<AuditEntryInfo> batch)
+    {
+        RetryingTransactionCallback<Integer> writeCallback = new RetryingTransactionCallback<Integer>()
+        {
+            public Integer execute() throws Throwable
+            {
+                return auditDAO.createAuditEntries(batch);
+            }
+        };
+        return transactionService.getRetryingTransactionHelper().doInTransaction(writeCallback, false, true);
+    }
+
+    @Override
+    protected void onBootstrap(ApplicationEvent event)
+    {
+        AuditEntryJournal currentJournal = journal;
+        if (currentJournal != null && currentJournal.getPendingCount() > 0L)
+        {
+            if (logger.isInfoEnabled())
+            {
+                logger.info("Writing " + currentJournal.getPendingCount() + " audit entries left in " + currentJournal.getDirectory());
+            }
+            scheduleFlush();
+        }
+    }
+
+    @Override
+    protected void onShutdown(ApplicationEvent event)
+    {
+        if (flushExecutor == null)
+        {
+            return;
+        }
+        flushExecutor.shutdown();
+        try
+        {
+            flushExecutor.awaitTermination(30L, TimeUnit.SECONDS);
+        }
+        catch (InterruptedException e)
+        {
+            Thread.currentThread().interrupt();
+        }
+        int written = flush();
+        if (written > 0 && logger.isDebugEnabled())
+        {
+            logger.debug("Wrote " + written + " journalled audit entries at shutdown.");
+        }
+        closeJournal();
+    }
+
+    /**
+     * Drains the journal and then re-checks it, so that no entry is left behind by a
+     * committed transaction that found the flush already scheduled.  Stops if the
+     * database could not be reached; the next commit schedules it again.
+     */
+    private class FlushTask implements Runnable
+    {
+        @Override
+        public void run()
+        {
+            try
+            {
+                flush();
+            }
+            finally
+            {
+                flushScheduled.set(false);
+                AuditEntryJournal currentJournal = journal;
+                if (!stalled && currentJournal != null && currentJournal.getPendingCount() > 0L && !flushExecutor.isShutdown())
+                {
+                    scheduleFlush();
+                }
+            }
+        }
+    }
+
+    /**
+     * Journals the transaction's entries after commit
+     */
+    private class PendingAuditEntriesListener extends TransactionListenerAdapter
+    {
+        @Override
+        public void afterCommit()
+        {
+            List<AuditEntryInfo> pendingEntries = TransactionalResourceHelper.getList(KEY_PENDING_ENTRIES);
+            if (pendingEntries.isEmpty())
+            {
+                return;
+            }
+            List<AuditEntryInfo> entries = new ArrayList<AuditEntryInfo>(pendingEntries);
+            try
+            {
+                getJournal().append(entries);
+            }
+            catch (RuntimeException e)
+            {
+                logger.error("Failed to journal " + entries.size() + " committed audit entries; writing them now.", e);
+                try
+                {
+                    writeBatch(entries);
+                }
+                catch (RuntimeException ee)
+                {
+                    logger.error("Failed to write " + entries.size() + " committed audit entries; they have been discarded.", ee);
+                }
+                return;
+            }
+            scheduleFlush();
+        }
+    }
+}
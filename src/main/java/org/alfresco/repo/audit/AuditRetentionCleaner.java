@@ -0,0 +1,207 @@
+/*
+ * #%L
+ * Alfresco Repository
+ * %%
+ * Copyright (C) 2005 - 2016 Alfresco Software Limited
+ * %%
+ * This file is part of the Alfresco software. 
+ * If the software was purchased under a paid Alfresco license, the terms of 
+ * the paid license agreement will prevail.  Otherwise, the software is 
+ * provided under the following open source license terms:
+ * 
+ * Alfresco is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * 
+ * Alfresco is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ * 
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with Alfresco. If not, see <http://www.gnu.org/licenses/>.
+ * #L%
+ */
+package org.alfresco.repo.audit;
+
+import java.util.Set;
+
+import org.alfresco.repo.domain.audit.AuditDAO;
+import org.alfresco.repo.domain.audit.AuditDAO.AuditApplicationInfo;
+import org.alfresco.repo.lock.JobLockService;
+import org.alfresco.repo.lock.LockAcquisitionException;
+import org.alfresco.repo.transaction.RetryingTransactionHelper.RetryingTransactionCallback;
+import org.alfresco.service.namespace.NamespaceService;
+import org.alfresco.service.namespace.QName;
+import org.alfresco.service.transaction.TransactionService;
+import org.alfresco.util.PropertyCheck;
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.springframework.util.StringUtils;
+
+/**
+ * Enforces a retention period on the entries of the configured audit applications.
+ * <p/>
+ * Entries older than the retention period are removed oldest first, one batch per
+ * transaction, and their audited values are removed with them.  The work therefore
+ * stays proportional to the entries that expire between runs and does not depend on
+ * the orphaned property cleanup.
+ * <p/>
+ * The audit tables are not partitioned: expired entries are deleted row by row through
+ * the <tt>audit_time</tt> index, and queries by time range are not pruned.
+ * 
+ * @since 5.2
+ */
+public class AuditRetentionCleaner
+{
+    private static final long LOCK_TTL = 60000L;
+    private static final QName LOCK_QNAME = QName.createQName(NamespaceService.SYSTEM_MODEL_1_0_URI, AuditRetentionCleaner.class.getName());
+    private static final long MILLIS_PER_DAY = 24L * 3600L * 1000L;
+
+    private static Log logger = LogFactory.getLog(AuditRetentionCleaner.class);
+
+    private JobLockService jobLockService;
+    private TransactionService transactionService;
+    private AuditDAO auditDAO;
+    private Set<String> applications;
+    private int retentionDays = 365;
+    private int batchSize = 1000;
+
+    public void setJobLockService(JobLockService jobLockService)
+    {
+        this.jobLockService = jobLockService;
+    }
+
+    public void setTransactionService(TransactionService transactionService)
+    {
+        this.transactionService = transactionService;
+    }
+
+    public void setAuditDAO(AuditDAO auditDAO)
+    {
+        this.auditDAO = auditDAO;
+    }
+
+    /**
+     * @param applications      a comma-separated list of the audit applications to clean
+     */
+    public void setApplications(String applications)
+    {
+        this.applications = StringUtils.commaDelimitedListToSet(StringUtils.trimAllWhitespace(applications));
+        this.applications.remove("");
+    }
+
+    /**
+     * @param retentionDays     the number of days for which audit entries are kept
+     */
+    public void setRetentionDays(int retentionDays)
+    {
+        this.retentionDays = retentionDays;
+    }
+
+    /**
+     * @param batchSize         the number of entries deleted per transaction
+     */
+    public void setBatchSize(int batchSize)
+    {
+        this.batchSize = batchSize;
+    }
+
+    public void checkProperties()
+    {
+        PropertyCheck.mandatory(this, "jobLockService", jobLockService);
+        PropertyCheck.mandatory(this, "transactionService", transactionService);
+        PropertyCheck.mandatory(this, "auditDAO", auditDAO);
+        PropertyCheck.mandatory(this, "applications", applications);
+        if (retentionDays < 1 || batchSize < 1)
+        {
+            throw new IllegalArgumentException("The audit retention days and batch size must be positive.");
+        }
+    }
+
+    /**
+     * Get {@link #LOCK_QNAME a lock} and remove the expired entries of each configured application.
+     */
+    public void execute()
+    {
+        checkProperties();
+
+        long toTime = System.currentTimeMillis() - retentionDays * MILLIS_PER_DAY;
+        String lockToken = null;
+        try
+        {
+            lockToken = jobLockService.getLock(LOCK_QNAME, LOCK_TTL);
+            for (String application : applications)
+            {
+                clean(application, toTime, lockToken);
+            }
+        }
+        catch (LockAcquisitionException e)
+        {
+            if (logger.isDebugEnabled())
+            {
+                logger.debug("Skipping audit retention cleanup (could not get lock): " + e.getMessage());
+            }
+        }
+        finally
+        {
+            if (lockToken != null)
+            {
+                try
+                {
+                    jobLockService.releaseLock(lockToken, LOCK_QNAME);
+                }
+                catch (LockAcquisitionException e)
+                {
+                    // Ignore
+                }
+            }
+        }
+    }
+
+    private void clean(final String application, final long toTime, String lockToken)
+    {
+        RetryingTransactionCallback<Long> getAppCallback = new RetryingTransactionCallback<Long>()
+        {
+            public Long execute() throws Throwable
+            {
+                AuditApplicationInfo appInfo = auditDAO.getAuditApplication(application);
+                return appInfo == null ? null : appInfo.getId();
+            }
+        };
+        final Long applicationId = transactionService.getRetryingTransactionHelper().doInTransaction(getAppCallback, true, true);
+        if (applicationId == null)
+        {
+            if (logger.isDebugEnabled())
+            {
+                logger.debug("No audit application to clean: " + application);
+            }
+            return;
+        }
+
+        RetryingTransactionCallback<Integer> deleteCallback = new RetryingTransactionCallback<Integer>()
+        {
+            public Integer execute() throws Throwable
+            {
+                return auditDAO.deleteOldestAuditEntries(applicationId, toTime, batchSize);
+            }
+        };
+        long total = 0L;
+        while (true)
+        {
+            int deleted = transactionService.getRetryingTransactionHelper().doInTransaction(deleteCallback, false, true);
+            total += deleted;
+            if (deleted < batchSize)
+            {
+                break;
+            }
+            // Keep the lock while there is work left
+            jobLockService.refreshLock(lockToken, LOCK_QNAME, LOCK_TTL);
+        }
+        if (logger.isDebugEnabled())
+        {
+            logger.debug("Deleted " + total + " expired audit entries for application " + application);
+        }
+    }
+}
@@ -0,0 +1,199 @@
+/*
+ * #%L
+ * Alfresco Repository
+ * %%
+ * Copyright (C) 2005 - 2016 Alfresco Software Limited
+ * %%
+ * This file is part of the Alfresco software. 
+ * If the software was purchased under a paid Alfresco license, the terms of 
+ * the paid license agreement will prevail.  Otherwise, the software is 
+ * provided under the following open source license terms:
+ * 
+ * Alfresco is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * 
+ * Alfresco is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ * 
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with Alfresco. If not, see <http://www.gnu.org/licenses/>.
+ * #L%
+ */
+package org.alfresco.repo.audit;
+
+import java.util.Set;
+
+import org.alfresco.repo.domain.audit.AuditDAO;
+import org.alfresco.repo.lock.JobLockService;
+import org.alfresco.repo.lock.LockAcquisitionException;
+import org.alfresco.repo.transaction.RetryingTransactionHelper.RetryingTransactionCallback;
+import org.alfresco.service.cmr.attributes.AttributeService;
+import org.alfresco.service.namespace.NamespaceService;
+import org.alfresco.service.namespace.QName;
+import org.alfresco.service.transaction.TransactionService;
+import org.alfresco.util.PropertyCheck;
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.springframework.util.StringUtils;
+
+/**
+ * Migrates the values of existing audit entries to the compact storage form for the
+ * applications configured to use it.
+ * <p/>
+ * Entries are rewritten in ID order, one batch per transaction, and only entries that are not
+ * compact yet are selected.  The ID reached is kept per application in the attribute service
+ * and committed with each batch, so a later run carries on from there rather than from the
+ * first entry.  The property values no longer referenced by the rewritten entries are removed
+ * by the prop tables cleaner.
+ * 
+ * @since 5.2
+ */
+public class AuditValuesCompactor
+{
+    private static final long LOCK_TTL = 60000L;
+    private static final QName LOCK_QNAME = QName.createQName(NamespaceService.SYSTEM_MODEL_1_0_URI, AuditValuesCompactor.class.getName());
+
+    private static final String CHECKPOINT_ATTRIBUTE_PATH = ".AuditValuesCompactor";
+
+    private static Log logger = LogFactory.getLog(AuditValuesCompactor.class);
+
+    private JobLockService jobLockService;
+    private TransactionService transactionService;
+    private AuditDAO auditDAO;
+    private AttributeService attributeService;
+    private Set<String> applications;
+    private int batchSize = 1000;
+
+    public void setJobLockService(JobLockService jobLockService)
+    {
+        this.jobLockService = jobLockService;
+    }
+
+    public void setTransactionService(TransactionService transactionService)
+    {
+        this.transactionService = transactionService;
+    }
+
+    public void setAuditDAO(AuditDAO auditDAO)
+    {
+        this.auditDAO = auditDAO;
+    }
+
+    /**
+     * @param attributeService  the service holding the ID each application's migration has reached
+     */
+    public void setAttributeService(AttributeService attributeService)
+    {
+        this.attributeService = attributeService;
+    }
+
+    /**
+     * @param applications      a comma-separated list of the audit applications to migrate
+     */
+    public void setApplications(String applications)
+    {
+        this.applications = StringUtils.commaDelimitedListToSet(StringUtils.trimAllWhitespace(applications));
+        this.applications.remove("");
+    }
+
+    /**
+     * @param batchSize         the number of entries rewritten per transaction
+     */
+    public void setBatchSize(int batchSize)
+    {
+        this.batchSize = batchSize;
+    }
+
+    public void checkProperties()
+    {
+        PropertyCheck.mandatory(this, "jobLockService", jobLockService);
+        PropertyCheck.mandatory(this, "transactionService", transactionService);
+        PropertyCheck.mandatory(this, "auditDAO", auditDAO);
+        PropertyCheck.mandatory(this, "attributeService", attributeService);
+        PropertyCheck.mandatory(this, "applications", applications);
+    }
+
+    /**
+     * Get {@link #LOCK_QNAME a lock} and rewrite the entries of each configured application.
+     */
+    public void execute()
+    {
+        checkProperties();
+
+        String lockToken = null;
+        try
+        {
+            lockToken = jobLockService.getLock(LOCK_QNAME, LOCK_TTL);
+            for (String application : applications)
+            {
+                compact(application, lockToken);
+            }
+        }
+        catch (LockAcquisitionException e)
+        {
+            if (logger.isDebugEnabled())
+            {
+                logger.debug("Skipping audit value compaction (could not get lock): " + e.getMessage());
+            }
+        }
+        finally
+        {
+            if (lockToken != null)
+            {
+                try
+                {
+                    jobLockService.releaseLock(lockToken, LOCK_QNAME);
+                }
+                catch (LockAcquisitionException e)
+                {
+                    // Ignore
+                }
+            }
+        }
+    }
+
+    private void compact(final String application, String lockToken)
+    {
+        RetryingTransactionCallback<Long> checkpointCallback = new RetryingTransactionCallback<Long>()
+        {
+            public Long execute() throws Throwable
+            {
+                return (Long) attributeService.getAttribute(CHECKPOINT_ATTRIBUTE_PATH, application);
+            }
+        };
+        Long fromId = transactionService.getRetryingTransactionHelper().doInTransaction(checkpointCallback, true, true);
+        while (true)
+        {
+            final Long batchFromId = fromId;
+            RetryingTransactionCallback<Long> compactCallback = new RetryingTransactionCallback<Long>()
+            {
+                public Long execute() throws Throwable
+                {
+                    Long lastId = auditDAO.compactAuditEntries(application, batchFromId, batchSize);
+                    if (lastId != null)
+                    {
+                        // Commit the checkpoint with the batch
+                        attributeService.setAttribute(lastId + 1L, CHECKPOINT_ATTRIBUTE_PATH, application);
+                    }
+                    return lastId;
+                }
+            };
+            Long lastId = transactionService.getRetryingTransactionHelper().doInTransaction(compactCallback, false, true);
+            if (lastId == null)
+            {
+                break;
+            }
+            fromId = lastId + 1L;
+            // Keep the lock while there is work left
+            jobLockService.refreshLock(lockToken, LOCK_QNAME, LOCK_TTL);
+        }
+        if (logger.isDebugEnabled())
+        {
+            logger.debug("Compacted audit values for application " + application + " up to entry " + fromId);
+        }
+    }
+}
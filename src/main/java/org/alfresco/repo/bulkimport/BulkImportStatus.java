@@ -87,10 +87,17 @@ public interface BulkImportStatus
     long getNumberOfContentVersionBytesWritten();
     long getNumberOfContentVersionPropertiesWritten();
     
+    // Pipeline stages (only populated by pipelined imports)
+    long getNumberOfItemsStaged();
+    long getNumberOfContentFilesStaged();
+    long getNumberOfContentBytesStaged();
+    
     // Throughput
     public Long getFilesReadPerSecond();
     public Long getBytesReadPerSecond();
     public Long getEntriesScannedPerSecond();
     public Long getBytesWrittenPerSecond();
     public Long getNodesCreatedPerSecond();
+    public Long getItemsStagedPerSecond();
+    public Long getContentBytesStagedPerSecond();
 }
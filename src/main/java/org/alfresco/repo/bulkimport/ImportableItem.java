@@ -37,6 +37,7 @@ import java.util.SortedSet;
 import java.util.TreeSet;
 
 import org.alfresco.repo.bulkimport.impl.FileUtils;
+import org.alfresco.service.cmr.repository.ContentData;
 import org.alfresco.service.cmr.repository.NodeRef;
 import org.apache.commons.lang.builder.ToStringBuilder;
 import org.apache.commons.logging.Log;
@@ -160,7 +161,10 @@ public final class ImportableItem
         private Date     contentFileModified   = null;
         private Path     metadataFile          = null;
         private long     metadataFileSize      = -1;
-
+        
+        // Populated by pipelined imports before the node is written
+        private volatile MetadataLoader.Metadata stagedMetadata    = null;
+        private volatile ContentData             stagedContentData = null;
         
         public final Path getContentFile()
         {
@@ -302,6 +306,32 @@ public final class ImportableItem
             return((contentFile   == null || !contentFileExists ? 0 : 1) +
                    (metadataFile == null ? 0 : 1));
         }
+        
+        /**
+         * @return the metadata loaded ahead of the import transaction, or <tt>null</tt> if it has not been staged
+         */
+        public final MetadataLoader.Metadata getStagedMetadata()
+        {
+            return(stagedMetadata);
+        }
+        
+        public final void setStagedMetadata(final MetadataLoader.Metadata stagedMetadata)
+        {
+            this.stagedMetadata = stagedMetadata;
+        }
+        
+        /**
+         * @return the content already copied into the content store, or <tt>null</tt> if it has not been staged
+         */
+        public final ContentData getStagedContentData()
+        {
+            return(stagedContentData);
+        }
+        
+        public final void setStagedContentData(final ContentData stagedContentData)
+        {
+            this.stagedContentData = stagedContentData;
+        }
 
         @Override
         public String toString()
@@ -0,0 +1,62 @@
+/*
+ * #%L
+ * Alfresco Repository
+ * %%
+ * Copyright (C) 2005 - 2016 Alfresco Software Limited
+ * %%
+ * This file is part of the Alfresco software. 
+ * If the software was purchased under a paid Alfresco license, the terms of 
+ * the paid license agreement will prevail.  Otherwise, the software is 
+ * provided under the following open source license terms:
+ * 
+ * Alfresco is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * 
+ * Alfresco is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ * 
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with Alfresco. If not, see <http://www.gnu.org/licenses/>.
+ * #L%
+ */
+package org.alfresco.repo.bulkimport;
+
+/**
+ * A {@link NodeImporter} that can do the non-transactional parts of an import ahead of the
+ * transaction that writes the node: loading the metadata and copying the content into the
+ * content store.  The staged results are kept on the item's head revision and used when the
+ * item is imported.
+ * <p/>
+ * Staging is an optimisation only; an item that has not been staged is imported as normal.
+ * 
+ * @since 5.2
+ */
+public interface StagingNodeImporter extends NodeImporter
+{
+    /**
+     * Load the metadata of the item's head revision.
+     * 
+     * @param importableItem    the item to stage
+     */
+    public void stageMetadata(ImportableItem importableItem);
+
+    /**
+     * Copy the content of the item's head revision into the content store.  Items that have no
+     * content, or whose content cannot be staged (e.g. versioned items), are left untouched.
+     * 
+     * @param importableItem    the item to stage
+     * @return                  the number of content bytes copied
+     */
+    public long stageContent(ImportableItem importableItem);
+
+    /**
+     * Remove the content that has been staged for items that have not been imported, and any content
+     * staged from now on.  Called when the import is abandoned, so that content copied ahead of the
+     * import is not left in the content store without a node referencing it.
+     */
+    public void releaseStagedContent();
+}
@@ -37,7 +37,7 @@ import org.alfresco.repo.bulkimport.BulkImportParameters;
 import org.alfresco.repo.bulkimport.DirectoryAnalyser;
 import org.alfresco.repo.bulkimport.ImportableItem;
 import org.alfresco.repo.bulkimport.MetadataLoader;
-import org.alfresco.repo.bulkimport.NodeImporter;
+import org.alfresco.repo.bulkimport.StagingNodeImporter;
 import org.alfresco.repo.bulkimport.impl.BulkImportStatusImpl.NodeState;
 import org.alfresco.repo.policy.BehaviourFilter;
 import org.alfresco.repo.version.VersionModel;
@@ -59,7 +59,7 @@ import org.apache.commons.logging.LogFactory;
  * @since 4.0
  * 
  */
-public abstract class AbstractNodeImporter implements NodeImporter
+public abstract class AbstractNodeImporter implements StagingNodeImporter
 {
     protected final static Log logger = LogFactory.getLog(BulkFilesystemImporter.class);
 
@@ -418,6 +418,12 @@ public abstract class AbstractNodeImporter implements NodeImporter
 
     protected final MetadataLoader.Metadata loadMetadata(ImportableItem.ContentAndMetadata contentAndMetadata)
     {
+        // Use the metadata loaded ahead of the transaction, if available
+        if (contentAndMetadata != null && contentAndMetadata.getStagedMetadata() != null)
+        {
+            return(contentAndMetadata.getStagedMetadata());
+        }
+
         MetadataLoader.Metadata result = new MetadataLoader.Metadata();
         
         // Load "standard" metadata from the filesystem
@@ -442,6 +448,27 @@ public abstract class AbstractNodeImporter implements NodeImporter
         return(result);
     }
 
+    @Override
+    public void stageMetadata(ImportableItem importableItem)
+    {
+        ImportableItem.ContentAndMetadata headRevision = importableItem.getHeadRevision();
+        headRevision.setStagedMetadata(loadMetadata(headRevision));
+    }
+
+    /**
+     * Content is imported in place by default, so there is nothing to copy ahead of the import.
+     */
+    @Override
+    public long stageContent(ImportableItem importableItem)
+    {
+        return 0L;
+    }
+
+    @Override
+    public void releaseStagedContent()
+    {
+    }
+
     public NodeRef importImportableItem(ImportableItem importableItem, BulkImportParameters.ExistingFileMode existingFileMode)
     {
         if(logger.isDebugEnabled())
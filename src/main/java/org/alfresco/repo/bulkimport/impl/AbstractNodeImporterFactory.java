@@ -26,10 +26,13 @@
 package org.alfresco.repo.bulkimport.impl;
 
 import org.alfresco.repo.bulkimport.MetadataLoader;
+import org.alfresco.repo.content.cleanup.EagerContentStoreCleaner;
 import org.alfresco.repo.policy.BehaviourFilter;
 import org.alfresco.service.cmr.model.FileFolderService;
+import org.alfresco.service.cmr.repository.ContentService;
 import org.alfresco.service.cmr.repository.NodeService;
 import org.alfresco.service.cmr.version.VersionService;
+import org.alfresco.service.transaction.TransactionService;
 
 /**
  * 
@@ -44,6 +47,9 @@ public class AbstractNodeImporterFactory
     protected BulkImportStatusImpl importStatus;
     protected VersionService versionService;
     protected BehaviourFilter behaviourFilter;
+    protected ContentService contentService;
+    protected TransactionService transactionService;
+    protected EagerContentStoreCleaner eagerContentStoreCleaner;
     
 	public void setFileFolderService(FileFolderService fileFolderService)
 	{
@@ -74,4 +80,19 @@ public class AbstractNodeImporterFactory
 	{
 		this.behaviourFilter = behaviourFilter;
 	}
+
+	public void setContentService(ContentService contentService)
+	{
+		this.contentService = contentService;
+	}
+
+	public void setTransactionService(TransactionService transactionService)
+	{
+		this.transactionService = transactionService;
+	}
+
+	public void setEagerContentStoreCleaner(EagerContentStoreCleaner eagerContentStoreCleaner)
+	{
+		this.eagerContentStoreCleaner = eagerContentStoreCleaner;
+	}
 }
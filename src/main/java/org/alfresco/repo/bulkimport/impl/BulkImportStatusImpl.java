@@ -100,6 +100,11 @@ public class BulkImportStatusImpl implements BulkImportStatus
     private AtomicLong    numberOfContentVersionBytesWritten      = new AtomicLong();
     private AtomicLong    numberOfContentVersionPropertiesWritten = new AtomicLong();
 
+    // Pipeline stages
+    private AtomicLong    numberOfItemsStaged                     = new AtomicLong();
+    private AtomicLong    numberOfContentFilesStaged              = new AtomicLong();
+    private AtomicLong    numberOfContentBytesStaged              = new AtomicLong();
+
     private ReadLock readLock;
     private WriteLock writeLock;
 
@@ -258,6 +263,11 @@ public class BulkImportStatusImpl implements BulkImportStatus
         this.numberOfContentVersionBytesWritten.set(0);
         this.numberOfContentVersionPropertiesWritten.set(0);
         
+        // Pipeline stages
+        this.numberOfItemsStaged.set(0);
+        this.numberOfContentFilesStaged.set(0);
+        this.numberOfContentBytesStaged.set(0);
+        
         this.startNs = System.nanoTime();
         this.endNs   = null;
     }
@@ -390,6 +400,22 @@ public class BulkImportStatusImpl implements BulkImportStatus
     public long getNumberOfContentVersionBytesWritten()      { return(numberOfContentVersionBytesWritten.longValue()); }
     public long getNumberOfContentVersionPropertiesWritten() { return(numberOfContentVersionPropertiesWritten.longValue()); }
 
+    // Pipeline stages
+    public long getNumberOfItemsStaged()                     { return(numberOfItemsStaged.longValue()); }
+    public long getNumberOfContentFilesStaged()              { return(numberOfContentFilesStaged.longValue()); }
+    public long getNumberOfContentBytesStaged()              { return(numberOfContentBytesStaged.longValue()); }
+
+    public void incrementItemsStaged()
+    {
+        numberOfItemsStaged.incrementAndGet();
+    }
+
+    public void incrementContentStaged(final long numBytes)
+    {
+        numberOfContentFilesStaged.incrementAndGet();
+        numberOfContentBytesStaged.addAndGet(numBytes);
+    }
+
     public void incrementContentBytesWritten(final ImportableItem importableItem, final boolean isSpace,
     		final NodeState nodeState)
     {
@@ -549,6 +575,32 @@ public class BulkImportStatusImpl implements BulkImportStatus
 		}
     }
 
+    public Long getItemsStagedPerSecond()
+    {
+    	Long duration = getDuration();
+    	if(duration != null)
+    	{
+	    	return numberOfItemsStaged.longValue() / duration;
+    	}
+    	else
+    	{
+    		return null;
+    	}
+    }
+
+    public Long getContentBytesStagedPerSecond()
+    {
+    	Long duration = getDuration();
+    	if(duration != null)
+    	{
+	    	return numberOfContentBytesStaged.longValue() / duration;
+    	}
+    	else
+    	{
+    		return null;
+    	}
+    }
+
     // Private helper methods
     private final Date copyDate(final Date date)
     {
@@ -620,6 +672,10 @@ public class BulkImportStatusImpl implements BulkImportStatus
     	sb.append(getFilesReadPerSecond());
     	sb.append("\nNodes created/sec : ");
     	sb.append(getNodesCreatedPerSecond());
+    	sb.append("\nItems staged/sec : ");
+    	sb.append(getItemsStagedPerSecond());
+    	sb.append("\nContent bytes staged/sec : ");
+    	sb.append(getContentBytesStagedPerSecond());
     	sb.append("\nNumber of files scanned : ");
     	sb.append(getNumberOfFilesScanned());
     	sb.append("\nNumber of folders scanned : ");
@@ -675,6 +731,13 @@ public class BulkImportStatusImpl implements BulkImportStatus
     	sb.append("\nNumber of content version bytes written : ");
     	sb.append(getNumberOfContentVersionBytesWritten());    	
 
+    	sb.append("\nNumber of items staged : ");
+    	sb.append(getNumberOfItemsStaged());
+    	sb.append("\nNumber of content files staged : ");
+    	sb.append(getNumberOfContentFilesStaged());
+    	sb.append("\nNumber of content bytes staged : ");
+    	sb.append(getNumberOfContentBytesStaged());
+
     	return sb.toString();
     }
 }
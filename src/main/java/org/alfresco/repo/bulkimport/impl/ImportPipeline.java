@@ -0,0 +1,356 @@
+/*
+ * #%L
+ * Alfresco Repository
+ * %%
+ * Copyright (C) 2005 - 2016 Alfresco Software Limited
+ * %%
+ * This file is part of the Alfresco software. 
+ * If the software was purchased under a paid Alfresco license, the terms of 
+ * the paid license agreement will prevail.  Otherwise, the software is 
+ * provided under the following open source license terms:
+ * 
+ * Alfresco is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * 
+ * Alfresco is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ * 
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with Alfresco. If not, see <http://www.gnu.org/licenses/>.
+ * #L%
+ */
+package org.alfresco.repo.bulkimport.impl;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.alfresco.error.AlfrescoRuntimeException;
+import org.alfresco.repo.batch.BatchProcessWorkProvider;
+import org.alfresco.repo.bulkimport.BulkFilesystemImporter;
+import org.alfresco.repo.bulkimport.ImportableItem;
+import org.alfresco.repo.bulkimport.StagingNodeImporter;
+import org.alfresco.repo.tenant.TenantUtil;
+import org.alfresco.repo.tenant.TenantUtil.TenantRunAsWork;
+import org.alfresco.util.TraceableThreadFactory;
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+
+/**
+ * Runs the non-transactional stages of a bulk import concurrently with node creation.
+ * <p/>
+ * Importable items flow through four stages, each with its own threads:
+ * <ol>
+ *   <li>scanning: a single thread walks the filesystem using the tracker's work provider</li>
+ *   <li>metadata: {@link StagingNodeImporter#stageMetadata(ImportableItem) metadata is loaded}</li>
+ *   <li>content: {@link StagingNodeImporter#stageContent(ImportableItem) content is copied} into the content store</li>
+ *   <li>node creation: the {@link org.alfresco.repo.batch.BatchProcessor} takes the staged items from
+ *       the {@link #feed(BatchProcessWorkProvider, int) work provider} returned here</li>
+ * </ol>
+ * The queues between the stages are bounded.  A full queue makes the stage feeding it do the
+ * work itself and, ultimately, stalls the scan, so that the import runs at the speed of the
+ * slowest stage without buffering the whole filesystem in memory.
+ * <p/>
+ * Staging failures are not fatal: the item is passed on and imported without the staged data.
+ * <p/>
+ * When the pipeline is shut down, the content staged for items that have not been imported - whether
+ * they are waiting to be handed out, were handed out but never imported, or are still being copied -
+ * is {@link StagingNodeImporter#releaseStagedContent() released}.
+ * 
+ * @since 5.2
+ */
+public class ImportPipeline
+{
+    private static final Log logger = LogFactory.getLog(BulkFilesystemImporter.class);
+    
+    private static final long POLL_MILLIS = 100L;
+
+    private final StagingNodeImporter nodeImporter;
+    private final BulkImportStatusImpl importStatus;
+    private final int queueSize;
+    private final String currentUser;
+    private final String currentDomain;
+    
+    private final ThreadPoolExecutor scanExecutor;
+    private final ThreadPoolExecutor metadataExecutor;
+    private final ThreadPoolExecutor contentExecutor;
+
+    /**
+     * @param nodeImporter          the importer that stages the items
+     * @param importStatus          the status to report the stage throughput to
+     * @param metadataThreads       the number of threads loading metadata
+     * @param contentThreads        the number of threads copying content
+     * @param queueSize             the capacity of the queues between the stages
+     * @param currentUser           the user to stage the items as
+     * @param currentDomain         the tenant to stage the items in
+     */
+    public ImportPipeline(StagingNodeImporter nodeImporter, BulkImportStatusImpl importStatus,
+            int metadataThreads, int contentThreads, int queueSize, String currentUser, String currentDomain)
+    {
+        this.nodeImporter = nodeImporter;
+        this.importStatus = importStatus;
+        this.queueSize = queueSize;
+        this.currentUser = currentUser;
+        this.currentDomain = currentDomain;
+        
+        this.scanExecutor = createExecutor("BulkImportScan", 1, 1);
+        this.metadataExecutor = createExecutor("BulkImportMetadata", metadataThreads, queueSize);
+        this.contentExecutor = createExecutor("BulkImportContent", contentThreads, queueSize);
+    }
+    
+    private static ThreadPoolExecutor createExecutor(String poolName, int threads, int queueSize)
+    {
+        TraceableThreadFactory threadFactory = new TraceableThreadFactory();
+        threadFactory.setThreadDaemon(true);
+        threadFactory.setNamePrefix(poolName);
+        return new ThreadPoolExecutor(
+                threads, threads,
+                60L, TimeUnit.SECONDS,
+                new ArrayBlockingQueue<Runnable>(queueSize),
+                threadFactory,
+                new ThreadPoolExecutor.CallerRunsPolicy());
+    }
+
+    /**
+     * Start scanning and staging the items supplied by the given work provider.
+     * 
+     * @param scanner           provides the items to import; it is only called from the scanning thread
+     * @param maxWork           the maximum number of staged items handed out in one go
+     * @return                  a work provider supplying the staged items, in the order they complete
+     */
+    public BatchProcessWorkProvider<ImportableItem> feed(BatchProcessWorkProvider<ImportableItem> scanner, int maxWork)
+    {
+        Feed feed = new Feed(scanner, maxWork);
+        scanExecutor.execute(feed);
+        return feed;
+    }
+    
+    /**
+     * Stop all stages, abandoning any work in progress, and remove the content staged for items
+     * that have not been imported
+     */
+    public void shutdown()
+    {
+        scanExecutor.shutdownNow();
+        metadataExecutor.shutdownNow();
+        contentExecutor.shutdownNow();
+        
+        // Copies still running release their own content once they finish
+        try
+        {
+            TenantUtil.runAsUserTenant(new TenantRunAsWork<Void>()
+            {
+                @Override
+                public Void doWork() throws Exception
+                {
+                    nodeImporter.releaseStagedContent();
+                    return null;
+                }
+            }, currentUser, currentDomain);
+        }
+        catch (RuntimeException e)
+        {
+            // Don't hide the reason the import stopped
+            logger.warn("Failed to remove the content staged for items that were not imported.", e);
+        }
+    }
+    
+    /**
+     * Scans one run of work and hands the staged items to the node creation stage
+     */
+    private class Feed implements Runnable, BatchProcessWorkProvider<ImportableItem>
+    {
+        private final BatchProcessWorkProvider<ImportableItem> scanner;
+        private final int maxWork;
+        private final BlockingQueue<ImportableItem> staged;
+        private final AtomicInteger inFlight = new AtomicInteger();
+        private volatile boolean scanDone = false;
+        private volatile Throwable scanFailure = null;
+        
+        private Feed(BatchProcessWorkProvider<ImportableItem> scanner, int maxWork)
+        {
+            this.scanner = scanner;
+            this.maxWork = Math.max(1, maxWork);
+            this.staged = new ArrayBlockingQueue<ImportableItem>(queueSize);
+        }
+
+        @Override
+        public void run()
+        {
+            try
+            {
+                while (!Thread.currentThread().isInterrupted())
+                {
+                    Collection<ImportableItem> items = scanner.getNextWork();
+                    if (items == null || items.isEmpty())
+                    {
+                        break;
+                    }
+                    for (ImportableItem item : items)
+                    {
+                        inFlight.incrementAndGet();
+                        metadataExecutor.execute(new StageMetadata(this, item));
+                    }
+                }
+            }
+            catch (Throwable e)
+            {
+                scanFailure = e;
+            }
+            finally
+            {
+                scanDone = true;
+            }
+        }
+
+        @Override
+        public int getTotalEstimatedWorkSize()
+        {
+            return scanner.getTotalEstimatedWorkSize();
+        }
+
+        @Override
+        public Collection<ImportableItem> getNextWork()
+        {
+            try
+            {
+                while (true)
+                {
+                    ImportableItem item = staged.poll(POLL_MILLIS, TimeUnit.MILLISECONDS);
+                    if (item != null)
+                    {
+                        List<ImportableItem> work = new ArrayList<ImportableItem>(maxWork);
+                        work.add(item);
+                        staged.drainTo(work, maxWork - 1);
+                        return work;
+                    }
+                    if (scanFailure != null)
+                    {
+                        throw new AlfrescoRuntimeException("Bulk import scan failed", scanFailure);
+                    }
+                    // Items are queued before they are counted off, so nothing can be missed here
+                    if (scanDone && inFlight.get() == 0 && staged.isEmpty())
+                    {
+                        return Collections.emptyList();
+                    }
+                    if (scanExecutor.isShutdown())
+                    {
+                        throw new AlfrescoRuntimeException("Bulk import pipeline has been shut down");
+                    }
+                }
+            }
+            catch (InterruptedException e)
+            {
+                Thread.currentThread().interrupt();
+                throw new AlfrescoRuntimeException("Interrupted while waiting for staged bulk import items", e);
+            }
+        }
+        
+        private void staged(ImportableItem item)
+        {
+            try
+            {
+                staged.put(item);
+            }
+            catch (InterruptedException e)
+            {
+                Thread.currentThread().interrupt();
+            }
+            finally
+            {
+                inFlight.decrementAndGet();
+            }
+        }
+    }
+    
+    private class StageMetadata implements Runnable
+    {
+        private final Feed feed;
+        private final ImportableItem item;
+        
+        private StageMetadata(Feed feed, ImportableItem item)
+        {
+            this.feed = feed;
+            this.item = item;
+        }
+        
+        @Override
+        public void run()
+        {
+            try
+            {
+                TenantUtil.runAsUserTenant(new TenantRunAsWork<Void>()
+                {
+                    @Override
+                    public Void doWork() throws Exception
+                    {
+                        nodeImporter.stageMetadata(item);
+                        return null;
+                    }
+                }, currentUser, currentDomain);
+                importStatus.incrementItemsStaged();
+            }
+            catch (Throwable e)
+            {
+                if (logger.isDebugEnabled())
+                {
+                    logger.debug("Failed to stage metadata for " + item + "; it will be loaded during the import.", e);
+                }
+            }
+            contentExecutor.execute(new StageContent(feed, item));
+        }
+    }
+    
+    private class StageContent implements Runnable
+    {
+        private final Feed feed;
+        private final ImportableItem item;
+        
+        private StageContent(Feed feed, ImportableItem item)
+        {
+            this.feed = feed;
+            this.item = item;
+        }
+        
+        @Override
+        public void run()
+        {
+            try
+            {
+                Long bytes = TenantUtil.runAsUserTenant(new TenantRunAsWork<Long>()
+                {
+                    @Override
+                    public Long doWork() throws Exception
+                    {
+                        return nodeImporter.stageContent(item);
+                    }
+                }, currentUser, currentDomain);
+                if (bytes != null && bytes > 0L)
+                {
+                    importStatus.incrementContentStaged(bytes);
+                }
+            }
+            catch (Throwable e)
+            {
+                if (logger.isWarnEnabled())
+                {
+                    logger.warn("Failed to stage content for " + item + "; it will be streamed during the import.", e);
+                }
+            }
+            finally
+            {
+                feed.staged(item);
+            }
+        }
+    }
+}
@@ -28,16 +28,28 @@ package org.alfresco.repo.bulkimport.impl;
 import java.io.File;
 import java.io.IOException;
 import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
 
 import org.alfresco.error.AlfrescoRuntimeException;
+import org.alfresco.model.ContentModel;
 import org.alfresco.repo.bulkimport.BulkImportParameters;
 import org.alfresco.repo.bulkimport.ImportableItem;
 import org.alfresco.repo.bulkimport.MetadataLoader;
 import org.alfresco.repo.bulkimport.NodeImporter;
 import org.alfresco.repo.bulkimport.impl.BulkImportStatusImpl.NodeState;
+import org.alfresco.repo.content.cleanup.EagerContentStoreCleaner;
+import org.alfresco.repo.transaction.AlfrescoTransactionSupport;
+import org.alfresco.repo.transaction.RetryingTransactionHelper.RetryingTransactionCallback;
+import org.alfresco.repo.transaction.TransactionListenerAdapter;
+import org.alfresco.service.cmr.repository.ContentData;
 import org.alfresco.service.cmr.repository.ContentIOException;
+import org.alfresco.service.cmr.repository.ContentService;
 import org.alfresco.service.cmr.repository.ContentWriter;
 import org.alfresco.service.cmr.repository.NodeRef;
+import org.alfresco.service.transaction.TransactionService;
 import org.alfresco.util.Triple;
 
 /**
@@ -56,6 +68,9 @@ public class StreamingNodeImporterFactory extends AbstractNodeImporterFactory
 		nodeImporter.setMetadataLoader(metadataLoader);
 		nodeImporter.setVersionService(versionService);
 		nodeImporter.setImportStatus(importStatus);
+		nodeImporter.setContentService(contentService);
+		nodeImporter.setTransactionService(transactionService);
+		nodeImporter.setEagerContentStoreCleaner(eagerContentStoreCleaner);
 
 		nodeImporter.setSourceFolder(sourceFolder);
 
@@ -70,16 +85,190 @@ public class StreamingNodeImporterFactory extends AbstractNodeImporterFactory
 	private static class StreamingNodeImporter extends AbstractNodeImporter
 	{
 	    private File sourceFolder;
+	    private ContentService contentService;
+	    private TransactionService transactionService;
+	    private EagerContentStoreCleaner eagerContentStoreCleaner;
+	    /** Items whose staged content has been neither imported nor released */
+	    private final Set<ImportableItem> stagedItems = Collections.newSetFromMap(new ConcurrentHashMap<ImportableItem, Boolean>());
+	    private volatile boolean stagingAbandoned = false;
 
 		public void setSourceFolder(File sourceFolder)
 		{
 			this.sourceFolder = sourceFolder;
 		}
+
+		public void setContentService(ContentService contentService)
+		{
+			this.contentService = contentService;
+		}
+
+		public void setTransactionService(TransactionService transactionService)
+		{
+			this.transactionService = transactionService;
+		}
+
+		public void setEagerContentStoreCleaner(EagerContentStoreCleaner eagerContentStoreCleaner)
+		{
+			this.eagerContentStoreCleaner = eagerContentStoreCleaner;
+		}
+
+		/**
+		 * Copies the content of an unversioned file into the content store in its own transaction,
+		 * so that the import transaction only has to reference it.
+		 */
+		@Override
+		public long stageContent(final ImportableItem importableItem)
+		{
+			final ImportableItem.ContentAndMetadata headRevision = importableItem.getHeadRevision();
+			if (contentService == null || transactionService == null ||
+			    importableItem.hasVersionEntries() ||
+			    !headRevision.contentFileExists() ||
+			    !ImportableItem.FileType.FILE.equals(headRevision.getContentFileType()) ||
+			    headRevision.getStagedContentData() != null)
+			{
+				return 0L;
+			}
+
+			final String name = getImportableItemName(importableItem, loadMetadata(headRevision));
+			RetryingTransactionCallback<ContentData> copyCallback = new RetryingTransactionCallback<ContentData>()
+			{
+				@Override
+				public ContentData execute() throws Throwable
+				{
+					// New content is registered for removal should this transaction roll back
+					ContentWriter writer = contentService.getWriter(null, null, false);
+					writer.guessMimetype(name);
+					writer.guessEncoding();
+					try
+					{
+						writer.putContent(Files.newInputStream(headRevision.getContentFile()));
+					}
+					catch (IOException e)
+					{
+						throw new ContentIOException("Failed to copy content from file: \n" +
+								"   writer: " + writer + "\n" +
+								"   file: " + headRevision.getContentFile(),
+								e);
+					}
+					return writer.getContentData();
+				}
+			};
+			ContentData contentData = transactionService.getRetryingTransactionHelper().doInTransaction(copyCallback, true, true);
+			headRevision.setStagedContentData(contentData);
+			stagedItems.add(importableItem);
+			if (stagingAbandoned)
+			{
+				// The import was abandoned while the content was being copied
+				discardStagedContent(importableItem);
+				return 0L;
+			}
+			return headRevision.getContentFileSize();
+		}
+
+		@Override
+		public void releaseStagedContent()
+		{
+			stagingAbandoned = true;
+			for (ImportableItem importableItem : new ArrayList<ImportableItem>(stagedItems))
+			{
+				discardStagedContent(importableItem);
+			}
+		}
+
+		/**
+		 * Remove the staged content of an item that is not going to be imported, in a transaction of its own
+		 */
+		private void discardStagedContent(final ImportableItem importableItem)
+		{
+			// Only one thread gets to discard the content
+			if (!stagedItems.remove(importableItem))
+			{
+				return;
+			}
+			ImportableItem.ContentAndMetadata headRevision = importableItem.getHeadRevision();
+			final ContentData stagedContentData = headRevision.getStagedContentData();
+			headRevision.setStagedContentData(null);
+			if (stagedContentData == null || eagerContentStoreCleaner == null)
+			{
+				return;
+			}
+			RetryingTransactionCallback<Void> releaseCallback = new RetryingTransactionCallback<Void>()
+			{
+				@Override
+				public Void execute() throws Throwable
+				{
+					eagerContentStoreCleaner.registerOrphanedContentUrl(stagedContentData.getContentUrl(), true);
+					return null;
+				}
+			};
+			transactionService.getRetryingTransactionHelper().doInTransaction(releaseCallback, false, true);
+		}
+
+		/**
+		 * Staged content that is not going to be used is removed once the import transaction commits
+		 */
+		private void releaseStagedContent(ImportableItem importableItem)
+		{
+			ContentData stagedContentData = importableItem.getHeadRevision().getStagedContentData();
+			if (stagedContentData != null && eagerContentStoreCleaner != null)
+			{
+				eagerContentStoreCleaner.registerOrphanedContentUrl(stagedContentData.getContentUrl(), true);
+			}
+		}
+
+		/**
+		 * Staged content is removed should the import transaction roll back.  The item then forgets
+		 * the staged content, so that a retry streams the file in the import transaction instead.
+		 * Once the import transaction commits, the staged content belongs to the node or has been
+		 * released, so it is no longer the importer's to remove.
+		 */
+		private void releaseStagedContentOnRollback(final ImportableItem importableItem)
+		{
+			final ImportableItem.ContentAndMetadata headRevision = importableItem.getHeadRevision();
+			ContentData stagedContentData = headRevision.getStagedContentData();
+			if (stagedContentData == null)
+			{
+				return;
+			}
+			final boolean removedOnRollback = (eagerContentStoreCleaner != null);
+			if (removedOnRollback)
+			{
+				eagerContentStoreCleaner.registerNewContentUrl(stagedContentData.getContentUrl());
+			}
+			AlfrescoTransactionSupport.bindListener(new TransactionListenerAdapter()
+			{
+				@Override
+				public void afterCommit()
+				{
+					stagedItems.remove(importableItem);
+				}
+
+				@Override
+				public void afterRollback()
+				{
+					if (removedOnRollback)
+					{
+						stagedItems.remove(importableItem);
+						headRevision.setStagedContentData(null);
+					}
+				}
+			});
+		}
 		
 	    protected final void importContentAndMetadata(NodeRef nodeRef, ImportableItem.ContentAndMetadata contentAndMetadata, MetadataLoader.Metadata metadata)
 	    {
+	    	ContentData stagedContentData = contentAndMetadata.getStagedContentData();
+	    	if (stagedContentData != null)
+	    	{
+	    		// The content was copied ahead of the transaction
+	    		if (logger.isDebugEnabled())
+	    		{
+	    			logger.debug("Linking staged content '" + stagedContentData.getContentUrl() + "' to node '" + nodeRef.toString() + "'.");
+	    		}
+	    		nodeService.setProperty(nodeRef, ContentModel.PROP_CONTENT, stagedContentData);
+	    	}
 	    	// Write the content of the file
-	    	if (contentAndMetadata.contentFileExists())
+	    	else if (contentAndMetadata.contentFileExists())
 	    	{
 	    		String filename = getFileName(contentAndMetadata.getContentFile());
 
@@ -119,6 +308,7 @@ public class StreamingNodeImporterFactory extends AbstractNodeImporterFactory
 	        	throw new AlfrescoRuntimeException("Bulk importer: target is not known for importable item: " + importableItem.getParent());
 	        }
 	        NodeRef result = null;
+	        releaseStagedContentOnRollback(importableItem);
 	        MetadataLoader.Metadata metadata = loadMetadata(importableItem.getHeadRevision());
 
 	        // TODO: we'll get NodeState.REPLACED back from this method (i.e. the node WILL be replaced)
@@ -157,6 +347,7 @@ public class StreamingNodeImporterFactory extends AbstractNodeImporterFactory
 	        }
 	        else
 	        {
+	        	releaseStagedContent(importableItem);
 	        	if(isDirectory)
 	        	{
 	        		skipImportableDirectory(importableItem);
@@ -28,10 +28,14 @@ package org.alfresco.repo.bulkimport.impl;
 import java.io.File;
 
 import org.alfresco.error.AlfrescoRuntimeException;
+import org.alfresco.repo.batch.BatchProcessWorkProvider;
 import org.alfresco.repo.batch.BatchProcessor;
 import org.alfresco.repo.bulkimport.BulkImportParameters;
 import org.alfresco.repo.bulkimport.ImportableItem;
 import org.alfresco.repo.bulkimport.NodeImporter;
+import org.alfresco.repo.bulkimport.StagingNodeImporter;
+import org.alfresco.repo.security.authentication.AuthenticationUtil;
+import org.alfresco.repo.tenant.TenantUtil;
 
 /**
  * A multi threaded bulk importer that imports by striping across filesystem levels.
@@ -41,6 +45,45 @@ import org.alfresco.repo.bulkimport.NodeImporter;
  */
 public class StripingBulkFilesystemImporter extends MultiThreadedBulkFilesystemImporter
 {
+    private boolean pipelined = false;
+    private int pipelineMetadataThreads = 2;
+    private int pipelineContentThreads = 4;
+    private int pipelineQueueSize = 1000;
+
+    /**
+     * @param pipelined         <tt>true</tt> to scan, load metadata and copy content in separate
+     *                          thread pools while the nodes are being created (default <tt>false</tt>).
+     *                          The node importer must be a {@link StagingNodeImporter}.
+     */
+    public void setPipelined(boolean pipelined)
+    {
+        this.pipelined = pipelined;
+    }
+
+    /**
+     * @param pipelineMetadataThreads   the number of threads loading metadata when pipelined
+     */
+    public void setPipelineMetadataThreads(int pipelineMetadataThreads)
+    {
+        this.pipelineMetadataThreads = pipelineMetadataThreads;
+    }
+
+    /**
+     * @param pipelineContentThreads    the number of threads copying content when pipelined
+     */
+    public void setPipelineContentThreads(int pipelineContentThreads)
+    {
+        this.pipelineContentThreads = pipelineContentThreads;
+    }
+
+    /**
+     * @param pipelineQueueSize         the number of items that may wait between pipeline stages
+     */
+    public void setPipelineQueueSize(int pipelineQueueSize)
+    {
+        this.pipelineQueueSize = pipelineQueueSize;
+    }
+
 	/**
      * Method that does the work of importing a filesystem using the BatchProcessor.
      * 
@@ -57,9 +100,16 @@ public class StripingBulkFilesystemImporter extends MultiThreadedBulkFilesystemI
         final int batchSize = getBatchSize(bulkImportParameters);
         final int loggingInterval = getLoggingInterval(bulkImportParameters);
     	final StripingFilesystemTracker tracker = new StripingFilesystemTracker(directoryAnalyser, bulkImportParameters.getTarget(), sourceFolder, batchSize);
-        final BatchProcessor<ImportableItem> batchProcessor = getBatchProcessor(bulkImportParameters, tracker.getWorkProvider(), loggingInterval);
         final BatchProcessor.BatchProcessWorker<ImportableItem> worker = getWorker(bulkImportParameters, lockToken, nodeImporter, tracker);
 
+        if (pipelined && nodeImporter instanceof StagingNodeImporter)
+        {
+            pipelinedImport(bulkImportParameters, (StagingNodeImporter) nodeImporter, tracker, worker, batchSize, loggingInterval);
+            return;
+        }
+
+        final BatchProcessor<ImportableItem> batchProcessor = getBatchProcessor(bulkImportParameters, tracker.getWorkProvider(), loggingInterval);
+
 		do
 		{
 			batchProcessor.process(worker, true);
@@ -70,4 +120,37 @@ public class StripingBulkFilesystemImporter extends MultiThreadedBulkFilesystemI
 		}
 		while(tracker.moreLevels());
     }
+
+    /**
+     * Imports level by level, as above, but stages the items of each level through an {@link ImportPipeline}
+     * so that scanning, metadata loading and content copying overlap with node creation.  Each level is
+     * completed before the next is scanned, so parent folders always exist before their children.
+     */
+    private void pipelinedImport(final BulkImportParameters bulkImportParameters, final StagingNodeImporter nodeImporter,
+            final StripingFilesystemTracker tracker, final BatchProcessor.BatchProcessWorker<ImportableItem> worker,
+            final int batchSize, final int loggingInterval)
+    {
+        final ImportPipeline pipeline = new ImportPipeline(
+                nodeImporter, importStatus,
+                pipelineMetadataThreads, pipelineContentThreads, pipelineQueueSize,
+                AuthenticationUtil.getFullyAuthenticatedUser(), TenantUtil.getCurrentDomain());
+        try
+        {
+            do
+            {
+                BatchProcessWorkProvider<ImportableItem> feed = pipeline.feed(tracker.getWorkProvider(), batchSize);
+                BatchProcessor<ImportableItem> batchProcessor = getBatchProcessor(bulkImportParameters, feed, loggingInterval);
+                batchProcessor.process(worker, true);
+                if(batchProcessor.getLastError() != null)
+                {
+                    throw new AlfrescoRuntimeException(batchProcessor.getLastError());
+                }
+            }
+            while(tracker.moreLevels());
+        }
+        finally
+        {
+            pipeline.shutdown();
+        }
+    }
 }
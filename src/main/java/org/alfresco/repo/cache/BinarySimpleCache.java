@@ -0,0 +1,1142 @@
+/*
+ * #%L
+ * Alfresco Repository
+ * %%
+ * Copyright (C) 2005 - 2016 Alfresco Software Limited
+ * %%
+ * This file is part of the Alfresco software.
+ * If the software was purchased under a paid Alfresco license, the terms of
+ * the paid license agreement will prevail.  Otherwise, the software is
+ * provided under the following open source license terms:
+ *
+ * Alfresco is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Alfresco is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with Alfresco. If not, see <http://www.gnu.org/licenses/>.
+ * #L%
+ */
+package org.alfresco.repo.cache;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.io.Serializable;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.alfresco.error.AlfrescoRuntimeException;
+import org.alfresco.repo.cache.TransactionStats.OpType;
+import org.alfresco.repo.cache.lookup.CacheRegionKey;
+import org.springframework.beans.factory.BeanNameAware;
+
+/**
+ * {@link SimpleCache} implementation that holds its keys and values in serialized form.
+ * <p/>
+ * Keys are reduced to a 64-bit hash held in primitive arrays and the serialized key and
+ * value bytes are appended to a per-segment arena, which is either a heap buffer
+ * ({@link #isNativeMemory() nativeMemory} = <tt>false</tt>) or a direct buffer allocated
+ * outside of the Java heap. A cache holding a few hundred thousand entries therefore
+ * presents the garbage collector with a handful of arrays per segment instead of a graph of
+ * map entries, keys and values.
+ * <p/>
+ * Key equality is decided on the serialized form of the key, so keys must serialize
+ * identically when they are equal. This holds for the keys used by the entity lookup caches
+ * (<tt>Long</tt>, <tt>String</tt>, {@link CacheRegionKey} and simple value objects) but not,
+ * for example, for keys containing hash-ordered collections. Values must be
+ * {@link Serializable} and every {@link #get(Serializable) get} returns a fresh copy.
+ * <p/>
+ * When a size-cap is in use, entries are evicted using a CLOCK (second-chance) approximation
+ * of LRU. The cap is divided evenly between the segments, rounding down, so the cache never
+ * holds more than <tt>maxItems</tt> entries but may start evicting from a busy segment before
+ * the cache as a whole is full. Time-to-live and time-to-idle are checked when entries are read.
+ * <p/>
+ * When {@link #setCacheStatsEnabled(boolean) enabled}, operation timings are reported to the
+ * shared {@link CacheStatistics} under the cache name. Each thread buffers its timings and
+ * hands them over every few hundred operations.
+ *
+ * @since 5.2
+ */
+public final class BinarySimpleCache<K extends Serializable, V extends Object>
+    implements BulkSimpleCache<K, V>, BeanNameAware
+{
+    private static final int DEFAULT_CAPACITY = Integer.MAX_VALUE;
+    private static final int MAX_SEGMENT_COUNT = 16;
+    private static final int SEGMENT_SHIFT = 60;
+    private static final int STATS_FLUSH_INTERVAL = 256;
+    private static final int MIN_SEGMENT_CAPACITY = 64;
+    private static final int MIN_ARENA_SIZE = 8 * 1024;
+
+    private static final byte KEY_SERIALIZED = 0;
+    private static final byte KEY_LONG = 1;
+    private static final byte KEY_INTEGER = 2;
+    private static final byte KEY_STRING = 3;
+    private static final byte KEY_REGION = 4;
+
+    private String cacheName;
+    private final int maxItems;
+    private final boolean useMaxItems;
+    private final int ttlSecs;
+    private final int maxIdleSecs;
+    private final boolean nativeMemory;
+    private final Segment[] segments;
+    private final int segmentMask;
+
+    /** Use of cacheStats is guarded by the cacheStatsEnabled flag */
+    private CacheStatistics cacheStats;
+    private boolean cacheStatsEnabled = false;
+    private final ThreadLocal<TransactionStats> pendingStats = new ThreadLocal<TransactionStats>();
+
+    private final AtomicLong hitCount = new AtomicLong();
+    private final AtomicLong missCount = new AtomicLong();
+    private final AtomicLong evictionCount = new AtomicLong();
+    private final AtomicLong expiryCount = new AtomicLong();
+
+    /**
+     * Construct a cache using the specified capacity and name.
+     *
+     * @param maxItems The cache capacity. 0 = use {@link #DEFAULT_CAPACITY}
+     * @param useMaxItems Whether the maxItems value should be applied as a size-cap for the cache.
+     * @param ttlSecs Time-to-live in seconds; 0 to disable
+     * @param maxIdleSecs Time-to-idle in seconds; 0 to disable
+     * @param nativeMemory <tt>true</tt> to hold entry data in direct (off-heap) memory
+     * @param cacheName An arbitrary cache name.
+     */
+    public BinarySimpleCache(
+            int maxItems, boolean useMaxItems, int ttlSecs, int maxIdleSecs, boolean nativeMemory, String cacheName)
+    {
+        if (maxItems == 0)
+        {
+            maxItems = DEFAULT_CAPACITY;
+        }
+        else if (maxItems < 0)
+        {
+            throw new IllegalArgumentException("maxItems may not be negative, but was " + maxItems);
+        }
+        this.maxItems = maxItems;
+        this.useMaxItems = useMaxItems;
+        this.ttlSecs = ttlSecs;
+        this.maxIdleSecs = maxIdleSecs;
+        this.nativeMemory = nativeMemory;
+        setBeanName(cacheName);
+
+        // Spread the size-cap over the segments, rounding down so that the cache never exceeds maxItems.
+        // Small caches use fewer segments so that each segment still holds at least one entry.
+        int segmentCount = useMaxItems ? Math.min(MAX_SEGMENT_COUNT, Integer.highestOneBit(maxItems)) : MAX_SEGMENT_COUNT;
+        int segmentMaxItems = useMaxItems ? maxItems / segmentCount : DEFAULT_CAPACITY;
+        segmentMask = segmentCount - 1;
+        segments = new Segment[segmentCount];
+        for (int i = 0; i < segmentCount; i++)
+        {
+            segments[i] = new Segment(this, segmentMaxItems);
+        }
+    }
+
+    /**
+     * Create a size limited, named cache with no other features enabled.
+     *
+     * @param maxItems int
+     * @param nativeMemory <tt>true</tt> to hold entry data in direct (off-heap) memory
+     * @param cacheName String
+     */
+    public BinarySimpleCache(int maxItems, boolean nativeMemory, String cacheName)
+    {
+        this(maxItems, true, 0, 0, nativeMemory, cacheName);
+    }
+
+    @Override
+    public boolean contains(K key)
+    {
+        byte[] keyBytes = encodeKey(key);
+        long hash = hash(keyBytes);
+        return segmentFor(hash).contains(hash, keyBytes);
+    }
+
+    @Override
+    public Collection<K> getKeys()
+    {
+        List<K> keys = new ArrayList<K>(size());
+        for (Segment segment : segments)
+        {
+            for (byte[] keyBytes : segment.keys())
+            {
+                keys.add(this.<K>decodeKey(keyBytes));
+            }
+        }
+        return keys;
+    }
+
+    @Override
+    public V get(K key)
+    {
+        final long startNanos = cacheStatsEnabled ? System.nanoTime() : 0;
+        byte[] keyBytes = encodeKey(key);
+        long hash = hash(keyBytes);
+        byte[] valueBytes = segmentFor(hash).get(hash, keyBytes);
+        if (valueBytes == null)
+        {
+            missCount.incrementAndGet();
+            recordStats(startNanos, OpType.GET_MISS, 1);
+            return null;
+        }
+        hitCount.incrementAndGet();
+        V value = decodeValue(valueBytes);
+        recordStats(startNanos, OpType.GET_HIT, 1);
+        return value;
+    }
+
+    @Override
+    public void put(K key, V value)
+    {
+        final long startNanos = cacheStatsEnabled ? System.nanoTime() : 0;
+        byte[] keyBytes = encodeKey(key);
+        byte[] valueBytes = encodeValue(value);
+        long hash = hash(keyBytes);
+        segmentFor(hash).put(hash, keyBytes, valueBytes);
+        recordStats(startNanos, OpType.PUT, 1);
+    }
+
+    /**
+     * Serializes the entries before taking any locks and then applies them with a single lock
+     * acquisition per segment.
+     */
+    @Override
+    public void putAll(Map<K, V> entries)
+    {
+        final long startNanos = cacheStatsEnabled ? System.nanoTime() : 0;
+        List<List<EncodedEntry>> bySegment = newSegmentLists();
+        for (Map.Entry<K, V> entry : entries.entrySet())
+        {
+            byte[] keyBytes = encodeKey(entry.getKey());
+            long hash = hash(keyBytes);
+            EncodedEntry encoded = new EncodedEntry(hash, keyBytes, encodeValue(entry.getValue()));
+            bySegment.get(segmentIndex(hash)).add(encoded);
+        }
+        for (int i = 0; i < segments.length; i++)
+        {
+            if (!bySegment.get(i).isEmpty())
+            {
+                segments[i].putAll(bySegment.get(i));
+            }
+        }
+        recordStats(startNanos, OpType.PUT, entries.size());
+    }
+
+    @Override
+    public void remove(K key)
+    {
+        final long startNanos = cacheStatsEnabled ? System.nanoTime() : 0;
+        byte[] keyBytes = encodeKey(key);
+        long hash = hash(keyBytes);
+        segmentFor(hash).remove(hash, keyBytes);
+        recordStats(startNanos, OpType.REMOVE, 1);
+    }
+
+    @Override
+    public void removeAll(Collection<K> keys)
+    {
+        final long startNanos = cacheStatsEnabled ? System.nanoTime() : 0;
+        List<List<EncodedEntry>> bySegment = newSegmentLists();
+        for (K key : keys)
+        {
+            byte[] keyBytes = encodeKey(key);
+            long hash = hash(keyBytes);
+            bySegment.get(segmentIndex(hash)).add(new EncodedEntry(hash, keyBytes, null));
+        }
+        for (int i = 0; i < segments.length; i++)
+        {
+            if (!bySegment.get(i).isEmpty())
+            {
+                segments[i].removeAll(bySegment.get(i));
+            }
+        }
+        recordStats(startNanos, OpType.REMOVE, keys.size());
+    }
+    
+    private List<List<EncodedEntry>> newSegmentLists()
+    {
+        List<List<EncodedEntry>> lists = new ArrayList<List<EncodedEntry>>(segments.length);
+        for (int i = 0; i < segments.length; i++)
+        {
+            lists.add(new ArrayList<EncodedEntry>());
+        }
+        return lists;
+    }
+
+    @Override
+    public void clear()
+    {
+        final long startNanos = cacheStatsEnabled ? System.nanoTime() : 0;
+        for (Segment segment : segments)
+        {
+            segment.clear();
+        }
+        recordStats(startNanos, OpType.CLEAR, 1);
+    }
+
+    /**
+     * Record operations in the calling thread's buffered statistics, each taking an equal share
+     * of the time, and hand the buffer to the shared statistics once it is large enough.
+     */
+    private void recordStats(long startNanos, OpType opType, int count)
+    {
+        if (!cacheStatsEnabled || count == 0)
+        {
+            return;
+        }
+        long endNanos = System.nanoTime();
+        TransactionStats stats = pendingStats.get();
+        if (stats == null)
+        {
+            stats = new TransactionStats();
+            pendingStats.set(stats);
+        }
+        long share = (endNanos - startNanos) / count;
+        for (int i = 0; i < count; i++)
+        {
+            stats.record(startNanos, startNanos + share, opType);
+        }
+        if (stats.getCount(opType) >= STATS_FLUSH_INTERVAL)
+        {
+            flushCacheStats();
+        }
+    }
+
+    /**
+     * Hand any statistics buffered by the calling thread over to the shared {@link CacheStatistics}.
+     */
+    public void flushCacheStats()
+    {
+        TransactionStats stats = pendingStats.get();
+        if (stats != null)
+        {
+            pendingStats.remove();
+            if (cacheStats != null)
+            {
+                cacheStats.add(cacheName, stats);
+            }
+        }
+    }
+
+    /**
+     * @return the number of entries currently held, including any that have expired but not been read since
+     */
+    public int size()
+    {
+        int size = 0;
+        for (Segment segment : segments)
+        {
+            size += segment.size();
+        }
+        return size;
+    }
+
+    /**
+     * @return the number of bytes reserved for entry data, whether on the heap or in native memory
+     */
+    public long getReservedBytes()
+    {
+        long bytes = 0L;
+        for (Segment segment : segments)
+        {
+            bytes += segment.reservedBytes();
+        }
+        return bytes;
+    }
+
+    @Override
+    public String toString()
+    {
+        return "BinarySimpleCache[maxItems=" + maxItems + ", useMaxItems=" + useMaxItems +
+                ", nativeMemory=" + nativeMemory + ", cacheName=" + cacheName + "]";
+    }
+
+    /**
+     * Gets the maximum number of items that the cache will hold.
+     *
+     * @return maxItems
+     */
+    public int getMaxItems()
+    {
+        return maxItems;
+    }
+
+    /**
+     * Is a size-cap in use?
+     *
+     * @return useMaxItems
+     */
+    public boolean isUseMaxItems()
+    {
+        return this.useMaxItems;
+    }
+
+    /**
+     * Get the time-to-live setting in seconds.
+     *
+     * @return ttlSecs
+     */
+    public int getTTLSecs()
+    {
+        return this.ttlSecs;
+    }
+
+    /**
+     * Get the time-to-idle setting in seconds.
+     *
+     * @return maxIdleSecs
+     */
+    public int getMaxIdleSecs()
+    {
+        return this.maxIdleSecs;
+    }
+
+    public void setCacheStats(CacheStatistics cacheStats)
+    {
+        this.cacheStats = cacheStats;
+    }
+
+    /**
+     * @param cacheStatsEnabled <tt>true</tt> to report operation timings to the {@link #setCacheStats(CacheStatistics) cache statistics}
+     */
+    public void setCacheStatsEnabled(boolean cacheStatsEnabled)
+    {
+        this.cacheStatsEnabled = cacheStatsEnabled;
+    }
+
+    /**
+     * Is entry data held outside of the Java heap?
+     *
+     * @return nativeMemory
+     */
+    public boolean isNativeMemory()
+    {
+        return this.nativeMemory;
+    }
+
+    /**
+     * @return the number of reads that found a value
+     */
+    public long getHitCount()
+    {
+        return hitCount.get();
+    }
+
+    /**
+     * @return the number of reads that did not find a value
+     */
+    public long getMissCount()
+    {
+        return missCount.get();
+    }
+
+    /**
+     * @return the number of entries evicted to keep the cache within its size-cap
+     */
+    public long getEvictionCount()
+    {
+        return evictionCount.get();
+    }
+
+    /**
+     * @return the number of entries dropped because their time-to-live or time-to-idle had passed
+     */
+    public long getExpiryCount()
+    {
+        return expiryCount.get();
+    }
+
+    /**
+     * Retrieve the name of this cache.
+     *
+     * @see #setCacheName(String)
+     * @return the cacheName
+     */
+    public String getCacheName()
+    {
+        return this.cacheName;
+    }
+
+    /**
+     * Since there are many cache instances, it is useful to be able to associate
+     * a name with each one.
+     *
+     * @see #setBeanName(String)
+     * @param cacheName String
+     */
+    public void setCacheName(String cacheName)
+    {
+        this.cacheName = cacheName;
+    }
+
+    /**
+     * Since there are many cache instances, it is useful to be able to associate
+     * a name with each one.
+     *
+     * @param cacheName Set automatically by Spring, but can be set manually if required.
+     */
+    @Override
+    public void setBeanName(String cacheName)
+    {
+        this.cacheName = cacheName;
+    }
+
+    private int segmentIndex(long hash)
+    {
+        return (int) (hash >>> SEGMENT_SHIFT) & segmentMask;
+    }
+
+    private Segment segmentFor(long hash)
+    {
+        return segments[segmentIndex(hash)];
+    }
+
+    /**
+     * 64-bit FNV-1a over the key bytes, finished with the MurmurHash3 mixer so that both the
+     * high (segment) and low (slot) bits are well distributed.
+     */
+    private static long hash(byte[] bytes)
+    {
+        long h = 0xcbf29ce484222325L;
+        for (byte b : bytes)
+        {
+            h ^= (b & 0xff);
+            h *= 0x100000001b3L;
+        }
+        h ^= h >>> 33;
+        h *= 0xff51afd7ed558ccdL;
+        h ^= h >>> 33;
+        h *= 0xc4ceb9fe1a85ec53L;
+        h ^= h >>> 33;
+        return h;
+    }
+
+    private byte[] encodeKey(Serializable key)
+    {
+        if (key == null)
+        {
+            throw new IllegalArgumentException("Cache keys may not be null: " + cacheName);
+        }
+        try
+        {
+            ByteArrayOutputStream bos = new ByteArrayOutputStream(32);
+            DataOutputStream dos = new DataOutputStream(bos);
+            writeKey(dos, key);
+            dos.flush();
+            return bos.toByteArray();
+        }
+        catch (IOException e)
+        {
+            throw new AlfrescoRuntimeException("Failed to serialize key for cache " + cacheName + ": " + key, e);
+        }
+    }
+
+    private static void writeKey(DataOutputStream dos, Serializable key) throws IOException
+    {
+        Class<?> keyClass = key.getClass();
+        if (keyClass == Long.class)
+        {
+            dos.writeByte(KEY_LONG);
+            dos.writeLong((Long) key);
+        }
+        else if (keyClass == Integer.class)
+        {
+            dos.writeByte(KEY_INTEGER);
+            dos.writeInt((Integer) key);
+        }
+        else if (keyClass == String.class)
+        {
+            dos.writeByte(KEY_STRING);
+            writeString(dos, (String) key);
+        }
+        else if (keyClass == CacheRegionKey.class)
+        {
+            CacheRegionKey regionKey = (CacheRegionKey) key;
+            dos.writeByte(KEY_REGION);
+            writeString(dos, regionKey.getCacheRegion());
+            writeKey(dos, regionKey.getCacheKey());
+        }
+        else
+        {
+            dos.writeByte(KEY_SERIALIZED);
+            ObjectOutputStream oos = new ObjectOutputStream(dos);
+            oos.writeObject(key);
+            oos.flush();
+        }
+    }
+
+    @SuppressWarnings("unchecked")
+    private <T extends Serializable> T decodeKey(byte[] keyBytes)
+    {
+        try
+        {
+            DataInputStream dis = new DataInputStream(new ByteArrayInputStream(keyBytes));
+            return (T) readKey(dis);
+        }
+        catch (IOException e)
+        {
+            throw new AlfrescoRuntimeException("Failed to deserialize key for cache " + cacheName, e);
+        }
+        catch (ClassNotFoundException e)
+        {
+            throw new AlfrescoRuntimeException("Failed to deserialize key for cache " + cacheName, e);
+        }
+    }
+
+    private static Serializable readKey(DataInputStream dis) throws IOException, ClassNotFoundException
+    {
+        byte type = dis.readByte();
+        switch (type)
+        {
+            case KEY_LONG:
+                return dis.readLong();
+            case KEY_INTEGER:
+                return dis.readInt();
+            case KEY_STRING:
+                return readString(dis);
+            case KEY_REGION:
+                String region = readString(dis);
+                return new CacheRegionKey(region, readKey(dis));
+            default:
+                ObjectInputStream ois = new ObjectInputStream(dis);
+                return (Serializable) ois.readObject();
+        }
+    }
+
+    /**
+     * Writes the string as length-prefixed UTF-8; unlike <tt>writeUTF</tt> this is not limited to 64KB.
+     */
+    private static void writeString(DataOutputStream dos, String str) throws IOException
+    {
+        byte[] bytes = str.getBytes(StandardCharsets.UTF_8);
+        dos.writeInt(bytes.length);
+        dos.write(bytes);
+    }
+
+    private static String readString(DataInputStream dis) throws IOException
+    {
+        byte[] bytes = new byte[dis.readInt()];
+        dis.readFully(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    private byte[] encodeValue(V value)
+    {
+        if (value == null)
+        {
+            return null;
+        }
+        else if (!(value instanceof Serializable))
+        {
+            throw new IllegalArgumentException(
+                    "Values stored in cache " + cacheName + " must be Serializable: " + value.getClass().getName());
+        }
+        try
+        {
+            ByteArrayOutputStream bos = new ByteArrayOutputStream(256);
+            ObjectOutputStream oos = new ObjectOutputStream(bos);
+            oos.writeObject(value);
+            oos.close();
+            return bos.toByteArray();
+        }
+        catch (IOException e)
+        {
+            throw new AlfrescoRuntimeException("Failed to serialize value for cache " + cacheName + ": " + value, e);
+        }
+    }
+
+    @SuppressWarnings("unchecked")
+    private V decodeValue(byte[] valueBytes)
+    {
+        if (valueBytes.length == 0)
+        {
+            return null;
+        }
+        try
+        {
+            ObjectInputStream ois = new ObjectInputStream(new ByteArrayInputStream(valueBytes));
+            return (V) ois.readObject();
+        }
+        catch (IOException e)
+        {
+            throw new AlfrescoRuntimeException("Failed to deserialize value for cache " + cacheName, e);
+        }
+        catch (ClassNotFoundException e)
+        {
+            throw new AlfrescoRuntimeException("Failed to deserialize value for cache " + cacheName, e);
+        }
+    }
+
+    /**
+     * A key and value in serialized form, with the key hash
+     */
+    private static final class EncodedEntry
+    {
+        private final long hash;
+        private final byte[] keyBytes;
+        private final byte[] valueBytes;
+
+        private EncodedEntry(long hash, byte[] keyBytes, byte[] valueBytes)
+        {
+            this.hash = hash;
+            this.keyBytes = keyBytes;
+            this.valueBytes = valueBytes;
+        }
+    }
+
+    /**
+     * A lock-protected slice of the cache.
+     * <p/>
+     * Entries live in numbered slots described by parallel primitive arrays. An open-addressing
+     * index (linear probing, backward-shift deletion) maps key hashes to slot numbers. Entry
+     * bytes are appended to the arena, which is compacted when it runs out of space.
+     */
+    private static final class Segment
+    {
+        private final BinarySimpleCache<?, ?> owner;
+        private final int maxEntries;
+
+        // Slot data
+        private long[] hashes;
+        private int[] offsets;
+        private int[] keyLengths;                   // 0 marks a free slot
+        private int[] valueLengths;                 // -1 marks a null value
+        private long[] writeTimes;
+        private long[] accessTimes;
+        private boolean[] referenced;
+        private int[] freeSlots;
+        private int freeCount;
+        private int highWater;
+        private int size;
+        private int clockHand;
+
+        // Open-addressing index of slot numbers + 1
+        private int[] index;
+
+        private ByteBuffer arena;
+        private int arenaUsed;
+        private int arenaLive;
+
+        private Segment(BinarySimpleCache<?, ?> owner, int maxEntries)
+        {
+            this.owner = owner;
+            this.maxEntries = maxEntries;
+            reset();
+        }
+
+        private void reset()
+        {
+            int capacity = Math.min(maxEntries, MIN_SEGMENT_CAPACITY);
+            hashes = new long[capacity];
+            offsets = new int[capacity];
+            keyLengths = new int[capacity];
+            valueLengths = new int[capacity];
+            writeTimes = new long[capacity];
+            accessTimes = new long[capacity];
+            referenced = new boolean[capacity];
+            freeSlots = new int[capacity];
+            freeCount = 0;
+            highWater = 0;
+            size = 0;
+            clockHand = 0;
+            index = new int[indexSizeFor(capacity)];
+            arena = allocate(MIN_ARENA_SIZE);
+            arenaUsed = 0;
+            arenaLive = 0;
+        }
+
+        private ByteBuffer allocate(int bytes)
+        {
+            return owner.nativeMemory ? ByteBuffer.allocateDirect(bytes) : ByteBuffer.allocate(bytes);
+        }
+
+        private int indexSizeFor(int capacity)
+        {
+            // Keep the load factor at or below one half
+            int indexSize = Integer.highestOneBit(Math.max(capacity, 2) - 1) << 2;
+            return indexSize > 0 ? indexSize : 1 << 30;
+        }
+
+        synchronized int size()
+        {
+            return size;
+        }
+
+        synchronized long reservedBytes()
+        {
+            return arena.capacity();
+        }
+
+        synchronized boolean contains(long hash, byte[] keyBytes)
+        {
+            int pos = find(hash, keyBytes);
+            if (pos < 0)
+            {
+                return false;
+            }
+            int slot = index[pos] - 1;
+            if (isExpired(slot, System.currentTimeMillis()))
+            {
+                removeAt(pos);
+                owner.expiryCount.incrementAndGet();
+                return false;
+            }
+            return true;
+        }
+
+        synchronized byte[] get(long hash, byte[] keyBytes)
+        {
+            int pos = find(hash, keyBytes);
+            if (pos < 0)
+            {
+                return null;
+            }
+            int slot = index[pos] - 1;
+            long now = System.currentTimeMillis();
+            if (isExpired(slot, now))
+            {
+                removeAt(pos);
+                owner.expiryCount.incrementAndGet();
+                return null;
+            }
+            referenced[slot] = true;
+            accessTimes[slot] = now;
+            int valueLength = valueLengths[slot];
+            if (valueLength < 0)
+            {
+                // A null value is present; the caller distinguishes it by the empty array
+                return new byte[0];
+            }
+            byte[] valueBytes = new byte[valueLength];
+            arena.position(offsets[slot] + keyLengths[slot]);
+            arena.get(valueBytes);
+            return valueBytes;
+        }
+
+        synchronized List<byte[]> keys()
+        {
+            List<byte[]> keys = new ArrayList<byte[]>(size);
+            for (int slot = 0; slot < highWater; slot++)
+            {
+                if (keyLengths[slot] == 0)
+                {
+                    continue;
+                }
+                byte[] keyBytes = new byte[keyLengths[slot]];
+                arena.position(offsets[slot]);
+                arena.get(keyBytes);
+                keys.add(keyBytes);
+            }
+            return keys;
+        }
+
+        synchronized void put(long hash, byte[] keyBytes, byte[] valueBytes)
+        {
+            int pos = find(hash, keyBytes);
+            if (pos >= 0)
+            {
+                // Replace the existing value in-place when it fits, otherwise append a new copy
+                int slot = index[pos] - 1;
+                int oldLength = Math.max(valueLengths[slot], 0);
+                int newLength = valueBytes == null ? 0 : valueBytes.length;
+                if (newLength <= oldLength)
+                {
+                    arena.position(offsets[slot] + keyLengths[slot]);
+                    if (valueBytes != null)
+                    {
+                        arena.put(valueBytes);
+                    }
+                    valueLengths[slot] = valueBytes == null ? -1 : newLength;
+                    arenaLive -= (oldLength - newLength);
+                }
+                else
+                {
+                    arenaLive -= keyLengths[slot] + oldLength;
+                    offsets[slot] = append(slot, keyBytes, valueBytes);
+                    valueLengths[slot] = newLength;
+                }
+                long now = System.currentTimeMillis();
+                writeTimes[slot] = now;
+                accessTimes[slot] = now;
+                referenced[slot] = true;
+                return;
+            }
+            if (size >= maxEntries)
+            {
+                evict();
+            }
+            else if (size >= hashes.length)
+            {
+                grow();
+            }
+            int slot = freeCount > 0 ? freeSlots[--freeCount] : highWater++;
+            hashes[slot] = hash;
+            keyLengths[slot] = keyBytes.length;
+            valueLengths[slot] = valueBytes == null ? -1 : valueBytes.length;
+            offsets[slot] = append(slot, keyBytes, valueBytes);
+            long now = System.currentTimeMillis();
+            writeTimes[slot] = now;
+            accessTimes[slot] = now;
+            referenced[slot] = false;
+            insert(hash, slot);
+            size++;
+        }
+
+        synchronized void putAll(List<EncodedEntry> entries)
+        {
+            for (EncodedEntry entry : entries)
+            {
+                put(entry.hash, entry.keyBytes, entry.valueBytes);
+            }
+        }
+
+        synchronized void removeAll(List<EncodedEntry> entries)
+        {
+            for (EncodedEntry entry : entries)
+            {
+                remove(entry.hash, entry.keyBytes);
+            }
+        }
+
+        synchronized void remove(long hash, byte[] keyBytes)
+        {
+            int pos = find(hash, keyBytes);
+            if (pos >= 0)
+            {
+                removeAt(pos);
+            }
+        }
+
+        synchronized void clear()
+        {
+            reset();
+        }
+
+        private boolean isExpired(int slot, long now)
+        {
+            if (owner.ttlSecs > 0 && now - writeTimes[slot] > owner.ttlSecs * 1000L)
+            {
+                return true;
+            }
+            else if (owner.maxIdleSecs > 0 && now - accessTimes[slot] > owner.maxIdleSecs * 1000L)
+            {
+                return true;
+            }
+            return false;
+        }
+
+        /**
+         * @return the index position holding the key or <tt>-1</tt>
+         */
+        private int find(long hash, byte[] keyBytes)
+        {
+            int mask = index.length - 1;
+            int pos = (int) hash & mask;
+            while (true)
+            {
+                int entry = index[pos];
+                if (entry == 0)
+                {
+                    return -1;
+                }
+                int slot = entry - 1;
+                if (hashes[slot] == hash && keyEquals(slot, keyBytes))
+                {
+                    return pos;
+                }
+                pos = (pos + 1) & mask;
+            }
+        }
+
+        private boolean keyEquals(int slot, byte[] keyBytes)
+        {
+            if (keyLengths[slot] != keyBytes.length)
+            {
+                return false;
+            }
+            int offset = offsets[slot];
+            for (int i = 0; i < keyBytes.length; i++)
+            {
+                if (arena.get(offset + i) != keyBytes[i])
+                {
+                    return false;
+                }
+            }
+            return true;
+        }
+
+        private void insert(long hash, int slot)
+        {
+            int mask = index.length - 1;
+            int pos = (int) hash & mask;
+            while (index[pos] != 0)
+            {
+                pos = (pos + 1) & mask;
+            }
+            index[pos] = slot + 1;
+        }
+
+        private void removeAt(int pos)
+        {
+            int slot = index[pos] - 1;
+            arenaLive -= keyLengths[slot] + Math.max(valueLengths[slot], 0);
+            keyLengths[slot] = 0;
+            valueLengths[slot] = 0;
+            referenced[slot] = false;
+            freeSlots[freeCount++] = slot;
+            size--;
+
+            // Backward-shift deletion keeps probe sequences intact without tombstones
+            int mask = index.length - 1;
+            int hole = pos;
+            int next = pos;
+            index[hole] = 0;
+            while (true)
+            {
+                next = (next + 1) & mask;
+                int entry = index[next];
+                if (entry == 0)
+                {
+                    return;
+                }
+                int home = (int) hashes[entry - 1] & mask;
+                if (((next - home) & mask) >= ((next - hole) & mask))
+                {
+                    index[hole] = entry;
+                    index[next] = 0;
+                    hole = next;
+                }
+            }
+        }
+
+        /**
+         * Second-chance eviction: sweep the slots, clearing reference bits, and drop the first
+         * entry that has not been read since the last sweep.
+         */
+        private void evict()
+        {
+            while (true)
+            {
+                if (clockHand >= highWater)
+                {
+                    clockHand = 0;
+                }
+                int slot = clockHand++;
+                if (keyLengths[slot] == 0)
+                {
+                    continue;
+                }
+                if (referenced[slot])
+                {
+                    referenced[slot] = false;
+                    continue;
+                }
+                removeAt(positionOf(slot));
+                owner.evictionCount.incrementAndGet();
+                return;
+            }
+        }
+
+        private int positionOf(int slot)
+        {
+            int mask = index.length - 1;
+            int pos = (int) hashes[slot] & mask;
+            while (index[pos] != slot + 1)
+            {
+                pos = (pos + 1) & mask;
+            }
+            return pos;
+        }
+
+        private void grow()
+        {
+            int capacity = (int) Math.min((long) hashes.length * 2L, (long) maxEntries);
+            hashes = Arrays.copyOf(hashes, capacity);
+            offsets = Arrays.copyOf(offsets, capacity);
+            keyLengths = Arrays.copyOf(keyLengths, capacity);
+            valueLengths = Arrays.copyOf(valueLengths, capacity);
+            writeTimes = Arrays.copyOf(writeTimes, capacity);
+            accessTimes = Arrays.copyOf(accessTimes, capacity);
+            referenced = Arrays.copyOf(referenced, capacity);
+            freeSlots = Arrays.copyOf(freeSlots, capacity);
+            index = new int[indexSizeFor(capacity)];
+            for (int slot = 0; slot < highWater; slot++)
+            {
+                if (keyLengths[slot] != 0)
+                {
+                    insert(hashes[slot], slot);
+                }
+            }
+        }
+
+        /**
+         * @param slot the slot being written, which is not carried over if the arena is compacted
+         * @return the arena offset at which the entry was written
+         */
+        private int append(int slot, byte[] keyBytes, byte[] valueBytes)
+        {
+            int length = keyBytes.length + (valueBytes == null ? 0 : valueBytes.length);
+            if (arenaUsed + length > arena.capacity())
+            {
+                compact(slot, length);
+            }
+            int offset = arenaUsed;
+            arena.position(offset);
+            arena.put(keyBytes);
+            if (valueBytes != null)
+            {
+                arena.put(valueBytes);
+            }
+            arenaUsed += length;
+            arenaLive += length;
+            return offset;
+        }
+
+        /**
+         * Copy the live entries into a new arena, leaving room for at least the required bytes.
+         */
+        private void compact(int skipSlot, int required)
+        {
+            long wanted = Math.max((long) MIN_ARENA_SIZE, 2L * (arenaLive + required));
+            if (wanted > Integer.MAX_VALUE)
+            {
+                throw new AlfrescoRuntimeException("Cache segment exceeded 2GB of entry data: " + owner.cacheName);
+            }
+            ByteBuffer oldArena = arena;
+            ByteBuffer newArena = allocate((int) wanted);
+            for (int slot = 0; slot < highWater; slot++)
+            {
+                if (keyLengths[slot] == 0 || slot == skipSlot)
+                {
+                    continue;
+                }
+                int length = keyLengths[slot] + Math.max(valueLengths[slot], 0);
+                ByteBuffer source = oldArena.duplicate();
+                source.position(offsets[slot]);
+                source.limit(offsets[slot] + length);
+                offsets[slot] = newArena.position();
+                newArena.put(source);
+            }
+            arena = newArena;
+            arenaUsed = newArena.position();
+            arenaLive = arenaUsed;
+        }
+    }
+}
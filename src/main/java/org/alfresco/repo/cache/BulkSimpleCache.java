@@ -0,0 +1,56 @@
+/*
+ * #%L
+ * Alfresco Repository
+ * %%
+ * Copyright (C) 2005 - 2016 Alfresco Software Limited
+ * %%
+ * This file is part of the Alfresco software. 
+ * If the software was purchased under a paid Alfresco license, the terms of 
+ * the paid license agreement will prevail.  Otherwise, the software is 
+ * provided under the following open source license terms:
+ * 
+ * Alfresco is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * 
+ * Alfresco is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ * 
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with Alfresco. If not, see <http://www.gnu.org/licenses/>.
+ * #L%
+ */
+package org.alfresco.repo.cache;
+
+import java.io.Serializable;
+import java.util.Collection;
+import java.util.Map;
+
+/**
+ * A {@link SimpleCache} that can apply a batch of writes or removals in one call, allowing
+ * implementations to amortise locking and other per-operation costs.
+ * <p/>
+ * The batch operations are not atomic: other threads may observe the cache part way
+ * through a batch.
+ * 
+ * @since 5.2
+ */
+public interface BulkSimpleCache<K extends Serializable, V extends Object> extends SimpleCache<K, V>
+{
+    /**
+     * Put all of the given entries into the cache, as if by individual {@link #put(Serializable, Object) puts}.
+     * 
+     * @param entries           the keys and values to put
+     */
+    void putAll(Map<K, V> entries);
+    
+    /**
+     * Remove all of the given keys from the cache, as if by individual {@link #remove(Serializable) removals}.
+     * 
+     * @param keys              the keys to remove
+     */
+    void removeAll(Collection<K> keys);
+}
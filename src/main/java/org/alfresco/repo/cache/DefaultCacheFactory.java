@@ -35,6 +35,11 @@ import org.apache.commons.logging.LogFactory;
  * The caches are created with a capacity specified by the property {name}.maxItems.
  * For example, a cache named <tt>cache.ticketsCache</tt> would have a capacity specified
  * by the property <tt>cache.ticketsCache.maxItems</tt>
+ * <p/>
+ * Setting {name}.in-memory-format to <tt>BINARY</tt> or <tt>NATIVE</tt> creates a
+ * {@link BinarySimpleCache} instead, holding serialized entries on the heap or in native memory
+ * respectively. Such caches report their operations to the {@link #setCacheStats(CacheStatistics)
+ * cache statistics} when {name}.statsEnabled is <tt>true</tt>.
  * 
  * @author Matt Ward
  */
@@ -42,8 +47,20 @@ public class DefaultCacheFactory<K extends Serializable, V> extends AbstractCach
 {
     private static final Log log = LogFactory.getLog(DefaultCacheFactory.class);
     private static final String EVICT_NONE = "NONE";
+    private static final String FORMAT_OBJECT = "OBJECT";
+    private static final String FORMAT_BINARY = "BINARY";
+    private static final String FORMAT_NATIVE = "NATIVE";
+    private CacheStatistics cacheStats;
     
     
+    /**
+     * @param cacheStats the statistics that {@link BinarySimpleCache} instances report to, when enabled
+     */
+    public void setCacheStats(CacheStatistics cacheStats)
+    {
+        this.cacheStats = cacheStats;
+    }
+    
     @Override
     public SimpleCache<K, V> createCache(String cacheName)
     {
@@ -56,7 +73,27 @@ public class DefaultCacheFactory<K extends Serializable, V> extends AbstractCach
         boolean useMaxItems = useMaxItems(cacheName);
         int ttlSecs = ttlSeconds(cacheName);
         int maxIdleSeconds = maxIdleSeconds(cacheName);
-        DefaultSimpleCache<K, V> cache = new DefaultSimpleCache<K, V>(maxItems, useMaxItems, ttlSecs, maxIdleSeconds, cacheName);
+        String inMemoryFormat = inMemoryFormat(cacheName);
+        SimpleCache<K, V> cache;
+        if (inMemoryFormat.equals(FORMAT_OBJECT))
+        {
+            cache = new DefaultSimpleCache<K, V>(maxItems, useMaxItems, ttlSecs, maxIdleSeconds, cacheName);
+        }
+        else if (inMemoryFormat.equals(FORMAT_BINARY) || inMemoryFormat.equals(FORMAT_NATIVE))
+        {
+            boolean nativeMemory = inMemoryFormat.equals(FORMAT_NATIVE);
+            BinarySimpleCache<K, V> binaryCache = new BinarySimpleCache<K, V>(
+                    maxItems, useMaxItems, ttlSecs, maxIdleSeconds, nativeMemory, cacheName);
+            binaryCache.setCacheStats(cacheStats);
+            binaryCache.setCacheStatsEnabled(cacheStats != null && statsEnabled(cacheName));
+            cache = binaryCache;
+        }
+        else
+        {
+            throw new IllegalArgumentException(
+                    "Unsupported in-memory-format '" + inMemoryFormat + "' for cache " + cacheName +
+                    "; use " + FORMAT_OBJECT + ", " + FORMAT_BINARY + " or " + FORMAT_NATIVE);
+        }
         if (log.isDebugEnabled())
         {
             log.debug("Creating cache: " + cache);
@@ -90,4 +127,14 @@ public class DefaultCacheFactory<K extends Serializable, V> extends AbstractCach
         Integer maxIdleSecs = Integer.parseInt(maxIdleSecsStr);
         return maxIdleSecs;
     }
+    
+    private String inMemoryFormat(String cacheName)
+    {
+        return getProperty(cacheName, "in-memory-format", FORMAT_OBJECT).toUpperCase();
+    }
+    
+    private boolean statsEnabled(String cacheName)
+    {
+        return Boolean.parseBoolean(getProperty(cacheName, "statsEnabled", "false"));
+    }
 }
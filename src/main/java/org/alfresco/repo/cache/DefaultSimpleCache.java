@@ -28,6 +28,7 @@ package org.alfresco.repo.cache;
 import java.io.Serializable;
 import java.util.AbstractMap;
 import java.util.Collection;
+import java.util.Map;
 import java.util.concurrent.TimeUnit;
 
 import org.springframework.beans.factory.BeanNameAware;
@@ -41,7 +42,7 @@ import com.google.common.cache.CacheBuilder;
  * @author Matt Ward
  */
 public final class DefaultSimpleCache<K extends Serializable, V extends Object>
-    implements SimpleCache<K, V>, BeanNameAware
+    implements BulkSimpleCache<K, V>, BeanNameAware
 {
     private static final int DEFAULT_CAPACITY = Integer.MAX_VALUE;
     private Cache<K, AbstractMap.SimpleImmutableEntry<K, V>> cache;
@@ -156,12 +157,28 @@ public final class DefaultSimpleCache<K extends Serializable, V extends Object>
         return priorKVP != null && (! priorKVP.equals(kvp));
     }
     
+    @Override
+    public void putAll(Map<K, V> entries)
+    {
+        for (Map.Entry<K, V> entry : entries.entrySet())
+        {
+            K key = entry.getKey();
+            cache.put(key, new AbstractMap.SimpleImmutableEntry<K, V>(key, entry.getValue()));
+        }
+    }
+
     @Override
     public void remove(K key)
     {
         cache.invalidate(key);
     }
 
+    @Override
+    public void removeAll(Collection<K> keys)
+    {
+        cache.invalidateAll(keys);
+    }
+
     @Override
     public void clear()
     {
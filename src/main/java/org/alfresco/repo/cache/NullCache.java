@@ -28,6 +28,7 @@ package org.alfresco.repo.cache;
 import java.io.Serializable;
 import java.util.Collection;
 import java.util.Collections;
+import java.util.Map;
 
 /**
  * A cache that does nothing - always.
@@ -38,7 +39,7 @@ import java.util.Collections;
  * 
  * @author Derek Hulley
  */
-public class NullCache<K extends Serializable, V extends Object> implements SimpleCache<K, V>
+public class NullCache<K extends Serializable, V extends Object> implements BulkSimpleCache<K, V>
 {
     /** Singleton for retrieval via {@link #getInstance() } */
     private static final NullCache<Serializable, Object> INSTANCE = new NullCache<Serializable, Object>();
@@ -85,6 +86,18 @@ public class NullCache<K extends Serializable, V extends Object> implements Simp
         return;
     }
 
+    /** NO-OP */
+    public void putAll(Map<K, V> entries)
+    {
+        return;
+    }
+
+    /** NO-OP */
+    public void removeAll(Collection<K> keys)
+    {
+        return;
+    }
+
     /** NO-OP */
     public void clear()
     {
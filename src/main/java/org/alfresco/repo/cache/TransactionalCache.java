@@ -30,8 +30,13 @@ import java.util.ArrayList;
 import java.util.Collection;
 import java.util.HashSet;
 import java.util.LinkedHashMap;
+import java.util.List;
 import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
 
 import org.alfresco.error.AlfrescoRuntimeException;
 import org.alfresco.repo.cache.TransactionStats.OpType;
@@ -83,6 +88,7 @@ public class TransactionalCache<K extends Serializable, V extends Object>
         implements LockingCache<K, V>, TransactionListener, InitializingBean
 {
     private static final String RESOURCE_KEY_TXN_DATA = "TransactionalCache.TxnData";
+    private static final String RESOURCE_KEY_PARALLEL_COMMIT = "TransactionalCache.ParallelCommit";
     
     private Log logger;
     private boolean isDebugEnabled;
@@ -106,6 +112,10 @@ public class TransactionalCache<K extends Serializable, V extends Object>
     /** Enable collection of statistics? */
     private boolean cacheStatsEnabled = false;
     private boolean isTenantAware = true; // true if tenant-aware (default), false if system-wide
+    /** optional executor used to transfer large post-commit updates to the shared cache */
+    private ExecutorService commitExecutor;
+    /** the number of in-transaction values above which the commit executor is used */
+    private int parallelCommitThreshold = 1000;
     
     /**
      * Public constructor.
@@ -234,6 +244,30 @@ public class TransactionalCache<K extends Serializable, V extends Object>
         this.cacheStatsEnabled = cacheStatsEnabled;
     }
 
+    /**
+     * Set an executor that will transfer large post-commit updates to the shared cache while the
+     * other caches of the transaction do the same.  The transaction's post-commit phase does not
+     * complete until all of the transfers have been completed.
+     * 
+     * @param commitExecutor        the executor to use or <tt>null</tt> (default) to always transfer
+     *                              the updates on the committing thread
+     */
+    public void setCommitExecutor(ExecutorService commitExecutor)
+    {
+        this.commitExecutor = commitExecutor;
+    }
+
+    /**
+     * @param parallelCommitThreshold   the number of values held by the transaction before the
+     *                                  {@link #setCommitExecutor(ExecutorService) commit executor}
+     *                                  is used.  Smaller transactions are not worth the hand-off.
+     *                                  Default: 1000.
+     */
+    public void setParallelCommitThreshold(int parallelCommitThreshold)
+    {
+        this.parallelCommitThreshold = parallelCommitThreshold;
+    }
+
     /**
      * Ensures that all properties have been set
      */
@@ -279,6 +313,15 @@ public class TransactionalCache<K extends Serializable, V extends Object>
             if (TransactionSynchronizationManager.isSynchronizationActive())
             {
                 AlfrescoTransactionSupport.bindListener(this);
+                if (commitExecutor != null)
+                {
+                    // Only caches bound before the transaction completes are sure to get their post-commit call
+                    ParallelCommit parallelCommit = ParallelCommit.getOrBind();
+                    if (parallelCommit.register())
+                    {
+                        data.parallelCommit = parallelCommit;
+                    }
+                }
             }
             AlfrescoTransactionSupport.bindResource(resourceKeyTxnData, data);
         }
@@ -776,6 +819,7 @@ public class TransactionalCache<K extends Serializable, V extends Object>
                     bucket = new UpdateCacheBucket<V>(existingValueHolder, value);
                 }
                 txnData.updatedItemsCache.put(key, bucket);
+                txnData.hasWrites = true;
                 // remove the item from the removed cache, if present
                 txnData.removedItemsCache.remove(key);
                 // done
@@ -960,6 +1004,7 @@ public class TransactionalCache<K extends Serializable, V extends Object>
         }
         
         TransactionData txnData = getTransactionData();
+        closeParallelCommitRegistration();
         try
         {
             if (txnData.isClearOn)
@@ -981,14 +1026,7 @@ public class TransactionalCache<K extends Serializable, V extends Object>
             else
             {
                 // transfer any removed items
-                for (Serializable key : txnData.removedItemsCache)
-                {
-                    final long startNanos = System.nanoTime();
-                    sharedCache.remove(key);
-                    final long endNanos = System.nanoTime();
-                    TransactionStats stats = txnData.stats;
-                    stats.record(startNanos, endNanos, OpType.REMOVE);
-                }
+                removeSharedCacheValues(txnData.removedItemsCache, txnData.stats);
                 if (isDebugEnabled)
                 {
                     logger.debug("Removed " + txnData.removedItemsCache.size() + " values from shared cache in commit");
@@ -996,18 +1034,21 @@ public class TransactionalCache<K extends Serializable, V extends Object>
             }
             
             // transfer updates
-            Set<Serializable> keys = (Set<Serializable>) txnData.updatedItemsCache.keySet();
-            for (Map.Entry<Serializable, CacheBucket<V>> entry : (Set<Map.Entry<Serializable, CacheBucket<V>>>) txnData.updatedItemsCache.entrySet())
+            if (txnData.hasWrites)
             {
-                Serializable key = entry.getKey();
-                CacheBucket<V> bucket = entry.getValue();
-                bucket.doPreCommit(
-                        sharedCache,
-                        key, this.isMutable, this.allowEqualsChecks, txnData.isReadOnly);
-            }
-            if (isDebugEnabled)
-            {
-                logger.debug("Pre-commit called for " + keys.size() + " values.");
+                Set<Serializable> keys = (Set<Serializable>) txnData.updatedItemsCache.keySet();
+                for (Map.Entry<Serializable, CacheBucket<V>> entry : (Set<Map.Entry<Serializable, CacheBucket<V>>>) txnData.updatedItemsCache.entrySet())
+                {
+                    Serializable key = entry.getKey();
+                    CacheBucket<V> bucket = entry.getValue();
+                    bucket.doPreCommit(
+                            sharedCache,
+                            key, this.isMutable, this.allowEqualsChecks, txnData.isReadOnly);
+                }
+                if (isDebugEnabled)
+                {
+                    logger.debug("Pre-commit called for " + keys.size() + " values.");
+                }
             }
         }
         catch (Throwable e)
@@ -1022,7 +1063,13 @@ public class TransactionalCache<K extends Serializable, V extends Object>
     }
 
     /**
-     * Merge the transactional caches into the shared cache
+     * Merge the transactional caches into the shared cache.
+     * <p/>
+     * Where a {@link #setCommitExecutor(ExecutorService) commit executor} is set and the transaction
+     * holds at least {@link #setParallelCommitThreshold(int) parallelCommitThreshold} values, the
+     * transfer is handed to the executor so that it runs alongside the transfers of the other caches.
+     * The executor works on a copy of the transaction's changes, as later post-commit work may still
+     * use this cache. The last cache to complete its post-commit waits for all of the handed-off transfers.
      */
     public void afterCommit()
     {
@@ -1031,7 +1078,94 @@ public class TransactionalCache<K extends Serializable, V extends Object>
             logger.debug("Processing after-commit");
         }
         
-        TransactionData txnData = getTransactionData();
+        final TransactionData txnData = getTransactionData();
+        // Block any further updates, e.g. by the post-commit work of other listeners
+        txnData.isClosed = true;
+        closeParallelCommitRegistration();
+        ParallelCommit parallelCommit = txnData.parallelCommit;
+        try
+        {
+            if (!txnData.isClearOn && !txnData.hasWrites && txnData.removedItemsCache.isEmpty())
+            {
+                // Only values read from the shared cache are held, so there is nothing to transfer
+                if (isDebugEnabled)
+                {
+                    logger.debug("Post-commit skipped for read-only use of cache.");
+                }
+                completeTransaction(txnData);
+            }
+            else if (parallelCommit != null && txnData.updatedItemsCache.size() >= parallelCommitThreshold)
+            {
+                final TransactionData transferData = copyForTransfer(txnData);
+                Runnable transfer = new Runnable()
+                {
+                    @Override
+                    public void run()
+                    {
+                        transferToSharedCache(transferData);
+                    }
+                };
+                if (parallelCommit.submit(commitExecutor, transfer))
+                {
+                    completeTransaction(txnData);
+                }
+                else
+                {
+                    transferToSharedCache(txnData);
+                }
+            }
+            else
+            {
+                transferToSharedCache(txnData);
+            }
+        }
+        finally
+        {
+            if (parallelCommit != null)
+            {
+                parallelCommit.complete();
+            }
+        }
+    }
+    
+    /**
+     * Copy the changes of the transaction for a transfer on another thread.  The copy has its own
+     * stats, which the transfer adds to the centralised cache stats when it completes.
+     */
+    private TransactionData copyForTransfer(TransactionData txnData)
+    {
+        TransactionData transferData = new TransactionData();
+        transferData.updatedItemsCache = new LRULinkedHashMap<Serializable, CacheBucket<V>>(txnData.updatedItemsCache.size() * 2);
+        transferData.updatedItemsCache.putAll(txnData.updatedItemsCache);
+        transferData.removedItemsCache = new HashSet<Serializable>(txnData.removedItemsCache);
+        transferData.lockedItemsCache = new HashSet<Serializable>(0);
+        transferData.hasWrites = txnData.hasWrites;
+        transferData.isClearOn = txnData.isClearOn;
+        transferData.isReadOnly = txnData.isReadOnly;
+        transferData.isClosed = true;
+        transferData.stats = new TransactionStats();
+        return transferData;
+    }
+    
+    /**
+     * Once the transaction starts to complete, caches bound from then on may not get their
+     * post-commit call and so may not take part in the parallel commit.
+     */
+    private void closeParallelCommitRegistration()
+    {
+        if (commitExecutor != null)
+        {
+            ParallelCommit.getOrBind().closeRegistration();
+        }
+    }
+    
+    /**
+     * Transfer the removals and updates of the transaction to the shared cache, in batches where
+     * the shared cache supports it.
+     */
+    @SuppressWarnings("unchecked")
+    private void transferToSharedCache(TransactionData txnData)
+    {
         try
         {
             if (txnData.isClearOn)
@@ -1053,14 +1187,7 @@ public class TransactionalCache<K extends Serializable, V extends Object>
             else
             {
                 // transfer any removed items
-                for (Serializable key : txnData.removedItemsCache)
-                {
-                    final long startNanos = System.nanoTime();
-                    sharedCache.remove(key);
-                    final long endNanos = System.nanoTime();
-                    TransactionStats stats = txnData.stats;
-                    stats.record(startNanos, endNanos, OpType.REMOVE);
-                }
+                removeSharedCacheValues(txnData.removedItemsCache, txnData.stats);
                 if (isDebugEnabled)
                 {
                     logger.debug("Removed " + txnData.removedItemsCache.size() + " values from shared cache in commit");
@@ -1069,6 +1196,8 @@ public class TransactionalCache<K extends Serializable, V extends Object>
             
             // transfer updates
             Set<Serializable> keys = (Set<Serializable>) txnData.updatedItemsCache.keySet();
+            Map<Serializable, ValueHolder<V>> puts = new LinkedHashMap<Serializable, ValueHolder<V>>(keys.size() * 2);
+            List<Serializable> removes = new ArrayList<Serializable>(16);
             for (Map.Entry<Serializable, CacheBucket<V>> entry : (Set<Map.Entry<Serializable, CacheBucket<V>>>) txnData.updatedItemsCache.entrySet())
             {
                 Serializable key = entry.getKey();
@@ -1077,7 +1206,7 @@ public class TransactionalCache<K extends Serializable, V extends Object>
                 {
                     bucket.doPostCommit(
                             sharedCache,
-                            key, this.isMutable, this.allowEqualsChecks, txnData.isReadOnly, txnData.stats);
+                            key, this.isMutable, this.allowEqualsChecks, txnData.isReadOnly, puts, removes);
                 }
                 catch (Exception e)
                 {
@@ -1094,9 +1223,11 @@ public class TransactionalCache<K extends Serializable, V extends Object>
                             e);
                 }
             }
+            removeSharedCacheValues(removes, txnData.stats);
+            putSharedCacheValues(puts, txnData.stats);
             if (isDebugEnabled)
             {
-                logger.debug("Post-commit called for " + keys.size() + " values.");
+                logger.debug("Post-commit called for " + keys.size() + " values: " + puts.size() + " written and " + removes.size() + " removed.");
             }
         }
         catch (Throwable e)
@@ -1105,13 +1236,88 @@ public class TransactionalCache<K extends Serializable, V extends Object>
         }
         finally
         {
-            removeCaches(txnData);
-            // Aggregate this transaction's stats with centralised cache stats.
-            if (cacheStatsEnabled)
+            completeTransaction(txnData);
+        }
+    }
+    
+    /**
+     * Close the transaction's data and aggregate its stats with the centralised cache stats.
+     */
+    private void completeTransaction(TransactionData txnData)
+    {
+        removeCaches(txnData);
+        if (cacheStatsEnabled)
+        {
+            cacheStats.add(name, txnData.stats);
+        }
+    }
+    
+    /**
+     * Remove values from the shared cache, using a single batch where the shared cache supports it.
+     */
+    @SuppressWarnings("unchecked")
+    private void removeSharedCacheValues(Collection<Serializable> keys, TransactionStats stats)
+    {
+        if (keys.isEmpty())
+        {
+            return;
+        }
+        final long startNanos = System.nanoTime();
+        if (sharedCache instanceof BulkSimpleCache)
+        {
+            ((BulkSimpleCache<Serializable, ValueHolder<V>>) sharedCache).removeAll(keys);
+        }
+        else
+        {
+            for (Serializable key : keys)
+            {
+                sharedCache.remove(key);
+            }
+        }
+        final long endNanos = System.nanoTime();
+        recordBatch(stats, startNanos, endNanos, OpType.REMOVE, keys.size());
+    }
+    
+    /**
+     * Write values to the shared cache, using a single batch where the shared cache supports it.
+     */
+    @SuppressWarnings("unchecked")
+    private void putSharedCacheValues(Map<Serializable, ValueHolder<V>> entries, TransactionStats stats)
+    {
+        if (entries.isEmpty())
+        {
+            return;
+        }
+        final long startNanos = System.nanoTime();
+        if (sharedCache instanceof BulkSimpleCache)
+        {
+            ((BulkSimpleCache<Serializable, ValueHolder<V>>) sharedCache).putAll(entries);
+        }
+        else
+        {
+            for (Map.Entry<Serializable, ValueHolder<V>> entry : entries.entrySet())
             {
-                cacheStats.add(name, txnData.stats);
+                sharedCache.put(entry.getKey(), entry.getValue());
             }
         }
+        final long endNanos = System.nanoTime();
+        recordBatch(stats, startNanos, endNanos, OpType.PUT, entries.size());
+    }
+    
+    /**
+     * Record a batch of operations as individual operations, each taking an equal share of the time.
+     */
+    private static void recordBatch(TransactionStats stats, long startNanos, long endNanos, OpType opType, int count)
+    {
+        if (stats == null)
+        {
+            return;
+        }
+        long share = (endNanos - startNanos) / count;
+        for (int i = 0; i < count; i++)
+        {
+            stats.record(startNanos, startNanos + share, opType);
+        }
     }
 
     /**
@@ -1122,6 +1328,7 @@ public class TransactionalCache<K extends Serializable, V extends Object>
     public void afterRollback()
     {
         TransactionData txnData = getTransactionData();
+        closeParallelCommitRegistration();
         try
         {
             if (txnData.isClearOn)
@@ -1143,14 +1350,7 @@ public class TransactionalCache<K extends Serializable, V extends Object>
             else
             {
                 // transfer any removed items
-                for (Serializable key : txnData.removedItemsCache)
-                {
-                    final long startNanos = System.nanoTime();
-                    sharedCache.remove(key);
-                    final long endNanos = System.nanoTime();
-                    TransactionStats stats = txnData.stats;
-                    stats.record(startNanos, endNanos, OpType.REMOVE);
-                }
+                removeSharedCacheValues(txnData.removedItemsCache, txnData.stats);
                 if (isDebugEnabled)
                 {
                     logger.debug("Removed " + txnData.removedItemsCache.size() + " values from shared cache in rollback");
@@ -1163,11 +1363,10 @@ public class TransactionalCache<K extends Serializable, V extends Object>
         }
         finally
         {
-            removeCaches(txnData);
-            // Aggregate this transaction's stats with centralised cache stats.
-            if (cacheStatsEnabled)
+            completeTransaction(txnData);
+            if (txnData.parallelCommit != null)
             {
-                cacheStats.add(name, txnData.stats);
+                txnData.parallelCommit.complete();
             }
         }
     }
@@ -1206,15 +1405,19 @@ public class TransactionalCache<K extends Serializable, V extends Object>
                 Serializable key,
                 boolean mutable, boolean allowEqualsCheck, boolean readOnly);
         /**
-         * Flush the current bucket to the shared cache as far as possible.
+         * Decide how the current bucket must be flushed to the shared cache.  The writes and removals
+         * are collected so that they can be applied to the shared cache in batches.
          * 
          * @param sharedCache       the cache to flush to
          * @param key               the key that the bucket was stored against
+         * @param puts              the values to write to the shared cache
+         * @param removes           the keys to remove from the shared cache
          */
         public void doPostCommit(
                 SimpleCache<Serializable, ValueHolder<BV>> sharedCache,
                 Serializable key,
-                boolean mutable, boolean allowEqualsCheck, boolean readOnly, TransactionStats stats);
+                boolean mutable, boolean allowEqualsCheck, boolean readOnly,
+                Map<Serializable, ValueHolder<BV>> puts, Collection<Serializable> removes);
     }
     
     /**
@@ -1244,13 +1447,14 @@ public class TransactionalCache<K extends Serializable, V extends Object>
         public void doPostCommit(
                 SimpleCache<Serializable, ValueHolder<BV>> sharedCache,
                 Serializable key,
-                boolean mutable, boolean allowEqualsCheck, boolean readOnly, TransactionStats stats)
+                boolean mutable, boolean allowEqualsCheck, boolean readOnly,
+                Map<Serializable, ValueHolder<BV>> puts, Collection<Serializable> removes)
         {
             ValueHolder<BV> sharedObjValueHolder = sharedCache.get(key);
             if (sharedObjValueHolder == null)
             {
                 // Nothing has changed, write it through
-                TransactionalCache.putSharedCacheValue(sharedCache, key, value, stats);
+                puts.put(key, new ValueHolder<BV>(value));
             }
             else if (!mutable)
             {
@@ -1267,7 +1471,7 @@ public class TransactionalCache<K extends Serializable, V extends Object>
             {
                 // The shared value moved on in a way that was not possible to
                 // validate.  We pessimistically remove the entry.
-                sharedCache.remove(key);
+                removes.add(key);
             }
         }
     }
@@ -1301,7 +1505,8 @@ public class TransactionalCache<K extends Serializable, V extends Object>
         public void doPostCommit(
                 SimpleCache<Serializable, ValueHolder<BV>> sharedCache,
                 Serializable key,
-                boolean mutable, boolean allowEqualsCheck, boolean readOnly, TransactionStats stats)
+                boolean mutable, boolean allowEqualsCheck, boolean readOnly,
+                Map<Serializable, ValueHolder<BV>> puts, Collection<Serializable> removes)
         {
             ValueHolder<BV> sharedObjValueHolder = sharedCache.get(key);
             if (sharedObjValueHolder == null)
@@ -1310,7 +1515,7 @@ public class TransactionalCache<K extends Serializable, V extends Object>
                 if (!mutable)
                 {
                     // We can assume that our value is correct because it's immutable
-                    TransactionalCache.putSharedCacheValue(sharedCache, key, value, stats);
+                    puts.put(key, new ValueHolder<BV>(value));
                 }
                 else
                 {
@@ -1331,13 +1536,13 @@ public class TransactionalCache<K extends Serializable, V extends Object>
             {
                 // The value in the cache did not change from what we observed before.
                 // Update the value.
-                TransactionalCache.putSharedCacheValue(sharedCache, key, value, stats);
+                puts.put(key, new ValueHolder<BV>(value));
             }
             else
             {
                 // The shared value moved on in a way that was not possible to
                 // validate.  We pessimistically remove the entry.
-                sharedCache.remove(key);
+                removes.add(key);
             }
         }
     }
@@ -1368,8 +1573,125 @@ public class TransactionalCache<K extends Serializable, V extends Object>
         public void doPostCommit(
                 SimpleCache<Serializable, ValueHolder<BV>> sharedCache,
                 Serializable key,
-                boolean mutable, boolean allowEqualsCheck, boolean readOnly, TransactionStats stats)
+                boolean mutable, boolean allowEqualsCheck, boolean readOnly,
+                Map<Serializable, ValueHolder<BV>> puts, Collection<Serializable> removes)
+        {
+        }
+    }
+    
+    /**
+     * Tracks the post-commit transfers handed to commit executors by the caches of a transaction.
+     * The transaction's caches complete their post-commit phase on the committing thread, one after
+     * the other; the last of them waits for all of the handed-off transfers.
+     */
+    private static class ParallelCommit
+    {
+        private final List<Future<?>> futures = new ArrayList<Future<?>>(8);
+        private int pendingCaches;
+        private boolean registrationClosed;
+        
+        /**
+         * @return      the instance bound to the current transaction or <tt>null</tt>
+         */
+        private static ParallelCommit get()
+        {
+            return (ParallelCommit) AlfrescoTransactionSupport.getResource(RESOURCE_KEY_PARALLEL_COMMIT);
+        }
+        
+        /**
+         * @return      the instance bound to the current transaction, which is bound if necessary
+         */
+        private static ParallelCommit getOrBind()
+        {
+            ParallelCommit parallelCommit = get();
+            if (parallelCommit == null)
+            {
+                parallelCommit = new ParallelCommit();
+                AlfrescoTransactionSupport.bindResource(RESOURCE_KEY_PARALLEL_COMMIT, parallelCommit);
+            }
+            return parallelCommit;
+        }
+        
+        /**
+         * Record a cache that will call {@link #complete()} after the transaction completes
+         * 
+         * @return      <tt>true</tt> if the cache was recorded or <tt>false</tt> if the transaction
+         *              has already started to complete
+         */
+        private boolean register()
+        {
+            if (registrationClosed)
+            {
+                return false;
+            }
+            pendingCaches++;
+            return true;
+        }
+        
+        /**
+         * Refuse any further caches; only caches registered up to now will call {@link #complete()}
+         */
+        private void closeRegistration()
         {
+            registrationClosed = true;
+        }
+        
+        /**
+         * @return      <tt>true</tt> if the work was handed off or <tt>false</tt> if the executor
+         *              rejected it and it must be done by the caller
+         */
+        private boolean submit(ExecutorService executor, Runnable transfer)
+        {
+            try
+            {
+                futures.add(executor.submit(transfer));
+                return true;
+            }
+            catch (RejectedExecutionException e)
+            {
+                return false;
+            }
+        }
+        
+        /**
+         * Record the completion of a cache's post-commit phase.  The last cache waits for all the
+         * submitted transfers and rethrows the first failure.
+         */
+        private void complete()
+        {
+            pendingCaches--;
+            if (pendingCaches > 0 || futures.isEmpty())
+            {
+                return;
+            }
+            Throwable failure = null;
+            for (Future<?> future : futures)
+            {
+                try
+                {
+                    future.get();
+                }
+                catch (ExecutionException e)
+                {
+                    if (failure == null)
+                    {
+                        failure = e.getCause();
+                    }
+                }
+                catch (InterruptedException e)
+                {
+                    Thread.currentThread().interrupt();
+                    if (failure == null)
+                    {
+                        failure = e;
+                    }
+                }
+            }
+            futures.clear();
+            if (failure != null)
+            {
+                throw new AlfrescoRuntimeException("Failed to transfer updates to shared cache", failure);
+            }
         }
     }
     
@@ -1380,11 +1702,14 @@ public class TransactionalCache<K extends Serializable, V extends Object>
         private Set<Serializable> removedItemsCache;
         private Set<Serializable> lockedItemsCache;
         private boolean haveIssuedFullWarning;
+        private boolean hasWrites;
         private boolean isClearOn;
         private boolean isClosed;
         private boolean isReadOnly;
         private boolean noSharedCacheRead;
         private TransactionStats stats;
+        /** The parallel commit that this cache is registered with, if any */
+        private ParallelCommit parallelCommit;
     }
     
     /**
@@ -50,6 +50,14 @@ public class CacheRegionKey implements Serializable
     {
         return cacheRegion + "." + cacheKey.toString();
     }
+    public String getCacheRegion()
+    {
+        return cacheRegion;
+    }
+    public Serializable getCacheKey()
+    {
+        return cacheKey;
+    }
     @Override
     public boolean equals(Object obj)
     {
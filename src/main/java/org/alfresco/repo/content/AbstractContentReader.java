@@ -34,9 +34,12 @@ import java.io.InputStream;
 import java.io.InputStreamReader;
 import java.io.OutputStream;
 import java.io.Reader;
+import java.nio.ByteBuffer;
 import java.nio.channels.Channels;
 import java.nio.channels.FileChannel;
 import java.nio.channels.ReadableByteChannel;
+import java.nio.channels.SeekableByteChannel;
+import java.nio.channels.WritableByteChannel;
 import java.util.ArrayList;
 import java.util.List;
 import java.util.Timer;
@@ -69,14 +72,17 @@ import org.springframework.util.FileCopyUtils;
  *   <li>{@link #createReader()} to read content from the repository</li>
  *   <li>{@link #getDirectReadableChannel()} to provide direct storage access</li>
  * </ul>
+ * Implementations that can hand out a <code>FileChannel</code> for {@link #transferTo(WritableByteChannel, long, long) transfers}
+ * should override {@link #getDirectTransferChannel()}.
  * 
  * @author Derek Hulley
  */
 @AlfrescoPublicApi
-public abstract class AbstractContentReader extends AbstractContentAccessor implements ContentReader
+public abstract class AbstractContentReader extends AbstractContentAccessor implements TransferableContentReader
 {
     private static final Log logger = LogFactory.getLog(AbstractContentReader.class);
     private static final Timer timer = new Timer(true); 
+    private static final int TRANSFER_BUFFER_SIZE = 64 * 1024;
     
     private List<ContentStreamListener> listeners;
     private ReadableByteChannel channel;
@@ -264,6 +270,21 @@ public abstract class AbstractContentReader extends AbstractContentAccessor impl
         return callbackChannel;
     }
 
+    /**
+     * Provides the channel used to {@link #transferTo(WritableByteChannel, long, long) transfer}
+     * content.  Content is copied through a buffer unless a <code>FileChannel</code> is returned.
+     * <p>
+     * The default implementation returns the {@link #getDirectReadableChannel() direct channel}.
+     * 
+     * @return Returns a channel from which content can be read
+     * @throws ContentIOException if the channel could not be opened or the underlying content
+     *      has disappeared
+     */
+    protected ReadableByteChannel getDirectTransferChannel() throws ContentIOException
+    {
+        return getDirectReadableChannel();
+    }
+
     /**
      * @see #getDirectReadableChannel()
      * @see #getCallbackReadableChannel(ReadableByteChannel, List)
@@ -431,13 +452,189 @@ public abstract class AbstractContentReader extends AbstractContentAccessor impl
         }
     }
 
+    /**
+     * {@inheritDoc}
+     * <p>
+     * Where the {@link #getDirectTransferChannel() transfer channel} is a <code>FileChannel</code> the
+     * copy is left to {@link FileChannel#transferTo(long, long, WritableByteChannel)}, otherwise the
+     * content is copied through a buffer.  Read {@link #setLimits(TransformationOptionLimits) limits}
+     * are honoured by copying from the {@link #getContentInputStream() input stream}.
+     */
+    public synchronized final long transferTo(WritableByteChannel target, long position, long count) throws ContentIOException
+    {
+        if (position < 0)
+        {
+            throw new IllegalArgumentException("Position may not be negative: " + position);
+        }
+        ReadableByteChannel source = null;
+        try
+        {
+            if (limits != null)
+            {
+                source = Channels.newChannel(getContentInputStream());
+            }
+            else
+            {
+                // this is a use-once object
+                if (channel != null)
+                {
+                    throw new RuntimeException("A channel has already been opened");
+                }
+                ReadableByteChannel directChannel = getDirectTransferChannel();
+                channel = getCallbackReadableChannel(directChannel, listeners);
+                super.channelOpened();
+                source = channel;
+            }
+            long transferred;
+            if (source instanceof FileChannel)
+            {
+                transferred = transferFromFile((FileChannel) source, target, position, count);
+            }
+            else
+            {
+                transferred = copy(source, target, position, count);
+            }
+            // done
+            if (logger.isDebugEnabled())
+            {
+                logger.debug("Transferred " + transferred + " bytes of content: " + this);
+            }
+            return transferred;
+        }
+        catch (IOException e)
+        {
+            throw new ContentIOException("Failed to transfer content to channel: \n" +
+                    "   accessor: " + this + "\n" +
+                    "   target: " + target,
+                    e);
+        }
+        finally
+        {
+            if (source != null)
+            {
+                try { source.close(); } catch (IOException e) {}
+            }
+        }
+    }
+    
+    private static long transferFromFile(FileChannel source, WritableByteChannel target, long position, long count) throws IOException
+    {
+        long end = (count < 0) ? source.size() : Math.min(source.size(), position + count);
+        long current = position;
+        while (current < end)
+        {
+            long transferred = source.transferTo(current, end - current, target);
+            if (transferred <= 0)
+            {
+                break;
+            }
+            current += transferred;
+        }
+        return Math.max(0L, current - position);
+    }
+    
+    private static long copy(ReadableByteChannel source, WritableByteChannel target, long position, long count) throws IOException
+    {
+        ByteBuffer buffer = ByteBuffer.allocate(TRANSFER_BUFFER_SIZE);
+        // Get to the start position
+        if (source instanceof SeekableByteChannel)
+        {
+            ((SeekableByteChannel) source).position(position);
+        }
+        else
+        {
+            long skipped = 0L;
+            while (skipped < position)
+            {
+                buffer.clear();
+                if (position - skipped < buffer.capacity())
+                {
+                    buffer.limit((int) (position - skipped));
+                }
+                int read = source.read(buffer);
+                if (read < 0)
+                {
+                    return 0L;
+                }
+                skipped += read;
+            }
+        }
+        // Copy the content
+        long copied = 0L;
+        while (count < 0 || copied < count)
+        {
+            buffer.clear();
+            if (count >= 0 && count - copied < buffer.capacity())
+            {
+                buffer.limit((int) (count - copied));
+            }
+            int read = source.read(buffer);
+            if (read < 0)
+            {
+                break;
+            }
+            buffer.flip();
+            while (buffer.hasRemaining())
+            {
+                target.write(buffer);
+            }
+            copied += read;
+        }
+        return copied;
+    }
+    
+    /**
+     * Transfer a range of any reader's content to the given channel, using
+     * {@link TransferableContentReader#transferTo(WritableByteChannel, long, long) zero-copy transfer}
+     * where the reader supports it and a buffered copy otherwise.  The target channel is not closed.
+     * 
+     * @param reader            the reader to get the content from
+     * @param target            the channel to write the content to
+     * @param position          the position in the content to start from
+     * @param count             the maximum number of bytes to transfer or <b>-1</b> for all
+     * @return                  the number of bytes transferred
+     * @throws ContentIOException if the content could not be read or written
+     */
+    public static long transferContent(ContentReader reader, WritableByteChannel target, long position, long count) throws ContentIOException
+    {
+        if (reader instanceof TransferableContentReader)
+        {
+            return ((TransferableContentReader) reader).transferTo(target, position, count);
+        }
+        ReadableByteChannel source = reader.getReadableChannel();
+        try
+        {
+            return copy(source, target, position, count);
+        }
+        catch (IOException e)
+        {
+            throw new ContentIOException("Failed to transfer content to channel: \n" +
+                    "   reader: " + reader + "\n" +
+                    "   target: " + target,
+                    e);
+        }
+        finally
+        {
+            try { source.close(); } catch (IOException e) {}
+        }
+    }
+
+    /**
+     * Copies the content to the given file using a {@link #transferTo(WritableByteChannel, long, long) transfer}
+     */
     public final void getContent(File file) throws ContentIOException
     {
         try
         {
-            InputStream is = getContentInputStream();
             FileOutputStream os = new FileOutputStream(file);
-            FileCopyUtils.copy(is, os);  // both streams are closed
+            try
+            {
+                transferTo(os.getChannel(), 0L, -1L);
+            }
+            finally
+            {
+                os.close();
+            }
             // done
         }
         catch (IOException e)
@@ -0,0 +1,57 @@
+/*
+ * #%L
+ * Alfresco Repository
+ * %%
+ * Copyright (C) 2005 - 2016 Alfresco Software Limited
+ * %%
+ * This file is part of the Alfresco software. 
+ * If the software was purchased under a paid Alfresco license, the terms of 
+ * the paid license agreement will prevail.  Otherwise, the software is 
+ * provided under the following open source license terms:
+ * 
+ * Alfresco is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * 
+ * Alfresco is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ * 
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with Alfresco. If not, see <http://www.gnu.org/licenses/>.
+ * #L%
+ */
+package org.alfresco.repo.content;
+
+import java.nio.channels.WritableByteChannel;
+
+import org.alfresco.service.cmr.repository.ContentIOException;
+import org.alfresco.service.cmr.repository.ContentReader;
+
+/**
+ * A reader that can deliver its content directly to a channel, allowing implementations to
+ * avoid copying the content through the heap.  Local file content, for example, is handed to
+ * the operating system using {@link java.nio.channels.FileChannel#transferTo(long, long, WritableByteChannel)}.
+ * <p>
+ * Like the other content access methods, this method may only be used once per reader.
+ * 
+ * @see AbstractContentReader#transferContent(ContentReader, WritableByteChannel, long, long)
+ * 
+ * @since 5.2
+ */
+public interface TransferableContentReader extends ContentReader
+{
+    /**
+     * Transfer a range of the content to the given channel.  The target channel is not closed.
+     * 
+     * @param target            the channel to write the content to
+     * @param position          the position in the content to start from
+     * @param count             the maximum number of bytes to transfer or <b>-1</b> to transfer
+     *                          all of the content after the position
+     * @return                  the number of bytes transferred
+     * @throws ContentIOException if the content could not be read or written
+     */
+    long transferTo(WritableByteChannel target, long position, long count) throws ContentIOException;
+}
@@ -25,6 +25,10 @@
  */
 package org.alfresco.repo.content.caching;
 
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
 import java.util.concurrent.locks.ReentrantReadWriteLock;
 import java.util.concurrent.locks.ReentrantReadWriteLock.ReadLock;
 import java.util.concurrent.locks.ReentrantReadWriteLock.WriteLock;
@@ -34,11 +38,13 @@ import org.alfresco.repo.content.ContentStore;
 import org.alfresco.repo.content.caching.quota.QuotaManagerStrategy;
 import org.alfresco.repo.content.caching.quota.UnlimitedQuotaStrategy;
 import org.alfresco.repo.content.filestore.FileContentStore;
+import org.alfresco.repo.content.filestore.FileContentWriter;
 import org.alfresco.repo.content.filestore.SpoofedTextContentReader;
 import org.alfresco.service.cmr.repository.ContentIOException;
 import org.alfresco.service.cmr.repository.ContentReader;
 import org.alfresco.service.cmr.repository.ContentStreamListener;
 import org.alfresco.service.cmr.repository.ContentWriter;
+import org.alfresco.util.PropertyCheck;
 import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
 import org.springframework.beans.factory.BeanNameAware;
@@ -57,6 +63,11 @@ import org.springframework.context.ApplicationEventPublisherAware;
  * <p>
  * This store handles the {@link FileContentStore#SPOOF_PROTOCOL} and can be used to wrap stores
  * that do not handle the protocol out of the box e.g. the S3 connector's store.
+ * <p>
+ * When {@link #setStreamingCacheFill(boolean) streamingCacheFill} is enabled, a cache miss does
+ * not wait for the content to be copied into the cache: the copy is done by the
+ * {@link #setCacheFillExecutor(Executor) cacheFillExecutor} and readers are served bytes as they
+ * arrive in the cache file (see {@link StreamingCacheFill}).
  * 
  * @author Matt Ward
  */
@@ -73,6 +84,10 @@ public class CachingContentStore implements ContentStore, ApplicationEventPublis
     private int maxCacheTries = 2;
     private ApplicationEventPublisher eventPublisher;
     private String beanName;
+    private boolean streamingCacheFill;
+    private Executor cacheFillExecutor;
+    /** Cache fills in progress, keyed by content URL */
+    private final ConcurrentMap<String, StreamingCacheFill> cacheFills = new ConcurrentHashMap<String, StreamingCacheFill>();
     
     static
     {
@@ -99,6 +114,10 @@ public class CachingContentStore implements ContentStore, ApplicationEventPublis
      */
     public void init()
     {
+        if (streamingCacheFill)
+        {
+            PropertyCheck.mandatory(this, "cacheFillExecutor", cacheFillExecutor);
+        }
         eventPublisher.publishEvent(new CachingContentStoreCreatedEvent(this));
     }
     
@@ -164,6 +183,16 @@ public class CachingContentStore implements ContentStore, ApplicationEventPublis
         {
             return new SpoofedTextContentReader(contentUrl);
         }
+        
+        // Content that is still being copied into the cache is read from the partial cache file
+        if (streamingCacheFill)
+        {
+            StreamingCacheFill fill = cacheFills.get(contentUrl);
+            if (fill != null)
+            {
+                return fill.getReader();
+            }
+        }
 
         // Use pool of locks - which one is determined by a hash of the URL.
         // This will stop the content from being read/cached multiple times from the backing store
@@ -206,22 +235,21 @@ public class CachingContentStore implements ContentStore, ApplicationEventPublis
                     return backingStoreReader;
                 }
                 
-                ContentReader reader = attemptCacheAndRead(url);
-                
-                if (reader != null)
+                if (streamingCacheFill && contentSize > 0L)
                 {
-                    boolean keepCacheFile = quota.afterWritingCacheFile(contentSize);
-                    if (keepCacheFile)
+                    ContentReader reader = attemptStreamingCacheFill(url, backingStoreReader, contentSize);
+                    if (reader != null)
                     {
                         return reader;
                     }
-                    else
-                    {
-                        // Quota strategy has requested cache file not to be kept.
-                        cache.deleteFile(url);
-                        cache.remove(url);
-                        return backingStore.getReader(url);
-                    }
+                    continue;
+                }
+                
+                ContentReader reader = attemptCacheAndRead(url);
+                
+                if (reader != null)
+                {
+                    return applyQuota(url, reader, contentSize);
                 }
             }
             // Have tried multiple times to cache the item and read it back from the cache
@@ -279,6 +307,137 @@ public class CachingContentStore implements ContentStore, ApplicationEventPublis
         return reader;
     }
     
+    /**
+     * Keep a newly written cache file if the quota strategy allows it.
+     * 
+     * @return the reader onto the cached content, or a reader onto the backing store if the cache file was discarded
+     */
+    private ContentReader applyQuota(String url, ContentReader cachedReader, long contentSize)
+    {
+        boolean keepCacheFile = quota.afterWritingCacheFile(contentSize);
+        if (keepCacheFile)
+        {
+            return cachedReader;
+        }
+        else
+        {
+            // Quota strategy has requested cache file not to be kept.
+            cache.deleteFile(url);
+            cache.remove(url);
+            return backingStore.getReader(url);
+        }
+    }
+    
+    /**
+     * Start copying content into a cache file in the background and return a reader that serves
+     * the content as it arrives.  If the content is already cached or being cached then a reader
+     * onto that content is returned.  Must be called while holding the write lock for the URL.
+     * 
+     * @param url URL to cache.
+     * @param backingStoreReader a reader onto the content in the backing store.
+     * @param contentSize the size of the content.
+     * @return A reader onto the content or null if unable to provide one.
+     */
+    private ContentReader attemptStreamingCacheFill(String url, ContentReader backingStoreReader, long contentSize)
+    {
+        StreamingCacheFill fill = cacheFills.get(url);
+        if (fill != null)
+        {
+            return fill.getReader();
+        }
+        if (cache.contains(url))
+        {
+            try
+            {
+                return cache.getReader(url);
+            }
+            catch (CacheMissException e)
+            {
+                cache.remove(url);
+            }
+        }
+        
+        ContentWriter cacheWriter = cache.getWriter(url);
+        if (!(cacheWriter instanceof FileContentWriter))
+        {
+            // Cannot read the partial cache file, so fill the cache through this writer before reading
+            try
+            {
+                cacheWriter.putContent(backingStoreReader);
+                return applyQuota(url, cache.getReader(url), contentSize);
+            }
+            catch (CacheMissException e)
+            {
+                cache.remove(url);
+                return null;
+            }
+        }
+        final StreamingCacheFill newFill = new StreamingCacheFill(url, backingStoreReader, (FileContentWriter) cacheWriter);
+        cacheFills.put(url, newFill);
+        try
+        {
+            cacheFillExecutor.execute(new Runnable()
+            {
+                @Override
+                public void run()
+                {
+                    try
+                    {
+                        newFill.run();
+                    }
+                    finally
+                    {
+                        cacheFillFinished(newFill);
+                    }
+                }
+            });
+        }
+        catch (RejectedExecutionException e)
+        {
+            cacheFills.remove(url);
+            // Nothing has been written, but the cache may already have created the temporary file
+            ((FileContentWriter) cacheWriter).getFile().delete();
+            if (log.isDebugEnabled())
+            {
+                log.debug("Cache fill executor rejected the cache fill - reading from backing store: " + url);
+            }
+            return backingStoreReader;
+        }
+        if (newFill.isDone() && !cache.contains(url))
+        {
+            // The executor ran the fill on this thread and the cache file was not kept
+            return backingStore.getReader(url);
+        }
+        return newFill.getReader();
+    }
+    
+    /**
+     * Apply the quota to a completed cache fill, or discard the cache file of a failed one.
+     */
+    private void cacheFillFinished(StreamingCacheFill fill)
+    {
+        String url = fill.getUrl();
+        WriteLock writeLock = readWriteLock(url).writeLock();
+        writeLock.lock();
+        try
+        {
+            if (!fill.isSucceeded() || !quota.afterWritingCacheFile(fill.getSize()))
+            {
+                // Readers that have already opened the cache file continue to read from it
+                if (cache.contains(url))
+                {
+                    cache.deleteFile(url);
+                    cache.remove(url);
+                }
+            }
+        }
+        finally
+        {
+            cacheFills.remove(url, fill);
+            writeLock.unlock();
+        }
+    }
+    
     @Override
     public ContentWriter getWriter(final ContentContext context)
     {
@@ -443,6 +602,30 @@ public class CachingContentStore implements ContentStore, ApplicationEventPublis
         this.maxCacheTries = maxCacheTries;
     }
 
+    /**
+     * @param streamingCacheFill    <tt>true</tt> to serve content to readers while it is being
+     *                              copied into the cache.  A {@link #setCacheFillExecutor(Executor)
+     *                              cacheFillExecutor} is required.  Default: <tt>false</tt>.
+     */
+    public void setStreamingCacheFill(boolean streamingCacheFill)
+    {
+        this.streamingCacheFill = streamingCacheFill;
+    }
+
+    public boolean isStreamingCacheFill()
+    {
+        return this.streamingCacheFill;
+    }
+
+    /**
+     * @param cacheFillExecutor     the executor that copies content into the cache when
+     *                              {@link #setStreamingCacheFill(boolean) streamingCacheFill} is enabled
+     */
+    public void setCacheFillExecutor(Executor cacheFillExecutor)
+    {
+        this.cacheFillExecutor = cacheFillExecutor;
+    }
+
     /**
      * Sets the QuotaManagerStrategy that will be used.
      * 
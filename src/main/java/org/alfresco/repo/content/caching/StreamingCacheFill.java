@@ -0,0 +1,422 @@
+/*
+ * #%L
+ * Alfresco Repository
+ * %%
+ * Copyright (C) 2005 - 2016 Alfresco Software Limited
+ * %%
+ * This file is part of the Alfresco software. 
+ * If the software was purchased under a paid Alfresco license, the terms of 
+ * the paid license agreement will prevail.  Otherwise, the software is 
+ * provided under the following open source license terms:
+ * 
+ * Alfresco is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * 
+ * Alfresco is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ * 
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with Alfresco. If not, see <http://www.gnu.org/licenses/>.
+ * #L%
+ */
+package org.alfresco.repo.content.caching;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.ClosedChannelException;
+import java.nio.channels.FileChannel;
+import java.nio.channels.NonWritableChannelException;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.channels.SeekableByteChannel;
+import java.nio.channels.WritableByteChannel;
+
+import org.alfresco.repo.content.AbstractContentReader;
+import org.alfresco.repo.content.filestore.FileContentWriter;
+import org.alfresco.service.cmr.repository.ContentIOException;
+import org.alfresco.service.cmr.repository.ContentReader;
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+
+/**
+ * Copies content from a backing store reader into a cache file while allowing any number of
+ * readers to consume the content as it arrives.
+ * <p>
+ * Readers provided by {@link #getReader()} block only until the bytes they need have been written
+ * to the cache file, so the time to the first byte does not depend on the size of the content.
+ * The channels provided by the readers are {@link SeekableByteChannel seekable}: a ranged read
+ * positions the channel and is served from the cache file as soon as the fill has passed that
+ * point.
+ * <p>
+ * The fill is {@link #run() run} once, typically by an executor.  The cache writer's own listeners
+ * add the cache file to the lookup table when it is closed; it is up to the caller to discard the
+ * cache file if the fill did not {@link #isSucceeded() succeed}.
+ * 
+ * @since 5.2
+ */
+public class StreamingCacheFill implements Runnable
+{
+    private static final Log log = LogFactory.getLog(StreamingCacheFill.class);
+    private static final int BUFFER_SIZE = 64 * 1024;
+    
+    private final String url;
+    private final ContentReader source;
+    private final FileContentWriter cacheWriter;
+    private final long expectedSize;
+    private final long lastModified;
+    
+    /* Guarded by this */
+    private File file;
+    private long filled;
+    private boolean complete;
+    private Throwable failure;
+    
+    /**
+     * @param url               the URL of the content being cached
+     * @param source            the backing store reader to copy the content from
+     * @param cacheWriter       the writer onto the (temporary) cache file
+     */
+    public StreamingCacheFill(String url, ContentReader source, FileContentWriter cacheWriter)
+    {
+        this.url = url;
+        this.source = source;
+        this.cacheWriter = cacheWriter;
+        this.expectedSize = source.getSize();
+        this.lastModified = source.getLastModified();
+        this.file = cacheWriter.getFile();
+    }
+    
+    public String getUrl()
+    {
+        return url;
+    }
+    
+    /**
+     * @return          the number of bytes copied into the cache file so far
+     */
+    public synchronized long getFilled()
+    {
+        return filled;
+    }
+    
+    /**
+     * @return          the size of the content; this is the size reported by the backing store
+     *                  until the fill completes
+     */
+    public synchronized long getSize()
+    {
+        return complete ? filled : expectedSize;
+    }
+    
+    /**
+     * @return          <tt>true</tt> if the whole of the content was copied into the cache file
+     */
+    public synchronized boolean isSucceeded()
+    {
+        return complete;
+    }
+    
+    /**
+     * @return          <tt>true</tt> if the fill has either completed or failed
+     */
+    public synchronized boolean isDone()
+    {
+        return complete || failure != null;
+    }
+    
+    /**
+     * Get a reader onto the content being cached.
+     * 
+     * @return          a reader that serves bytes as they are copied into the cache file
+     */
+    public ContentReader getReader()
+    {
+        return new FillReader(this);
+    }
+    
+    /**
+     * Copy the content from the backing store into the cache file.
+     */
+    @Override
+    public void run()
+    {
+        ReadableByteChannel in = null;
+        WritableByteChannel out = null;
+        try
+        {
+            in = source.getReadableChannel();
+            out = cacheWriter.getWritableChannel();
+            ByteBuffer buffer = ByteBuffer.allocate(BUFFER_SIZE);
+            while (in.read(buffer) >= 0)
+            {
+                buffer.flip();
+                int count = buffer.remaining();
+                while (buffer.hasRemaining())
+                {
+                    out.write(buffer);
+                }
+                buffer.clear();
+                synchronized (this)
+                {
+                    filled += count;
+                    notifyAll();
+                }
+            }
+            synchronized (this)
+            {
+                // Closing the writer renames the temporary file; readers opened from now on use the cache file
+                WritableByteChannel closing = out;
+                out = null;
+                closing.close();
+                file = cacheWriter.getFile();
+                complete = true;
+                notifyAll();
+            }
+            if (log.isDebugEnabled())
+            {
+                log.debug("Cached " + filled + " bytes of content: " + url);
+            }
+        }
+        catch (Throwable e)
+        {
+            synchronized (this)
+            {
+                failure = e;
+                notifyAll();
+            }
+            if (log.isWarnEnabled())
+            {
+                log.warn("Failed to copy content into the cache [url=" + url + ", file=" + file + "]", e);
+            }
+        }
+        finally
+        {
+            if (in != null)
+            {
+                try { in.close(); } catch (Throwable e) {}
+            }
+            if (out != null)
+            {
+                try { out.close(); } catch (Throwable e) {}
+            }
+        }
+    }
+    
+    /**
+     * Wait until the cache file holds the byte at the given position or the fill is complete.
+     * 
+     * @param position      the position in the content
+     * @return              the number of bytes available in the cache file
+     * @throws IOException  if the fill failed or the wait was interrupted
+     */
+    private synchronized long awaitAvailable(long position) throws IOException
+    {
+        while (filled <= position && !complete)
+        {
+            if (failure != null)
+            {
+                throw new IOException("Failed to copy content into the cache: " + url, failure);
+            }
+            try
+            {
+                wait();
+            }
+            catch (InterruptedException e)
+            {
+                Thread.currentThread().interrupt();
+                throw new InterruptedIOException("Interrupted while waiting for content to be cached: " + url);
+            }
+        }
+        return filled;
+    }
+    
+    /**
+     * Open the file currently holding the content.  The open file remains valid when the temporary
+     * file is renamed.
+     */
+    private synchronized FileChannel openFileChannel() throws IOException
+    {
+        return new RandomAccessFile(file, "r").getChannel();
+    }
+    
+    @Override
+    public String toString()
+    {
+        StringBuilder sb = new StringBuilder(128);
+        sb.append("StreamingCacheFill")
+          .append("[ url=").append(url)
+          .append(", filled=").append(getFilled())
+          .append(", size=").append(getSize())
+          .append(", done=").append(isDone())
+          .append("]");
+        return sb.toString();
+    }
+    
+    /**
+     * Reader onto content that is still being copied into the cache.
+     */
+    private static class FillReader extends AbstractContentReader
+    {
+        private final StreamingCacheFill fill;
+        
+        private FillReader(StreamingCacheFill fill)
+        {
+            super(fill.url);
+            this.fill = fill;
+        }
+        
+        @Override
+        public boolean exists()
+        {
+            return true;
+        }
+        
+        @Override
+        public long getSize()
+        {
+            return fill.getSize();
+        }
+        
+        @Override
+        public long getLastModified()
+        {
+            return fill.lastModified;
+        }
+        
+        @Override
+        protected ContentReader createReader() throws ContentIOException
+        {
+            return fill.getReader();
+        }
+        
+        @Override
+        protected ReadableByteChannel getDirectReadableChannel() throws ContentIOException
+        {
+            return new FillChannel(fill);
+        }
+    }
+    
+    /**
+     * Read-only channel that waits for bytes to be copied into the cache file before reading them.
+     */
+    private static class FillChannel implements SeekableByteChannel
+    {
+        private final StreamingCacheFill fill;
+        private FileChannel fileChannel;
+        private long position;
+        private boolean open = true;
+        
+        private FillChannel(StreamingCacheFill fill)
+        {
+            this.fill = fill;
+        }
+        
+        @Override
+        public synchronized int read(ByteBuffer dst) throws IOException
+        {
+            if (!open)
+            {
+                throw new ClosedChannelException();
+            }
+            if (!dst.hasRemaining())
+            {
+                return 0;
+            }
+            long available = fill.awaitAvailable(position);
+            if (position >= available)
+            {
+                // The fill is complete
+                return -1;
+            }
+            if (fileChannel == null)
+            {
+                fileChannel = fill.openFileChannel();
+            }
+            int limit = dst.limit();
+            long readable = available - position;
+            if (dst.remaining() > readable)
+            {
+                dst.limit(dst.position() + (int) readable);
+            }
+            try
+            {
+                int read = fileChannel.read(dst, position);
+                if (read > 0)
+                {
+                    position += read;
+                }
+                return read;
+            }
+            finally
+            {
+                dst.limit(limit);
+            }
+        }
+        
+        @Override
+        public int write(ByteBuffer src) throws IOException
+        {
+            throw new NonWritableChannelException();
+        }
+        
+        @Override
+        public synchronized long position() throws IOException
+        {
+            if (!open)
+            {
+                throw new ClosedChannelException();
+            }
+            return position;
+        }
+        
+        @Override
+        public synchronized SeekableByteChannel position(long newPosition) throws IOException
+        {
+            if (!open)
+            {
+                throw new ClosedChannelException();
+            }
+            if (newPosition < 0)
+            {
+                throw new IllegalArgumentException("Position may not be negative: " + newPosition);
+            }
+            position = newPosition;
+            return this;
+        }
+        
+        @Override
+        public long size() throws IOException
+        {
+            return fill.getSize();
+        }
+        
+        @Override
+        public SeekableByteChannel truncate(long size) throws IOException
+        {
+            throw new NonWritableChannelException();
+        }
+        
+        @Override
+        public synchronized boolean isOpen()
+        {
+            return open;
+        }
+        
+        @Override
+        public synchronized void close() throws IOException
+        {
+            open = false;
+            if (fileChannel != null)
+            {
+                fileChannel.close();
+                fileChannel = null;
+            }
+        }
+    }
+}
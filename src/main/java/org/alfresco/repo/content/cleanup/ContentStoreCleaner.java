@@ -29,7 +29,12 @@ import java.util.ArrayList;
 import java.util.Date;
 import java.util.List;
 import java.util.TreeMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
 
 import org.alfresco.error.AlfrescoRuntimeException;
 import org.alfresco.repo.domain.contentdata.ContentDataDAO;
@@ -37,6 +42,8 @@ import org.alfresco.repo.domain.contentdata.ContentDataDAO.ContentUrlHandler;
 import org.alfresco.repo.lock.JobLockService;
 import org.alfresco.repo.lock.JobLockService.JobLockRefreshCallback;
 import org.alfresco.repo.lock.LockAcquisitionException;
+import org.alfresco.repo.management.DynamicMBeanExportOperations;
+import org.alfresco.repo.management.DynamicMBeanRegistrar;
 import org.alfresco.repo.transaction.RetryingTransactionHelper.RetryingTransactionCallback;
 import org.alfresco.service.cmr.dictionary.DictionaryService;
 import org.alfresco.service.cmr.repository.ContentService;
@@ -44,6 +51,7 @@ import org.alfresco.service.namespace.NamespaceService;
 import org.alfresco.service.namespace.QName;
 import org.alfresco.service.transaction.TransactionService;
 import org.alfresco.util.PropertyCheck;
+import org.alfresco.util.TraceableThreadFactory;
 import org.alfresco.util.VmShutdownListener;
 import org.alfresco.util.VmShutdownListener.VmShutdownException;
 import org.apache.commons.logging.Log;
@@ -77,10 +85,17 @@ import org.apache.commons.logging.LogFactory;
  * Lazy cleanup protects the content for a given period (e.g. 7 days) giving plenty of
  * time for a backup to be taken; this allows hot backup without needing metadata-content
  * consistency to be enforced.
+ * <p/>
+ * <u><b>Parallel cleanup:</b></u> (since 5.2)<p/>
+ * When more than one {@link #setWorkerThreads(int) worker thread} is configured, the content
+ * URL IDs are split into {@link #setPartitionSize(long) partitions} that are cleaned
+ * concurrently.  Each partition is guarded by its own job lock, so several servers in a
+ * cluster can run the job at the same time and share the work; partitions locked by another
+ * server are skipped.
  * 
  * @author Derek Hulley
  */
-public class ContentStoreCleaner
+public class ContentStoreCleaner implements ContentStoreCleanerMBean
 {
     /*
      * TODO: Use the ScheduledJobLockExecuter, which borrows (and fixes) some of the code use here
@@ -126,11 +141,26 @@ public class ContentStoreCleaner
     private TransactionService transactionService;
     private int protectDays;
     private DeleteFailureAction deletionFailureAction;
+    private int workerThreads;
+    private long partitionSize;
+    private int batchSize;
+    private DynamicMBeanExportOperations mbeanExporter;
+    
+    private final AtomicBoolean running = new AtomicBoolean(false);
+    private volatile long runStartTime;
+    private volatile long runEndTime;
+    private final AtomicLong urlsDeleted = new AtomicLong();
+    private final AtomicLong deleteFailures = new AtomicLong();
+    private final AtomicLong partitionsCleaned = new AtomicLong();
+    private final AtomicLong partitionsSkipped = new AtomicLong();
     
     public ContentStoreCleaner()
     {
         this.protectDays = 7;
         this.deletionFailureAction = DeleteFailureAction.IGNORE;
+        this.workerThreads = 1;
+        this.partitionSize = 100000L;
+        this.batchSize = 1000;
     }
 
     /**
@@ -203,12 +233,54 @@ public class ContentStoreCleaner
         this.deletionFailureAction = deletionFailureAction;
     }
 
+    /**
+     * Set the number of threads that clean orphaned content.  The default of 1 cleans all
+     * orphans in sequence under a single cluster-wide lock; any larger value cleans
+     * {@link #setPartitionSize(long) partitions} of content URL IDs concurrently.
+     * 
+     * @param workerThreads     the number of cleaning threads (1 or greater)
+     */
+    public void setWorkerThreads(int workerThreads)
+    {
+        this.workerThreads = workerThreads;
+    }
+
+    /**
+     * Set the span of content URL IDs that make up a unit of parallel work.  The default is 100000.
+     * 
+     * @param partitionSize     the number of content URL IDs per partition (1 or greater)
+     */
+    public void setPartitionSize(long partitionSize)
+    {
+        this.partitionSize = partitionSize;
+    }
+
+    /**
+     * Set the number of orphaned content URLs removed in each transaction.  The default is 1000.
+     * 
+     * @param batchSize         the number of URLs removed per transaction (1 or greater)
+     */
+    public void setBatchSize(int batchSize)
+    {
+        this.batchSize = batchSize;
+    }
+
+    /**
+     * @param mbeanExporter     optional exporter used to publish the cleaner statistics over JMX
+     */
+    public void setMbeanExporter(DynamicMBeanExportOperations mbeanExporter)
+    {
+        this.mbeanExporter = mbeanExporter;
+    }
+
     /**
      * Initializes the cleaner.
      */
     public void init()
     {
         checkProperties();
+        
+        DynamicMBeanRegistrar.registerMBean(mbeanExporter, this, "Alfresco:Name=ContentStoreCleaner");
     }
     
     /**
@@ -234,6 +306,18 @@ public class ContentStoreCleaner
                     "Property 'protectDays' is set to 0.  " +
                     "Please ensure that your backup strategy is appropriate for this setting.");
         }
+        if (workerThreads < 1)
+        {
+            throw new AlfrescoRuntimeException("Property 'workerThreads' must be 1 or greater");
+        }
+        if (partitionSize < 1)
+        {
+            throw new AlfrescoRuntimeException("Property 'partitionSize' must be 1 or greater");
+        }
+        if (batchSize < 1)
+        {
+            throw new AlfrescoRuntimeException("Property 'batchSize' must be 1 or greater");
+        }
     }
     
     /**
@@ -285,7 +369,47 @@ public class ContentStoreCleaner
             logger.debug("Content store cleanup bypassed; the system is read-only.");
             return;
         }
-
+        if (!running.compareAndSet(false, true))
+        {
+            logger.debug("Content store cleanup already underway on this server.");
+            return;
+        }
+        
+        runStartTime = System.currentTimeMillis();
+        runEndTime = 0L;
+        urlsDeleted.set(0L);
+        deleteFailures.set(0L);
+        partitionsCleaned.set(0L);
+        partitionsSkipped.set(0L);
+        try
+        {
+            if (workerThreads > 1)
+            {
+                executeParallel();
+            }
+            else
+            {
+                executeSerial();
+            }
+        }
+        finally
+        {
+            runEndTime = System.currentTimeMillis();
+            running.set(false);
+        }
+        if (logger.isDebugEnabled())
+        {
+            logger.debug(
+                    "   Content store cleanup removed " + urlsDeleted.get() + " URLs in " +
+                    (runEndTime - runStartTime) + "ms (" + deleteFailures.get() + " delete failures).");
+        }
+    }
+    
+    /**
+     * Clean all orphans in sequence while holding the global cleanup lock
+     */
+    private void executeSerial()
+    {
         LockCallback lockCallback = new LockCallback();
         String lockToken = null;
         try
@@ -329,7 +453,7 @@ public class ContentStoreCleaner
         {
             public Long execute() throws Exception
             {
-                return cleanBatch(maxOrphanTime, 1000);
+                return cleanBatch(maxOrphanTime, null, null, batchSize);
             };
         };
         while (true)
@@ -353,6 +477,164 @@ public class ContentStoreCleaner
         // Done
     }
     
+    /**
+     * Split the content URL IDs into partitions and clean them using the configured number of threads
+     */
+    private void executeParallel()
+    {
+        final long maxOrphanTime = System.currentTimeMillis() - (protectDays * 24 * 3600 * 1000L);
+        RetryingTransactionCallback<Long> getMaxIdWork = new RetryingTransactionCallback<Long>()
+        {
+            public Long execute() throws Exception
+            {
+                return contentDataDAO.getMaxContentUrlId();
+            };
+        };
+        Long maxId = transactionService.getRetryingTransactionHelper().doInTransaction(getMaxIdWork, true);
+        if (maxId == null)
+        {
+            // There are no content URLs at all
+            return;
+        }
+        final long partitionCount = maxId / partitionSize + 1;
+        final AtomicLong nextPartition = new AtomicLong(0L);
+        if (logger.isDebugEnabled())
+        {
+            logger.debug(
+                    "Content store cleanup started: " + partitionCount + " partitions on " +
+                    workerThreads + " threads.");
+        }
+        
+        Runnable worker = new Runnable()
+        {
+            @Override
+            public void run()
+            {
+                long partition;
+                while ((partition = nextPartition.getAndIncrement()) < partitionCount)
+                {
+                    if (vmShutdownListener.isVmShuttingDown())
+                    {
+                        return;
+                    }
+                    try
+                    {
+                        cleanPartition(partition, maxOrphanTime);
+                    }
+                    catch (VmShutdownException e)
+                    {
+                        return;
+                    }
+                    catch (RuntimeException e)
+                    {
+                        // Leave the partition for the next run and carry on with the others
+                        logger.error("Failed to clean orphaned content in partition " + partition, e);
+                    }
+                }
+            }
+        };
+        
+        TraceableThreadFactory threadFactory = new TraceableThreadFactory();
+        threadFactory.setThreadDaemon(true);
+        threadFactory.setNamePrefix("ContentStoreCleaner");
+        ExecutorService executor = Executors.newFixedThreadPool(workerThreads, threadFactory);
+        try
+        {
+            List<Future<?>> futures = new ArrayList<Future<?>>(workerThreads);
+            for (int i = 0; i < workerThreads; i++)
+            {
+                futures.add(executor.submit(worker));
+            }
+            for (Future<?> future : futures)
+            {
+                future.get();
+            }
+        }
+        catch (InterruptedException e)
+        {
+            Thread.currentThread().interrupt();
+            throw new AlfrescoRuntimeException("Interrupted while waiting for content store cleanup", e);
+        }
+        catch (ExecutionException e)
+        {
+            throw new AlfrescoRuntimeException("Content store cleanup failed", e.getCause());
+        }
+        finally
+        {
+            executor.shutdownNow();
+        }
+    }
+    
+    /**
+     * Clean the orphans in one partition of content URL IDs, provided that no other server is
+     * working on it.
+     * 
+     * @param partition             the zero-based partition number
+     * @param maxOrphanTime         the max orphan time (exclusive)
+     */
+    private void cleanPartition(long partition, final long maxOrphanTime)
+    {
+        final Long minId = partition * partitionSize;
+        final Long maxIdExclusive = minId + partitionSize;
+        // Partition locks are children of the global lock and are therefore excluded by a serial run
+        QName lockQName = QName.createQName(
+                NamespaceService.SYSTEM_MODEL_1_0_URI,
+                LOCK_QNAME.getLocalName() + "." + partition);
+        String lockToken;
+        try
+        {
+            lockToken = jobLockService.getLock(lockQName, LOCK_TTL);
+        }
+        catch (LockAcquisitionException e)
+        {
+            partitionsSkipped.incrementAndGet();
+            if (logger.isDebugEnabled())
+            {
+                logger.debug("   Content store cleanup of partition " + partition + " already underway.");
+            }
+            return;
+        }
+        
+        RetryingTransactionCallback<Long> getAndDeleteWork = new RetryingTransactionCallback<Long>()
+        {
+            public Long execute() throws Exception
+            {
+                return cleanBatch(maxOrphanTime, minId, maxIdExclusive, batchSize);
+            };
+        };
+        try
+        {
+            while (true)
+            {
+                Long lastProcessedOrphanId = transactionService.getRetryingTransactionHelper().doInTransaction(getAndDeleteWork);
+                if (vmShutdownListener.isVmShuttingDown())
+                {
+                    throw new VmShutdownException();
+                }
+                if (lastProcessedOrphanId == null)
+                {
+                    break;
+                }
+                // Keep the partition for ourselves while there is still work to do
+                jobLockService.refreshLock(lockToken, lockQName, LOCK_TTL);
+            }
+            partitionsCleaned.incrementAndGet();
+        }
+        catch (LockAcquisitionException e)
+        {
+            // The lock expired; whatever is left will be picked up by the next run
+            partitionsSkipped.incrementAndGet();
+            if (logger.isDebugEnabled())
+            {
+                logger.debug("   Lost the lock for content store cleanup partition " + partition + ".");
+            }
+        }
+        finally
+        {
+            jobLockService.releaseLock(lockToken, lockQName);
+        }
+    }
+    
     private class LockCallback implements JobLockRefreshCallback
     {
         final AtomicBoolean running = new AtomicBoolean(true);
@@ -377,10 +659,12 @@ public class ContentStoreCleaner
     /**
      * 
      * @param maxTimeExclusive      the max orphan time (exclusive)
+     * @param minId                 the minimum content URL ID (inclusive) or <tt>null</tt>
+     * @param maxIdExclusive        the maximum content URL ID (exclusive) or <tt>null</tt>
      * @param batchSize             the maximum number of orphans to process
      * @return                      Returns the last processed orphan ID or <tt>null</tt> if nothing was processed
      */
-    private Long cleanBatch(final long maxTimeExclusive, final int batchSize)
+    private Long cleanBatch(final long maxTimeExclusive, Long minId, Long maxIdExclusive, final int batchSize)
     {
         // Get a bunch of cleanable URLs
         final TreeMap<Long, String> urlsById = new TreeMap<Long, String>();
@@ -393,7 +677,7 @@ public class ContentStoreCleaner
             }
         };
         // Get a bunch of cleanable URLs
-        contentDataDAO.getContentUrlsOrphaned(contentUrlHandler, maxTimeExclusive, batchSize);
+        contentDataDAO.getContentUrlsOrphaned(contentUrlHandler, maxTimeExclusive, minId, maxIdExclusive, batchSize);
         
         // Shortcut, if necessary
         if (urlsById.size() == 0)
@@ -415,6 +699,7 @@ public class ContentStoreCleaner
             boolean deleted = eagerContentStoreCleaner.deleteFromStores(contentUrl);
             if (!deleted)
             {
+                deleteFailures.incrementAndGet();
                 switch (deletionFailureAction)
                 {
                     case KEEP_URL:
@@ -428,7 +713,72 @@ public class ContentStoreCleaner
             }
         }
         
+        urlsDeleted.addAndGet(ids.size());
+        
         // Done
         return lastId;
     }
+
+    @Override
+    public boolean isRunning()
+    {
+        return running.get();
+    }
+
+    @Override
+    public Date getRunStartTime()
+    {
+        long startTime = runStartTime;
+        return startTime == 0L ? null : new Date(startTime);
+    }
+
+    @Override
+    public Date getRunEndTime()
+    {
+        long endTime = runEndTime;
+        return endTime == 0L ? null : new Date(endTime);
+    }
+
+    @Override
+    public int getWorkerThreads()
+    {
+        return workerThreads;
+    }
+
+    @Override
+    public long getUrlsDeleted()
+    {
+        return urlsDeleted.get();
+    }
+
+    @Override
+    public long getDeleteFailures()
+    {
+        return deleteFailures.get();
+    }
+
+    @Override
+    public long getPartitionsCleaned()
+    {
+        return partitionsCleaned.get();
+    }
+
+    @Override
+    public long getPartitionsSkipped()
+    {
+        return partitionsSkipped.get();
+    }
+
+    @Override
+    public double getUrlsPerSecond()
+    {
+        long startTime = runStartTime;
+        if (startTime == 0L)
+        {
+            return 0.0;
+        }
+        long endTime = running.get() ? System.currentTimeMillis() : runEndTime;
+        long elapsed = endTime - startTime;
+        return elapsed <= 0L ? 0.0 : urlsDeleted.get() * 1000.0 / elapsed;
+    }
 }
@@ -0,0 +1,83 @@
+/*
+ * #%L
+ * Alfresco Repository
+ * %%
+ * Copyright (C) 2005 - 2016 Alfresco Software Limited
+ * %%
+ * This file is part of the Alfresco software. 
+ * If the software was purchased under a paid Alfresco license, the terms of 
+ * the paid license agreement will prevail.  Otherwise, the software is 
+ * provided under the following open source license terms:
+ * 
+ * Alfresco is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * 
+ * Alfresco is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ * 
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with Alfresco. If not, see <http://www.gnu.org/licenses/>.
+ * #L%
+ */
+package org.alfresco.repo.content.cleanup;
+
+import java.util.Date;
+
+/**
+ * Management interface exposing the progress and throughput of the {@link ContentStoreCleaner}.
+ * The figures relate to the current run or, when the cleaner is idle, to the last run on this
+ * server.
+ * 
+ * @since 5.2
+ */
+public interface ContentStoreCleanerMBean
+{
+    /**
+     * @return          <tt>true</tt> if a cleanup run is in progress on this server
+     */
+    boolean isRunning();
+
+    /**
+     * @return          the start time of the current or last run or <tt>null</tt> if there has not been a run
+     */
+    Date getRunStartTime();
+
+    /**
+     * @return          the end time of the last run or <tt>null</tt> if a run is in progress or there has not been one
+     */
+    Date getRunEndTime();
+
+    /**
+     * @return          the number of worker threads used by the cleaner
+     */
+    int getWorkerThreads();
+
+    /**
+     * @return          the number of orphaned content URLs removed
+     */
+    long getUrlsDeleted();
+
+    /**
+     * @return          the number of orphaned binaries that could not be deleted from the stores
+     */
+    long getDeleteFailures();
+
+    /**
+     * @return          the number of content URL ID partitions cleaned by this server
+     */
+    long getPartitionsCleaned();
+
+    /**
+     * @return          the number of partitions skipped because another server held the partition lock
+     */
+    long getPartitionsSkipped();
+
+    /**
+     * @return          the average number of content URLs removed per second
+     */
+    double getUrlsPerSecond();
+}
@@ -243,6 +243,29 @@ public class FileContentReader extends AbstractContentReader
             throw new ContentIOException("Failed to open file channel: " + this, e);
         }
     }
+    
+    /**
+     * Transfers always use a <code>FileChannel</code>, regardless of the
+     * {@link #setAllowRandomAccess(boolean) random access} setting, so that the copy can be done
+     * by the operating system.  The channel is only used by this reader.
+     */
+    @Override
+    protected ReadableByteChannel getDirectTransferChannel() throws ContentIOException
+    {
+        try
+        {
+            // the file must exist
+            if (!file.exists())
+            {
+                throw new IOException("File does not exist: " + file);
+            }
+            return new RandomAccessFile(file, "r").getChannel();  // won't create it
+        }
+        catch (Throwable e)
+        {
+            throw new ContentIOException("Failed to open file channel: " + this, e);
+        }
+    }
 
     /**
      * @return Returns false as this is a reader
@@ -46,9 +46,9 @@ import java.util.concurrent.ExecutionException;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
 import java.util.concurrent.FutureTask;
+import java.util.concurrent.RejectedExecutionException;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.TimeoutException;
-import java.util.concurrent.atomic.AtomicInteger;
 
 import javax.activation.MimeType;
 
@@ -56,6 +56,7 @@ import org.alfresco.api.AlfrescoPublicApi;
 import org.alfresco.error.AlfrescoRuntimeException;
 import org.alfresco.model.ContentModel;
 import org.alfresco.repo.content.StreamAwareContentReaderProxy;
+import org.alfresco.repo.content.metadata.MetadataExtracterScheduler.ExtractionSlot;
 import org.alfresco.service.cmr.dictionary.DataTypeDefinition;
 import org.alfresco.service.cmr.dictionary.DictionaryService;
 import org.alfresco.service.cmr.dictionary.PropertyDefinition;
@@ -151,8 +152,8 @@ abstract public class AbstractMappingMetadataExtracter implements MetadataExtrac
     private Properties properties;
     private Map<String, MetadataExtracterLimits> mimetypeLimits;
     private ExecutorService executorService;
-    
-    private static final AtomicInteger CONCURRENT_EXTRACTIONS_COUNT = new AtomicInteger(0);
+    private MetadataExtracterScheduler scheduler;
+    private MetadataExtracterStatistics statistics;
 
     /**
      * Default constructor.  If this is called, then {@link #isSupported(String)} should
@@ -445,11 +446,12 @@ abstract public class AbstractMappingMetadataExtracter implements MetadataExtrac
      * Gets the <code>ExecutorService</code> to be used for timeout-aware
      * extraction.
      * <p>
-     * If no <code>ExecutorService</code> has been defined a default
-     * of <code>Executors.newCachedThreadPool()</code> is used during
+     * If neither an <code>ExecutorService</code> nor a {@link MetadataExtracterScheduler}
+     * has been defined a default of <code>Executors.newCachedThreadPool()</code> is used during
      * {@link AbstractMappingMetadataExtracter#init()}.
      * 
-     * @return the defined or default <code>ExecutorService</code>
+     * @return the defined or default <code>ExecutorService</code>, or <tt>null</tt> if
+     *         extractions are run by a shared scheduler
      */
     protected ExecutorService getExecutorService()
     {
@@ -458,7 +460,8 @@ abstract public class AbstractMappingMetadataExtracter implements MetadataExtrac
 
     /**
      * Sets the <code>ExecutorService</code> to be used for timeout-aware
-     * extraction.
+     * extraction. Ignored if a {@link #setScheduler(MetadataExtracterScheduler) scheduler}
+     * has been set.
      * 
      * @param executorService the <code>ExecutorService</code> for timeouts
      */
@@ -467,6 +470,16 @@ abstract public class AbstractMappingMetadataExtracter implements MetadataExtrac
         this.executorService = executorService;
     }
 
+    /**
+     * Sets the scheduler, shared by all extracters, used for timeout-aware extraction.
+     * 
+     * @param scheduler the shared <code>MetadataExtracterScheduler</code>
+     */
+    public void setScheduler(MetadataExtracterScheduler scheduler)
+    {
+        this.scheduler = scheduler;
+    }
+
     /**
      * Set the mapping from document metadata to system metadata.  It is possible to direct
      * an extracted document property to several system properties.  The conversion between
@@ -1028,10 +1041,20 @@ abstract public class AbstractMappingMetadataExtracter implements MetadataExtrac
                     "  Nothing will be extracted by: " + this);
         }
 
-        if (executorService == null)
+        if (scheduler == null)
         {
-            executorService = Executors.newCachedThreadPool();
+            if (executorService == null)
+            {
+                executorService = Executors.newCachedThreadPool();
+            }
+            scheduler = new MetadataExtracterScheduler();
+            scheduler.setExecutorService(executorService);
         }
+        else
+        {
+            executorService = null;
+        }
+        statistics = scheduler.getStatistics(beanName == null ? getClass().getSimpleName() : beanName);
         
         if (mimetypeLimits == null)
         {
@@ -1993,15 +2016,22 @@ abstract public class AbstractMappingMetadataExtracter implements MetadataExtrac
     private class ExtractRawCallable implements Callable<Map<String,Serializable>>
     {
         private ContentReader contentReader;
+        private ExtractionSlot slot;
         
-        public ExtractRawCallable(ContentReader reader)
+        public ExtractRawCallable(ContentReader reader, ExtractionSlot slot)
         {
             this.contentReader = reader;
+            this.slot = slot;
         }
         
         @Override
         public Map<String, Serializable> call() throws Exception
         {
+            if (!slot.start())
+            {
+                // Cancelled before it was run
+                return null;
+            }
             try
             {
                 return extractRaw(contentReader);
@@ -2010,6 +2040,10 @@ abstract public class AbstractMappingMetadataExtracter implements MetadataExtrac
             {
                 throw new ExtractRawCallableException(e);
             }
+            finally
+            {
+                slot.release();
+            }
         }
     }
     
@@ -2043,12 +2077,11 @@ abstract public class AbstractMappingMetadataExtracter implements MetadataExtrac
      * Calls the {@link AbstractMappingMetadataExtracter#extractRaw(ContentReader)} method
      * using the given limits.
      * <p>
-     * Currently the only limit supported by {@link MetadataExtracterLimits} is a timeout
-     * so this method uses {@link AbstractMappingMetadataExtracter#getExecutorService()}
-     * to execute a {@link FutureTask} with any timeout defined.
-     * <p>
-     * If no timeout limit is defined or is unlimited (-1),
-     * the <code>extractRaw</code> method is called directly.
+     * The extraction is run as a {@link FutureTask} by the {@link MetadataExtracterScheduler}
+     * and is cancelled if it runs for longer than the timeout. It is also given up, and taken out
+     * of the scheduler's queue, if it waits for longer than the timeout to start. It is rejected
+     * if the document is too large, if the limit on concurrent extractions of the mimetype has
+     * been reached or if the scheduler's queue is full.
      * 
      * @param reader        the document to extract the values from.  This stream provided by
      *                      the reader must be closed if accessed directly.
@@ -2064,39 +2097,50 @@ abstract public class AbstractMappingMetadataExtracter implements MetadataExtrac
         
         if (reader.getSize() > limits.getMaxDocumentSizeMB() * MEGABYTE_SIZE)
         {
+            statistics.recordRejection();
             throw new LimitExceededException("Max doc size exceeded " + limits.getMaxDocumentSizeMB() + " MB");
         }
         
-        synchronized (CONCURRENT_EXTRACTIONS_COUNT)
+        String mimetype = reader.getMimetype();
+        ExtractionSlot slot = scheduler.reserve(mimetype, limits.getMaxConcurrentExtractionsCount());
+        if (slot == null)
         {
-            if (logger.isDebugEnabled())
+            statistics.recordRejection();
+            throw new LimitExceededException("Reached concurrent extractions limit for " + mimetype + " - " + limits.getMaxConcurrentExtractionsCount());
+        }
+        
+        long startTime = System.currentTimeMillis();
+        try
+        {
+            proxiedReader = new StreamAwareContentReaderProxy(reader);
+            task = new FutureTask<Map<String,Serializable>>(new ExtractRawCallable(proxiedReader, slot));
+            try
             {
-                logger.debug("Concurrent extractions : " + CONCURRENT_EXTRACTIONS_COUNT.get());
+                scheduler.execute(task);
             }
-            if (CONCURRENT_EXTRACTIONS_COUNT.get() < limits.getMaxConcurrentExtractionsCount())
+            catch (RejectedExecutionException e)
             {
-                int totalDocCount = CONCURRENT_EXTRACTIONS_COUNT.incrementAndGet();
-                if (logger.isDebugEnabled())
-                {
-                    logger.debug("New extraction accepted. Concurrent extractions : " + totalDocCount);
-                }
+                slot.cancel();
+                statistics.recordRejection();
+                throw new LimitExceededException("Metadata extraction queue is full");
             }
-            else
+            statistics.recordStart();
+            // The timeout applies to the extraction itself, not to the time spent in the queue
+            if (!slot.awaitStart(limits.getTimeoutMs()))
             {
-                throw new LimitExceededException("Reached concurrent extractions limit - " + limits.getMaxConcurrentExtractionsCount());
+                throw new TimeoutException("Metadata extraction did not start within " + limits.getTimeoutMs() + " ms");
             }
-        }
-        
-        try
-        {
-            proxiedReader = new StreamAwareContentReaderProxy(reader);
-            task = new FutureTask<Map<String,Serializable>>(new ExtractRawCallable(proxiedReader));
-            getExecutorService().execute(task);
-            return task.get(limits.getTimeoutMs(), TimeUnit.MILLISECONDS);
+            long remainingMs = limits.getTimeoutMs() - (System.currentTimeMillis() - slot.getStartTime());
+            Map<String, Serializable> rawMetadata = task.get(Math.max(0L, remainingMs), TimeUnit.MILLISECONDS);
+            statistics.recordEnd(System.currentTimeMillis() - startTime, false);
+            return rawMetadata;
         }
         catch (TimeoutException e)
         {
             task.cancel(true);
+            slot.cancel();
+            scheduler.remove(task);
+            statistics.recordTimeout();
             if (null != proxiedReader)
             {
                 proxiedReader.release();
@@ -2107,10 +2151,14 @@ abstract public class AbstractMappingMetadataExtracter implements MetadataExtrac
         {
             // We were asked to stop
             task.cancel(true);
+            slot.cancel();
+            scheduler.remove(task);
+            statistics.recordEnd(System.currentTimeMillis() - startTime, true);
             return null;
         }
         catch (ExecutionException e)
         {
+            statistics.recordEnd(System.currentTimeMillis() - startTime, true);
             // Unwrap our cause and throw that
             Throwable cause = e.getCause();
             if (cause != null && cause instanceof ExtractRawCallableException)
@@ -2121,11 +2169,7 @@ abstract public class AbstractMappingMetadataExtracter implements MetadataExtrac
         }
         finally
         {
-            int totalDocCount = CONCURRENT_EXTRACTIONS_COUNT.decrementAndGet();
-            if (logger.isDebugEnabled())
-            {
-                logger.debug("Extraction finalized. Remaining concurrent extraction : " + totalDocCount);
-            }
+            slot.release();
         }
     }
     
@@ -0,0 +1,264 @@
+/*
+ * #%L
+ * Alfresco Repository
+ * %%
+ * Copyright (C) 2005 - 2016 Alfresco Software Limited
+ * %%
+ * This file is part of the Alfresco software. 
+ * If the software was purchased under a paid Alfresco license, the terms of 
+ * the paid license agreement will prevail.  Otherwise, the software is 
+ * provided under the following open source license terms:
+ * 
+ * Alfresco is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * 
+ * Alfresco is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ * 
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with Alfresco. If not, see <http://www.gnu.org/licenses/>.
+ * #L%
+ */
+package org.alfresco.repo.content.metadata;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import javax.management.ObjectName;
+
+import org.alfresco.repo.management.DynamicMBeanExportOperations;
+import org.alfresco.repo.management.DynamicMBeanRegistrar;
+import org.alfresco.util.PropertyCheck;
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+
+/**
+ * Runs timeout-aware metadata extractions for all {@link AbstractMappingMetadataExtracter extracters}
+ * on a single, normally bounded, thread pool.
+ * <p>
+ * The number of concurrent extractions is limited per source mimetype using the
+ * {@link MetadataExtracterLimits#getMaxConcurrentExtractionsCount() limits} of the extracter.
+ * An extraction that has timed out keeps its place until the thread running it actually stops,
+ * so extractions that ignore interrupts cannot pile up threads. If the pool rejects an extraction,
+ * because its queue is full, the extraction is rejected rather than being run without a timeout.
+ * The extraction timeout starts when the extraction starts, not while it waits in the queue, and an
+ * extraction that is given up before it starts is taken out of the queue.
+ * <p>
+ * The extraction counts of each extracter are published over JMX.
+ * 
+ * @since 5.2
+ */
+public class MetadataExtracterScheduler
+{
+    private static final Log logger = LogFactory.getLog(MetadataExtracterScheduler.class);
+
+    private ExecutorService executorService;
+    private DynamicMBeanExportOperations mbeanExporter;
+    private String objectName = "Alfresco:Name=MetadataExtracterStatistics";
+
+    private final ConcurrentMap<String, AtomicInteger> concurrentExtractions = new ConcurrentHashMap<String, AtomicInteger>();
+    private final ConcurrentMap<String, MetadataExtracterStatistics> statistics = new ConcurrentHashMap<String, MetadataExtracterStatistics>();
+
+    /**
+     * @param executorService   the pool shared by all extracters. It should reject work rather than
+     *                          run it on the calling thread when it is saturated.
+     */
+    public void setExecutorService(ExecutorService executorService)
+    {
+        this.executorService = executorService;
+    }
+
+    /**
+     * @param mbeanExporter     optional exporter used to publish the extracter statistics over JMX
+     */
+    public void setMbeanExporter(DynamicMBeanExportOperations mbeanExporter)
+    {
+        this.mbeanExporter = mbeanExporter;
+    }
+
+    /**
+     * @param objectName        the JMX object name prefix of the extracter statistics. The extracter
+     *                          name is added as the <code>Extracter</code> key.
+     */
+    public void setObjectName(String objectName)
+    {
+        this.objectName = objectName;
+    }
+
+    public void init()
+    {
+        PropertyCheck.mandatory(this, "executorService", executorService);
+    }
+
+    /**
+     * Gets the statistics of an extracter, publishing them the first time they are requested.
+     */
+    /* package */ MetadataExtracterStatistics getStatistics(String extracterName)
+    {
+        MetadataExtracterStatistics extracterStatistics = statistics.get(extracterName);
+        if (extracterStatistics == null)
+        {
+            MetadataExtracterStatistics newStatistics = new MetadataExtracterStatistics();
+            extracterStatistics = statistics.putIfAbsent(extracterName, newStatistics);
+            if (extracterStatistics == null)
+            {
+                extracterStatistics = newStatistics;
+                register(extracterName, extracterStatistics);
+            }
+        }
+        return extracterStatistics;
+    }
+
+    private void register(String extracterName, MetadataExtracterStatistics extracterStatistics)
+    {
+        String name = objectName + ",Extracter=" + ObjectName.quote(extracterName);
+        DynamicMBeanRegistrar.registerMBean(mbeanExporter, extracterStatistics, name);
+    }
+
+    /**
+     * Reserves a place for an extraction of the given mimetype.
+     * 
+     * @return          the reserved place or <tt>null</tt> if the limit for the mimetype has been reached
+     */
+    /* package */ ExtractionSlot reserve(String mimetype, int maxConcurrentExtractions)
+    {
+        String key = mimetype == null ? "" : mimetype;
+        AtomicInteger count = concurrentExtractions.get(key);
+        if (count == null)
+        {
+            AtomicInteger newCount = new AtomicInteger();
+            count = concurrentExtractions.putIfAbsent(key, newCount);
+            if (count == null)
+            {
+                count = newCount;
+            }
+        }
+        while (true)
+        {
+            int current = count.get();
+            if (current >= maxConcurrentExtractions)
+            {
+                if (logger.isDebugEnabled())
+                {
+                    logger.debug("Concurrent extractions of " + key + " : " + current + ", limit reached");
+                }
+                return null;
+            }
+            if (count.compareAndSet(current, current + 1))
+            {
+                if (logger.isDebugEnabled())
+                {
+                    logger.debug("New extraction accepted. Concurrent extractions of " + key + " : " + (current + 1));
+                }
+                return new ExtractionSlot(count);
+            }
+        }
+    }
+
+    /**
+     * Queues an extraction task on the shared pool.
+     * 
+     * @throws RejectedExecutionException if the pool is saturated
+     */
+    /* package */ void execute(Runnable task)
+    {
+        executorService.execute(task);
+    }
+
+    /**
+     * Takes a task that has been given up out of the pool's queue, so that it does not hold a place
+     * in the queue until a thread gets to it.
+     */
+    /* package */ void remove(Runnable task)
+    {
+        if (executorService instanceof ThreadPoolExecutor)
+        {
+            ((ThreadPoolExecutor) executorService).remove(task);
+        }
+    }
+
+    /**
+     * A reserved place for one extraction. It is held both by the caller waiting for the result and by
+     * the thread doing the extraction, and is given up once both have released it. If the extraction
+     * never starts, because it was cancelled or rejected, the caller releases it on behalf of the
+     * extraction thread by calling {@link #cancel()}.
+     */
+    /* package */ static class ExtractionSlot
+    {
+        private final AtomicInteger count;
+        private final AtomicInteger holders = new AtomicInteger(2);
+        private final AtomicBoolean started = new AtomicBoolean(false);
+        private final CountDownLatch running = new CountDownLatch(1);
+        private volatile long startTime;
+
+        private ExtractionSlot(AtomicInteger count)
+        {
+            this.count = count;
+        }
+
+        /**
+         * Called by the extraction thread before it starts.
+         * 
+         * @return          <tt>false</tt> if the extraction has already been cancelled and must not run
+         */
+        boolean start()
+        {
+            if (!started.compareAndSet(false, true))
+            {
+                return false;
+            }
+            startTime = System.currentTimeMillis();
+            running.countDown();
+            return true;
+        }
+
+        /**
+         * Called by the caller to wait for the extraction thread to {@link #start() start}.
+         * 
+         * @param timeoutMs the longest time to wait
+         * @return          <tt>true</tt> if the extraction has started
+         */
+        boolean awaitStart(long timeoutMs) throws InterruptedException
+        {
+            return running.await(timeoutMs, TimeUnit.MILLISECONDS);
+        }
+
+        /**
+         * @return          the time the extraction started, if it has
+         */
+        long getStartTime()
+        {
+            return startTime;
+        }
+
+        /**
+         * Called by the caller to stop an extraction that has not started from starting.
+         */
+        void cancel()
+        {
+            if (started.compareAndSet(false, true))
+            {
+                release();
+            }
+        }
+
+        void release()
+        {
+            if (holders.decrementAndGet() == 0)
+            {
+                count.decrementAndGet();
+            }
+        }
+    }
+}
@@ -0,0 +1,119 @@
+/*
+ * #%L
+ * Alfresco Repository
+ * %%
+ * Copyright (C) 2005 - 2016 Alfresco Software Limited
+ * %%
+ * This file is part of the Alfresco software. 
+ * If the software was purchased under a paid Alfresco license, the terms of 
+ * the paid license agreement will prevail.  Otherwise, the software is 
+ * provided under the following open source license terms:
+ * 
+ * Alfresco is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * 
+ * Alfresco is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ * 
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with Alfresco. If not, see <http://www.gnu.org/licenses/>.
+ * #L%
+ */
+package org.alfresco.repo.content.metadata;
+
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Counts the extractions of a single metadata extracter. Instances are created and published over
+ * JMX by the {@link MetadataExtracterScheduler}. Recording is lock free.
+ * 
+ * @since 5.2
+ */
+public class MetadataExtracterStatistics implements MetadataExtracterStatisticsMBean
+{
+    private final AtomicLong extractions = new AtomicLong();
+    private final AtomicLong failures = new AtomicLong();
+    private final AtomicLong timeouts = new AtomicLong();
+    private final AtomicLong rejections = new AtomicLong();
+    private final AtomicLong totalTime = new AtomicLong();
+    private final AtomicInteger activeExtractions = new AtomicInteger();
+
+    /* package */ void recordStart()
+    {
+        activeExtractions.incrementAndGet();
+    }
+
+    /* package */ void recordEnd(long timeMs, boolean failed)
+    {
+        activeExtractions.decrementAndGet();
+        extractions.incrementAndGet();
+        totalTime.addAndGet(timeMs);
+        if (failed)
+        {
+            failures.incrementAndGet();
+        }
+    }
+
+    /* package */ void recordTimeout()
+    {
+        activeExtractions.decrementAndGet();
+        timeouts.incrementAndGet();
+    }
+
+    /* package */ void recordRejection()
+    {
+        rejections.incrementAndGet();
+    }
+
+    @Override
+    public long getExtractions()
+    {
+        return extractions.get();
+    }
+
+    @Override
+    public long getFailures()
+    {
+        return failures.get();
+    }
+
+    @Override
+    public long getTimeouts()
+    {
+        return timeouts.get();
+    }
+
+    @Override
+    public long getRejections()
+    {
+        return rejections.get();
+    }
+
+    @Override
+    public int getActiveExtractions()
+    {
+        return activeExtractions.get();
+    }
+
+    @Override
+    public long getAverageTime()
+    {
+        long count = extractions.get();
+        return count == 0 ? 0 : totalTime.get() / count;
+    }
+
+    @Override
+    public void reset()
+    {
+        extractions.set(0);
+        failures.set(0);
+        timeouts.set(0);
+        rejections.set(0);
+        totalTime.set(0);
+    }
+}
@@ -0,0 +1,71 @@
+/*
+ * #%L
+ * Alfresco Repository
+ * %%
+ * Copyright (C) 2005 - 2016 Alfresco Software Limited
+ * %%
+ * This file is part of the Alfresco software. 
+ * If the software was purchased under a paid Alfresco license, the terms of 
+ * the paid license agreement will prevail.  Otherwise, the software is 
+ * provided under the following open source license terms:
+ * 
+ * Alfresco is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * 
+ * Alfresco is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ * 
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with Alfresco. If not, see <http://www.gnu.org/licenses/>.
+ * #L%
+ */
+package org.alfresco.repo.content.metadata;
+
+/**
+ * Management interface exposing the extraction counts and times of a single metadata extracter.
+ * 
+ * @since 5.2
+ */
+public interface MetadataExtracterStatisticsMBean
+{
+    /**
+     * @return          the number of extractions that completed, successfully or not
+     */
+    long getExtractions();
+
+    /**
+     * @return          the number of extractions that failed with an error
+     */
+    long getFailures();
+
+    /**
+     * @return          the number of extractions that were cancelled because they took too long
+     */
+    long getTimeouts();
+
+    /**
+     * @return          the number of extractions that were not started because the concurrency limit
+     *                  for the mimetype had been reached or the extraction queue was full
+     */
+    long getRejections();
+
+    /**
+     * @return          the number of extractions currently running or waiting to run
+     */
+    int getActiveExtractions();
+
+    /**
+     * @return          the average time in milliseconds, including time spent waiting in the queue,
+     *                  of extractions that completed
+     */
+    long getAverageTime();
+
+    /**
+     * Reset the counts
+     */
+    void reset();
+}
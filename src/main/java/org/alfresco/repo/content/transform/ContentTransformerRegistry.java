@@ -56,6 +56,10 @@ public class ContentTransformerRegistry
     private final List<ContentTransformer> transformers;
     private final List<ContentTransformer> allTransformers;
     
+    // Read only copy of transformers, replaced whenever it changes so that it may be read
+    // without locking and so that a change may be detected by comparing references.
+    private volatile List<ContentTransformer> transformersSnapshot;
+    
     private final TransformerSelector transformerSelector;
     
     /**
@@ -66,6 +70,7 @@ public class ContentTransformerRegistry
         this.transformerSelector = transformerSelector;
         this.transformers = new ArrayList<ContentTransformer>(70);
         this.allTransformers = new ArrayList<ContentTransformer>(70);
+        this.transformersSnapshot = Collections.emptyList();
     }
     
     /**
@@ -77,6 +82,7 @@ public class ContentTransformerRegistry
     {
         transformers.add(transformer);
         allTransformers.add(transformer);
+        updateSnapshot();
         // done
         if (logger.isDebugEnabled())
         {
@@ -101,16 +107,25 @@ public class ContentTransformerRegistry
      */
     public synchronized void removeTransformer(ContentTransformer transformer)
     {
-        transformers.remove(transformer);
+        if (transformers.remove(transformer))
+        {
+            updateSnapshot();
+        }
         allTransformers.remove(transformer);
     }
+    
+    private void updateSnapshot()
+    {
+        transformersSnapshot = Collections.unmodifiableList(new ArrayList<ContentTransformer>(transformers));
+    }
 
     /**
-     * @return a list of transformers that may be queried to check for applicability.
+     * @return a list of transformers that may be queried to check for applicability. The list
+     *         is not modified by later registrations; a new list is returned after a change.
      */
-    public synchronized List<ContentTransformer> getTransformers()
+    public List<ContentTransformer> getTransformers()
     {
-        return Collections.unmodifiableList(transformers);
+        return transformersSnapshot;
     }
     
     /**
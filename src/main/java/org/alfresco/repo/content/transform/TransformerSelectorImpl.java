@@ -28,9 +28,12 @@ package org.alfresco.repo.content.transform;
 import java.util.ArrayList;
 import java.util.Collections;
 import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
 
 import org.alfresco.service.cmr.repository.NodeRef;
 import org.alfresco.service.cmr.repository.TransformationOptions;
+import org.alfresco.util.Pair;
 
 /**
  * Default transformer selector implementation, which sorts by priority and then
@@ -45,7 +48,15 @@ import org.alfresco.service.cmr.repository.TransformationOptions;
  * as has been done for transformers that would not have been used in the past as
  * there existed one or more 'explicit' transformers (a concept not used by this
  * TransformerSelector). By default a transformer has a priority of {@code 10}.
- * Old 'Explicit' transformers have been given a priority of {@code 5}.
+ * Old 'Explicit' transformers have been given a priority of {@code 5}.<p>
+ * 
+ * The parts of the selection that only depend on configuration (priority, threshold
+ * count and supported/unsupported transformations) are held in an index keyed on the
+ * source and target mimetype pair, so that they are worked out once rather than for
+ * every transformer on every request. A change to the transformer properties restarts
+ * the Transformers subsystem and with it this selector, so the index only has to be
+ * discarded when the set of registered transformers changes. Whether a transformer is
+ * available, can handle the options and the source size are still checked per request.
  * 
  * @author Alan Davis
  */
@@ -54,6 +65,10 @@ public class TransformerSelectorImpl implements TransformerSelector
     private TransformerConfig transformerConfig;
     private ContentTransformerRegistry contentTransformerRegistry;
     private TransformerDebug transformerDebug;
+    
+    // Config derived candidates for each source and target mimetype pair, built from a
+    // snapshot of the registered transformers.
+    private volatile TransformerIndex index;
 
     public void setTransformerConfig(TransformerConfig transformerConfig)
     {
@@ -74,31 +89,79 @@ public class TransformerSelectorImpl implements TransformerSelector
     public List<ContentTransformer> selectTransformers(String sourceMimetype, long sourceSize,
             String targetMimetype, TransformationOptions options)
     {
-        // TODO cache results for reuse. This was a heavy operation in the past and still is.
-        
-        // TODO cache results of last few successful transforms as we tend to repeat some of them as part of compound transforms.
-        
-        List<ContentTransformer> transformers = contentTransformerRegistry.getTransformers();
-        List<TransformerSortData> possibleTransformers = findTransformers(transformers, sourceMimetype, sourceSize, targetMimetype, options);
+        List<TransformerCandidate> candidates = getCandidates(sourceMimetype, targetMimetype);
+        List<TransformerSortData> possibleTransformers = findTransformers(candidates, sourceMimetype, sourceSize, targetMimetype, options);
         possibleTransformers = blacklistTransformers(possibleTransformers, sourceMimetype, sourceSize, targetMimetype, options);
         return sortTransformers(possibleTransformers);
     }
 
     /**
-     * Returns the list of possible transformers for the transformation.
+     * Returns the transformers that the configuration allows to be used for the source and
+     * target mimetypes, in registration order. The index is rebuilt if the registered
+     * transformers have changed since it was created.
      */
-    private List<TransformerSortData> findTransformers(List<ContentTransformer> allTransformers, String sourceMimetype,
-            long sourceSize, String targetMimetype, TransformationOptions options)
+    private List<TransformerCandidate> getCandidates(String sourceMimetype, String targetMimetype)
     {
-        List<TransformerSortData> transformers = new ArrayList<TransformerSortData>(8);
+        List<ContentTransformer> transformers = contentTransformerRegistry.getTransformers();
+        TransformerIndex current = index;
+        if (current == null || current.transformers != transformers)
+        {
+            current = new TransformerIndex(transformers);
+            index = current;
+        }
+        
+        Pair<String, String> key = new Pair<String, String>(sourceMimetype, targetMimetype);
+        List<TransformerCandidate> candidates = current.candidates.get(key);
+        if (candidates == null)
+        {
+            candidates = indexCandidates(current.transformers, sourceMimetype, targetMimetype);
+            List<TransformerCandidate> existing = current.candidates.putIfAbsent(key, candidates);
+            if (existing != null)
+            {
+                candidates = existing;
+            }
+        }
+        return candidates;
+    }
+    
+    /**
+     * Works out the config derived values for each transformer, discarding those with a
+     * zero priority and those the supported/unsupported properties exclude.
+     */
+    private List<TransformerCandidate> indexCandidates(List<ContentTransformer> allTransformers,
+            String sourceMimetype, String targetMimetype)
+    {
+        List<TransformerCandidate> candidates = new ArrayList<TransformerCandidate>(8);
         for (ContentTransformer transformer : allTransformers)
         {
             int priority = transformerConfig.getPriority(transformer, sourceMimetype, targetMimetype);
+            
+            // AbstractContentTransformerLimits only uses the options to check supported
+            // transformations once it knows the transformer is configured to do them. Other
+            // implementations may not check the configuration at all, so are always kept.
             if (priority > 0 &&
-                transformer.isTransformable(sourceMimetype, sourceSize, targetMimetype, options) == true)
-                
+                (!(transformer instanceof AbstractContentTransformerLimits) ||
+                 transformerConfig.isSupportedTransformation(transformer, sourceMimetype, targetMimetype, null)))
             {
-                transformers.add(new TransformerSortData(transformer, sourceMimetype, targetMimetype, priority));
+                int threshold = transformerConfig.getThresholdCount(transformer, sourceMimetype, targetMimetype);
+                candidates.add(new TransformerCandidate(transformer, priority, threshold));
+            }
+        }
+        return Collections.unmodifiableList(candidates);
+    }
+
+    /**
+     * Returns the list of possible transformers for the transformation.
+     */
+    private List<TransformerSortData> findTransformers(List<TransformerCandidate> candidates, String sourceMimetype,
+            long sourceSize, String targetMimetype, TransformationOptions options)
+    {
+        List<TransformerSortData> transformers = new ArrayList<TransformerSortData>(8);
+        for (TransformerCandidate candidate : candidates)
+        {
+            if (candidate.transformer.isTransformable(sourceMimetype, sourceSize, targetMimetype, options) == true)
+            {
+                transformers.add(new TransformerSortData(candidate, sourceMimetype, targetMimetype));
             }
         }
         return transformers;
@@ -166,6 +229,38 @@ public class TransformerSelectorImpl implements TransformerSelector
         return transformers;
     }
     
+    /**
+     * Snapshot of the registered transformers and the candidates worked out from them.
+     */
+    private static class TransformerIndex
+    {
+        private final List<ContentTransformer> transformers;
+        private final ConcurrentMap<Pair<String, String>, List<TransformerCandidate>> candidates;
+        
+        TransformerIndex(List<ContentTransformer> transformers)
+        {
+            this.transformers = transformers;
+            this.candidates = new ConcurrentHashMap<Pair<String, String>, List<TransformerCandidate>>();
+        }
+    }
+    
+    /**
+     * A transformer with its configured priority and threshold count for a mimetype pair.
+     */
+    private static class TransformerCandidate
+    {
+        private final ContentTransformer transformer;
+        private final int priority;
+        private final int threshold;
+        
+        TransformerCandidate(ContentTransformer transformer, int priority, int threshold)
+        {
+            this.transformer = transformer;
+            this.priority = priority;
+            this.threshold = threshold;
+        }
+    }
+    
     private class TransformerSortData implements Comparable<TransformerSortData>
     {
         private final ContentTransformer transformer;
@@ -173,15 +268,14 @@ public class TransformerSelectorImpl implements TransformerSelector
         private final long averageTime;
         private final long count;
         
-        TransformerSortData(ContentTransformer transformer, String sourceMimetype, String targetMimetype, int priority)
+        TransformerSortData(TransformerCandidate candidate, String sourceMimetype, String targetMimetype)
         {
-            this.transformer = transformer;
-            this.priority = priority;
+            this.transformer = candidate.transformer;
+            this.priority = candidate.priority;
             
             TransformerStatistics stats = transformerConfig.getStatistics(transformer, sourceMimetype, targetMimetype, true);
-            int threashold = transformerConfig.getThresholdCount(transformer, sourceMimetype, targetMimetype);
             count = stats.getCount();
-            averageTime = (count < threashold) ? 0 : stats.getAverageTime();
+            averageTime = (count < candidate.threshold) ? 0 : stats.getAverageTime();
         }
 
         @Override
@@ -45,6 +45,15 @@ public interface ActivityFeedDAO extends ActivitiesDAO
     
     public long insertFeedEntry(ActivityFeedEntity activityFeed) throws SQLException;
     
+    /**
+     * Insert a batch of feed entries using multi-row inserts. Unlike {@link #insertFeedEntry(ActivityFeedEntity)},
+     * the generated ids are not set on the given entities.
+     * 
+     * @return the number of feed entries inserted
+     * @since 5.2
+     */
+    public int insertFeedEntries(List<ActivityFeedEntity> activityFeeds) throws SQLException;
+    
     public int deleteFeedEntries(Integer maxIdRange) throws SQLException;
     public int deleteFeedEntries(Date keepDate) throws SQLException;
     
@@ -26,7 +26,9 @@
 package org.alfresco.repo.domain.activities;
 
 import java.sql.SQLException;
+import java.util.Collection;
 import java.util.List;
+import java.util.Map;
 
 /**
  * Interface for user activity feed controls DAO service
@@ -39,5 +41,13 @@ public interface FeedControlDAO
     
     public List<FeedControlEntity> selectFeedControls(String userId) throws SQLException;
     
+    /**
+     * Select the feed controls for a set of users in bulk.
+     * 
+     * @return map of user id to feed controls - users without any feed controls map to an empty list
+     * @since 5.2
+     */
+    public Map<String, List<FeedControlEntity>> selectFeedControls(Collection<String> userIds) throws SQLException;
+    
     public long selectFeedControl(FeedControlEntity activityFeedControl) throws SQLException;
 }
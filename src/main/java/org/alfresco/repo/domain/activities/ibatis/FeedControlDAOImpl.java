@@ -26,13 +26,27 @@
 package org.alfresco.repo.domain.activities.ibatis;
 
 import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
 
 import org.alfresco.repo.domain.activities.FeedControlDAO;
 import org.alfresco.repo.domain.activities.FeedControlEntity;
 
 public class FeedControlDAOImpl extends ActivitiesDAOImpl implements FeedControlDAO
 {
+    // keep the "in" list well within the bind variable limits of the supported databases
+    private static final int SELECT_BATCH_SIZE = 500;
+    
+    private boolean userNamesAreCaseSensitive = false;
+    
+    public void setUserNamesAreCaseSensitive(boolean userNamesAreCaseSensitive)
+    {
+        this.userNamesAreCaseSensitive = userNamesAreCaseSensitive;
+    }
+    
     public long insertFeedControl(FeedControlEntity activityFeedControl) throws SQLException
     {
         template.insert("alfresco.activities.insert.insert_activity_feedcontrol", activityFeedControl);
@@ -53,6 +67,45 @@ public class FeedControlDAOImpl extends ActivitiesDAOImpl implements FeedControl
         return template.selectList("alfresco.activities.select_activity_feedcontrols_for_user", params);
     }
     
+    public Map<String, List<FeedControlEntity>> selectFeedControls(Collection<String> feedUserIds) throws SQLException
+    {
+        Map<String, List<FeedControlEntity>> feedControls = new HashMap<String, List<FeedControlEntity>>(feedUserIds.size() * 2);
+        // user ids that only differ in case share their feed controls, unless user names are case sensitive
+        Map<String, List<FeedControlEntity>> feedControlsByUser = new HashMap<String, List<FeedControlEntity>>(feedUserIds.size() * 2);
+        for (String feedUserId : feedUserIds)
+        {
+            String userKey = getUserKey(feedUserId);
+            List<FeedControlEntity> userFeedControls = feedControlsByUser.get(userKey);
+            if (userFeedControls == null)
+            {
+                userFeedControls = new ArrayList<FeedControlEntity>(0);
+                feedControlsByUser.put(userKey, userFeedControls);
+            }
+            feedControls.put(feedUserId, userFeedControls);
+        }
+        
+        List<String> userIds = new ArrayList<String>(feedControls.keySet());
+        for (int i = 0; i < userIds.size(); i += SELECT_BATCH_SIZE)
+        {
+            List<String> batch = userIds.subList(i, Math.min(i + SELECT_BATCH_SIZE, userIds.size()));
+            List<FeedControlEntity> results = template.selectList("alfresco.activities.select_activity_feedcontrols_for_users", batch);
+            for (FeedControlEntity feedControl : results)
+            {
+                List<FeedControlEntity> userFeedControls = feedControlsByUser.get(getUserKey(feedControl.getFeedUserId()));
+                if (userFeedControls != null)
+                {
+                    userFeedControls.add(feedControl);
+                }
+            }
+        }
+        return feedControls;
+    }
+    
+    private String getUserKey(String feedUserId)
+    {
+        return (userNamesAreCaseSensitive ? feedUserId : feedUserId.toLowerCase());
+    }
+    
     public long selectFeedControl(FeedControlEntity activityFeedControl) throws SQLException
     {
         Long id = template.selectOne("alfresco.activities.select_activity_feedcontrol", activityFeedControl);
@@ -30,12 +30,15 @@ import java.io.InputStream;
 import java.io.Serializable;
 import java.net.URL;
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.Date;
 import java.util.HashSet;
+import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
 import java.util.TreeSet;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.zip.CRC32;
 
 import org.alfresco.error.AlfrescoRuntimeException;
@@ -52,6 +55,7 @@ import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
 import org.springframework.dao.ConcurrencyFailureException;
 import org.springframework.dao.DataIntegrityViolationException;
+import org.springframework.util.StringUtils;
 
 /**
  * Abstract helper DAO for <b>alf_audit_XXX</b> tables.
@@ -66,6 +70,9 @@ public abstract class AbstractAuditDAOImpl implements AuditDAO
     private ContentService contentService;
     private ContentDataDAO contentDataDAO;
     protected PropertyValueDAO propertyValueDAO;
+    private Set<String> compactApplications = Collections.emptySet();
+    private Set<String> compactSearchKeys = Collections.emptySet();
+    private final Map<Long, Boolean> compactApplicationIds = new ConcurrentHashMap<Long, Boolean>();
     
     public void setContentService(ContentService contentService)
     {
@@ -86,6 +93,56 @@ public abstract class AbstractAuditDAOImpl implements AuditDAO
     {
         return this.propertyValueDAO;
     }
+
+    /**
+     * Set the applications whose audit values are stored in the compact form
+     * 
+     * @param compactApplications   a comma-separated list of audit application names
+     * @since 5.2
+     */
+    public void setCompactApplications(String compactApplications)
+    {
+        this.compactApplications = StringUtils.commaDelimitedListToSet(StringUtils.trimAllWhitespace(compactApplications));
+        this.compactApplications.remove("");
+        this.compactApplicationIds.clear();
+    }
+
+    /**
+     * Set the audit value paths that remain individually stored, and therefore searchable,
+     * when an application's values are stored in the compact form
+     * 
+     * @param compactSearchKeys     a comma-separated list of full audit paths
+     * @since 5.2
+     */
+    public void setCompactSearchKeys(String compactSearchKeys)
+    {
+        this.compactSearchKeys = StringUtils.commaDelimitedListToSet(StringUtils.trimAllWhitespace(compactSearchKeys));
+        this.compactSearchKeys.remove("");
+    }
+
+    /**
+     * @return                      Returns <tt>true</tt> if the application's values are stored in the compact form
+     */
+    private boolean isCompactApplication(Long applicationId)
+    {
+        if (compactApplications.isEmpty())
+        {
+            return false;
+        }
+        Boolean compact = compactApplicationIds.get(applicationId);
+        if (compact == null)
+        {
+            AuditApplicationEntity entity = getAuditApplicationById(applicationId);
+            if (entity == null)
+            {
+                throw new DataIntegrityViolationException("No audit application exists for ID " + applicationId);
+            }
+            String applicationName = (String) propertyValueDAO.getPropertyValueById(entity.getApplicationNameId()).getSecond();
+            compact = compactApplications.contains(applicationName);
+            compactApplicationIds.put(applicationId, compact);
+        }
+        return compact;
+    }
     
     /*
      * alf_audit_model
@@ -297,6 +354,10 @@ public abstract class AbstractAuditDAOImpl implements AuditDAO
         Long valuesId = null;
         if (values != null && values.size() > 0)
         {
+            if (isCompactApplication(applicationId))
+            {
+                values = CompactAuditValues.pack(values, compactSearchKeys);
+            }
             valuesId = propertyValueDAO.createProperty((Serializable)values);
         }
 
@@ -316,6 +377,59 @@ public abstract class AbstractAuditDAOImpl implements AuditDAO
         return entity.getId();
     }
     
+    /**
+     * {@inheritDoc}
+     * @since 5.2
+     */
+    public int createAuditEntries(List<AuditEntryInfo> entries)
+    {
+        if (entries.isEmpty())
+        {
+            return 0;
+        }
+        // Persist the data values of all the entries together
+        List<Serializable> valuesList = new ArrayList<Serializable>(entries.size());
+        for (AuditEntryInfo entry : entries)
+        {
+            Map<String, Serializable> values = entry.getValues();
+            if (values != null && values.size() > 0)
+            {
+                if (isCompactApplication(entry.getApplicationId()))
+                {
+                    values = CompactAuditValues.pack(values, compactSearchKeys);
+                }
+                valuesList.add((Serializable)values);
+            }
+        }
+        Iterator<Long> valuesIds = propertyValueDAO.createProperties(valuesList).iterator();
+
+        // Create the audit entries
+        List<AuditEntryEntity> entities = new ArrayList<AuditEntryEntity>(entries.size());
+        for (AuditEntryInfo entry : entries)
+        {
+            AuditEntryEntity entity = new AuditEntryEntity();
+            entity.setAuditApplicationId(entry.getApplicationId());
+            entity.setAuditTime(entry.getTime());
+            if (entry.getUsername() != null)
+            {
+                entity.setAuditUserId(propertyValueDAO.getOrCreatePropertyValue(entry.getUsername()).getFirst());
+            }
+            if (entry.getValues() != null && entry.getValues().size() > 0)
+            {
+                entity.setAuditValuesId(valuesIds.next());
+            }
+            entities.add(entity);
+        }
+        insertAuditEntries(entities);
+
+        // Done
+        if (logger.isDebugEnabled())
+        {
+            logger.debug("Created " + entities.size() + " new audit entries.");
+        }
+        return entities.size();
+    }
+    
     public int deleteAuditEntries(List<Long> auditEntryIds)
     {
         // Ensure that we don't have duplicates
@@ -347,8 +461,51 @@ public abstract class AbstractAuditDAOImpl implements AuditDAO
         return deleted;
     }
 
+    /**
+     * {@inheritDoc}
+     * @since 5.2
+     */
+    public int deleteOldestAuditEntries(Long applicationId, long toTime, int maxResults)
+    {
+        List<AuditEntryEntity> entries = getAuditEntriesBeforeTime(applicationId, toTime, maxResults);
+        if (entries.isEmpty())
+        {
+            return 0;
+        }
+        List<Long> entryIds = new ArrayList<Long>(entries.size());
+        List<Long> valuesIds = new ArrayList<Long>(entries.size());
+        for (AuditEntryEntity entry : entries)
+        {
+            entryIds.add(entry.getId());
+            if (entry.getAuditValuesId() != null)
+            {
+                valuesIds.add(entry.getAuditValuesId());
+            }
+        }
+        // The entries reference the value roots, so they go first
+        int deleted = deleteAuditEntries(entryIds);
+        int deletedValues = 0;
+        for (int i = 0; i < valuesIds.size(); i += 512)
+        {
+            deletedValues += propertyValueDAO.deleteProperties(valuesIds.subList(i, Math.min(i + 512, valuesIds.size())));
+        }
+        // Done
+        if (logger.isDebugEnabled())
+        {
+            logger.debug(
+                    "Deleted " + deleted + " audit entries and " + deletedValues + " value roots for application " +
+                    applicationId + " before " + new Date(toTime));
+        }
+        return deleted;
+    }
+
     protected abstract AuditEntryEntity createAuditEntry(Long applicationId, long time, Long usernameId, Long valuesId);
+    /**
+     * Insert the audit entries, sending the inserts to the database in batches
+     */
+    protected abstract void insertAuditEntries(List<AuditEntryEntity> entities);
     protected abstract int deleteAuditEntriesImpl(List<Long> auditEntryIds);
+    protected abstract List<AuditEntryEntity> getAuditEntriesBeforeTime(Long applicationId, long toTime, int maxResults);
     
     /*
      * Searches
@@ -430,6 +587,7 @@ public abstract class AbstractAuditDAOImpl implements AuditDAO
                         }
                     }
                 }
+                auditValues = CompactAuditValues.unpack(auditValues);
             }
             // Resolve the application and username
             String auditAppName = (String) propertyValueDAO.getPropertyValueById(row.getAuditAppNameId()).getSecond();
@@ -474,9 +632,97 @@ public abstract class AbstractAuditDAOImpl implements AuditDAO
                 parameters.getToTime(),
                 maxResults,
                 searchKey,
-                searchValue);
+                searchValue,
+                null);
+    }
+    
+    /**
+     * Row handler that rewrites the values of existing entries in the compact form
+     */
+    private class CompactingRowHandler extends AuditQueryRowHandler
+    {
+        private Long lastEntryId;
+        private int compacted;
+
+        private CompactingRowHandler()
+        {
+            super(null);
+        }
+
+        @Override
+        public boolean valuesRequired()
+        {
+            return true;
+        }
+
+        @SuppressWarnings("unchecked")
+        @Override
+        public void processResult(AuditQueryResult row)
+        {
+            lastEntryId = row.getAuditEntryId();
+            Long auditValuesId = row.getAuditValuesId();
+            if (auditValuesId == null)
+            {
+                return;
+            }
+            Map<String, Serializable> auditValues = row.getAuditValue();
+            if (auditValues == null)
+            {
+                Serializable value = propertyValueDAO.getPropertyById(auditValuesId);
+                if (!(value instanceof Map<?, ?>))
+                {
+                    return;
+                }
+                auditValues = (Map<String, Serializable>) value;
+            }
+            if (CompactAuditValues.isPacked(auditValues))
+            {
+                return;
+            }
+            Map<String, Serializable> packedValues = CompactAuditValues.pack(auditValues, compactSearchKeys);
+            if (!CompactAuditValues.isPacked(packedValues))
+            {
+                // Only searchable values: the entry stays as it is
+                return;
+            }
+            propertyValueDAO.updateProperty(auditValuesId, (Serializable) packedValues);
+            compacted++;
+        }
+    }
+
+    /**
+     * {@inheritDoc}
+     * @since 5.2
+     */
+    public Long compactAuditEntries(String applicationName, Long fromId, int maxResults)
+    {
+        CompactingRowHandler rowHandler = new CompactingRowHandler();
+        findAuditEntries(
+                rowHandler,
+                true,
+                applicationName,
+                null,
+                fromId,
+                null,
+                null,
+                null,
+                maxResults,
+                null,
+                null,
+                CompactAuditValues.KEY_COMPACT_VALUES);
+        // Done
+        if (logger.isDebugEnabled())
+        {
+            logger.debug(
+                    "Compacted " + rowHandler.compacted + " audit entries for " + applicationName +
+                    " from ID " + fromId + " to ID " + rowHandler.lastEntryId);
+        }
+        return rowHandler.lastEntryId;
     }
     
+    /**
+     * @param excludeKey            only find entries whose values have no value for this key (optional)
+     */
     protected abstract void findAuditEntries(
             AuditQueryRowHandler rowHandler,
             boolean forward,
@@ -484,5 +730,6 @@ public abstract class AbstractAuditDAOImpl implements AuditDAO
             Long fromId, Long toId,
             Long fromTime, Long toTime,
             int maxResults,
-            String searchKey, Serializable searchValue);
+            String searchKey, Serializable searchValue,
+            String excludeKey);
 }
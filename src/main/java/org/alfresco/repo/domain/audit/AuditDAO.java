@@ -110,6 +110,58 @@ public interface AuditDAO
         }
     }
     
+    /**
+     * An audit entry to be created by {@link AuditDAO#createAuditEntries(List)}.
+     * 
+     * @since 5.2
+     */
+    public static class AuditEntryInfo implements Serializable
+    {
+        private static final long serialVersionUID = 4079632916432514125L;
+        
+        private final Long applicationId;
+        private final long time;
+        private final String username;
+        private final Map<String, Serializable> values;
+        
+        public AuditEntryInfo(Long applicationId, long time, String username, Map<String, Serializable> values)
+        {
+            this.applicationId = applicationId;
+            this.time = time;
+            this.username = username;
+            this.values = values;
+        }
+        
+        @Override
+        public String toString()
+        {
+            StringBuilder sb = new StringBuilder();
+            sb.append("AuditEntryInfo ")
+              .append("[ applicationId=").append(applicationId)
+              .append(", time=").append(time)
+              .append(", username=").append(username)
+              .append("]");
+            return sb.toString();
+        }
+        
+        public Long getApplicationId()
+        {
+            return applicationId;
+        }
+        public long getTime()
+        {
+            return time;
+        }
+        public String getUsername()
+        {
+            return username;
+        }
+        public Map<String, Serializable> getValues()
+        {
+            return values;
+        }
+    }
+    
     /**
      * Creates a new audit model entry or finds an existing one
      * 
@@ -197,6 +249,20 @@ public interface AuditDAO
      */
     int deleteAuditEntries(List<Long> auditEntryIds);
     
+    /**
+     * Delete an application's oldest audit entries recorded before a given time, together with
+     * their audited values.  Unlike the other delete methods, this leaves no orphaned property
+     * roots behind for the property cleanup to find.
+     * 
+     * @param applicationId     the ID of the audit application
+     * @param toTime            the time (exclusive) before which entries are deleted
+     * @param maxResults        the maximum number of entries to delete
+     * @return                  Returns the number of entries deleted
+     * 
+     * @since 5.2
+     */
+    int deleteOldestAuditEntries(Long applicationId, long toTime, int maxResults);
+    
     /**
      * Create a new audit entry with the given map of values.
      * 
@@ -210,6 +276,17 @@ public interface AuditDAO
      */
     Long createAuditEntry(Long applicationId, long time, String username, Map<String, Serializable> values);
     
+    /**
+     * Create several audit entries, as {@link #createAuditEntry(Long, long, String, Map)} does for
+     * each of them.  The audited values and the entries are sent to the database in batches.
+     * 
+     * @param entries           the entries to create
+     * @return                  Returns the number of entries created
+     * 
+     * @since 5.2
+     */
+    int createAuditEntries(List<AuditEntryInfo> entries);
+    
     /**
      * Find audit entries using the given parameters, any of which may be null
      * 
@@ -223,4 +300,18 @@ public interface AuditDAO
             AuditQueryCallback callback,
             org.alfresco.service.cmr.audit.AuditQueryParameters parameters,
             int maxResults);
+    
+    /**
+     * Rewrite the values of existing audit entries in the compact form, in ascending ID order.
+     * Only entries that are not compact yet are selected.
+     * 
+     * @param applicationName   the name of the audit application
+     * @param fromId            the ID of the first entry to examine (<tt>null</tt> to start at the beginning)
+     * @param maxResults        the maximum number of entries to examine (must be greater than 0)
+     * @return                  Returns the ID of the last entry examined or <tt>null</tt> if there were no
+     *                          entries left to compact
+     * 
+     * @since 5.2
+     */
+    Long compactAuditEntries(String applicationName, Long fromId, int maxResults);
 }
\ No newline at end of file
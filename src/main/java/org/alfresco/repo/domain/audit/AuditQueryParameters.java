@@ -44,6 +44,7 @@ public class AuditQueryParameters
     private Long auditToTime;
     private Long searchKeyId;
     private Long searchValueId;
+    private Long excludeKeyId;
     
     public AuditQueryParameters()
     {
@@ -63,6 +64,7 @@ public class AuditQueryParameters
           .append(", auditToTime=").append(auditToTime == null ? null : new Date(auditToTime))
           .append(", searchKeyId=").append(searchKeyId)
           .append(", searchValueId=").append(searchValueId)
+          .append(", excludeKeyId=").append(excludeKeyId)
           .append("]");
         return sb.toString();
     }
@@ -161,6 +163,20 @@ public class AuditQueryParameters
     {
         this.searchValueId = searchValueId;
     }
+
+    /**
+     * @return              the ID of a key that the entries' values must <b>not</b> contain
+     * @since 5.2
+     */
+    public Long getExcludeKeyId()
+    {
+        return excludeKeyId;
+    }
+
+    public void setExcludeKeyId(Long excludeKeyId)
+    {
+        this.excludeKeyId = excludeKeyId;
+    }
     
     /**
      * @return              Returns <tt>true</tt> if this object includes a key- or value-based search
@@ -0,0 +1,128 @@
+/*
+ * #%L
+ * Alfresco Repository
+ * %%
+ * Copyright (C) 2005 - 2016 Alfresco Software Limited
+ * %%
+ * This file is part of the Alfresco software. 
+ * If the software was purchased under a paid Alfresco license, the terms of 
+ * the paid license agreement will prevail.  Otherwise, the software is 
+ * provided under the following open source license terms:
+ * 
+ * Alfresco is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * 
+ * Alfresco is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ * 
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with Alfresco. If not, see <http://www.gnu.org/licenses/>.
+ * #L%
+ */
+package org.alfresco.repo.domain.audit;
+
+import java.io.Serializable;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Holder for the audit values that are stored as a single serialized property rather than
+ * being decomposed into one <b>alf_prop_link</b> row per value.
+ * <p/>
+ * A compact audit value map keeps the searchable keys as ordinary map entries, so that
+ * key and value searches continue to find the entry, and places everything else in an
+ * instance of this class held against {@link #KEY_COMPACT_VALUES}.  The property layer only
+ * decomposes maps and collections; this class is neither and has no type mapping or
+ * converter, so it is persisted whole as a serializable value.
+ * 
+ * @since 5.2
+ */
+public final class CompactAuditValues implements Serializable
+{
+    private static final long serialVersionUID = 7640813725098327712L;
+
+    /** The map key holding the packed values */
+    public static final String KEY_COMPACT_VALUES = "$compact";
+
+    private final HashMap<String, Serializable> values;
+
+    private CompactAuditValues(HashMap<String, Serializable> values)
+    {
+        this.values = values;
+    }
+
+    /**
+     * Pack audit values, leaving only the given searchable keys as individual entries.
+     * 
+     * @param values            the audit values keyed by full path
+     * @param searchKeys        the keys that must remain searchable
+     * @return                  Returns the map to persist
+     */
+    public static Map<String, Serializable> pack(Map<String, Serializable> values, Collection<String> searchKeys)
+    {
+        HashMap<String, Serializable> packed = new HashMap<String, Serializable>(values.size());
+        HashMap<String, Serializable> result = new HashMap<String, Serializable>(searchKeys.size() * 2 + 2);
+        for (Map.Entry<String, Serializable> entry : values.entrySet())
+        {
+            if (searchKeys.contains(entry.getKey()))
+            {
+                result.put(entry.getKey(), entry.getValue());
+            }
+            else
+            {
+                packed.put(entry.getKey(), entry.getValue());
+            }
+        }
+        if (!packed.isEmpty())
+        {
+            result.put(KEY_COMPACT_VALUES, new CompactAuditValues(packed));
+        }
+        return result;
+    }
+
+    /**
+     * @param values            the persisted audit values
+     * @return                  Returns <tt>true</tt> if the values are in the compact form
+     */
+    public static boolean isPacked(Map<String, Serializable> values)
+    {
+        return values.get(KEY_COMPACT_VALUES) instanceof CompactAuditValues;
+    }
+
+    /**
+     * Restore the audit values as they were recorded.  Values that were not packed are
+     * returned unchanged.
+     * 
+     * @param values            the persisted audit values
+     * @return                  Returns the audit values keyed by full path
+     */
+    public static Map<String, Serializable> unpack(Map<String, Serializable> values)
+    {
+        if (!isPacked(values))
+        {
+            return values;
+        }
+        CompactAuditValues compact = (CompactAuditValues) values.get(KEY_COMPACT_VALUES);
+        Map<String, Serializable> result = new HashMap<String, Serializable>(values.size() + compact.values.size());
+        result.putAll(compact.values);
+        for (Map.Entry<String, Serializable> entry : values.entrySet())
+        {
+            if (!KEY_COMPACT_VALUES.equals(entry.getKey()))
+            {
+                result.put(entry.getKey(), entry.getValue());
+            }
+        }
+        return result;
+    }
+
+    @Override
+    public String toString()
+    {
+        return "CompactAuditValues" + values;
+    }
+}
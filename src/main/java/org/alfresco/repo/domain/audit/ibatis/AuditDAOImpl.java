@@ -40,9 +40,13 @@ import org.alfresco.repo.domain.audit.AuditQueryParameters;
 import org.alfresco.repo.domain.audit.AuditQueryResult;
 import org.alfresco.repo.domain.propval.PropertyValueDAO.PropertyFinderCallback;
 import org.alfresco.util.Pair;
+import org.apache.ibatis.exceptions.PersistenceException;
+import org.apache.ibatis.session.ExecutorType;
 import org.apache.ibatis.session.RowBounds;
+import org.apache.ibatis.session.SqlSession;
 import org.mybatis.spring.SqlSessionTemplate;
 import org.springframework.dao.ConcurrencyFailureException;
+import org.springframework.dao.DataAccessException;
 
 /**
  * iBatis-specific implementation of the DAO for <b>alf_audit_XXX</b> tables.
@@ -62,6 +66,7 @@ public class AuditDAOImpl extends AbstractAuditDAOImpl
     
     private static final String DELETE_ENTRIES = "alfresco.audit.delete_AuditEntries";
     private static final String DELETE_ENTRIES_BY_ID = "alfresco.audit.delete_AuditEntriesById";
+    private static final String SELECT_ENTRIES_BEFORE_TIME = "alfresco.audit.select_AuditEntriesBeforeTime";
     private static final String INSERT_ENTRY = "alfresco.audit.insert.insert_AuditEntry";
     
     @SuppressWarnings("unused")
@@ -198,6 +203,15 @@ public class AuditDAOImpl extends AbstractAuditDAOImpl
         return template.delete(DELETE_ENTRIES_BY_ID, params);
     }
 
+    @Override
+    protected List<AuditEntryEntity> getAuditEntriesBeforeTime(Long applicationId, long toTime, int maxResults)
+    {
+        AuditDeleteParameters params = new AuditDeleteParameters();
+        params.setAuditApplicationId(applicationId);
+        params.setAuditToTime(toTime);
+        return template.selectList(SELECT_ENTRIES_BEFORE_TIME, params, new RowBounds(0, maxResults));
+    }
+
     @Override
     protected AuditEntryEntity createAuditEntry(Long applicationId, long time, Long usernameId, Long valuesId)
     {
@@ -210,6 +224,33 @@ public class AuditDAOImpl extends AbstractAuditDAOImpl
         return entity;
     }
 
+    /**
+     * Uses a batch session on the current transaction's connection.  The inserts are sent
+     * to the database before returning.
+     */
+    @Override
+    protected void insertAuditEntries(List<AuditEntryEntity> entities)
+    {
+        SqlSession batchSession = template.getSqlSessionFactory().openSession(ExecutorType.BATCH);
+        try
+        {
+            for (AuditEntryEntity entity : entities)
+            {
+                batchSession.insert(INSERT_ENTRY, entity);
+            }
+            batchSession.flushStatements();
+        }
+        catch (PersistenceException e)
+        {
+            DataAccessException translated = template.getPersistenceExceptionTranslator().translateExceptionIfPossible(e);
+            throw translated == null ? e : translated;
+        }
+        finally
+        {
+            batchSession.close();
+        }
+    }
+
     @SuppressWarnings("unchecked")
     @Override
     protected void findAuditEntries(
@@ -219,7 +260,8 @@ public class AuditDAOImpl extends AbstractAuditDAOImpl
             Long fromId, Long toId,
             Long fromTime, Long toTime,
             int maxResults,
-            String searchKey, Serializable searchValue)
+            String searchKey, Serializable searchValue,
+            String excludeKey)
     {
         AuditQueryParameters params = new AuditQueryParameters();
         if (appName != null)
@@ -270,6 +312,15 @@ public class AuditDAOImpl extends AbstractAuditDAOImpl
             }
             params.setSearchValueId(searchValuePair.getFirst());
         }
+        if (excludeKey != null)
+        {
+            // No entry can have the key if it has never been stored
+            Pair<Long, Serializable> excludeKeyPair = propertyValueDAO.getPropertyValue(excludeKey);
+            if (excludeKeyPair != null)
+            {
+                params.setExcludeKeyId(excludeKeyPair.getFirst());
+            }
+        }
         params.setForward(forward);
         
         if (maxResults > 0)
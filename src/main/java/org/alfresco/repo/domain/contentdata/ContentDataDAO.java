@@ -122,6 +122,32 @@ public interface ContentDataDAO
             Long maxOrphanTimeExclusive,
             int maxResults);
     
+    /**
+     * Enumerate the orphaned content URLs whose IDs fall within the given range.  This allows
+     * the orphan set to be partitioned and worked on concurrently.
+     * 
+     * @param contentUrlHandler         the callback object to process the rows
+     * @param maxOrphanTimeExclusive    the maximum orphan time (exclusive)
+     * @param minContentUrlId           the minimum content URL ID (inclusive) or <tt>null</tt> for no lower bound
+     * @param maxContentUrlIdExclusive  the maximum content URL ID (exclusive) or <tt>null</tt> for no upper bound
+     * @param maxResults                the maximum number of results (1 or greater)
+     * 
+     * @since 5.2
+     */
+    void getContentUrlsOrphaned(
+            ContentUrlHandler contentUrlHandler,
+            Long maxOrphanTimeExclusive,
+            Long minContentUrlId,
+            Long maxContentUrlIdExclusive,
+            int maxResults);
+    
+    /**
+     * @return          the largest content URL ID in use or <tt>null</tt> if there are no content URLs
+     * 
+     * @since 5.2
+     */
+    Long getMaxContentUrlId();
+    
     /**
      * Enumerate all available content URLs that were orphaned and cleanup for these urls failed
      * 
@@ -34,6 +34,8 @@ package org.alfresco.repo.domain.contentdata;
 public class ContentUrlOrphanQuery
 {
     private Long maxOrphanTimeExclusive;
+    private Long minContentUrlId;
+    private Long maxContentUrlIdExclusive;
     
     @Override
     public String toString()
@@ -41,6 +43,8 @@ public class ContentUrlOrphanQuery
         StringBuilder sb = new StringBuilder(512);
         sb.append("ContentUrlOrphanQuery")
           .append("[ maxOrphanTimeExclusive=").append(maxOrphanTimeExclusive)
+          .append(", minContentUrlId=").append(minContentUrlId)
+          .append(", maxContentUrlIdExclusive=").append(maxContentUrlIdExclusive)
           .append("]");
         return sb.toString();
     }
@@ -54,4 +58,24 @@ public class ContentUrlOrphanQuery
     {
         this.maxOrphanTimeExclusive = maxOrphanTimeExclusive;
     }
+
+    public Long getMinContentUrlId()
+    {
+        return minContentUrlId;
+    }
+
+    public void setMinContentUrlId(Long minContentUrlId)
+    {
+        this.minContentUrlId = minContentUrlId;
+    }
+
+    public Long getMaxContentUrlIdExclusive()
+    {
+        return maxContentUrlIdExclusive;
+    }
+
+    public void setMaxContentUrlIdExclusive(Long maxContentUrlIdExclusive)
+    {
+        this.maxContentUrlIdExclusive = maxContentUrlIdExclusive;
+    }
 }
\ No newline at end of file
@@ -65,6 +65,7 @@ public class ContentDataDAOImpl extends AbstractContentDataDAOImpl
     private static final String SELECT_CONTENT_URL_BY_KEY_UNREFERENCED = "alfresco.content.select_ContentUrlByKeyUnreferenced";
     private static final String SELECT_CONTENT_URLS_ORPHANED = "alfresco.content.select.select_ContentUrlsOrphaned";
     private static final String SELECT_CONTENT_URLS_KEEP_ORPHANED = "alfresco.content.select_ContentUrlsKeepOrphaned";
+    private static final String SELECT_CONTENT_URL_MAX_ID = "alfresco.content.select_ContentUrlMaxId";
     private static final String SELECT_CONTENT_DATA_BY_ID = "alfresco.content.select_ContentDataById";
     private static final String SELECT_CONTENT_DATA_BY_NODE_AND_QNAME = "alfresco.content.select_ContentDataByNodeAndQName";
     private static final String SELECT_CONTENT_DATA_BY_NODE_IDS = "alfresco.content.select_ContentDataByNodeIds";
@@ -150,11 +151,24 @@ public class ContentDataDAOImpl extends AbstractContentDataDAOImpl
             final ContentUrlHandler contentUrlHandler,
             final Long maxOrphanTimeExclusive,
             final int maxResults)
+    {
+        getContentUrlsOrphaned(contentUrlHandler, maxOrphanTimeExclusive, null, null, maxResults);
+    }
+    
+    @Override
+    public void getContentUrlsOrphaned(
+            final ContentUrlHandler contentUrlHandler,
+            final Long maxOrphanTimeExclusive,
+            final Long minContentUrlId,
+            final Long maxContentUrlIdExclusive,
+            final int maxResults)
     {
         ParameterCheck.mandatory("maxOrphanTimeExclusive", maxOrphanTimeExclusive);
         
         ContentUrlOrphanQuery query = new ContentUrlOrphanQuery();
         query.setMaxOrphanTimeExclusive(maxOrphanTimeExclusive);
+        query.setMinContentUrlId(minContentUrlId);
+        query.setMaxContentUrlIdExclusive(maxContentUrlIdExclusive);
         List<ContentUrlEntity> results = template.selectList(SELECT_CONTENT_URLS_ORPHANED, 
                                                                                       query, 
                                                                                       new RowBounds(0, maxResults));
@@ -185,6 +199,12 @@ public class ContentDataDAOImpl extends AbstractContentDataDAOImpl
         }
     }
     
+    @Override
+    public Long getMaxContentUrlId()
+    {
+        return template.selectOne(SELECT_CONTENT_URL_MAX_ID);
+    }
+
     @Override
     public int updateContentUrlOrphanTime(Long id, Long orphanTime, Long oldOrphanTime)
     {
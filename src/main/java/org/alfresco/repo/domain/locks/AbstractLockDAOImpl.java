@@ -30,6 +30,7 @@ import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.StringTokenizer;
+import java.util.concurrent.ConcurrentHashMap;
 
 import org.alfresco.repo.domain.qname.QNameDAO;
 import org.alfresco.repo.lock.LockAcquisitionException;
@@ -48,6 +49,11 @@ public abstract class AbstractLockDAOImpl implements LockDAO
     private static final String LOCK_TOKEN_RELEASED = "not-locked";
     
     private QNameDAO qnameDAO;
+    /**
+     * Exclusive lock resource IDs by lock name, used for batched refreshes.  Lock resources
+     * are never deleted, so the IDs cannot go stale.
+     */
+    private final Map<QName, Long> exclusiveLockResourceIds = new ConcurrentHashMap<QName, Long>();
 
     /**
      * @return                  Returns the DAO for namespace ID resolution
@@ -176,6 +182,54 @@ public abstract class AbstractLockDAOImpl implements LockDAO
         updateLocks(lockQName, lockToken, lockToken, timeToLive, false);
     }
     
+    @Override
+    public boolean refreshLocks(Map<QName, String> lockTokens, long timeToLive)
+    {
+        boolean allFound = true;
+        int requiredUpdateCount = 0;
+        List<Long> exclusiveResourceIds = new ArrayList<Long>(lockTokens.size());
+        List<String> exclusiveLockTokens = new ArrayList<String>(lockTokens.size());
+        for (Map.Entry<QName, String> entry : lockTokens.entrySet())
+        {
+            QName lockQName = entry.getKey();
+            String qnameNamespaceUri = lockQName.getNamespaceURI();
+            String qnameLocalName = lockQName.getLocalName();
+            // Force lower case for case insensitivity
+            if (!qnameLocalName.toLowerCase().equals(qnameLocalName))
+            {
+                lockQName = QName.createQName(qnameNamespaceUri, qnameLocalName.toLowerCase());
+                qnameLocalName = lockQName.getLocalName();
+            }
+            Long exclusiveResourceId = exclusiveLockResourceIds.get(lockQName);
+            if (exclusiveResourceId == null)
+            {
+                Long qnameNamespaceId = qnameDAO.getOrCreateNamespace(qnameNamespaceUri).getFirst();
+                LockResourceEntity exclusiveLockResource = getLockResource(qnameNamespaceId, qnameLocalName);
+                if (exclusiveLockResource == null)
+                {
+                    // If the exclusive lock doesn't exist, the locks don't exist
+                    allFound = false;
+                    continue;
+                }
+                exclusiveResourceId = exclusiveLockResource.getId();
+                exclusiveLockResourceIds.put(lockQName, exclusiveResourceId);
+            }
+            exclusiveResourceIds.add(exclusiveResourceId);
+            // Force the lock token to lowercase
+            exclusiveLockTokens.add(entry.getValue().toLowerCase());
+            // Each of the resources making up the lock name must be updated
+            requiredUpdateCount += splitLockQName(lockQName).size();
+        }
+        if (exclusiveResourceIds.isEmpty())
+        {
+            return allFound;
+        }
+        // Update
+        int updateCount = updateLocks(exclusiveResourceIds, exclusiveLockTokens, timeToLive);
+        // Check
+        return allFound && updateCount == requiredUpdateCount;
+    }
+    
     @Override
     public boolean releaseLock(QName lockQName, String lockToken, boolean optimistic)
     {
@@ -375,6 +429,19 @@ public abstract class AbstractLockDAOImpl implements LockDAO
             String newLockToken,
             long timeToLive);
     
+    /**
+     * Refresh the locks for several exclusive locks, keeping their lock tokens.
+     * 
+     * @param exclusiveLockResourceIds  the exclusive resource IDs being locked
+     * @param lockTokens                the lock token held for each exclusive resource (same order)
+     * @param timeToLive                the new time to live (in milliseconds)
+     * @return                          the number of rows updated
+     */
+    protected abstract int updateLocks(
+            List<Long> exclusiveLockResourceIds,
+            List<String> lockTokens,
+            long timeToLive);
+    
     /**
      * Split a lock's qualified name into the component parts using the '.' (period) as a
      * separator on the localname.  The namespace is preserved.  The provided qualified
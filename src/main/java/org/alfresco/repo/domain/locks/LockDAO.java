@@ -25,6 +25,8 @@
  */
 package org.alfresco.repo.domain.locks;
 
+import java.util.Map;
+
 import org.alfresco.repo.lock.LockAcquisitionException;
 import org.alfresco.service.namespace.QName;
 
@@ -63,6 +65,20 @@ public interface LockDAO
      */
     void refreshLock(QName lockQName, String lockToken, long timeToLive);
     
+    /**
+     * Refresh several held locks using a single update statement.  Locks that are no longer
+     * held under their lock token are left untouched, but the others are still refreshed.
+     * <p>
+     * The result only tells whether all the locks were refreshed; use
+     * {@link #refreshLock(QName, String, long)} to find out which ones were lost.
+     * 
+     * @param lockTokens            the lock tokens for the locks held, keyed by lock name
+     * @param timeToLive            the new time to live (in milliseconds) for all the locks
+     * @return                      Returns <tt>true</tt> if every lock was refreshed or
+     *                              <tt>false</tt> if at least one of them is no longer held
+     */
+    boolean refreshLocks(Map<QName, String> lockTokens, long timeToLive);
+    
     /**
      * Release a lock.  The lock token must still apply and all the shared and exclusive
      * locks need to still be present, unless the method is optimistic, in which case the
@@ -25,6 +25,7 @@
  */
 package org.alfresco.repo.domain.locks.ibatis;
 
+import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
@@ -51,6 +52,7 @@ public class LockDAOImpl extends AbstractLockDAOImpl
     private static final String INSERT_LOCK = "alfresco.lock.insert.insert_Lock";
     private static final String UPDATE_LOCK = "alfresco.lock.update_Lock";
     private static final String UPDATE_EXCLUSIVE_LOCK = "alfresco.lock.update_ExclusiveLock";
+    private static final String UPDATE_EXCLUSIVE_LOCKS_EXPIRY = "alfresco.lock.update_ExclusiveLocksExpiry";
     
     
     private SqlSessionTemplate template;
@@ -180,4 +182,28 @@ public class LockDAOImpl extends AbstractLockDAOImpl
         // Done
         return updateCount;
     }
+
+    @Override
+    protected int updateLocks(
+            List<Long> exclusiveLockResourceIds,
+            List<String> lockTokens,
+            long timeToLive)
+    {
+        List<Map<String, Object>> locks = new ArrayList<Map<String, Object>>(exclusiveLockResourceIds.size());
+        for (int i = 0; i < exclusiveLockResourceIds.size(); i++)
+        {
+            Map<String, Object> lock = new HashMap<String, Object>(3);
+            lock.put("exclusiveLockResourceId", exclusiveLockResourceIds.get(i));
+            lock.put("lockToken", lockTokens.get(i));
+            locks.add(lock);
+        }
+        Map<String, Object> params = new HashMap<String, Object>(5);
+        long now = System.currentTimeMillis();
+        params.put("newStartTime", new Long(now));
+        params.put("newExpiryTime", new Long(now + timeToLive));
+        params.put("locks", locks);
+        int updateCount = template.update(UPDATE_EXCLUSIVE_LOCKS_EXPIRY, params);
+        // Done
+        return updateCount;
+    }
 }
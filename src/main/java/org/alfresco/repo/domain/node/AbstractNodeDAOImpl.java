@@ -35,6 +35,7 @@ import java.util.Collections;
 import java.util.Date;
 import java.util.HashMap;
 import java.util.HashSet;
+import java.util.LinkedHashMap;
 import java.util.LinkedList;
 import java.util.List;
 import java.util.Locale;
@@ -2134,6 +2135,24 @@ public abstract class AbstractNodeDAOImpl implements NodeDAO, BatchingDAO
         return props;
     }
 
+    @Override
+    public Map<Long, Map<QName, Serializable>> getNodeProperties(Collection<Long> nodeIds)
+    {
+        // Make sure that everything required is in the caches before going node-by-node
+        cacheNodePropertiesAndAspects(nodeIds, true);
+        
+        Map<Long, Map<QName, Serializable>> propsByNodeId = new LinkedHashMap<Long, Map<QName, Serializable>>(nodeIds.size() * 2);
+        for (Long nodeId : nodeIds)
+        {
+            if (propsByNodeId.containsKey(nodeId) || !exists(nodeId))
+            {
+                continue;
+            }
+            propsByNodeId.put(nodeId, getNodeProperties(nodeId));
+        }
+        return propsByNodeId;
+    }
+
     @Override
     public Serializable getNodeProperty(Long nodeId, QName propertyQName)
     {
@@ -2652,6 +2671,24 @@ public abstract class AbstractNodeDAOImpl implements NodeDAO, BatchingDAO
         return nodeAspects;
     }
 
+    @Override
+    public Map<Long, Set<QName>> getNodeAspects(Collection<Long> nodeIds)
+    {
+        // Make sure that everything required is in the caches before going node-by-node
+        cacheNodePropertiesAndAspects(nodeIds, false);
+        
+        Map<Long, Set<QName>> aspectsByNodeId = new LinkedHashMap<Long, Set<QName>>(nodeIds.size() * 2);
+        for (Long nodeId : nodeIds)
+        {
+            if (aspectsByNodeId.containsKey(nodeId) || !exists(nodeId))
+            {
+                continue;
+            }
+            aspectsByNodeId.put(nodeId, getNodeAspects(nodeId));
+        }
+        return aspectsByNodeId;
+    }
+
     @Override
     public boolean hasNodeAspect(Long nodeId, QName aspectQName)
     {
@@ -2816,6 +2853,38 @@ public abstract class AbstractNodeDAOImpl implements NodeDAO, BatchingDAO
         selectNodesWithAspects(qnameIds, minNodeId, maxNodeId, resultsCallback);
     }
 
+    @Override
+    public void getNodesWithAspects(
+            Set<QName> aspectQNames,
+            Long minNodeId, Long maxNodeId,
+            int maxResults,
+            NodeRefQueryCallback resultsCallback)
+    {
+        Set<Long> qnameIdsSet = qnameDAO.convertQNamesToIds(aspectQNames, false);
+        if (qnameIdsSet.size() == 0 || maxResults < 1)
+        {
+            // No point running a query
+            return;
+        }
+        List<Long> qnameIds = new ArrayList<Long>(qnameIdsSet);
+        selectNodesWithAspects(qnameIds, minNodeId, maxNodeId, maxResults, resultsCallback);
+    }
+
+    @Override
+    public int countNodesWithAspects(
+            Set<QName> aspectQNames,
+            Long minNodeId, Long maxNodeId)
+    {
+        Set<Long> qnameIdsSet = qnameDAO.convertQNamesToIds(aspectQNames, false);
+        if (qnameIdsSet.size() == 0)
+        {
+            // No point running a query
+            return 0;
+        }
+        List<Long> qnameIds = new ArrayList<Long>(qnameIdsSet);
+        return countNodesWithAspects(qnameIds, minNodeId, maxNodeId);
+    }
+
     /**
      * @return              Returns a writable copy of the cached aspects set
      */
@@ -4591,6 +4660,7 @@ public abstract class AbstractNodeDAOImpl implements NodeDAO, BatchingDAO
         boolean forceBatch = false;
         
         List<Long> batchLoadNodeIds = new ArrayList<Long>(nodeIds.size());
+        List<Long> cachedNodeIds = new ArrayList<Long>(nodeIds.size());
         for (Long nodeId : nodeIds)
         {
             if (!forceBatch)
@@ -4599,6 +4669,7 @@ public abstract class AbstractNodeDAOImpl implements NodeDAO, BatchingDAO
                 if (nodesCache.getValue(nodeId) != null)
                 {
                     foundCacheEntryCount++;                             // Don't add it to the batch
+                    cachedNodeIds.add(nodeId);                          // ... but check its properties and aspects
                     continue;
                 }
                 else
@@ -4617,6 +4688,8 @@ public abstract class AbstractNodeDAOImpl implements NodeDAO, BatchingDAO
         
         int size = batchLoadNodeIds.size();
         cacheNodesBatch(batchLoadNodeIds);
+        // Nodes that were already cached may still have lost their properties or aspects
+        cacheNodePropertiesAndAspects(cachedNodeIds, true);
 
         if (logger.isDebugEnabled())
         {
@@ -4659,14 +4732,17 @@ public abstract class AbstractNodeDAOImpl implements NodeDAO, BatchingDAO
 
         // Group the nodes by store so that we don't *have* to eagerly join to store to get query performance
         Map<StoreRef, List<String>> uuidsByStore = new HashMap<StoreRef, List<String>>(3);
+        List<Long> cachedNodeIds = new ArrayList<Long>(nodeRefs.size());
         for (NodeRef nodeRef : nodeRefs)
         {
             if (!forceBatch)
             {
                 // Is this node in the cache?
-                if (nodesCache.getKey(nodeRef) != null)
+                Long cachedNodeId = nodesCache.getKey(nodeRef);
+                if (cachedNodeId != null)
                 {
                     foundCacheEntryCount++;                             // Don't add it to the batch
+                    cachedNodeIds.add(cachedNodeId);                    // ... but check its properties and aspects
                     continue;
                 }
                 else
@@ -4698,6 +4774,8 @@ public abstract class AbstractNodeDAOImpl implements NodeDAO, BatchingDAO
             List<String> uuids = entry.getValue();
             cacheNodes(storeRef, uuids);
         }
+        // Nodes that were already cached may still have lost their properties or aspects
+        cacheNodePropertiesAndAspects(cachedNodeIds, true);
         if (logger.isDebugEnabled())
         {
             logger.debug("Pre-loaded " + size + " nodes.");
@@ -4756,6 +4834,68 @@ public abstract class AbstractNodeDAOImpl implements NodeDAO, BatchingDAO
         }
     }
     
+    /**
+     * Ensures that the node, properties and aspects cache entries are present for the given nodes.
+     * Nodes that are not cached at all are bulk-loaded along with their properties and aspects; nodes
+     * that are cached but have lost their properties or aspects entries have just those bulk-loaded.
+     * 
+     * @param nodeIds               the nodes to check
+     * @param includeProperties     <tt>true</tt> to check the properties cache as well as the aspects cache
+     */
+    private void cacheNodePropertiesAndAspects(Collection<Long> nodeIds, boolean includeProperties)
+    {
+        int batchSize = 256;
+        List<Long> batch = new ArrayList<Long>(batchSize);
+        for (Long nodeId : nodeIds)
+        {
+            batch.add(nodeId);
+            if (batch.size() >= batchSize)
+            {
+                cacheNodePropertiesAndAspectsNoBatch(batch, includeProperties);
+                batch.clear();
+            }
+        }
+        // Load any remaining nodes
+        if (batch.size() > 0)
+        {
+            cacheNodePropertiesAndAspectsNoBatch(batch, includeProperties);
+        }
+    }
+    
+    /**
+     * Bulk-fetch whatever is missing from the caches for the given nodes.  All nodes passed in are checked.
+     */
+    private void cacheNodePropertiesAndAspectsNoBatch(List<Long> nodeIds, boolean includeProperties)
+    {
+        SortedSet<Long> uncachedNodeIds = new TreeSet<Long>();
+        SortedSet<Long> aspectNodeIds = new TreeSet<Long>();
+        SortedSet<Long> propertiesNodeIds = new TreeSet<Long>();
+        for (Long nodeId : nodeIds)
+        {
+            Node node = nodesCache.getValue(nodeId);
+            if (node == null)
+            {
+                uncachedNodeIds.add(nodeId);                    // Properties and aspects come in with the node
+                continue;
+            }
+            NodeVersionKey nodeVersionKey = node.getNodeVersionKey();
+            if (includeProperties && propertiesCache.getValue(nodeVersionKey) == null)
+            {
+                propertiesNodeIds.add(nodeId);
+            }
+            if (aspectsCache.getValue(nodeVersionKey) == null)
+            {
+                aspectNodeIds.add(nodeId);
+            }
+        }
+        if (uncachedNodeIds.size() > 0)
+        {
+            List<Node> nodes = selectNodesByIds(uncachedNodeIds);
+            cacheNodesNoBatch(nodes);
+        }
+        cachePropertiesAndAspectsNoBatch(propertiesNodeIds, aspectNodeIds);
+    }
+    
     /**
      * Bulk-fetch the nodes for a given store.  All nodes passed in are fetched.
      */
@@ -4764,7 +4904,6 @@ public abstract class AbstractNodeDAOImpl implements NodeDAO, BatchingDAO
         // Get the nodes
         SortedSet<Long> aspectNodeIds = new TreeSet<Long>();
         SortedSet<Long> propertiesNodeIds = new TreeSet<Long>();
-        Map<Long, NodeVersionKey> nodeVersionKeysFromCache = new HashMap<Long, NodeVersionKey>(nodes.size()*2);    // Keep for quick lookup
         for (Node node : nodes)
         {
             Long nodeId = node.getId();
@@ -4779,42 +4918,93 @@ public abstract class AbstractNodeDAOImpl implements NodeDAO, BatchingDAO
             {
                 aspectNodeIds.add(nodeId);
             }
-            nodeVersionKeysFromCache.put(nodeId, nodeVersionKey);
         }
-        
+        cachePropertiesAndAspectsNoBatch(propertiesNodeIds, aspectNodeIds);
+    }
+    
+    /**
+     * Bulk-fetch the properties and aspects of nodes that are already in the nodes cache.
+     * The values are only cached if the version read from the database matches that of the
+     * cached node; the absence of aspects is cached as well.
+     */
+    private void cachePropertiesAndAspectsNoBatch(SortedSet<Long> propertiesNodeIds, SortedSet<Long> aspectNodeIds)
+    {
         if(logger.isDebugEnabled())
         {
             logger.debug("Pre-loaded " + propertiesNodeIds.size() + " properties");
-            logger.debug("Pre-loaded " + propertiesNodeIds.size() + " aspects");
+            logger.debug("Pre-loaded " + aspectNodeIds.size() + " aspects");
         }
         
-        Map<NodeVersionKey, Set<QName>> nodeAspects = selectNodeAspects(aspectNodeIds);
-        for (Map.Entry<NodeVersionKey, Set<QName>> entry : nodeAspects.entrySet())
+        if (aspectNodeIds.size() > 0)
         {
-            NodeVersionKey nodeVersionKeyFromDb = entry.getKey();
-            Long nodeId = nodeVersionKeyFromDb.getNodeId();
-            Set<QName> qnames = entry.getValue();
-            setNodeAspectsCached(nodeId, qnames);
-            aspectNodeIds.remove(nodeId);
+            Map<NodeVersionKey, Set<QName>> nodeAspects = selectNodeAspects(aspectNodeIds);
+            for (Map.Entry<NodeVersionKey, Set<QName>> entry : nodeAspects.entrySet())
+            {
+                NodeVersionKey nodeVersionKeyFromDb = entry.getKey();
+                Long nodeId = nodeVersionKeyFromDb.getNodeId();
+                aspectNodeIds.remove(nodeId);
+                if (!isCachedNodeVersion(nodeVersionKeyFromDb))
+                {
+                    continue;
+                }
+                Set<QName> qnames = entry.getValue();
+                aspectsCache.setValue(nodeVersionKeyFromDb, Collections.unmodifiableSet(qnames));
+            }
+            // Cache the absence of aspects too!
+            for (Long nodeId: aspectNodeIds)
+            {
+                setNodeAspectsCached(nodeId, Collections.<QName>emptySet());
+            }
         }
-        // Cache the absence of aspects too!
-        for (Long nodeId: aspectNodeIds)
+
+        if (propertiesNodeIds.size() > 0)
         {
-            setNodeAspectsCached(nodeId, Collections.<QName>emptySet());
+            // First ensure all content data are pre-cached, so we don't have to load them individually when converting properties
+            contentDataDAO.cacheContentDataForNodes(propertiesNodeIds);
+            
+            // Now bulk load the properties
+            Map<NodeVersionKey, Map<NodePropertyKey, NodePropertyValue>> propsByNodeId = selectNodeProperties(propertiesNodeIds);
+            for (Map.Entry<NodeVersionKey, Map<NodePropertyKey, NodePropertyValue>> entry : propsByNodeId.entrySet())
+            {
+                NodeVersionKey nodeVersionKeyFromDb = entry.getKey();
+                if (!isCachedNodeVersion(nodeVersionKeyFromDb))
+                {
+                    continue;
+                }
+                Map<NodePropertyKey, NodePropertyValue> propertyValues = entry.getValue();
+                Map<QName, Serializable> props = nodePropertyHelper.convertToPublicProperties(propertyValues);
+                propertiesCache.setValue(nodeVersionKeyFromDb, Collections.unmodifiableMap(props));
+            }
+            // Nodes without any properties are left to the cache callback, which checks the node version
         }
-
-        // First ensure all content data are pre-cached, so we don't have to load them individually when converting properties
-        contentDataDAO.cacheContentDataForNodes(propertiesNodeIds);
-        
-        // Now bulk load the properties
-        Map<NodeVersionKey, Map<NodePropertyKey, NodePropertyValue>> propsByNodeId = selectNodeProperties(propertiesNodeIds);
-        for (Map.Entry<NodeVersionKey, Map<NodePropertyKey, NodePropertyValue>> entry : propsByNodeId.entrySet())
+    }
+    
+    /**
+     * Checks that values read in bulk belong to the version of the node that is currently cached.
+     * If the cached node is stale, then the node caches are invalidated and the values must not be cached.
+     * 
+     * @param nodeVersionKeyFromDb      the node version against which the values were read
+     * @return                          <tt>true</tt> if the values can be cached against the key
+     */
+    private boolean isCachedNodeVersion(NodeVersionKey nodeVersionKeyFromDb)
+    {
+        Long nodeId = nodeVersionKeyFromDb.getNodeId();
+        Node node = nodesCache.getValue(nodeId);
+        if (node == null)
         {
-            Long nodeId = entry.getKey().getNodeId();
-            Map<NodePropertyKey, NodePropertyValue> propertyValues = entry.getValue();
-            Map<QName, Serializable> props = nodePropertyHelper.convertToPublicProperties(propertyValues);
-            setNodePropertiesCached(nodeId, props);
+            return false;
         }
+        if (!nodeVersionKeyFromDb.equals(node.getNodeVersionKey()))
+        {
+            // The cached node does not match the database
+            if (isDebugEnabled)
+            {
+                logger.debug("Detected stale node entry: " + node.getNodeVersionKey() + " (now " + nodeVersionKeyFromDb + ")");
+            }
+            invalidateNodeCaches(nodeId);
+            return false;
+        }
+        return true;
     }
 
     /**
@@ -5003,6 +5193,14 @@ public abstract class AbstractNodeDAOImpl implements NodeDAO, BatchingDAO
             List<Long> qnameIds,
             Long minNodeId, Long maxNodeId,
             NodeRefQueryCallback resultsCallback);
+    protected abstract void selectNodesWithAspects(
+            List<Long> qnameIds,
+            Long minNodeId, Long maxNodeId,
+            int maxResults,
+            NodeRefQueryCallback resultsCallback);
+    protected abstract int countNodesWithAspects(
+            List<Long> qnameIds,
+            Long minNodeId, Long maxNodeId);
     protected abstract Long insertNodeAssoc(Long sourceNodeId, Long targetNodeId, Long assocTypeQNameId, int assocIndex);
     protected abstract int updateNodeAssoc(Long id, int assocIndex);
     protected abstract int deleteNodeAssoc(Long sourceNodeId, Long targetNodeId, Long assocTypeQNameId);
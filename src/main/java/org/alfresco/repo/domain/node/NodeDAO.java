@@ -346,6 +346,17 @@ public interface NodeDAO extends NodeBulkLoader
 
     public Map<QName, Serializable> getNodeProperties(Long nodeId);
     
+    /**
+     * Bulk-fetch the properties for a collection of nodes.  Cache hits are resolved directly
+     * and all misses are loaded in batches before the values are returned, so the number of
+     * database round-trips is proportional to the number of batches rather than the number of nodes.
+     * 
+     * @param nodeIds           the nodes for which to fetch properties
+     * @return                  Returns the properties keyed by node ID, in the iteration order of the
+     *                          given IDs.  Nodes that do not exist or are deleted are not present.
+     */
+    public Map<Long, Map<QName, Serializable>> getNodeProperties(Collection<Long> nodeIds);
+    
     public boolean setNodeProperties(Long nodeId, Map<QName, Serializable> properties);
     
     public boolean addNodeProperty(Long nodeId, QName qname, Serializable value);
@@ -384,6 +395,16 @@ public interface NodeDAO extends NodeBulkLoader
     
     public Set<QName> getNodeAspects(Long nodeId);
     
+    /**
+     * Bulk-fetch the aspects for a collection of nodes.  Cache hits are resolved directly
+     * and all misses are loaded in batches before the values are returned.
+     * 
+     * @param nodeIds           the nodes for which to fetch aspects
+     * @return                  Returns the aspects keyed by node ID, in the iteration order of the
+     *                          given IDs.  Nodes that do not exist or are deleted are not present.
+     */
+    public Map<Long, Set<QName>> getNodeAspects(Collection<Long> nodeIds);
+    
     public boolean hasNodeAspect(Long nodeId, QName aspectQName);
     
     public boolean addNodeAspects(Long nodeId, Set<QName> aspectQNames);
@@ -404,6 +425,38 @@ public interface NodeDAO extends NodeBulkLoader
             Set<QName> aspectQNames,
             Long minNodeId, Long maxNodeId,
             NodeRefQueryCallback resultsCallback);
+    
+    /**
+     * Get nodes with aspects between the given ranges in ascending node ID order, fetching no
+     * more than the given number of results.  Use this to page through large numbers of nodes.
+     * 
+     * @param aspectQNames              the aspects that must be on the nodes
+     * @param minNodeId                 the minimum node ID (inclusive)
+     * @param maxNodeId                 the maximum node ID (exclusive) or <tt>null</tt> for no upper limit
+     * @param maxResults                the maximum number of results to fetch
+     * @param resultsCallback           callback to process results
+     * 
+     * @since 5.2
+     */
+    public void getNodesWithAspects(
+            Set<QName> aspectQNames,
+            Long minNodeId, Long maxNodeId,
+            int maxResults,
+            NodeRefQueryCallback resultsCallback);
+    
+    /**
+     * Count the nodes with aspects between the given ranges
+     * 
+     * @param aspectQNames              the aspects, any of which must be on the nodes
+     * @param minNodeId                 the minimum node ID (inclusive)
+     * @param maxNodeId                 the maximum node ID (exclusive) or <tt>null</tt> for no upper limit
+     * @return                          the number of nodes having at least one of the aspects
+     * 
+     * @since 5.2
+     */
+    public int countNodesWithAspects(
+            Set<QName> aspectQNames,
+            Long minNodeId, Long maxNodeId);
 
     /*
      * Node Assocs
@@ -116,6 +116,8 @@ public class NodeDAOImpl extends AbstractNodeDAOImpl
     private static final String SELECT_NODE_MAX_ID = "alfresco.node.select_NodeMaxId";
     private static final String SELECT_NODE_INTERVAL_BY_TYPE = "alfresco.node.select_MinMaxNodeIdForNodeType";
     private static final String SELECT_NODES_WITH_ASPECT_IDS = "alfresco.node.select_NodesWithAspectIds";
+    private static final String SELECT_NODES_WITH_ASPECT_IDS_ORDERED = "alfresco.node.select_NodesWithAspectIdsOrdered";
+    private static final String SELECT_NODES_WITH_ASPECT_IDS_COUNT = "alfresco.node.select_NodesWithAspectIdsCount";
     private static final String INSERT_NODE_ASSOC = "alfresco.node.insert.insert_NodeAssoc";
     private static final String UPDATE_NODE_ASSOC = "alfresco.node.update_NodeAssoc";
     private static final String DELETE_NODE_ASSOC = "alfresco.node.delete_NodeAssoc";
@@ -794,6 +796,52 @@ public class NodeDAOImpl extends AbstractNodeDAOImpl
         template.select(SELECT_NODES_WITH_ASPECT_IDS, parameters, resultHandler);
     }
 
+    @Override
+    protected void selectNodesWithAspects(
+            List<Long> qnameIds,
+            Long minNodeId, Long maxNodeId,
+            int maxResults,
+            final NodeRefQueryCallback resultsCallback)
+    {
+        @SuppressWarnings("rawtypes")
+        ResultHandler resultHandler = new ResultHandler()
+        {
+            public void handleResult(ResultContext context)
+            {
+                if (context.isStopped())
+                {
+                    return;
+                }
+                NodeEntity entity = (NodeEntity) context.getResultObject();
+                Pair<Long, NodeRef> nodePair = new Pair<Long, NodeRef>(entity.getId(), entity.getNodeRef());
+                if (!resultsCallback.handle(nodePair))
+                {
+                    context.stop();
+                }
+            }
+        };
+        
+        IdsEntity parameters = new IdsEntity();
+        parameters.setIdOne(minNodeId);
+        parameters.setIdTwo(maxNodeId);
+        parameters.setIds(qnameIds);
+        RowBounds rowBounds = new RowBounds(0, maxResults);
+        template.select(SELECT_NODES_WITH_ASPECT_IDS_ORDERED, parameters, rowBounds, resultHandler);
+    }
+
+    @Override
+    protected int countNodesWithAspects(
+            List<Long> qnameIds,
+            Long minNodeId, Long maxNodeId)
+    {
+        IdsEntity parameters = new IdsEntity();
+        parameters.setIdOne(minNodeId);
+        parameters.setIdTwo(maxNodeId);
+        parameters.setIds(qnameIds);
+        Integer count = template.selectOne(SELECT_NODES_WITH_ASPECT_IDS_COUNT, parameters);
+        return count == null ? 0 : count.intValue();
+    }
+
     @Override
     protected Long insertNodeAssoc(Long sourceNodeId, Long targetNodeId, Long assocTypeQNameId, int assocIndex)
     {
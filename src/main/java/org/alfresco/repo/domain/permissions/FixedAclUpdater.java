@@ -30,8 +30,11 @@ import static org.apache.commons.lang3.BooleanUtils.toBoolean;
 import java.util.ArrayList;
 import java.util.Collection;
 import java.util.Collections;
+import java.util.HashMap;
 import java.util.HashSet;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.Set;
 import java.util.concurrent.atomic.AtomicBoolean;
 
@@ -52,6 +55,8 @@ import org.alfresco.repo.security.permissions.PermissionServicePolicies.OnInheri
 import org.alfresco.repo.transaction.AlfrescoTransactionSupport;
 import org.alfresco.repo.transaction.RetryingTransactionHelper.RetryingTransactionCallback;
 import org.alfresco.repo.transaction.TransactionListenerAdapter;
+import org.alfresco.service.cmr.attributes.AttributeService;
+import org.alfresco.service.cmr.repository.ChildAssociationRef;
 import org.alfresco.service.cmr.repository.NodeRef;
 import org.alfresco.service.namespace.NamespaceService;
 import org.alfresco.service.namespace.QName;
@@ -79,11 +84,16 @@ public class FixedAclUpdater extends TransactionListenerAdapter implements Appli
     public static final String FIXED_ACL_ASYNC_REQUIRED_KEY = "FIXED_ACL_ASYNC_REQUIRED";
     public static final String FIXED_ACL_ASYNC_CALL_KEY = "FIXED_ACL_ASYNC_CALL";
 
+    private static final String CHECKPOINT_ATTRIBUTE_PATH = ".FixedAclUpdater";
+    private static final String CHECKPOINT_ATTRIBUTE = "CHECKPOINT";
+
     private ApplicationContext applicationContext;
     private JobLockService jobLockService;
     private TransactionService transactionService;
     private AccessControlListDAO accessControlListDAO;
     private NodeDAO nodeDAO;
+    private AttributeService attributeService;
+    private FixedAclUpdaterStatistics statistics = new FixedAclUpdaterStatistics();
     private QName lockQName = QName.createQName(NamespaceService.SYSTEM_MODEL_1_0_URI, "FixedAclUpdater");
     private long lockTimeToLive = 10000;
     private long lockRefreshTime = lockTimeToLive / 2;
@@ -121,6 +131,20 @@ public class FixedAclUpdater extends TransactionListenerAdapter implements Appli
         this.transactionService = transactionService;
     }
 
+    /**
+     * Set the service used to persist the scan checkpoint.  Without it, every run scans from the
+     * lowest node ID.
+     */
+    public void setAttributeService(AttributeService attributeService)
+    {
+        this.attributeService = attributeService;
+    }
+
+    public void setStatistics(FixedAclUpdaterStatistics statistics)
+    {
+        this.statistics = statistics;
+    }
+
     public void setAccessControlListDAO(AccessControlListDAO accessControlListDAO)
     {
         this.accessControlListDAO = accessControlListDAO;
@@ -152,84 +176,231 @@ public class FixedAclUpdater extends TransactionListenerAdapter implements Appli
         onInheritPermissionsDisabledDelegate = policyComponent.registerClassPolicy(PermissionServicePolicies.OnInheritPermissionsDisabled.class);
     }
 
-    private class GetNodesWithAspects
+    /**
+     * Provides the nodes with the pending ACL aspect in ascending node ID order.  The scan starts
+     * from the persisted checkpoint and wraps around to the lowest node IDs, so that every node
+     * that was pending when the run started is seen once.  Each scan window is split into
+     * partitions of disjoint subtrees, which the workers can process concurrently.  Partitions
+     * are only disjoint within a window, so a window must be finished before the next one is
+     * fetched.
+     */
+    private class AclWorkProvider implements BatchProcessWorkProvider<List<NodeRef>>
     {
-        private Set<QName> aspects;
-        private int workSize;
-        private GetNodesWithAspectCallback getNodesCallback;
+        private final Set<QName> aspects = Collections.singleton(ContentModel.ASPECT_PENDING_FIX_ACL);
+        private final FixedAclUpdaterJobLockRefreshCallback jobLockRefreshCallback;
+        private final long startNodeId;
+        private final int workSize;
+        private long nextNodeId;
+        private boolean wrapped;
+        private boolean complete;
+
+        AclWorkProvider(FixedAclUpdaterJobLockRefreshCallback jobLockRefreshCallback)
+        {
+            this.jobLockRefreshCallback = jobLockRefreshCallback;
+            Pair<Long, Integer> checkpointAndCount = transactionService.getRetryingTransactionHelper()
+                    .doInTransaction(new RetryingTransactionCallback<Pair<Long, Integer>>()
+                    {
+                        @Override
+                        public Pair<Long, Integer> execute() throws Throwable
+                        {
+                            int count = nodeDAO.countNodesWithAspects(aspects, 0L, null);
+                            return new Pair<Long, Integer>(getCheckpoint(), count);
+                        }
+                    }, true, true);
+            this.startNodeId = checkpointAndCount.getFirst();
+            this.workSize = checkpointAndCount.getSecond();
+            this.nextNodeId = startNodeId;
+            // Starting from the bottom means there is nothing to wrap around to
+            this.wrapped = startNodeId == 0L;
+        }
 
-        GetNodesWithAspects(Set<QName> aspects)
+        long getStartNodeId()
         {
-            this.aspects = aspects;
+            return startNodeId;
+        }
 
-            this.getNodesCallback = new GetNodesWithAspectCallback();
-            this.workSize = countNodesWithAspects();
+        /**
+         * @return          <tt>true</tt> if the scan covered the whole node ID range
+         */
+        boolean isComplete()
+        {
+            return complete;
         }
 
-        int getWorkSize()
+        @Override
+        public int getTotalEstimatedWorkSize()
         {
             return workSize;
         }
 
-        List<NodeRef> getNodesWithAspects()
+        @Override
+        public Collection<List<NodeRef>> getNextWork()
         {
-            List<NodeRef> nodes = transactionService.getRetryingTransactionHelper()
-                    .doInTransaction(new RetryingTransactionCallback<List<NodeRef>>()
-                    {
-                        @Override
-                        public List<NodeRef> execute() throws Throwable
+            while (!complete)
+            {
+                if (!jobLockRefreshCallback.isActive())
+                {
+                    // The lock has been lost, so leave the rest to whoever holds it now
+                    break;
+                }
+                final long minNodeId = nextNodeId;
+                final Long maxNodeId = wrapped && startNodeId > 0L ? startNodeId : null;
+                Pair<Long, List<List<NodeRef>>> scan = transactionService.getRetryingTransactionHelper()
+                        .doInTransaction(new RetryingTransactionCallback<Pair<Long, List<List<NodeRef>>>>()
                         {
-                            getNodesCallback.init();
-                            nodeDAO.getNodesWithAspects(aspects, getNodesCallback.getMinNodeId(), null, getNodesCallback);
-                            getNodesCallback.done();
+                            @Override
+                            public Pair<Long, List<List<NodeRef>>> execute() throws Throwable
+                            {
+                                return scan(minNodeId, maxNodeId);
+                            }
+                        }, false, true);
+                if (!scan.getSecond().isEmpty())
+                {
+                    nextNodeId = scan.getFirst();
+                    statistics.recordCheckpoint(nextNodeId);
+                    statistics.recordPartitions(scan.getSecond().size());
+                    return scan.getSecond();
+                }
+                if (wrapped)
+                {
+                    complete = true;
+                }
+                else
+                {
+                    wrapped = true;
+                    nextNodeId = 0L;
+                }
+            }
+            return Collections.emptyList();
+        }
 
-                            return getNodesCallback.getNodes();
-                        }
-                    }, false, true);
-            return nodes;
+        /**
+         * Fetch the next scan window, record the checkpoint and partition the nodes
+         * 
+         * @return          the node ID to continue from and the partitions
+         */
+        private Pair<Long, List<List<NodeRef>>> scan(long minNodeId, Long maxNodeId)
+        {
+            final List<Pair<Long, NodeRef>> nodePairs = new ArrayList<>(maxItemBatchSize * numThreads);
+            NodeRefQueryCallback callback = new NodeRefQueryCallback()
+            {
+                @Override
+                public boolean handle(Pair<Long, NodeRef> nodePair)
+                {
+                    nodePairs.add(nodePair);
+                    return true;
+                }
+            };
+            nodeDAO.getNodesWithAspects(aspects, minNodeId, maxNodeId, maxItemBatchSize * numThreads, callback);
+            if (nodePairs.isEmpty())
+            {
+                return new Pair<Long, List<List<NodeRef>>>(minNodeId, Collections.<List<NodeRef>>emptyList());
+            }
+            long nextNodeId = nodePairs.get(nodePairs.size() - 1).getFirst() + 1L;
+            setCheckpoint(nextNodeId);
+            return new Pair<Long, List<List<NodeRef>>>(nextNodeId, partition(nodePairs));
         }
 
-        int countNodesWithAspects()
+        /**
+         * Group the nodes under their top-most ancestor in the scan window and pack the groups into
+         * partitions of about maxItemBatchSize nodes.  A node is therefore never
+         * processed concurrently with another node of the window that is above or below it.
+         */
+        private List<List<NodeRef>> partition(List<Pair<Long, NodeRef>> nodePairs)
         {
-            final CountNodesWithAspectCallback countNodesCallback = new CountNodesWithAspectCallback();
-            int count = transactionService.getRetryingTransactionHelper()
-                    .doInTransaction(new RetryingTransactionCallback<Integer>()
+            Set<Long> nodeIds = new HashSet<>(nodePairs.size() * 2);
+            for (Pair<Long, NodeRef> nodePair : nodePairs)
+            {
+                nodeIds.add(nodePair.getFirst());
+            }
+            Map<Long, Long> parentNodeIds = new HashMap<>(nodePairs.size() * 4);
+            Map<Long, List<NodeRef>> groups = new LinkedHashMap<>(nodePairs.size() * 2);
+            for (Pair<Long, NodeRef> nodePair : nodePairs)
+            {
+                Long groupNodeId = nodePair.getFirst();
+                Long ancestorNodeId = getParentNodeId(groupNodeId, parentNodeIds);
+                while (ancestorNodeId != null)
+                {
+                    if (nodeIds.contains(ancestorNodeId))
                     {
-                        @Override
-                        public Integer execute() throws Throwable
-                        {
-                            nodeDAO.getNodesWithAspects(aspects, 0l, null, countNodesCallback);
-                            return countNodesCallback.getCount();
-                        }
-                    }, false, true);
-            return count;
+                        groupNodeId = ancestorNodeId;
+                    }
+                    ancestorNodeId = getParentNodeId(ancestorNodeId, parentNodeIds);
+                }
+                List<NodeRef> group = groups.get(groupNodeId);
+                if (group == null)
+                {
+                    group = new ArrayList<>(4);
+                    groups.put(groupNodeId, group);
+                }
+                group.add(nodePair.getSecond());
+            }
+
+            List<List<NodeRef>> partitions = new ArrayList<>(numThreads * 2);
+            List<NodeRef> partition = null;
+            for (List<NodeRef> group : groups.values())
+            {
+                if (partition == null || (!partition.isEmpty() && partition.size() + group.size() > maxItemBatchSize))
+                {
+                    partition = new ArrayList<>(maxItemBatchSize);
+                    partitions.add(partition);
+                }
+                partition.addAll(group);
+            }
+            return partitions;
+        }
+
+        private Long getParentNodeId(Long nodeId, Map<Long, Long> parentNodeIds)
+        {
+            if (parentNodeIds.containsKey(nodeId))
+            {
+                return parentNodeIds.get(nodeId);
+            }
+            Long parentNodeId = null;
+            Pair<Long, ChildAssociationRef> parentAssocPair = nodeDAO.getPrimaryParentAssoc(nodeId);
+            if (parentAssocPair != null && parentAssocPair.getSecond().getParentRef() != null)
+            {
+                Pair<Long, NodeRef> parentNodePair = nodeDAO.getNodePair(parentAssocPair.getSecond().getParentRef());
+                parentNodeId = parentNodePair == null ? null : parentNodePair.getFirst();
+            }
+            parentNodeIds.put(nodeId, parentNodeId);
+            return parentNodeId;
         }
     }
 
-    private class AclWorkProvider implements BatchProcessWorkProvider<NodeRef>
+    /**
+     * Hands a single scan window to a batch processor
+     */
+    private static class WindowWorkProvider implements BatchProcessWorkProvider<List<NodeRef>>
     {
-        private GetNodesWithAspects getNodesWithAspects;
+        private Collection<List<NodeRef>> window;
 
-        AclWorkProvider()
+        WindowWorkProvider(Collection<List<NodeRef>> window)
         {
-            getNodesWithAspects = new GetNodesWithAspects(Collections.singleton(ContentModel.ASPECT_PENDING_FIX_ACL));
+            this.window = window;
         }
 
         @Override
         public int getTotalEstimatedWorkSize()
         {
-            int workSize = getNodesWithAspects.getWorkSize();
-            return workSize;
+            return window == null ? 0 : window.size();
         }
 
         @Override
-        public Collection<NodeRef> getNextWork()
+        public Collection<List<NodeRef>> getNextWork()
         {
-            return getNodesWithAspects.getNodesWithAspects();
+            Collection<List<NodeRef>> next = window == null ? Collections.<List<NodeRef>>emptyList() : window;
+            window = null;
+            return next;
         }
     }
 
-    private class AclWorker implements BatchProcessor.BatchProcessWorker<NodeRef>
+    /**
+     * Fixes the ACLs for a partition of nodes in one transaction.  If that transaction fails, each
+     * node is fixed in a transaction of its own, so that a failing node neither stops the others
+     * nor leaves its own changes half done.
+     */
+    private class AclWorker implements BatchProcessor.BatchProcessWorker<List<NodeRef>>
     {
         private Set<QName> aspects = new HashSet<>(1);
 
@@ -238,9 +409,10 @@ public class FixedAclUpdater extends TransactionListenerAdapter implements Appli
             aspects.add(ContentModel.ASPECT_PENDING_FIX_ACL);
         }
 
-        public String getIdentifier(NodeRef nodeRef)
+        public String getIdentifier(List<NodeRef> partition)
         {
-            return String.valueOf(nodeRef.toString());
+            String identifier = String.valueOf(partition.get(0));
+            return partition.size() > 1 ? identifier + " and " + (partition.size() - 1) + " more" : identifier;
         }
 
         public void beforeProcess() throws Throwable
@@ -251,107 +423,130 @@ public class FixedAclUpdater extends TransactionListenerAdapter implements Appli
         {
         }
 
-        public void process(final NodeRef nodeRef) throws Throwable
+        public void process(final List<NodeRef> partition) throws Throwable
         {
             RunAsWork<Void> findAndUpdateAclRunAsWork = new RunAsWork<Void>()
             {
                 @Override
                 public Void doWork() throws Exception
                 {
-                    if (log.isDebugEnabled())
+                    try
                     {
-                        log.debug(String.format("Processing node %s", nodeRef));
+                        fixAcls(partition);
+                        statistics.recordProcessed(partition.size(), 0);
+                        return null;
                     }
-                    final Long nodeId = nodeDAO.getNodePair(nodeRef).getFirst();
-
-                    // retrieve acl properties from node
-                    Long inheritFrom = (Long) nodeDAO.getNodeProperty(nodeId,
-                            ContentModel.PROP_INHERIT_FROM_ACL);
-                    Long sharedAclToReplace = (Long) nodeDAO.getNodeProperty(nodeId,
-                            ContentModel.PROP_SHARED_ACL_TO_REPLACE);
-
-                    // set inheritance using retrieved prop
-                    accessControlListDAO.setInheritanceForChildren(nodeRef, inheritFrom, sharedAclToReplace,
-                            true);
-
-                    nodeDAO.removeNodeAspects(nodeId, aspects);
-                    nodeDAO.removeNodeProperties(nodeId, PENDING_FIX_ACL_ASPECT_PROPS);
-                    
-                    if (!policyIgnoreUtil.ignorePolicy(nodeRef))
+                    catch (RuntimeException e)
                     {
-                        boolean transformedToAsyncOperation = toBoolean((Boolean) AlfrescoTransactionSupport.getResource(FixedAclUpdater.FIXED_ACL_ASYNC_REQUIRED_KEY));
-
-                        OnInheritPermissionsDisabled onInheritPermissionsDisabledPolicy = onInheritPermissionsDisabledDelegate.get(ContentModel.TYPE_BASE);
-                        onInheritPermissionsDisabledPolicy.onInheritPermissionsDisabled(nodeRef, transformedToAsyncOperation);
+                        log.warn("Failed to fix the ACLs of " + getIdentifier(partition) + "; fixing the nodes one at a time", e);
                     }
-
-                    if (log.isDebugEnabled())
+                    int processed = 0;
+                    int failed = 0;
+                    for (NodeRef nodeRef : partition)
                     {
-                        log.debug(String.format("Node processed %s", nodeRef));
+                        try
+                        {
+                            fixAcls(Collections.singletonList(nodeRef));
+                            processed++;
+                        }
+                        catch (RuntimeException e)
+                        {
+                            log.warn("Failed to fix the ACLs of node " + nodeRef, e);
+                            failed++;
+                        }
                     }
-
+                    statistics.recordProcessed(processed, failed);
                     return null;
                 }
-
             };
 
             AuthenticationUtil.runAs(findAndUpdateAclRunAsWork, AuthenticationUtil.getSystemUserName());
         }
-    };
-
-    private class GetNodesWithAspectCallback implements NodeRefQueryCallback
-    {
-        private List<NodeRef> nodes = new ArrayList<>();
-        private long minNodeId;
-        private long maxNodeId;
-
-        void init()
-        {
-            nodes.clear();
-        }
 
-        void done()
+        /**
+         * Fix the ACLs of the nodes in a new transaction, which is retried as usual
+         */
+        private void fixAcls(final List<NodeRef> nodeRefs)
         {
-            this.minNodeId = maxNodeId + 1;
+            transactionService.getRetryingTransactionHelper().doInTransaction(new RetryingTransactionCallback<Void>()
+            {
+                @Override
+                public Void execute() throws Throwable
+                {
+                    for (NodeRef nodeRef : nodeRefs)
+                    {
+                        fixAcl(nodeRef);
+                    }
+                    return null;
+                }
+            }, false, true);
         }
 
-        @Override
-        public boolean handle(Pair<Long, NodeRef> nodePair)
+        private void fixAcl(NodeRef nodeRef)
         {
-            if (nodes.size() < maxItemBatchSize)
+            if (log.isDebugEnabled())
             {
-                nodes.add(nodePair.getSecond());
-                maxNodeId = nodePair.getFirst();
-                return true;
+                log.debug(String.format("Processing node %s", nodeRef));
             }
-            return false;
-        }
+            final Long nodeId = nodeDAO.getNodePair(nodeRef).getFirst();
+
+            // retrieve acl properties from node
+            Long inheritFrom = (Long) nodeDAO.getNodeProperty(nodeId,
+                    ContentModel.PROP_INHERIT_FROM_ACL);
+            Long sharedAclToReplace = (Long) nodeDAO.getNodeProperty(nodeId,
+                    ContentModel.PROP_SHARED_ACL_TO_REPLACE);
+
+            // set inheritance using retrieved prop
+            accessControlListDAO.setInheritanceForChildren(nodeRef, inheritFrom, sharedAclToReplace,
+                    true);
+
+            nodeDAO.removeNodeAspects(nodeId, aspects);
+            nodeDAO.removeNodeProperties(nodeId, PENDING_FIX_ACL_ASPECT_PROPS);
+            
+            if (!policyIgnoreUtil.ignorePolicy(nodeRef))
+            {
+                boolean transformedToAsyncOperation = toBoolean((Boolean) AlfrescoTransactionSupport.getResource(FixedAclUpdater.FIXED_ACL_ASYNC_REQUIRED_KEY));
 
-        long getMinNodeId()
-        {
-            return minNodeId;
+                OnInheritPermissionsDisabled onInheritPermissionsDisabledPolicy = onInheritPermissionsDisabledDelegate.get(ContentModel.TYPE_BASE);
+                onInheritPermissionsDisabledPolicy.onInheritPermissionsDisabled(nodeRef, transformedToAsyncOperation);
+            }
+
+            if (log.isDebugEnabled())
+            {
+                log.debug(String.format("Node processed %s", nodeRef));
+            }
         }
+    };
 
-        public List<NodeRef> getNodes()
+    /**
+     * @return              the node ID the scan for pending nodes should start from
+     */
+    private long getCheckpoint()
+    {
+        if (attributeService == null)
         {
-            return nodes;
+            return 0L;
         }
+        Long checkpoint = (Long) attributeService.getAttribute(CHECKPOINT_ATTRIBUTE_PATH, CHECKPOINT_ATTRIBUTE);
+        return checkpoint == null ? 0L : checkpoint;
     }
 
-    private class CountNodesWithAspectCallback implements NodeRefQueryCallback
+    /**
+     * Persist the node ID the scan for pending nodes has reached, or clear it with <tt>null</tt>
+     */
+    private void setCheckpoint(Long checkpoint)
     {
-        private int count = 0;
-
-        @Override
-        public boolean handle(Pair<Long, NodeRef> nodePair)
+        if (attributeService == null)
         {
-            count++;
-            return true;
+            return;
         }
-
-        public int getCount()
+        if (checkpoint == null)
         {
-            return count;
+            attributeService.removeAttribute(CHECKPOINT_ATTRIBUTE_PATH, CHECKPOINT_ATTRIBUTE);
+        }
+        else
+        {
+            attributeService.setAttribute(checkpoint, CHECKPOINT_ATTRIBUTE_PATH, CHECKPOINT_ATTRIBUTE);
         }
     }
 
@@ -384,22 +579,46 @@ public class FixedAclUpdater extends TransactionListenerAdapter implements Appli
     {
         String lockToken = null;
         FixedAclUpdaterJobLockRefreshCallback jobLockRefreshCallback = new FixedAclUpdaterJobLockRefreshCallback();
+        boolean started = false;
 
         try
         {
             lockToken = jobLockService.getLock(lockQName, lockTimeToLive, 0, 1);
             jobLockService.refreshLock(lockToken, lockQName, lockRefreshTime, jobLockRefreshCallback);
 
-            AclWorkProvider provider = new AclWorkProvider();
+            AclWorkProvider provider = new AclWorkProvider(jobLockRefreshCallback);
+            statistics.recordRunStart(provider.getTotalEstimatedWorkSize(), provider.getStartNodeId());
+            started = true;
             AclWorker worker = new AclWorker();
-            BatchProcessor<NodeRef> bp = new BatchProcessor<>(
-                    "FixedAclUpdater",
-                    transactionService.getRetryingTransactionHelper(),
-                    provider,
-                    numThreads, maxItemBatchSize,
-                    applicationContext,
-                    log, 100);
-            int count = bp.process(worker, true);
+            int count = provider.getTotalEstimatedWorkSize();
+            // The partitions of a window are processed concurrently, each in its own transaction.
+            // Windows are processed one after the other, as subtrees are only disjoint within a window.
+            Collection<List<NodeRef>> window;
+            while (!(window = provider.getNextWork()).isEmpty())
+            {
+                BatchProcessor<List<NodeRef>> bp = new BatchProcessor<>(
+                        "FixedAclUpdater",
+                        transactionService.getRetryingTransactionHelper(),
+                        new WindowWorkProvider(window),
+                        numThreads, 1,
+                        applicationContext,
+                        log, 10);
+                bp.process(worker, true);
+            }
+            if (provider.isComplete())
+            {
+                // The next run starts from the beginning again
+                transactionService.getRetryingTransactionHelper().doInTransaction(new RetryingTransactionCallback<Void>()
+                {
+                    @Override
+                    public Void execute() throws Throwable
+                    {
+                        setCheckpoint(null);
+                        return null;
+                    }
+                }, false, true);
+                statistics.recordCheckpoint(0L);
+            }
             return count;
         }
         catch (LockAcquisitionException e)
@@ -409,6 +628,10 @@ public class FixedAclUpdater extends TransactionListenerAdapter implements Appli
         }
         finally
         {
+            if (started)
+            {
+                statistics.recordRunEnd();
+            }
             jobLockRefreshCallback.isActive.set(false);
             if(lockToken != null)
             {
@@ -0,0 +1,167 @@
+/*
+ * #%L
+ * Alfresco Repository
+ * %%
+ * Copyright (C) 2005 - 2016 Alfresco Software Limited
+ * %%
+ * This file is part of the Alfresco software. 
+ * If the software was purchased under a paid Alfresco license, the terms of 
+ * the paid license agreement will prevail.  Otherwise, the software is 
+ * provided under the following open source license terms:
+ * 
+ * Alfresco is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * 
+ * Alfresco is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ * 
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with Alfresco. If not, see <http://www.gnu.org/licenses/>.
+ * #L%
+ */
+package org.alfresco.repo.domain.permissions;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.alfresco.repo.management.DynamicMBeanExportOperations;
+import org.alfresco.repo.management.DynamicMBeanRegistrar;
+
+/**
+ * Records the throughput and backlog of the {@link FixedAclUpdater} runs on this server
+ * 
+ * @since 5.2
+ */
+public class FixedAclUpdaterStatistics implements FixedAclUpdaterStatisticsMBean
+{
+    private final AtomicLong processedNodes = new AtomicLong();
+    private final AtomicLong failedNodes = new AtomicLong();
+    private final AtomicLong partitions = new AtomicLong();
+    private volatile boolean running;
+    private volatile int initialBacklog;
+    private volatile long checkpoint;
+    private volatile long runStartTime;
+    private volatile long runEndTime;
+
+    private DynamicMBeanExportOperations mbeanExporter;
+    private String objectName = "Alfresco:Name=FixedAclUpdaterStatistics";
+
+    /**
+     * @param mbeanExporter     optional exporter used to publish the statistics over JMX
+     */
+    public void setMbeanExporter(DynamicMBeanExportOperations mbeanExporter)
+    {
+        this.mbeanExporter = mbeanExporter;
+    }
+
+    /**
+     * @param objectName        the JMX object name to publish the statistics under
+     */
+    public void setObjectName(String objectName)
+    {
+        this.objectName = objectName;
+    }
+
+    public void init()
+    {
+        DynamicMBeanRegistrar.registerMBean(mbeanExporter, this, objectName);
+    }
+
+    /* package */ void recordRunStart(int backlog, long checkpoint)
+    {
+        processedNodes.set(0L);
+        failedNodes.set(0L);
+        partitions.set(0L);
+        this.initialBacklog = backlog;
+        this.checkpoint = checkpoint;
+        this.runStartTime = System.currentTimeMillis();
+        this.runEndTime = 0L;
+        this.running = true;
+    }
+
+    /* package */ void recordRunEnd()
+    {
+        this.runEndTime = System.currentTimeMillis();
+        this.running = false;
+    }
+
+    /* package */ void recordCheckpoint(long checkpoint)
+    {
+        this.checkpoint = checkpoint;
+    }
+
+    /* package */ void recordPartitions(int count)
+    {
+        partitions.addAndGet(count);
+    }
+
+    /* package */ void recordProcessed(int processed, int failed)
+    {
+        processedNodes.addAndGet(processed);
+        failedNodes.addAndGet(failed);
+    }
+
+    @Override
+    public boolean isRunning()
+    {
+        return running;
+    }
+
+    @Override
+    public int getBacklog()
+    {
+        // Processing nodes can mark more nodes as pending, so this is a lower bound while running
+        return (int) Math.max(0L, initialBacklog - processedNodes.get());
+    }
+
+    @Override
+    public long getCheckpoint()
+    {
+        return checkpoint;
+    }
+
+    @Override
+    public long getProcessedNodes()
+    {
+        return processedNodes.get();
+    }
+
+    @Override
+    public long getFailedNodes()
+    {
+        return failedNodes.get();
+    }
+
+    @Override
+    public long getPartitions()
+    {
+        return partitions.get();
+    }
+
+    @Override
+    public double getThroughput()
+    {
+        long duration = getRunDuration();
+        return duration > 0L ? processedNodes.get() * 1000.0 / duration : 0.0;
+    }
+
+    @Override
+    public long getRunStartTime()
+    {
+        return runStartTime;
+    }
+
+    @Override
+    public long getRunDuration()
+    {
+        if (runStartTime == 0L)
+        {
+            return 0L;
+        }
+        long endTime = running ? System.currentTimeMillis() : runEndTime;
+        return endTime - runStartTime;
+    }
+}
@@ -0,0 +1,79 @@
+/*
+ * #%L
+ * Alfresco Repository
+ * %%
+ * Copyright (C) 2005 - 2016 Alfresco Software Limited
+ * %%
+ * This file is part of the Alfresco software. 
+ * If the software was purchased under a paid Alfresco license, the terms of 
+ * the paid license agreement will prevail.  Otherwise, the software is 
+ * provided under the following open source license terms:
+ * 
+ * Alfresco is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * 
+ * Alfresco is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ * 
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with Alfresco. If not, see <http://www.gnu.org/licenses/>.
+ * #L%
+ */
+package org.alfresco.repo.domain.permissions;
+
+/**
+ * Management interface exposing the progress of the {@link FixedAclUpdater}
+ * 
+ * @since 5.2
+ */
+public interface FixedAclUpdaterStatisticsMBean
+{
+    /**
+     * @return          <tt>true</tt> if the updater is running on this server
+     */
+    boolean isRunning();
+
+    /**
+     * @return          the estimated number of nodes still waiting for their ACLs to be fixed
+     */
+    int getBacklog();
+
+    /**
+     * @return          the node ID the scan will continue from
+     */
+    long getCheckpoint();
+
+    /**
+     * @return          the number of nodes processed by the current or last run
+     */
+    long getProcessedNodes();
+
+    /**
+     * @return          the number of nodes that failed in the current or last run
+     */
+    long getFailedNodes();
+
+    /**
+     * @return          the number of disjoint partitions handed to the workers in the current or last run
+     */
+    long getPartitions();
+
+    /**
+     * @return          the nodes processed per second by the current or last run
+     */
+    double getThroughput();
+
+    /**
+     * @return          the start time of the current or last run (ms since epoch) or 0 if there has not been one
+     */
+    long getRunStartTime();
+
+    /**
+     * @return          the duration of the current or last run in milliseconds
+     */
+    long getRunDuration();
+}
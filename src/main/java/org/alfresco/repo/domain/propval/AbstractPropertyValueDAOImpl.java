@@ -857,7 +857,7 @@ public abstract class AbstractPropertyValueDAOImpl implements PropertyValueDAO
 
     /**
      * {@inheritDoc}
-     * @see #createPropertyImpl(Long, long, long, Long, Serializable)
+     * @see #createPropertyImpl(Long, long, long, Long, Serializable, List)
      */
     public Long createProperty(Serializable value)
     {
@@ -865,6 +865,34 @@ public abstract class AbstractPropertyValueDAOImpl implements PropertyValueDAO
         return entityPair.getFirst();
     }
     
+    /**
+     * {@inheritDoc}
+     * <p/>
+     * The new properties are not cached.
+     * @since 5.2
+     */
+    public List<Long> createProperties(List<Serializable> values)
+    {
+        List<Long> rootPropIds = new ArrayList<Long>(values.size());
+        List<PropertyLinkEntity> links = new ArrayList<PropertyLinkEntity>(values.size() * 4);
+        for (Serializable value : values)
+        {
+            Long rootPropId = createPropertyRoot();
+            createPropertyImpl(rootPropId, 0L, 0L, null, value, links);
+            rootPropIds.add(rootPropId);
+        }
+        if (!links.isEmpty())
+        {
+            createPropertyLinks(links);
+        }
+        // Done
+        if (logger.isDebugEnabled())
+        {
+            logger.debug("Created " + rootPropIds.size() + " properties with " + links.size() + " links.");
+        }
+        return rootPropIds;
+    }
+    
     public void updateProperty(Long rootPropId, Serializable value)
     {
         propertyCache.updateValue(rootPropId, value);
@@ -875,6 +903,19 @@ public abstract class AbstractPropertyValueDAOImpl implements PropertyValueDAO
         propertyCache.deleteByKey(id);
     }
 
+    public int deleteProperties(List<Long> ids)
+    {
+        if (ids.isEmpty())
+        {
+            return 0;
+        }
+        for (Long id : ids)
+        {
+            propertyCache.removeByKey(id);
+        }
+        return deletePropertyRoots(ids);
+    }
+
     /**
      * Callback for <b>alf_prop_root</b> DAO.
      */
@@ -884,7 +925,7 @@ public abstract class AbstractPropertyValueDAOImpl implements PropertyValueDAO
         {
             // We will need a new root
             Long rootPropId = createPropertyRoot();
-            createPropertyImpl(rootPropId, 0L, 0L, null, value);
+            createPropertyImpl(rootPropId, 0L, 0L, null, value, null);
             // Done
             if (logger.isDebugEnabled())
             {
@@ -926,7 +967,7 @@ public abstract class AbstractPropertyValueDAOImpl implements PropertyValueDAO
             // Remove all links using the root
             deletePropertyLinks(key);
             // Create the new properties and update the cache
-            createPropertyImpl(key, 0L, 0L, null, value);
+            createPropertyImpl(key, 0L, 0L, null, value, null);
             // Update the property root to detect concurrent modification
             updatePropertyRoot(entity);
             // Done
@@ -957,6 +998,7 @@ public abstract class AbstractPropertyValueDAOImpl implements PropertyValueDAO
 
     /**
      * @param propIndex         a unique index within the context of the current property root
+     * @param links             the list to add the link entries to or <tt>null</tt> to create them directly
      */
     @SuppressWarnings("unchecked")
     private long createPropertyImpl(
@@ -964,7 +1006,8 @@ public abstract class AbstractPropertyValueDAOImpl implements PropertyValueDAO
             long propIndex,
             long containedIn,
             Long keyPropId,
-            Serializable value)
+            Serializable value,
+            List<PropertyLinkEntity> links)
     {
         // Keep track of the index for this property.  It gets used later when making the link entry.
         long thisPropIndex = propIndex;
@@ -1002,7 +1045,8 @@ public abstract class AbstractPropertyValueDAOImpl implements PropertyValueDAO
                             propIndex + 1L,
                             thisPropIndex,
                             mapKeyId,
-                            mapValue);
+                            mapValue,
+                            links);
                 }
             }
         }
@@ -1029,7 +1073,8 @@ public abstract class AbstractPropertyValueDAOImpl implements PropertyValueDAO
                             propIndex + 1L,
                             thisPropIndex,
                             null,
-                            collectionValue);
+                            collectionValue,
+                            links);
                 }
             }
         }
@@ -1045,7 +1090,20 @@ public abstract class AbstractPropertyValueDAOImpl implements PropertyValueDAO
             // If the key matches the value then it is the root
             keyPropId = valuePropId;
         }
-        createPropertyLink(rootPropId, thisPropIndex, containedIn, keyPropId, valuePropId);
+        if (links == null)
+        {
+            createPropertyLink(rootPropId, thisPropIndex, containedIn, keyPropId, valuePropId);
+        }
+        else
+        {
+            PropertyLinkEntity link = new PropertyLinkEntity();
+            link.setRootPropId(rootPropId);
+            link.setPropIndex(thisPropIndex);
+            link.setContainedIn(containedIn);
+            link.setKeyPropId(keyPropId);
+            link.setValuePropId(valuePropId);
+            links.add(link);
+        }
         
         // Done
         return propIndex;
@@ -1098,6 +1156,7 @@ public abstract class AbstractPropertyValueDAOImpl implements PropertyValueDAO
     protected abstract PropertyRootEntity getPropertyRoot(Long id);
     protected abstract PropertyRootEntity updatePropertyRoot(PropertyRootEntity entity);
     protected abstract void deletePropertyRoot(Long id);
+    protected abstract int deletePropertyRoots(List<Long> ids);
     
     /**
      * Create an entry for the map or collection link.
@@ -1115,6 +1174,13 @@ public abstract class AbstractPropertyValueDAOImpl implements PropertyValueDAO
             Long keyPropId,
             Long valuePropId);
     
+    /**
+     * Create several property links, sending the inserts to the database in batches.
+     * 
+     * @param links                 the links to create
+     */
+    protected abstract void createPropertyLinks(List<PropertyLinkEntity> links);
+    
     /**
      * Remove all property links for a given property root.
      * 
@@ -255,6 +255,19 @@ public interface PropertyValueDAO
      */
     Long createProperty(Serializable value);
     
+    /**
+     * Use for accessing non-unique, exploded properties; see interface comments.
+     * <p/>
+     * <b>alf_prop_root</b> accessor: create several new properties, as {@link #createProperty(Serializable)}
+     * does for each value.  The links of all the properties are sent to the database in batches.
+     * 
+     * @param values            the values to create (may contain <tt>null</tt>)
+     * @return                  Returns the new properties' IDs, in the order of the values
+     * 
+     * @since 5.2
+     */
+    List<Long> createProperties(List<Serializable> values);
+    
     /**
      * Use for accessing non-unique, exploded properties; see interface comments.
      * <p/>
@@ -274,6 +287,18 @@ public interface PropertyValueDAO
      */
     void deleteProperty(Long id);
     
+    /**
+     * Use for accessing non-unique, exploded properties; see interface comments.
+     * <p/>
+     * <b>alf_prop_root</b> accessor: delete several property roots completely using a single statement
+     * 
+     * @param ids               the IDs of the root properties to delete
+     * @return                  Returns the number of property roots deleted
+     * 
+     * @since 5.2
+     */
+    int deleteProperties(List<Long> ids);
+    
     //================================
     // 'alf_prop_unique_ctx' accessors
     //================================
@@ -47,12 +47,16 @@ import org.alfresco.repo.domain.propval.PropertyValueEntity;
 import org.alfresco.repo.domain.propval.PropertyValueEntity.PersistedType;
 import org.alfresco.repo.domain.schema.script.ScriptBundleExecutor;
 import org.alfresco.util.Pair;
+import org.apache.ibatis.exceptions.PersistenceException;
 import org.apache.ibatis.session.Configuration;
+import org.apache.ibatis.session.ExecutorType;
 import org.apache.ibatis.session.ResultContext;
 import org.apache.ibatis.session.ResultHandler;
 import org.apache.ibatis.session.RowBounds;
+import org.apache.ibatis.session.SqlSession;
 import org.mybatis.spring.SqlSessionTemplate;
 import org.springframework.dao.ConcurrencyFailureException;
+import org.springframework.dao.DataAccessException;
 import org.springframework.dao.DuplicateKeyException;
 
 /**
@@ -94,6 +98,7 @@ public class PropertyValueDAOImpl extends AbstractPropertyValueDAOImpl
     private static final String INSERT_PROPERTY_ROOT = "alfresco.propval.insert.insert_PropertyRoot";
     private static final String UPDATE_PROPERTY_ROOT = "alfresco.propval.update_PropertyRoot";
     private static final String DELETE_PROPERTY_ROOT_BY_ID = "alfresco.propval.delete_PropertyRootById";
+    private static final String DELETE_PROPERTY_ROOTS_BY_IDS = "alfresco.propval.delete_PropertyRootsByIds";
     
     private static final String SELECT_PROPERTY_UNIQUE_CTX_BY_ID = "alfresco.propval.select_PropertyUniqueContextById";
     private static final String SELECT_PROPERTY_UNIQUE_CTX_BY_VALUES = "alfresco.propval.select_PropertyUniqueContextByValues";
@@ -555,6 +560,14 @@ public class PropertyValueDAOImpl extends AbstractPropertyValueDAOImpl
         template.delete(DELETE_PROPERTY_ROOT_BY_ID, entity);
     }
 
+    @Override
+    protected int deletePropertyRoots(List<Long> ids)
+    {
+        PropertyIdQueryParameter params = new PropertyIdQueryParameter();
+        params.setRootPropIds(ids);
+        return template.delete(DELETE_PROPERTY_ROOTS_BY_IDS, params);
+    }
+
     @Override
     protected PropertyUniqueContextEntity createPropertyUniqueContext(
             Long valueId1, Long valueId2, Long valueId3,
@@ -694,6 +707,33 @@ public class PropertyValueDAOImpl extends AbstractPropertyValueDAOImpl
         // Done
     }
 
+    /**
+     * Uses a batch session on the current transaction's connection.  The inserts are sent
+     * to the database before returning.
+     */
+    @Override
+    protected void createPropertyLinks(List<PropertyLinkEntity> links)
+    {
+        SqlSession batchSession = template.getSqlSessionFactory().openSession(ExecutorType.BATCH);
+        try
+        {
+            for (PropertyLinkEntity link : links)
+            {
+                batchSession.insert(INSERT_PROPERTY_LINK, link);
+            }
+            batchSession.flushStatements();
+        }
+        catch (PersistenceException e)
+        {
+            DataAccessException translated = template.getPersistenceExceptionTranslator().translateExceptionIfPossible(e);
+            throw translated == null ? e : translated;
+        }
+        finally
+        {
+            batchSession.close();
+        }
+    }
+
     @Override
     protected int deletePropertyLinks(Long rootPropId)
     {
@@ -29,7 +29,10 @@ import java.io.File;
 import java.io.FileNotFoundException;
 import java.io.IOException;
 import java.io.InputStream;
+import java.util.Collections;
 import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ExecutorService;
 
 import org.alfresco.model.ContentModel;
 import org.alfresco.model.ForumModel;
@@ -48,6 +51,7 @@ import org.alfresco.service.cmr.download.DownloadStatus;
 import org.alfresco.service.cmr.download.DownloadStatus.Status;
 import org.alfresco.service.cmr.repository.ContentData;
 import org.alfresco.service.cmr.repository.ContentIOException;
+import org.alfresco.service.cmr.repository.ContentService;
 import org.alfresco.service.cmr.repository.NodeRef;
 import org.alfresco.service.cmr.repository.NodeService;
 import org.alfresco.service.cmr.view.ExporterCrawlerParameters;
@@ -57,6 +61,7 @@ import org.alfresco.service.namespace.QName;
 import org.alfresco.util.TempFileProvider;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import org.springframework.util.StringUtils;
 
 /**
  * {@link ActionExecuter} for creating an archive (ie. zip) file containing
@@ -84,8 +89,13 @@ public class CreateDownloadArchiveAction extends ActionExecuterAbstractBase
     private NodeService nodeService;
     private RetryingTransactionHelper transactionHelper;
     private DownloadStatusUpdateService updateService;
+    private ContentService contentService;
+    private ExecutorService fetchExecutor;
 
     private long maximumContentSize = -1l;
+    private Set<String> storedMimetypes = Collections.emptySet();
+    private boolean parallelFetch = false;
+    private int prefetchCount = 8;
     
     private static class SizeEstimator extends BaseExporter 
     {
@@ -166,6 +176,52 @@ public class CreateDownloadArchiveAction extends ActionExecuterAbstractBase
     {
         this.updateService = updateService;
     }
+    
+    /**
+     * Set the comma separated list of mimetypes, normally already compressed formats,
+     * that are added to the archive without compression.
+     */
+    public void setStoredMimetypes(String storedMimetypes)
+    {
+        this.storedMimetypes = StringUtils.commaDelimitedListToSet(StringUtils.trimAllWhitespace(storedMimetypes));
+    }
+    
+    /**
+     * Set the content service used to fetch content when {@link #setParallelFetch(boolean) parallel fetch}
+     * is enabled.
+     */
+    public void setContentService(ContentService contentService)
+    {
+        this.contentService = contentService;
+    }
+    
+    /**
+     * Set the executor used to fetch content when {@link #setParallelFetch(boolean) parallel fetch}
+     * is enabled.
+     */
+    public void setFetchExecutor(ExecutorService fetchExecutor)
+    {
+        this.fetchExecutor = fetchExecutor;
+    }
+    
+    /**
+     * Enable copying the content of the next few files to temporary files in parallel, while
+     * earlier files are added to the archive. Helps when reading from the content store is
+     * slow compared to compressing the content.
+     */
+    public void setParallelFetch(boolean parallelFetch)
+    {
+        this.parallelFetch = parallelFetch;
+    }
+    
+    /**
+     * Set the maximum number of files of a single download fetched ahead of the file being
+     * added to the archive.
+     */
+    public void setPrefetchCount(int prefetchCount)
+    {
+        this.prefetchCount = prefetchCount;
+    }
 
     /**
      * Create an archive file containing content from the repository.
@@ -199,8 +255,9 @@ public class CreateDownloadArchiveAction extends ActionExecuterAbstractBase
                 crawlerParameters.setExcludeChildAssocs(new QName[] {RenditionModel.ASSOC_RENDITION, ForumModel.ASSOC_DISCUSSION});
                 crawlerParameters.setExcludeAspects(new QName[] {ContentModel.ASPECT_WORKING_COPY});
         
-                // Get an estimate of the size for statuses
+                // Get an estimate of the size for statuses, which only needs the content data
                 SizeEstimator estimator = new SizeEstimator(checkOutCheckInService, nodeService);
+                crawlerParameters.setCrawlContentStreams(false);
                 exporterService.exportView(estimator, crawlerParameters, null);
                 
                 if (maximumContentSize > 0 && estimator.getSize() > maximumContentSize) 
@@ -247,6 +304,13 @@ public class CreateDownloadArchiveAction extends ActionExecuterAbstractBase
         // perform the actual export
         final File tempFile = TempFileProvider.createTempFile(TEMP_FILE_PREFIX, TEMP_FILE_SUFFIX);
         final ZipDownloadExporter handler = new ZipDownloadExporter(tempFile, checkOutCheckInService, nodeService, transactionHelper, updateService, downloadStorage, actionedUponNodeRef, estimator.getSize(), estimator.getFileCount());
+        handler.setStoredMimetypes(storedMimetypes);
+        if (parallelFetch && contentService != null && fetchExecutor != null)
+        {
+            handler.setParallelFetch(contentService, fetchExecutor, prefetchCount);
+        }
+        // the handler fetches the content itself when fetching in parallel
+        crawlerParameters.setCrawlContentStreams(!handler.isParallelFetch());
         
         try {
             exporterService.exportView(handler, crawlerParameters, null);
@@ -258,6 +322,7 @@ public class CreateDownloadArchiveAction extends ActionExecuterAbstractBase
         }
         finally
         {
+            handler.cleanup();
             tempFile.delete();
         }
     }
@@ -26,28 +26,39 @@
 package org.alfresco.repo.download;
 
 import java.io.File;
-import java.io.FileNotFoundException;
-import java.io.FileOutputStream;
+import java.io.FileInputStream;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStream;
+import java.util.Collections;
 import java.util.Deque;
 import java.util.Iterator;
 import java.util.LinkedList;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
 
 import org.alfresco.model.ContentModel;
+import org.alfresco.repo.security.authentication.AuthenticationUtil;
+import org.alfresco.repo.tenant.TenantUtil;
+import org.alfresco.repo.tenant.TenantUtil.TenantRunAsWork;
 import org.alfresco.repo.transaction.RetryingTransactionHelper;
 import org.alfresco.repo.transaction.RetryingTransactionHelper.RetryingTransactionCallback;
 import org.alfresco.service.cmr.coci.CheckOutCheckInService;
 import org.alfresco.service.cmr.download.DownloadStatus;
 import org.alfresco.service.cmr.download.DownloadStatus.Status;
 import org.alfresco.service.cmr.repository.ContentData;
+import org.alfresco.service.cmr.repository.ContentReader;
+import org.alfresco.service.cmr.repository.ContentService;
 import org.alfresco.service.cmr.repository.NodeRef;
 import org.alfresco.service.cmr.repository.NodeService;
 import org.alfresco.service.cmr.view.ExporterContext;
 import org.alfresco.service.cmr.view.ExporterException;
 import org.alfresco.service.namespace.QName;
 import org.alfresco.util.Pair;
+import org.alfresco.util.TempFileProvider;
 import org.apache.commons.compress.archivers.zip.ZipArchiveEntry;
 import org.apache.commons.compress.archivers.zip.ZipArchiveOutputStream;
 import org.apache.commons.compress.archivers.zip.ZipArchiveOutputStream.UnicodeExtraFieldPolicy;
@@ -57,6 +68,14 @@ import org.slf4j.LoggerFactory;
 
 /**
  * Handler for exporting node content to a ZIP file
+ * <p>
+ * Content with one of the {@link #setStoredMimetypes(Set) stored mimetypes}, normally formats that
+ * are already compressed, is added without compression. If {@link #setParallelFetch(ContentService,
+ * ExecutorService, int) parallel fetch} is set, the content of the next few files is copied to
+ * temporary files by the executor while the exporting thread adds earlier files to the archive,
+ * in export order. The content is then read by its URL, so the export should be crawled without
+ * {@link org.alfresco.service.cmr.view.ExporterCrawlerParameters#setCrawlContentStreams(boolean)
+ * opening content streams}.
  * 
  * @author Alex Miller
  */
@@ -65,6 +84,8 @@ public class ZipDownloadExporter extends BaseExporter
     private static Logger log = LoggerFactory.getLogger(ZipDownloadExporter.class);
     
     private static final String PATH_SEPARATOR = "/";
+    private static final String TEMP_FILE_PREFIX = "download-entry";
+    private static final String TEMP_FILE_SUFFIX = ".bin";
 
     protected ZipArchiveOutputStream zipStream;
 
@@ -82,7 +103,16 @@ public class ZipDownloadExporter extends BaseExporter
     private Deque<Pair<String, NodeRef>> path = new LinkedList<Pair<String, NodeRef>>();
     private String currentName;
 
-    private OutputStream outputStream;
+    private File zipFile;
+    
+    private Set<String> storedMimetypes = Collections.emptySet();
+    
+    private ContentService contentService;
+    private ExecutorService fetchExecutor;
+    private int prefetchCount;
+    
+    // Entries not yet added to the archive, in export order. Only used with parallel fetch.
+    private Deque<PendingEntry> pendingEntries = new LinkedList<PendingEntry>();
 
     /**
      * Construct
@@ -100,27 +130,59 @@ public class ZipDownloadExporter extends BaseExporter
     public ZipDownloadExporter(File zipFile, CheckOutCheckInService checkOutCheckInService, NodeService nodeService, RetryingTransactionHelper transactionHelper, DownloadStatusUpdateService updateService, DownloadStorage downloadStorage, NodeRef downloadNodeRef, long total, long totalFileCount)
     {
         super(checkOutCheckInService, nodeService);
+        this.zipFile = zipFile;
+        this.updateService = updateService;
+        this.transactionHelper = transactionHelper;
+        this.downloadStorage = downloadStorage;
+        
+        this.downloadNodeRef = downloadNodeRef;
+        this.total = total;
+        this.totalFileCount = totalFileCount;
+    }
+
+    /**
+     * @param storedMimetypes mimetypes of content that is added to the archive without compression
+     */
+    public void setStoredMimetypes(Set<String> storedMimetypes)
+    {
+        this.storedMimetypes = storedMimetypes;
+    }
+
+    /**
+     * Fetch the content of files ahead of adding them to the archive.
+     * 
+     * @param contentService service used to read the content by content URL
+     * @param fetchExecutor executor that copies the content to temporary files
+     * @param prefetchCount maximum number of files fetched ahead of the file being added
+     */
+    public void setParallelFetch(ContentService contentService, ExecutorService fetchExecutor, int prefetchCount)
+    {
+        this.contentService = contentService;
+        this.fetchExecutor = fetchExecutor;
+        this.prefetchCount = prefetchCount;
+    }
+
+    /**
+     * @return true if the content of files is fetched ahead of adding them to the archive
+     */
+    public boolean isParallelFetch()
+    {
+        return fetchExecutor != null && prefetchCount > 0;
+    }
+
+    @Override
+    public void start(final ExporterContext context)
+    {
         try
         {
-            this.outputStream = new FileOutputStream(zipFile);
-            this.updateService = updateService;
-            this.transactionHelper = transactionHelper;
-            this.downloadStorage = downloadStorage;
-            
-            this.downloadNodeRef = downloadNodeRef;
-            this.total = total;
-            this.totalFileCount = totalFileCount;
+            // Writing to a file, rather than a stream, allows entries to be stored
+            // without knowing their size and CRC up front.
+            zipStream = new ZipArchiveOutputStream(zipFile);
         }
-        catch (FileNotFoundException e)
+        catch (IOException e)
         {
             throw new ExporterException("Failed to create zip file", e);
         }
-    }
-
-    @Override
-    public void start(final ExporterContext context)
-    {
-        zipStream = new ZipArchiveOutputStream(outputStream);
         // NOTE: This encoding allows us to workaround bug...
         //       http://bugs.sun.com/bugdatabase/view_bug.do;:WuuT?bug_id=4820807
         zipStream.setEncoding("UTF-8");
@@ -137,32 +199,63 @@ public class ZipDownloadExporter extends BaseExporter
         if (ContentModel.TYPE_FOLDER.equals(nodeService.getType(nodeRef)))
         {
             String path = getPath() + PATH_SEPARATOR;
-            ZipArchiveEntry archiveEntry = new ZipArchiveEntry(path);
-            try
+            if (isParallelFetch() && !pendingEntries.isEmpty())
             {
-                zipStream.putArchiveEntry(archiveEntry);
-                zipStream.closeArchiveEntry();
+                pendingEntries.add(new PendingEntry(path, null, null, null));
             }
-            catch (IOException e)
+            else
             {
-                throw new ExporterException("Unexpected IOException adding folder entry", e);
+                addFolderEntry(path);
             }
         }
     }
     
+    private void addFolderEntry(String path)
+    {
+        ZipArchiveEntry archiveEntry = new ZipArchiveEntry(path);
+        try
+        {
+            zipStream.putArchiveEntry(archiveEntry);
+            zipStream.closeArchiveEntry();
+        }
+        catch (IOException e)
+        {
+            throw new ExporterException("Unexpected IOException adding folder entry", e);
+        }
+    }
+    
     @Override
     public void contentImpl(NodeRef nodeRef, QName property, InputStream content, ContentData contentData, int index)
     {
-        // if the content stream to output is empty, then just return content descriptor as is
-        if (content == null)
+        if (isParallelFetch())
+        {
+            // content without a URL has been skipped by the crawler
+            if (contentData == null || contentData.getContentUrl() == null || contentData.getContentUrl().isEmpty())
+            {
+                return;
+            }
+            
+            // Fetch the content by its URL; any stream passed in is closed once we return
+            FetchContent fetch = new FetchContent(contentData.getContentUrl());
+            pendingEntries.add(new PendingEntry(getPath(), contentData.getMimetype(), fetch, fetchExecutor.submit(fetch)));
+            addPendingEntries(prefetchCount);
+        }
+        else if (content != null)
         {
-            return;
+            addContentEntry(getPath(), contentData.getMimetype(), content);
         }
-        
+    }
+    
+    private void addContentEntry(String path, String mimetype, InputStream content)
+    {
         try
         {
             // ALF-2016
-            ZipArchiveEntry zipEntry=new ZipArchiveEntry(getPath());
+            ZipArchiveEntry zipEntry=new ZipArchiveEntry(path);
+            if (mimetype != null && storedMimetypes.contains(mimetype))
+            {
+                zipEntry.setMethod(ZipArchiveEntry.STORED);
+            }
             zipStream.putArchiveEntry(zipEntry);
             
             // copy export stream to zip
@@ -177,6 +270,97 @@ public class ZipDownloadExporter extends BaseExporter
         }
     }
     
+    /**
+     * Adds pending entries to the archive in export order. Entries are added while their content
+     * has been fetched, and regardless of that while more than <code>maxPending</code> remain.
+     */
+    private void addPendingEntries(int maxPending)
+    {
+        while (!pendingEntries.isEmpty())
+        {
+            PendingEntry entry = pendingEntries.peek();
+            if (entry.fetchedContent != null && !entry.fetchedContent.isDone() && pendingEntries.size() <= maxPending)
+            {
+                break;
+            }
+            pendingEntries.poll();
+            if (entry.fetchedContent == null)
+            {
+                addFolderEntry(entry.path);
+            }
+            else
+            {
+                addFetchedEntry(entry);
+            }
+        }
+    }
+    
+    private void addFetchedEntry(PendingEntry entry)
+    {
+        File file = null;
+        try
+        {
+            file = entry.fetchedContent.get();
+            InputStream content = new FileInputStream(file);
+            try
+            {
+                addContentEntry(entry.path, entry.mimetype, content);
+            }
+            finally
+            {
+                content.close();
+            }
+        }
+        catch (InterruptedException e)
+        {
+            throw new ExporterException("Interrupted while fetching content for " + entry.path, e);
+        }
+        catch (ExecutionException e)
+        {
+            throw new ExporterException("Failed to fetch content for " + entry.path, e.getCause());
+        }
+        catch (IOException e)
+        {
+            throw new ExporterException("Failed to zip export stream", e);
+        }
+        finally
+        {
+            if (file != null)
+            {
+                file.delete();
+            }
+        }
+    }
+    
+    /**
+     * Discards content that has been fetched but not added to the archive and closes the
+     * archive if the export did not complete.
+     */
+    /* package */ void cleanup()
+    {
+        for (PendingEntry entry : pendingEntries)
+        {
+            if (entry.fetchedContent != null)
+            {
+                entry.fetchedContent.cancel(true);
+                entry.fetch.discard();
+            }
+        }
+        pendingEntries.clear();
+        
+        if (zipStream != null)
+        {
+            try
+            {
+                zipStream.close();
+            }
+            catch (IOException e)
+            {
+                log.debug("Failed to close zip stream", e);
+            }
+        }
+    }
+    
     @Override
     public void endNode(NodeRef nodeRef)
     {
@@ -186,6 +370,7 @@ public class ZipDownloadExporter extends BaseExporter
     @Override
     public void end()
     {
+        addPendingEntries(0);
         try
         {
             zipStream.close();
@@ -306,4 +491,99 @@ public class ZipDownloadExporter extends BaseExporter
     {
         return totalFileCount;
     }
+    
+    /**
+     * A file or folder waiting to be added to the archive. Folders have no content.
+     */
+    private static class PendingEntry
+    {
+        private final String path;
+        private final String mimetype;
+        private final FetchContent fetch;
+        private final Future<File> fetchedContent;
+        
+        PendingEntry(String path, String mimetype, FetchContent fetch, Future<File> fetchedContent)
+        {
+            this.path = path;
+            this.mimetype = mimetype;
+            this.fetch = fetch;
+            this.fetchedContent = fetchedContent;
+        }
+    }
+    
+    /**
+     * Copies content to a temporary file, as the user and tenant that created it on the exporting
+     * thread. The file is tracked so that it can be deleted if the entry is discarded, whether the
+     * copy has not started, is running or has finished.
+     */
+    private class FetchContent implements Callable<File>
+    {
+        private final String contentUrl;
+        private final String runAsUser;
+        private final String tenantDomain;
+        private File file;
+        private boolean discarded;
+        
+        FetchContent(String contentUrl)
+        {
+            this.contentUrl = contentUrl;
+            this.runAsUser = AuthenticationUtil.getRunAsUser();
+            this.tenantDomain = TenantUtil.getCurrentDomain();
+        }
+        
+        @Override
+        public File call() throws Exception
+        {
+            File file;
+            synchronized (this)
+            {
+                if (discarded)
+                {
+                    return null;
+                }
+                file = TempFileProvider.createTempFile(TEMP_FILE_PREFIX, TEMP_FILE_SUFFIX);
+                this.file = file;
+            }
+            final File target = file;
+            try
+            {
+                TenantUtil.runAsUserTenant(new TenantRunAsWork<Void>()
+                {
+                    @Override
+                    public Void doWork() throws Exception
+                    {
+                        ContentReader reader = contentService.getRawReader(contentUrl);
+                        reader.getContent(target);
+                        return null;
+                    }
+                }, runAsUser, tenantDomain);
+            }
+            catch (RuntimeException e)
+            {
+                file.delete();
+                throw e;
+            }
+            synchronized (this)
+            {
+                if (discarded)
+                {
+                    // Discarded while copying; the file may not have been deletable then
+                    file.delete();
+                }
+            }
+            return file;
+        }
+        
+        /**
+         * Delete the fetched file, now or as soon as the copy finishes
+         */
+        synchronized void discard()
+        {
+            discarded = true;
+            if (file != null)
+            {
+                file.delete();
+            }
+        }
+    }
 }
@@ -664,6 +664,11 @@ public class ExporterComponent
                     exporter.content(nodeRef, property, null, noContentURL, index);
                     exporter.warning("Skipped content for property " + property + " on node " + nodeRef);
                 }
+                else if (!parameters.isCrawlContentStreams())
+                {
+                    // the exporter reads the content itself
+                    exporter.content(nodeRef, property, null, reader.getContentData(), index);
+                }
                 else
                 {
                     InputStream inputStream = reader.getContentInputStream();
@@ -0,0 +1,124 @@
+/*
+ * #%L
+ * Alfresco Repository
+ * %%
+ * Copyright (C) 2005 - 2016 Alfresco Software Limited
+ * %%
+ * This file is part of the Alfresco software. 
+ * If the software was purchased under a paid Alfresco license, the terms of 
+ * the paid license agreement will prevail.  Otherwise, the software is 
+ * provided under the following open source license terms:
+ * 
+ * Alfresco is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * 
+ * Alfresco is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ * 
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with Alfresco. If not, see <http://www.gnu.org/licenses/>.
+ * #L%
+ */
+package org.alfresco.repo.jscript;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.alfresco.repo.management.DynamicMBeanExportOperations;
+import org.alfresco.repo.management.DynamicMBeanRegistrar;
+
+/**
+ * Counts the hits and misses of the {@link RhinoScriptProcessor} cache of compiled repository scripts.
+ * 
+ * @since 5.2
+ */
+public class CompiledScriptCacheStatistics implements CompiledScriptCacheStatisticsMBean
+{
+    private final AtomicLong hits = new AtomicLong();
+    private final AtomicLong misses = new AtomicLong();
+    private final AtomicLong staleImports = new AtomicLong();
+    private final AtomicLong compileTimeMs = new AtomicLong();
+
+    private DynamicMBeanExportOperations mbeanExporter;
+    private String objectName = "Alfresco:Name=CompiledScriptCacheStatistics";
+
+    /**
+     * @param mbeanExporter     optional exporter used to publish the statistics over JMX
+     */
+    public void setMbeanExporter(DynamicMBeanExportOperations mbeanExporter)
+    {
+        this.mbeanExporter = mbeanExporter;
+    }
+
+    /**
+     * @param objectName        the JMX object name to publish the statistics under
+     */
+    public void setObjectName(String objectName)
+    {
+        this.objectName = objectName;
+    }
+
+    public void init()
+    {
+        DynamicMBeanRegistrar.registerMBean(mbeanExporter, this, objectName);
+    }
+
+    /* package */ void recordHit()
+    {
+        hits.incrementAndGet();
+    }
+
+    /* package */ void recordMiss(long compileTimeMs, boolean staleImport)
+    {
+        misses.incrementAndGet();
+        this.compileTimeMs.addAndGet(compileTimeMs);
+        if (staleImport)
+        {
+            staleImports.incrementAndGet();
+        }
+    }
+
+    @Override
+    public long getHits()
+    {
+        return hits.get();
+    }
+
+    @Override
+    public long getMisses()
+    {
+        return misses.get();
+    }
+
+    @Override
+    public long getStaleImports()
+    {
+        return staleImports.get();
+    }
+
+    @Override
+    public double getHitRatio()
+    {
+        long hitCount = hits.get();
+        long total = hitCount + misses.get();
+        return total == 0L ? 0.0 : (double) hitCount / total;
+    }
+
+    @Override
+    public long getCompileTime()
+    {
+        return compileTimeMs.get();
+    }
+
+    @Override
+    public void reset()
+    {
+        hits.set(0L);
+        misses.set(0L);
+        staleImports.set(0L);
+        compileTimeMs.set(0L);
+    }
+}
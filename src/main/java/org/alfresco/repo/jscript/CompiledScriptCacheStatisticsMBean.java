@@ -0,0 +1,64 @@
+/*
+ * #%L
+ * Alfresco Repository
+ * %%
+ * Copyright (C) 2005 - 2016 Alfresco Software Limited
+ * %%
+ * This file is part of the Alfresco software. 
+ * If the software was purchased under a paid Alfresco license, the terms of 
+ * the paid license agreement will prevail.  Otherwise, the software is 
+ * provided under the following open source license terms:
+ * 
+ * Alfresco is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * 
+ * Alfresco is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ * 
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with Alfresco. If not, see <http://www.gnu.org/licenses/>.
+ * #L%
+ */
+package org.alfresco.repo.jscript;
+
+/**
+ * Management interface exposing the effectiveness of the cache of compiled repository scripts
+ * 
+ * @since 5.2
+ */
+public interface CompiledScriptCacheStatisticsMBean
+{
+    /**
+     * @return          the number of executions that used a cached compiled script
+     */
+    long getHits();
+
+    /**
+     * @return          the number of executions that had to compile the script
+     */
+    long getMisses();
+
+    /**
+     * @return          the number of cached scripts discarded because one of their imports had changed
+     */
+    long getStaleImports();
+
+    /**
+     * @return          the fraction of executions that used a cached compiled script
+     */
+    double getHitRatio();
+
+    /**
+     * @return          the total time spent loading and compiling repository scripts in milliseconds
+     */
+    long getCompileTime();
+
+    /**
+     * Discard the statistics gathered so far
+     */
+    void reset();
+}
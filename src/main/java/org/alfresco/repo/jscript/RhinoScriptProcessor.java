@@ -41,12 +41,14 @@ import net.sf.acegisecurity.AuthenticationException;
 import org.alfresco.error.AlfrescoRuntimeException;
 import org.alfresco.model.ContentModel;
 import org.alfresco.processor.ProcessorExtension;
+import org.alfresco.repo.cache.SimpleCache;
 import org.alfresco.repo.processor.BaseProcessor;
 import org.alfresco.scripts.ScriptException;
 import org.alfresco.scripts.ScriptResourceHelper;
 import org.alfresco.scripts.ScriptResourceLoader;
 import org.alfresco.service.cmr.model.FileInfo;
 import org.alfresco.service.cmr.model.FileNotFoundException;
+import org.alfresco.service.cmr.repository.ContentData;
 import org.alfresco.service.cmr.repository.ContentIOException;
 import org.alfresco.service.cmr.repository.ContentReader;
 import org.alfresco.service.cmr.repository.NodeRef;
@@ -54,6 +56,8 @@ import org.alfresco.service.cmr.repository.ScriptLocation;
 import org.alfresco.service.cmr.repository.ScriptProcessor;
 import org.alfresco.service.cmr.repository.StoreRef;
 import org.alfresco.service.namespace.QName;
+import org.alfresco.util.EqualsHelper;
+import org.alfresco.util.Pair;
 import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
 import org.mozilla.javascript.Context;
@@ -105,6 +109,12 @@ public class RhinoScriptProcessor extends BaseProcessor implements ScriptProcess
     /** Cache of runtime compiled script instances */
     private final Map<String, Script> scriptCache = new ConcurrentHashMap<String, Script>(256);
     
+    /** Cache of compiled repository scripts keyed by content URL */
+    private SimpleCache<String, Object> compiledScriptCache;
+    
+    /** Hit and miss counts for the compiled repository scripts */
+    private CompiledScriptCacheStatistics compiledScriptCacheStatistics = new CompiledScriptCacheStatistics();
+    
     
     /**
      * Set the default store reference
@@ -140,6 +150,28 @@ public class RhinoScriptProcessor extends BaseProcessor implements ScriptProcess
     {
         this.shareSealedScopes = shareSealedScopes;
     }
+    
+    /**
+     * Set the cache for scripts stored in the repository.  Entries are keyed by the content URL of the
+     * script, so an edited script is simply not found; imports from the repository are checked against
+     * the content URLs they had when the script was compiled.  As content URLs never change meaning,
+     * the cache can be local to each server.  Repository scripts are compiled for every execution
+     * when no cache is set.
+     * 
+     * @param compiledScriptCache   a cache of compiled repository scripts
+     */
+    public void setCompiledScriptCache(SimpleCache<String, Object> compiledScriptCache)
+    {
+        this.compiledScriptCache = compiledScriptCache;
+    }
+    
+    /**
+     * @param compiledScriptCacheStatistics     records the hits and misses of the compiled script cache
+     */
+    public void setCompiledScriptCacheStatistics(CompiledScriptCacheStatistics compiledScriptCacheStatistics)
+    {
+        this.compiledScriptCacheStatistics = compiledScriptCacheStatistics;
+    }
 
     /**
      * @see org.alfresco.service.cmr.repository.ScriptProcessor#reset()
@@ -147,6 +179,10 @@ public class RhinoScriptProcessor extends BaseProcessor implements ScriptProcess
     public void reset()
     {
         this.scriptCache.clear();
+        if (this.compiledScriptCache != null)
+        {
+            this.compiledScriptCache.clear();
+        }
     }
     
     /**
@@ -242,16 +278,51 @@ public class RhinoScriptProcessor extends BaseProcessor implements ScriptProcess
                 throw new AlfrescoRuntimeException("Script Node content not found: " + nodeRef);
             }
             
-            // compile the script based on the node content
-            Script script;
-            Context cx = Context.enter();
-            try
+            // use the compiled script if neither the content nor any of its imports have changed
+            Script script = null;
+            String contentUrl = cr.getContentUrl();
+            boolean cachable = this.compile && this.compiledScriptCache != null && contentUrl != null;
+            boolean staleImport = false;
+            if (cachable)
             {
-                script = cx.compileString(resolveScriptImports(cr.getContentString()), nodeRef.toString(), 1, null);
+                CompiledScript compiledScript = (CompiledScript) this.compiledScriptCache.get(contentUrl);
+                if (compiledScript != null)
+                {
+                    if (isCurrent(compiledScript))
+                    {
+                        script = compiledScript.script;
+                        this.compiledScriptCacheStatistics.recordHit();
+                    }
+                    else
+                    {
+                        staleImport = true;
+                    }
+                }
             }
-            finally
+            
+            if (script == null)
             {
-                Context.exit();
+                long startTime = System.currentTimeMillis();
+                
+                // compile the script based on the node content, noting the imports it depends on
+                ImportRecordingResourceLoader importLoader = new ImportRecordingResourceLoader();
+                String source = ScriptResourceHelper.resolveScriptImports(cr.getContentString(), importLoader, logger);
+                Context cx = Context.enter();
+                try
+                {
+                    script = cx.compileString(source, nodeRef.toString(), 1, null);
+                }
+                finally
+                {
+                    Context.exit();
+                }
+                
+                if (cachable)
+                {
+                    // As for the classpath scripts, it does not matter if two threads compile the same script
+                    this.compiledScriptCache.put(contentUrl, new CompiledScript(script, importLoader.imports));
+                    this.compiledScriptCacheStatistics.recordMiss(System.currentTimeMillis() - startTime, staleImport);
+                }
             }
             
             return executeScriptImpl(script, model, false, nodeRef.toString());
@@ -366,60 +437,120 @@ public class RhinoScriptProcessor extends BaseProcessor implements ScriptProcess
         }
         else
         {
-            NodeRef scriptRef;
-            if (resource.startsWith("/"))
-            {
-                // resolve from default SpacesStore as cm:name based path
-                // TODO: remove this once FFS correctly allows name path resolving from store root!
-                NodeRef rootNodeRef = this.services.getNodeService().getRootNode(this.storeRef);
-                List<NodeRef> nodes = this.services.getSearchService().selectNodes(
-                        rootNodeRef, this.storePath, null, this.services.getNamespaceService(), false);
-                if (nodes.size() == 0)
-                {
-                    throw new AlfrescoRuntimeException("Unable to find store path: " + this.storePath);
-                }
-                StringTokenizer tokenizer = new StringTokenizer(resource, "/");
-                List<String> elements = new ArrayList<String>(6);
-                if (tokenizer.hasMoreTokens())
-                {
-                    tokenizer.nextToken();
-                }
-                while (tokenizer.hasMoreTokens())
-                {
-                    elements.add(tokenizer.nextToken());
-                }
-                try
-                {
-                    FileInfo fileInfo = this.services.getFileFolderService().resolveNamePath(nodes.get(0), elements);
-                    scriptRef = fileInfo.getNodeRef();
-                }
-                catch (FileNotFoundException err)
-                {
-                    throw new AlfrescoRuntimeException("Unable to load included script repository resource: " + resource);
-                }
+            result = loadScriptNodeContent(resource, null);
+        }
+        
+        return result;
+    }
+    
+    /**
+     * Load the content of a script stored in the repository
+     * 
+     * @param resource      a NodeRef or cm:name based path
+     * @param imports       if not <tt>null</tt>, the resource and the content URL read are added to this list
+     * 
+     * @return the content from the resource
+     * 
+     * @throws AlfrescoRuntimeException on any IO or ContentIO error
+     */
+    private String loadScriptNodeContent(String resource, List<Pair<String, String>> imports)
+    {
+        NodeRef scriptRef = resolveScriptNodeRef(resource);
+        
+        // load from NodeRef default content property
+        try
+        {
+            ContentReader cr = this.services.getContentService().getReader(scriptRef, ContentModel.PROP_CONTENT);
+            if (cr == null || cr.exists() == false)
+            {
+                throw new AlfrescoRuntimeException("Included Script Node content not found: " + resource);
             }
-            else
+            if (imports != null)
             {
-                scriptRef = new NodeRef(resource);
+                imports.add(new Pair<String, String>(resource, cr.getContentUrl()));
+            }
+            return cr.getContentString();
+        }
+        catch (ContentIOException err)
+        {
+            throw new AlfrescoRuntimeException("Unable to load included script repository resource: " + resource);
+        }
+    }
+    
+    /**
+     * Find the node of a script stored in the repository
+     * 
+     * @param resource      a NodeRef or cm:name based path
+     * 
+     * @throws AlfrescoRuntimeException if a path cannot be resolved
+     */
+    private NodeRef resolveScriptNodeRef(String resource)
+    {
+        NodeRef scriptRef;
+        if (resource.startsWith("/"))
+        {
+            // resolve from default SpacesStore as cm:name based path
+            // TODO: remove this once FFS correctly allows name path resolving from store root!
+            NodeRef rootNodeRef = this.services.getNodeService().getRootNode(this.storeRef);
+            List<NodeRef> nodes = this.services.getSearchService().selectNodes(
+                    rootNodeRef, this.storePath, null, this.services.getNamespaceService(), false);
+            if (nodes.size() == 0)
+            {
+                throw new AlfrescoRuntimeException("Unable to find store path: " + this.storePath);
+            }
+            StringTokenizer tokenizer = new StringTokenizer(resource, "/");
+            List<String> elements = new ArrayList<String>(6);
+            if (tokenizer.hasMoreTokens())
+            {
+                tokenizer.nextToken();
+            }
+            while (tokenizer.hasMoreTokens())
+            {
+                elements.add(tokenizer.nextToken());
             }
-            
-            // load from NodeRef default content property
             try
             {
-                ContentReader cr = this.services.getContentService().getReader(scriptRef, ContentModel.PROP_CONTENT);
-                if (cr == null || cr.exists() == false)
+                FileInfo fileInfo = this.services.getFileFolderService().resolveNamePath(nodes.get(0), elements);
+                scriptRef = fileInfo.getNodeRef();
+            }
+            catch (FileNotFoundException err)
+            {
+                throw new AlfrescoRuntimeException("Unable to load included script repository resource: " + resource);
+            }
+        }
+        else
+        {
+            scriptRef = new NodeRef(resource);
+        }
+        return scriptRef;
+    }
+    
+    /**
+     * @return <tt>true</tt> if the repository scripts imported by the compiled script still have
+     *         the content they had when it was compiled
+     */
+    private boolean isCurrent(CompiledScript compiledScript)
+    {
+        for (Pair<String, String> scriptImport : compiledScript.imports)
+        {
+            try
+            {
+                NodeRef scriptRef = resolveScriptNodeRef(scriptImport.getFirst());
+                ContentData contentData = (ContentData) this.services.getNodeService().getProperty(
+                        scriptRef, ContentModel.PROP_CONTENT);
+                String contentUrl = (contentData == null) ? null : contentData.getContentUrl();
+                if (!EqualsHelper.nullSafeEquals(contentUrl, scriptImport.getSecond()))
                 {
-                    throw new AlfrescoRuntimeException("Included Script Node content not found: " + resource);
+                    return false;
                 }
-                result = cr.getContentString();
             }
-            catch (ContentIOException err)
+            catch (RuntimeException e)
             {
-                throw new AlfrescoRuntimeException("Unable to load included script repository resource: " + resource);
+                // Recompiling will report the problem
+                return false;
             }
         }
-        
-        return result;
+        return true;
     }
     
     /**
@@ -596,6 +727,41 @@ public class RhinoScriptProcessor extends BaseProcessor implements ScriptProcess
     }
 
     
+    /**
+     * A compiled repository script and the repository scripts it imports
+     */
+    private static class CompiledScript
+    {
+        private final Script script;
+        /** The imported resources and the content URLs they had at compile time */
+        private final List<Pair<String, String>> imports;
+        
+        private CompiledScript(Script script, List<Pair<String, String>> imports)
+        {
+            this.script = script;
+            this.imports = imports;
+        }
+    }
+    
+    /**
+     * Loads imported scripts, noting the content URL of each repository script loaded
+     */
+    private class ImportRecordingResourceLoader implements ScriptResourceLoader
+    {
+        private final List<Pair<String, String>> imports = new ArrayList<Pair<String, String>>(4);
+        
+        public String loadScriptResource(String resource)
+        {
+            if (resource.startsWith(PATH_CLASSPATH))
+            {
+                // Classpath resources do not change
+                return RhinoScriptProcessor.this.loadScriptResource(resource);
+            }
+            return loadScriptNodeContent(resource, imports);
+        }
+    }
+
+    
     /**
      * Pre initializes two scope objects (one secure and one not) with the standard objects preinitialised.
      * This saves on very expensive calls to reinitialize a new scope on every web script execution. See
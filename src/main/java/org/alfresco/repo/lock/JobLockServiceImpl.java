@@ -25,12 +25,23 @@
  */
 package org.alfresco.repo.lock;
 
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
 import java.util.TreeSet;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
 import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
 import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
 
 import org.alfresco.repo.domain.locks.LockDAO;
+import org.alfresco.repo.domain.locks.LockEntity;
 import org.alfresco.repo.transaction.AlfrescoTransactionSupport;
 import org.alfresco.repo.transaction.AlfrescoTransactionSupport.TxnReadState;
 import org.alfresco.repo.transaction.RetryingTransactionHelper;
@@ -39,6 +50,7 @@ import org.alfresco.repo.transaction.TransactionListenerAdapter;
 import org.alfresco.repo.transaction.TransactionalResourceHelper;
 import org.alfresco.service.namespace.QName;
 import org.alfresco.util.GUID;
+import org.alfresco.util.Pair;
 import org.alfresco.util.TraceableThreadFactory;
 import org.alfresco.util.VmShutdownListener;
 import org.apache.commons.logging.Log;
@@ -60,6 +72,10 @@ public class JobLockServiceImpl implements JobLockService
     private int defaultRetryCount;
     private long defaultRetryWait;
     
+    private boolean batchRefresh;
+    private boolean cacheForeignLocks;
+    private JobLockStatistics statistics;
+    
     private ScheduledExecutorService scheduler;
     private VmShutdownListener shutdownListener;
     
@@ -68,11 +84,50 @@ public class JobLockServiceImpl implements JobLockService
      */
     private final LockTransactionListener txnListener;
     
+    /**
+     * Locks kept alive by refresh callbacks, keyed by lock token and lock name
+     */
+    private final ConcurrentMap<Pair<String, QName>, LockLease> leases;
+    /**
+     * The single task that checks and refreshes all the leases that are due
+     */
+    private final Runnable leaseRefresher;
+    /**
+     * Guards the scheduling of the {@link #leaseRefresher}
+     */
+    private final Object leaseScheduleLock = new Object();
+    private ScheduledFuture<?> nextLeaseCheck;
+    private long nextLeaseCheckTime = Long.MAX_VALUE;
+    
+    /**
+     * Locks last seen held under other lock tokens, keyed by lower-case lock name
+     */
+    private final ConcurrentMap<QName, LockEntity> foreignLocks;
+    /**
+     * Incremented whenever a lock is released here, so that lock holders seen by acquisition
+     * attempts that overlapped the release are not cached.
+     */
+    private final AtomicLong releaseCount;
+    
     public JobLockServiceImpl()
     {
         defaultRetryWait = 20;
         defaultRetryCount = 10;
+        batchRefresh = true;
+        cacheForeignLocks = true;
+        statistics = new JobLockStatistics();
         txnListener = new LockTransactionListener();
+        leases = new ConcurrentHashMap<Pair<String, QName>, LockLease>();
+        leaseRefresher = new Runnable()
+        {
+            @Override
+            public void run()
+            {
+                refreshLeases();
+            }
+        };
+        foreignLocks = new ConcurrentHashMap<QName, LockEntity>();
+        releaseCount = new AtomicLong();
         
         TraceableThreadFactory threadFactory = new TraceableThreadFactory();
         threadFactory.setThreadDaemon(false);
@@ -139,6 +194,39 @@ public class JobLockServiceImpl implements JobLockService
         this.defaultRetryWait = defaultRetryWait;
     }
 
+    /**
+     * Set whether locks kept alive by {@link JobLockRefreshCallback callbacks} are refreshed together.
+     * When set, the locks with the same time to live that fall due at around the same time are
+     * refreshed using a single statement instead of a transaction per lock.
+     * 
+     * @param batchRefresh              <tt>true</tt> (default) to refresh the locks in batches
+     */
+    public void setBatchRefresh(boolean batchRefresh)
+    {
+        this.batchRefresh = batchRefresh;
+    }
+
+    /**
+     * Set whether locks found to be held under another lock token are remembered until they expire.
+     * Acquisition attempts that could not succeed before the lock expires then fail without going
+     * to the database.  Locks released on this server are forgotten straight away, but an early
+     * release by another server is only noticed once the remembered lock has expired.
+     * 
+     * @param cacheForeignLocks         <tt>true</tt> (default) to remember locks held elsewhere
+     */
+    public void setCacheForeignLocks(boolean cacheForeignLocks)
+    {
+        this.cacheForeignLocks = cacheForeignLocks;
+    }
+
+    /**
+     * Set the component that records the lock acquisition, refresh and contention counts
+     */
+    public void setStatistics(JobLockStatistics statistics)
+    {
+        this.statistics = statistics;
+    }
+
     /**
      * {@inheritDoc}
      */
@@ -327,6 +415,17 @@ public class JobLockServiceImpl implements JobLockService
         {
             throw new IllegalArgumentException("Very small timeToLive: " + timeToLive);
         }
+        if (batchRefresh)
+        {
+            // The lease is picked up by the shared refresher
+            LockLease lease = new LockLease(lockToken, lockQName, timeToLive, callback);
+            if (leases.put(lease.key, lease) == null)
+            {
+                statistics.recordLeaseAdded();
+            }
+            scheduleLeaseCheck(lease.nextRefreshTime);
+            return;
+        }
         // Our runnable does the callbacks
         Runnable runnable = new Runnable()
         {
@@ -393,6 +492,7 @@ public class JobLockServiceImpl implements JobLockService
                     try
                     {
                         refreshLock(lockToken, lockQName, timeToLive);
+                        statistics.recordRefreshes(1);
                         // Success.  The callback does not need to know.
                         // NB: Reschedule this task
                         scheduler.schedule(this, delay, TimeUnit.MILLISECONDS);
@@ -409,6 +509,253 @@ public class JobLockServiceImpl implements JobLockService
         scheduler.schedule(runnable, delay, TimeUnit.MILLISECONDS);
     }
     
+    /**
+     * Make sure that the {@link #leaseRefresher} runs no later than the given time
+     */
+    private void scheduleLeaseCheck(long checkTime)
+    {
+        synchronized (leaseScheduleLock)
+        {
+            if (checkTime >= nextLeaseCheckTime)
+            {
+                // It will run early enough
+                return;
+            }
+            if (nextLeaseCheck != null)
+            {
+                nextLeaseCheck.cancel(false);
+            }
+            long delay = Math.max(0L, checkTime - System.currentTimeMillis());
+            try
+            {
+                nextLeaseCheck = scheduler.schedule(leaseRefresher, delay, TimeUnit.MILLISECONDS);
+                nextLeaseCheckTime = checkTime;
+            }
+            catch (RejectedExecutionException e)
+            {
+                // The scheduler has shut down
+                nextLeaseCheck = null;
+                nextLeaseCheckTime = Long.MAX_VALUE;
+            }
+        }
+    }
+    
+    /**
+     * Checks the leases that are due for a refresh and refreshes those that are still active.
+     * Leases that would fall due within half of their refresh period are included, which brings
+     * the leases held by this server into step so that they can share refresh statements.
+     */
+    private void refreshLeases()
+    {
+        synchronized (leaseScheduleLock)
+        {
+            nextLeaseCheck = null;
+            nextLeaseCheckTime = Long.MAX_VALUE;
+        }
+        
+        // First check the VM
+        if (shutdownListener.isVmShuttingDown())
+        {
+            for (LockLease lease : leases.values())
+            {
+                if (removeLease(lease))
+                {
+                    callLockReleased(lease.callback);
+                }
+            }
+            return;
+        }
+        
+        long now = System.currentTimeMillis();
+        Map<Long, List<LockLease>> dueLeasesByTTL = new HashMap<Long, List<LockLease>>(7);
+        for (LockLease lease : leases.values())
+        {
+            if (lease.nextRefreshTime - lease.delay / 2 > now)
+            {
+                // Not due yet
+                continue;
+            }
+            // Most lock debug is done elsewhere; just note that this is a timed process.
+            if (logger.isDebugEnabled())
+            {
+                logger.debug(
+                        "Initiating timed Lock refresh: \n" +
+                        "   Lock:     " + lease.lockQName + "\n" +
+                        "   TTL:      " + lease.timeToLive + "\n" +
+                        "   Txn:      " + lease.lockToken);
+            }
+            boolean isActive = false;
+            try
+            {
+                isActive = callIsActive(lease.callback, lease.delay);
+            }
+            catch (Throwable e)
+            {
+                logger.error(
+                        "Lock isActive check failed: \n" +
+                        "   Lock:     " + lease.lockQName + "\n" +
+                        "   TTL:      " + lease.timeToLive + "\n" +
+                        "   Txn:      " + lease.lockToken,
+                        e);
+                // The callback must be informed
+                if (removeLease(lease))
+                {
+                    callLockReleased(lease.callback);
+                }
+                continue;
+            }
+            
+            if (!isActive)
+            {
+                // Debug
+                if (logger.isDebugEnabled())
+                {
+                    logger.debug(
+                            "Lock callback is inactive.  Releasing lock: \n" +
+                            "   Lock:     " + lease.lockQName + "\n" +
+                            "   TTL:      " + lease.timeToLive + "\n" +
+                            "   Txn:      " + lease.lockToken);
+                }
+                // The callback is no longer active, so we don't need to refresh.
+                // Release the lock in case the initiator did not do it.
+                if (removeLease(lease))
+                {
+                    try
+                    {
+                        if (releaseLockVerify(lease.lockToken, lease.lockQName))
+                        {
+                            // The callback must be informed as we released the lock automatically
+                            callLockReleased(lease.callback);
+                        }
+                    }
+                    catch (Throwable e)
+                    {
+                        logger.error("Failed to release lock " + lease.lockQName + " for inactive callback.", e);
+                    }
+                }
+                continue;
+            }
+            List<LockLease> dueLeases = dueLeasesByTTL.get(lease.timeToLive);
+            if (dueLeases == null)
+            {
+                dueLeases = new ArrayList<LockLease>(8);
+                dueLeasesByTTL.put(lease.timeToLive, dueLeases);
+            }
+            dueLeases.add(lease);
+        }
+        
+        for (Map.Entry<Long, List<LockLease>> entry : dueLeasesByTTL.entrySet())
+        {
+            refreshLeases(entry.getKey(), entry.getValue());
+        }
+        
+        // Come back for the next lease to fall due
+        long nextRefreshTime = Long.MAX_VALUE;
+        for (LockLease lease : leases.values())
+        {
+            nextRefreshTime = Math.min(nextRefreshTime, lease.nextRefreshTime);
+        }
+        if (nextRefreshTime < Long.MAX_VALUE)
+        {
+            scheduleLeaseCheck(nextRefreshTime);
+        }
+    }
+    
+    /**
+     * Refresh active leases that share a time to live.  The leases are refreshed together and
+     * are only refreshed individually if at least one of them has been lost.
+     */
+    private void refreshLeases(final long timeToLive, List<LockLease> dueLeases)
+    {
+        if (dueLeases.size() > 1)
+        {
+            final Map<QName, String> lockTokens = new HashMap<QName, String>(dueLeases.size() * 2);
+            for (LockLease lease : dueLeases)
+            {
+                lockTokens.put(lease.lockQName, lease.lockToken);
+            }
+            RetryingTransactionCallback<Boolean> refreshLocksCallback = new RetryingTransactionCallback<Boolean>()
+            {
+                public Boolean execute() throws Throwable
+                {
+                    return lockDAO.refreshLocks(lockTokens, timeToLive);
+                }
+            };
+            boolean allRefreshed = false;
+            if (lockTokens.size() == dueLeases.size())
+            {
+                try
+                {
+                    allRefreshed = retryingTransactionHelper.doInTransaction(refreshLocksCallback, false, true);
+                }
+                catch (Throwable e)
+                {
+                    logger.warn("Batched refresh of " + dueLeases.size() + " locks failed: " + e.getMessage());
+                }
+                statistics.recordBatchedRefresh(!allRefreshed);
+            }
+            if (allRefreshed)
+            {
+                statistics.recordRefreshes(dueLeases.size());
+                long now = System.currentTimeMillis();
+                for (LockLease lease : dueLeases)
+                {
+                    lease.nextRefreshTime = now + lease.delay;
+                }
+                if (logger.isDebugEnabled())
+                {
+                    logger.debug(
+                            "Refreshed Locks: \n" +
+                            "   Locks:    " + lockTokens.keySet() + "\n" +
+                            "   TTL:      " + timeToLive);
+                }
+                return;
+            }
+            // Find out which ones were lost
+        }
+        for (LockLease lease : dueLeases)
+        {
+            try
+            {
+                refreshLock(lease.lockToken, lease.lockQName, timeToLive);
+                statistics.recordRefreshes(1);
+                // Success.  The callback does not need to know.
+                lease.nextRefreshTime = System.currentTimeMillis() + lease.delay;
+            }
+            catch (Throwable e)
+            {
+                if (!(e instanceof LockAcquisitionException))
+                {
+                    logger.error(
+                            "Lock refresh failed: \n" +
+                            "   Lock:     " + lease.lockQName + "\n" +
+                            "   TTL:      " + timeToLive + "\n" +
+                            "   Txn:      " + lease.lockToken,
+                            e);
+                }
+                // The callback must be informed
+                if (removeLease(lease))
+                {
+                    statistics.recordLostLease();
+                    callLockReleased(lease.callback);
+                }
+            }
+        }
+    }
+    
+    /**
+     * @return              <tt>true</tt> if the lease was still registered
+     */
+    private boolean removeLease(LockLease lease)
+    {
+        if (leases.remove(lease.key, lease))
+        {
+            statistics.recordLeaseRemoved();
+            return true;
+        }
+        return false;
+    }
+    
     /**
      * Calls the callback {@link JobLockRefreshCallback#isActive() isActive} with time-check.
      */
@@ -460,6 +807,7 @@ public class JobLockServiceImpl implements JobLockService
             }
         };
         retryingTransactionHelper.doInTransaction(releaseCallback, false, true);
+        forgetForeignLocks(lockToken);
     }
 
     /**
@@ -474,7 +822,68 @@ public class JobLockServiceImpl implements JobLockService
                 return lockDAO.releaseLock(lockQName, lockToken, true);
             }
         };
-        return retryingTransactionHelper.doInTransaction(releaseCallback, false, true);
+        boolean released = retryingTransactionHelper.doInTransaction(releaseCallback, false, true);
+        forgetForeignLocks(lockToken);
+        return released;
+    }
+    
+    /**
+     * @return              the lower-case lock name used to key the foreign locks
+     */
+    private static QName getForeignLockKey(QName lockQName)
+    {
+        String localName = lockQName.getLocalName();
+        String lowerLocalName = localName.toLowerCase();
+        return lowerLocalName.equals(localName) ? lockQName : QName.createQName(lockQName.getNamespaceURI(), lowerLocalName);
+    }
+    
+    /**
+     * Remember the lock that caused an acquisition to fail, if it is held by another lock token
+     * 
+     * @param releaseCountBefore    the {@link #releaseCount} read before the attempt was made
+     */
+    private void rememberForeignLock(QName lockQName, String lockToken, LockAcquisitionException e, long releaseCountBefore)
+    {
+        Object[] msgParams = e.getMsgParams();
+        if (!LockAcquisitionException.ERR_EXCLUSIVE_LOCK_EXISTS.equals(e.getMsgId()) ||
+                msgParams == null || msgParams.length < 3 || !(msgParams[2] instanceof LockEntity))
+        {
+            return;
+        }
+        LockEntity existingLock = (LockEntity) msgParams[2];
+        if (existingLock.getExpiryTime() == null || lockToken.equalsIgnoreCase(existingLock.getLockToken()))
+        {
+            return;
+        }
+        QName key = getForeignLockKey(lockQName);
+        foreignLocks.put(key, existingLock);
+        if (releaseCount.get() != releaseCountBefore)
+        {
+            // A lock was released here while we were looking, so we can't trust what we saw
+            foreignLocks.remove(key, existingLock);
+        }
+    }
+    
+    /**
+     * Forget the foreign locks held by a lock token that was released on this server
+     */
+    private void forgetForeignLocks(String lockToken)
+    {
+        releaseCount.incrementAndGet();
+        if (foreignLocks.isEmpty())
+        {
+            return;
+        }
+        long now = System.currentTimeMillis();
+        Iterator<LockEntity> iterator = foreignLocks.values().iterator();
+        while (iterator.hasNext())
+        {
+            LockEntity foreignLock = iterator.next();
+            if (lockToken.equalsIgnoreCase(foreignLock.getLockToken()) || foreignLock.getExpiryTime() <= now)
+            {
+                iterator.remove();
+            }
+        }
     }
 
     /**
@@ -487,17 +896,70 @@ public class JobLockServiceImpl implements JobLockService
             throw new IllegalArgumentException("Job lock retry count cannot be negative: " + retryCount);
         }
         
+        if (cacheForeignLocks)
+        {
+            QName key = getForeignLockKey(lockQName);
+            LockEntity foreignLock = foreignLocks.get(key);
+            if (foreignLock != null)
+            {
+                long now = System.currentTimeMillis();
+                long lastAttemptTime = now + retryWait * (Math.max(retryCount, 1) - 1);
+                if (foreignLock.getExpiryTime() <= now)
+                {
+                    foreignLocks.remove(key, foreignLock);
+                }
+                else if (foreignLock.getExpiryTime() > lastAttemptTime && !lockToken.equalsIgnoreCase(foreignLock.getLockToken()))
+                {
+                    // The lock will still be held when we give up
+                    statistics.recordForeignLockRejection(lockQName);
+                    if (logger.isDebugEnabled())
+                    {
+                        logger.debug(
+                                "Lock acquisition failed (lock held elsewhere until " + foreignLock.getExpiryTime() + "): \n" +
+                                "   Lock:     " + lockQName + "\n" +
+                                "   TTL:      " + timeToLive + "\n" +
+                                "   Txn:      " + lockToken);
+                    }
+                    throw new LockAcquisitionException(
+                            LockAcquisitionException.ERR_EXCLUSIVE_LOCK_EXISTS,
+                            lockQName, lockToken, foreignLock);
+                }
+            }
+        }
+        
         RetryingTransactionCallback<Object> getLockCallback = new RetryingTransactionCallback<Object>()
         {
             public Object execute() throws Throwable
             {
-                lockDAO.getLock(lockQName, lockToken, timeToLive);
+                statistics.recordAttempt();
+                long releaseCountBefore = releaseCount.get();
+                try
+                {
+                    lockDAO.getLock(lockQName, lockToken, timeToLive);
+                }
+                catch (LockAcquisitionException e)
+                {
+                    if (LockAcquisitionException.ERR_EXCLUSIVE_LOCK_EXISTS.equals(e.getMsgId()))
+                    {
+                        statistics.recordContention(lockQName);
+                        if (cacheForeignLocks)
+                        {
+                            rememberForeignLock(lockQName, lockToken, e, releaseCountBefore);
+                        }
+                    }
+                    throw e;
+                }
                 return null;
             }
         };
         try
         {
             int iterations = doWithRetry(getLockCallback, retryWait, retryCount);
+            statistics.recordAcquisition();
+            if (cacheForeignLocks)
+            {
+                foreignLocks.remove(getForeignLockKey(lockQName));
+            }
             // Bind in a listener, if we are in a transaction
             if (AlfrescoTransactionSupport.getTransactionReadState() != TxnReadState.TXN_NONE)
             {
@@ -618,6 +1080,7 @@ public class JobLockServiceImpl implements JobLockService
                 }
             };
             retryingTransactionHelper.doInTransaction(releaseCallback, false, true);
+            forgetForeignLocks(txnId);
             // So they were all successful
             heldLocks.clear();
         }
@@ -663,6 +1126,34 @@ public class JobLockServiceImpl implements JobLockService
                             e);
                 }
             }
+            forgetForeignLocks(txnId);
+        }
+    }
+    
+    /**
+     * A lock that is kept alive for as long as its callback is active
+     * 
+     * @since 5.2
+     */
+    private static class LockLease
+    {
+        private final Pair<String, QName> key;
+        private final String lockToken;
+        private final QName lockQName;
+        private final long timeToLive;
+        private final long delay;
+        private final JobLockRefreshCallback callback;
+        private volatile long nextRefreshTime;
+        
+        private LockLease(String lockToken, QName lockQName, long timeToLive, JobLockRefreshCallback callback)
+        {
+            this.key = new Pair<String, QName>(lockToken, lockQName);
+            this.lockToken = lockToken;
+            this.lockQName = lockQName;
+            this.timeToLive = timeToLive;
+            this.delay = timeToLive / 2;
+            this.callback = callback;
+            this.nextRefreshTime = System.currentTimeMillis() + delay;
         }
     }
 }
@@ -0,0 +1,243 @@
+/*
+ * #%L
+ * Alfresco Repository
+ * %%
+ * Copyright (C) 2005 - 2016 Alfresco Software Limited
+ * %%
+ * This file is part of the Alfresco software. 
+ * If the software was purchased under a paid Alfresco license, the terms of 
+ * the paid license agreement will prevail.  Otherwise, the software is 
+ * provided under the following open source license terms:
+ * 
+ * Alfresco is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * 
+ * Alfresco is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ * 
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with Alfresco. If not, see <http://www.gnu.org/licenses/>.
+ * #L%
+ */
+package org.alfresco.repo.lock;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.alfresco.repo.management.DynamicMBeanExportOperations;
+import org.alfresco.repo.management.DynamicMBeanRegistrar;
+import org.alfresco.service.namespace.QName;
+
+/**
+ * Counts the lock acquisitions, refreshes and contention seen by the {@link JobLockServiceImpl}.
+ * Recording is lock free.
+ * 
+ * @since 5.2
+ */
+public class JobLockStatistics implements JobLockStatisticsMBean
+{
+    /** Upper limit on the number of lock names for which contention is counted individually */
+    private static final int MAX_CONTENDED_LOCKS = 1000;
+
+    private final AtomicLong acquisitions = new AtomicLong();
+    private final AtomicLong acquisitionAttempts = new AtomicLong();
+    private final AtomicLong contendedAttempts = new AtomicLong();
+    private final AtomicLong foreignLockRejections = new AtomicLong();
+    private final AtomicLong refreshes = new AtomicLong();
+    private final AtomicLong batchedRefreshStatements = new AtomicLong();
+    private final AtomicLong batchedRefreshFallbacks = new AtomicLong();
+    private final AtomicLong lostLeases = new AtomicLong();
+    private final AtomicInteger activeLeases = new AtomicInteger();
+    private final ConcurrentMap<QName, AtomicLong> contentionByLock = new ConcurrentHashMap<QName, AtomicLong>();
+
+    private DynamicMBeanExportOperations mbeanExporter;
+    private String objectName = "Alfresco:Name=JobLockStatistics";
+
+    /**
+     * @param mbeanExporter     optional exporter used to publish the statistics over JMX
+     */
+    public void setMbeanExporter(DynamicMBeanExportOperations mbeanExporter)
+    {
+        this.mbeanExporter = mbeanExporter;
+    }
+
+    /**
+     * @param objectName        the JMX object name to publish the statistics under
+     */
+    public void setObjectName(String objectName)
+    {
+        this.objectName = objectName;
+    }
+
+    public void init()
+    {
+        DynamicMBeanRegistrar.registerMBean(mbeanExporter, this, objectName);
+    }
+
+    /* package */ void recordAcquisition()
+    {
+        acquisitions.incrementAndGet();
+    }
+
+    /* package */ void recordAttempt()
+    {
+        acquisitionAttempts.incrementAndGet();
+    }
+
+    /* package */ void recordContention(QName lockQName)
+    {
+        contendedAttempts.incrementAndGet();
+        AtomicLong count = contentionByLock.get(lockQName);
+        if (count == null)
+        {
+            if (contentionByLock.size() >= MAX_CONTENDED_LOCKS)
+            {
+                return;
+            }
+            AtomicLong newCount = new AtomicLong();
+            count = contentionByLock.putIfAbsent(lockQName, newCount);
+            if (count == null)
+            {
+                count = newCount;
+            }
+        }
+        count.incrementAndGet();
+    }
+
+    /* package */ void recordForeignLockRejection(QName lockQName)
+    {
+        foreignLockRejections.incrementAndGet();
+        recordContention(lockQName);
+    }
+
+    /* package */ void recordRefreshes(int count)
+    {
+        refreshes.addAndGet(count);
+    }
+
+    /* package */ void recordBatchedRefresh(boolean fallback)
+    {
+        batchedRefreshStatements.incrementAndGet();
+        if (fallback)
+        {
+            batchedRefreshFallbacks.incrementAndGet();
+        }
+    }
+
+    /* package */ void recordLostLease()
+    {
+        lostLeases.incrementAndGet();
+    }
+
+    /* package */ void recordLeaseAdded()
+    {
+        activeLeases.incrementAndGet();
+    }
+
+    /* package */ void recordLeaseRemoved()
+    {
+        activeLeases.decrementAndGet();
+    }
+
+    @Override
+    public long getAcquisitions()
+    {
+        return acquisitions.get();
+    }
+
+    @Override
+    public long getAcquisitionAttempts()
+    {
+        return acquisitionAttempts.get();
+    }
+
+    @Override
+    public long getContendedAttempts()
+    {
+        return contendedAttempts.get();
+    }
+
+    @Override
+    public long getForeignLockRejections()
+    {
+        return foreignLockRejections.get();
+    }
+
+    @Override
+    public long getRefreshes()
+    {
+        return refreshes.get();
+    }
+
+    @Override
+    public long getBatchedRefreshStatements()
+    {
+        return batchedRefreshStatements.get();
+    }
+
+    @Override
+    public long getBatchedRefreshFallbacks()
+    {
+        return batchedRefreshFallbacks.get();
+    }
+
+    @Override
+    public long getLostLeases()
+    {
+        return lostLeases.get();
+    }
+
+    @Override
+    public int getActiveLeases()
+    {
+        return activeLeases.get();
+    }
+
+    @Override
+    public String[] getContendedLocks()
+    {
+        List<Map.Entry<QName, AtomicLong>> entries = new ArrayList<Map.Entry<QName, AtomicLong>>(contentionByLock.entrySet());
+        Collections.sort(entries, new Comparator<Map.Entry<QName, AtomicLong>>()
+        {
+            @Override
+            public int compare(Map.Entry<QName, AtomicLong> e1, Map.Entry<QName, AtomicLong> e2)
+            {
+                return Long.compare(e2.getValue().get(), e1.getValue().get());
+            }
+        });
+        String[] result = new String[entries.size()];
+        for (int i = 0; i < result.length; i++)
+        {
+            result[i] = entries.get(i).getKey() + " contended=" + entries.get(i).getValue().get();
+        }
+        return result;
+    }
+
+    /**
+     * Resets the counters.  The number of active leases is a gauge and is kept.
+     */
+    @Override
+    public void reset()
+    {
+        acquisitions.set(0L);
+        acquisitionAttempts.set(0L);
+        contendedAttempts.set(0L);
+        foreignLockRejections.set(0L);
+        refreshes.set(0L);
+        batchedRefreshStatements.set(0L);
+        batchedRefreshFallbacks.set(0L);
+        lostLeases.set(0L);
+        contentionByLock.clear();
+    }
+}
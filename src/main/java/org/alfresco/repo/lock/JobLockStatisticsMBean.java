@@ -0,0 +1,92 @@
+/*
+ * #%L
+ * Alfresco Repository
+ * %%
+ * Copyright (C) 2005 - 2016 Alfresco Software Limited
+ * %%
+ * This file is part of the Alfresco software. 
+ * If the software was purchased under a paid Alfresco license, the terms of 
+ * the paid license agreement will prevail.  Otherwise, the software is 
+ * provided under the following open source license terms:
+ * 
+ * Alfresco is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * 
+ * Alfresco is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ * 
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with Alfresco. If not, see <http://www.gnu.org/licenses/>.
+ * #L%
+ */
+package org.alfresco.repo.lock;
+
+/**
+ * Management interface exposing the lock acquisition, refresh and contention counts of the {@link JobLockService}
+ * on this server.
+ * 
+ * @since 5.2
+ */
+public interface JobLockStatisticsMBean
+{
+    /**
+     * @return          the number of locks acquired
+     */
+    long getAcquisitions();
+
+    /**
+     * @return          the number of attempts made against the database to acquire a lock
+     */
+    long getAcquisitionAttempts();
+
+    /**
+     * @return          the number of acquisition attempts that found the lock held by another lock token
+     */
+    long getContendedAttempts();
+
+    /**
+     * @return          the number of acquisitions that were refused without going to the database, because
+     *                  the lock was known to be held elsewhere until after the caller would have stopped retrying
+     */
+    long getForeignLockRejections();
+
+    /**
+     * @return          the number of lock refreshes, individual or batched
+     */
+    long getRefreshes();
+
+    /**
+     * @return          the number of statements used to refresh several leased locks at once
+     */
+    long getBatchedRefreshStatements();
+
+    /**
+     * @return          the number of batched refreshes that had to be repeated lock by lock because
+     *                  at least one lock had been lost
+     */
+    long getBatchedRefreshFallbacks();
+
+    /**
+     * @return          the number of leased locks that could not be refreshed and were reported as released
+     */
+    long getLostLeases();
+
+    /**
+     * @return          the number of locks currently kept alive by refresh callbacks
+     */
+    int getActiveLeases();
+
+    /**
+     * @return          one line per contended lock name giving the number of contended attempts, most contended first
+     */
+    String[] getContendedLocks();
+
+    /**
+     * Discard the statistics gathered so far
+     */
+    void reset();
+}
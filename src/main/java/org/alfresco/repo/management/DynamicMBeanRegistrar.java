@@ -0,0 +1,86 @@
+/*
+ * #%L
+ * Alfresco Repository
+ * %%
+ * Copyright (C) 2005 - 2016 Alfresco Software Limited
+ * %%
+ * This file is part of the Alfresco software. 
+ * If the software was purchased under a paid Alfresco license, the terms of 
+ * the paid license agreement will prevail.  Otherwise, the software is 
+ * provided under the following open source license terms:
+ * 
+ * Alfresco is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * 
+ * Alfresco is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ * 
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with Alfresco. If not, see <http://www.gnu.org/licenses/>.
+ * #L%
+ */
+package org.alfresco.repo.management;
+
+import javax.management.MalformedObjectNameException;
+import javax.management.ObjectName;
+
+import org.alfresco.error.AlfrescoRuntimeException;
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+
+/**
+ * Publishes beans over JMX through a {@link DynamicMBeanExportOperations}.  An existing registration under the same
+ * name (e.g. one left behind by a previous instance of a restarted subsystem) is replaced.  JMX is optional, so a
+ * failure to register is logged rather than propagated.
+ * 
+ * @since 5.2
+ */
+public final class DynamicMBeanRegistrar
+{
+    private static final Log logger = LogFactory.getLog(DynamicMBeanRegistrar.class);
+
+    private DynamicMBeanRegistrar()
+    {
+        // Static helper
+    }
+
+    /**
+     * Register a managed resource, replacing any MBean already registered under the name.
+     * 
+     * @param mbeanExporter         the exporter to use (may be <tt>null</tt> if JMX is not available)
+     * @param managedResource       the bean to publish
+     * @param objectName            the JMX object name to publish the bean under
+     * @return                      the name the bean was registered under or <tt>null</tt> if it was not registered
+     * @throws AlfrescoRuntimeException if the object name is invalid
+     */
+    public static ObjectName registerMBean(DynamicMBeanExportOperations mbeanExporter, Object managedResource, String objectName)
+    {
+        if (mbeanExporter == null)
+        {
+            return null;
+        }
+        ObjectName name;
+        try
+        {
+            name = new ObjectName(objectName);
+        }
+        catch (MalformedObjectNameException e)
+        {
+            throw new AlfrescoRuntimeException("Invalid JMX object name: " + objectName, e);
+        }
+        try
+        {
+            mbeanExporter.unregisterMBean(name);
+            return mbeanExporter.registerMBean(managedResource, name);
+        }
+        catch (RuntimeException e)
+        {
+            logger.warn("Failed to register " + objectName + " with JMX: " + e.getMessage());
+            return null;
+        }
+    }
+}
@@ -49,7 +49,18 @@ public interface Behaviour
     {
         EVERY_EVENT,
         FIRST_EVENT,
-        TRANSACTION_COMMIT
+        TRANSACTION_COMMIT,
+        /**
+         * As {@link #TRANSACTION_COMMIT}, but all invocations for the same node are
+         * coalesced into one, regardless of the other key arguments.  The behaviour
+         * receives the start values of the first invocation and the end values (and
+         * remaining key arguments) of the last invocation.
+         * <p>
+         * The node is taken from the first argument of the policy: a <tt>NodeRef</tt>,
+         * the child of a <tt>ChildAssociationRef</tt> or the source of an <tt>AssociationRef</tt>.
+         * Any other first argument is used as it is.
+         */
+        TRANSACTION_COMMIT_PER_NODE
     }
     
     /**
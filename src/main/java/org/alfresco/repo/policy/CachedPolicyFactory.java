@@ -25,20 +25,25 @@
  */
 package org.alfresco.repo.policy;
 
-import java.util.ArrayList;
 import java.util.Collection;
+import java.util.Collections;
 import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
 import java.util.Map;
-import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.Set;
 
 import org.alfresco.api.AlfrescoPublicApi;
-import org.alfresco.util.LockHelper;
 import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
 
 
 /**
  * Policy Factory with caching support.
+ * <p>
+ * The caches are immutable snapshots that are read without locking and replaced
+ * (copy-on-write) when a new binding is resolved or when behaviours are bound or
+ * unbound.  Policy invocation therefore never contends with other readers.
  *
  * @author David Caruana
  *
@@ -54,23 +59,38 @@ public class CachedPolicyFactory<B extends BehaviourBinding, P extends Policy> e
     // Behaviour Filter
     private BehaviourFilter behaviourFilter = null;
     
-    // Cache Lock
-    private ReentrantReadWriteLock lock = new ReentrantReadWriteLock(); 
+    // Guards replacement of the cache snapshots (reads do not lock)
+    private final Object writeLock = new Object();
 
     /**
      * Cache for a single Policy interface (keyed by Binding)
      */
-    private Map<B, P> singleCache = new HashMap<B, P>();
+    private volatile Map<B, P> singleCache = Collections.emptyMap();
     
     /**
      * Cache for a collection of Policy interfaces (keyed by Binding)
      */
-    private Map<B, Collection<P>> listCache = new HashMap<B, Collection<P>>();
+    private volatile Map<B, Collection<P>> listCache = Collections.emptyMap();
+    
+    /**
+     * Cache for aggregate Policy interfaces spanning several classes (keyed by the set of Bindings)
+     */
+    private volatile Map<Set<B>, P> aggregateCache = Collections.emptyMap();
+
+    /**
+     * Incremented on every binding change so that policies resolved against
+     * an older state of the behaviour index are not cached
+     */
+    private volatile long generation = 0L;
 
     // Try lock timeout (MNT-11371)
     private long tryLockTimeout;
 
 
+    /**
+     * Retained for configuration compatibility.  The caches are no longer guarded
+     * by a read/write lock, so the timeout is not used.
+     */
     public void setTryLockTimeout(long tryLockTimeout)
     {
         this.tryLockTimeout = tryLockTimeout;
@@ -94,14 +114,12 @@ public class CachedPolicyFactory<B extends BehaviourBinding, P extends Policy> e
         {
             public void addition(B binding, Behaviour behaviour)
             {
-                clearCache("aggregate delegate", singleCache, binding);
-                clearCache("delegate collection", listCache, binding);
+                clearCaches(binding);
             }
 
             public void removal(B binding, Behaviour behaviour)
             {
-                clearCache("aggregate delegate", singleCache, binding);
-                clearCache("delegate collection", listCache, binding);
+                clearCaches(binding);
             }
         });
     }
@@ -116,41 +134,34 @@ public class CachedPolicyFactory<B extends BehaviourBinding, P extends Policy> e
             return super.create(binding);
         }
         
-        LockHelper.tryLock(lock.readLock(), tryLockTimeout, "getting policy from cache in 'CachedPolicyFactory.create()'");
-        try
-        {
-            P policyInterface = singleCache.get(binding);
-            if (policyInterface != null)
-            {
-                return policyInterface;
-            }
-        }
-        finally
+        P policyInterface = singleCache.get(binding);
+        if (policyInterface != null)
         {
-            lock.readLock().unlock();
+            return policyInterface;
         }
         
-        // There wasn't one
-        LockHelper.tryLock(lock.writeLock(), tryLockTimeout, "putting new policy to cache in 'CachedPolicyFactory.create()'");
-        try
+        // There wasn't one.  Resolve it outside of the lock, as resolution reads the
+        // behaviour index which, in turn, notifies this factory of changes.
+        long resolvedGeneration = generation;
+        policyInterface = super.create(binding);
+        synchronized (writeLock)
         {
-            P policyInterface = singleCache.get(binding);
-            if (policyInterface != null)
+            P existing = singleCache.get(binding);
+            if (existing != null)
             {
-                return policyInterface;
+                return existing;
+            }
+            if (resolvedGeneration == generation)
+            {
+                Map<B, P> newCache = new HashMap<B, P>(singleCache);
+                newCache.put(binding, policyInterface);
+                singleCache = newCache;
+                
+                if (logger.isDebugEnabled())
+                    logger.debug("Cached delegate interface " + policyInterface + " for " + binding + " and policy " + getPolicyClass());
             }
-            policyInterface = super.create(binding);
-            singleCache.put(binding, policyInterface);
-            
-            if (logger.isDebugEnabled())
-                logger.debug("Cached delegate interface " + policyInterface + " for " + binding + " and policy " + getPolicyClass());
-            
-            return policyInterface;
-        }
-        finally
-        {
-            lock.writeLock().unlock();
         }
+        return policyInterface;
     }
     
 
@@ -163,108 +174,154 @@ public class CachedPolicyFactory<B extends BehaviourBinding, P extends Policy> e
             return super.createList(binding);
         }
         
-        LockHelper.tryLock(lock.readLock(), tryLockTimeout, "getting policy list from cache in 'CachedPolicyFactory.createList()'");
-        try
+        Collection<P> policyInterfaces = listCache.get(binding);
+        if (policyInterfaces != null)
+        {
+            return policyInterfaces;
+        }
+        
+        // There wasn't one
+        long resolvedGeneration = generation;
+        policyInterfaces = super.createList(binding);
+        synchronized (writeLock)
+        {
+            Collection<P> existing = listCache.get(binding);
+            if (existing != null)
+            {
+                return existing;
+            }
+            if (resolvedGeneration == generation)
+            {
+                Map<B, Collection<P>> newCache = new HashMap<B, Collection<P>>(listCache);
+                newCache.put(binding, policyInterfaces);
+                listCache = newCache;
+                
+                if (logger.isDebugEnabled())
+                    logger.debug("Cached delegate interface collection " + policyInterfaces + " for " + binding + " and policy " + getPolicyClass());
+            }
+        }
+        return policyInterfaces;
+    }
+    
+    /**
+     * Construct a single aggregate policy implementation for all behaviours
+     * of the specified bindings, as invoked for a node's type and aspects.
+     * 
+     * @param bindings  the bindings (a copy is held as the cache key)
+     * @return  the aggregate policy implementation
+     */
+    @SuppressWarnings("unchecked")
+    public P createAggregate(Set<B> bindings)
+    {
+        boolean useCache = (behaviourFilter == null || !behaviourFilter.isActivated());
+        P policyInterface = null;
+        if (useCache)
         {
-            Collection<P> policyInterfaces = listCache.get(binding);
-            if (policyInterfaces != null)
+            policyInterface = aggregateCache.get(bindings);
+            if (policyInterface != null)
             {
-                return policyInterfaces;
+                return policyInterface;
             }
         }
-        finally
+        
+        long resolvedGeneration = generation;
+        Collection<P> policies = new HashSet<P>();
+        for (B binding : bindings)
         {
-            lock.readLock().unlock();
+            P policy = create(binding);
+            if (policy instanceof PolicyList)
+            {
+                policies.addAll(((PolicyList<P>)policy).getPolicies());
+            }
+            else
+            {
+                policies.add(policy);
+            }
         }
+        policyInterface = toPolicy(policies);
         
-        // There wasn't one
-        LockHelper.tryLock(lock.writeLock(), tryLockTimeout, "putting policy list to cache in 'CachedPolicyFactory.createList()'");
-        try
+        if (useCache)
         {
-            Collection<P> policyInterfaces = listCache.get(binding);
-            if (policyInterfaces != null)
+            synchronized (writeLock)
             {
-                return policyInterfaces;
+                P existing = aggregateCache.get(bindings);
+                if (existing != null)
+                {
+                    return existing;
+                }
+                if (resolvedGeneration == generation)
+                {
+                    Map<Set<B>, P> newCache = new HashMap<Set<B>, P>(aggregateCache);
+                    newCache.put(new HashSet<B>(bindings), policyInterface);
+                    aggregateCache = newCache;
+                    
+                    if (logger.isDebugEnabled())
+                        logger.debug("Cached aggregate delegate interface " + policyInterface + " for " + bindings + " and policy " + getPolicyClass());
+                }
             }
-            policyInterfaces = super.createList(binding);
-            listCache.put(binding, policyInterfaces);
-    
-            if (logger.isDebugEnabled())
-                logger.debug("Cached delegate interface collection " + policyInterfaces + " for " + binding + " and policy " + getPolicyClass());
-            
-            return policyInterfaces;
         }
-        finally
+        return policyInterface;
+    }
+    
+    /**
+     * Clear entries in all caches based on binding changes.
+     * 
+     * @param binding  the changed binding or <tt>null</tt> if all bindings are affected
+     */
+    private void clearCaches(B binding)
+    {
+        synchronized (writeLock)
         {
-            lock.writeLock().unlock();
+            generation++;
+            singleCache = clearCache("aggregate delegate", singleCache, binding);
+            listCache = clearCache("delegate collection", listCache, binding);
+            // Aggregates span several class hierarchies and are rebuilt on demand
+            aggregateCache = Collections.emptyMap();
         }
     }
     
     /**
-     * Clear entries in the cache based on binding changes.
+     * Copy a cache without the entries affected by a binding change.
      * 
      * @param cacheDescription  description of cache to clear
      * @param cache  the cache to clear
      * @param binding  the binding
+     * @return  the new cache snapshot
      */
-    private void clearCache(String cacheDescription, Map<B, ?> cache, B binding)
+    private <V> Map<B, V> clearCache(String cacheDescription, Map<B, V> cache, B binding)
     {
         if (binding == null)
         {
-            LockHelper.tryLock(lock.writeLock(), tryLockTimeout, "clearing policy cache in 'CachedPolicyFactory.clearCache()'");
-            try
-            {
-                // A specific binding has not been provided, so clear all entries
-                cache.clear();
-                
-                if (logger.isDebugEnabled() && cache.isEmpty() == false)
-                    logger.debug("Cleared " + cacheDescription + " cache (all class bindings) for policy " + getPolicyClass());
-            }
-            finally
-            {
-                lock.writeLock().unlock();
-            }
+            // A specific binding has not been provided, so clear all entries
+            if (logger.isDebugEnabled() && cache.isEmpty() == false)
+                logger.debug("Cleared " + cacheDescription + " cache (all class bindings) for policy " + getPolicyClass());
+            
+            return Collections.emptyMap();
         }
-        else
+        
+        // A specific binding has been provided.  An entry is removed if the 
+        // binding in the list is equal or derived from the changed binding. 
+        Map<B, V> newCache = new HashMap<B, V>(cache);
+        Iterator<B> cachedBindings = newCache.keySet().iterator();
+        while (cachedBindings.hasNext())
         {
-            // A specific binding has been provided.  Build a list of entries
-            // that require removal.  An entry is removed if the binding in the
-            // list is equal or derived from the changed binding. 
-            Collection<B> invalidBindings = new ArrayList<B>();
-            for (B cachedBinding : cache.keySet())
-            {
-                // Determine if binding is equal or derived from changed binding
-                BehaviourBinding generalisedBinding = cachedBinding;
-                while(generalisedBinding != null)
-                {
-                    if (generalisedBinding.equals(binding))
-                    {
-                        invalidBindings.add(cachedBinding);
-                        break;
-                    }
-                    generalisedBinding = generalisedBinding.generaliseBinding();
-                }
-            }
-
-            // Remove all invalid bindings
-            if (invalidBindings.size() > 0)
+            B cachedBinding = cachedBindings.next();
+            
+            // Determine if binding is equal or derived from changed binding
+            BehaviourBinding generalisedBinding = cachedBinding;
+            while(generalisedBinding != null)
             {
-                LockHelper.tryLock(lock.writeLock(), tryLockTimeout, "removing invalid policy bindings from cache in 'CachedPolicyFactory.clearCache()'");
-                try
-                {
-                    for (B invalidBinding : invalidBindings)
-                    {
-                        cache.remove(invalidBinding);
-                        
-                        if (logger.isDebugEnabled())
-                            logger.debug("Cleared " + cacheDescription + " cache for " + invalidBinding + " and policy " + getPolicyClass());
-                    }
-                }
-                finally
+                if (generalisedBinding.equals(binding))
                 {
-                    lock.writeLock().unlock();
+                    cachedBindings.remove();
+                    
+                    if (logger.isDebugEnabled())
+                        logger.debug("Cleared " + cacheDescription + " cache for " + cachedBinding + " and policy " + getPolicyClass());
+                    break;
                 }
+                generalisedBinding = generalisedBinding.generaliseBinding();
             }
         }
+        return newCache;
     }
 }
@@ -158,7 +158,12 @@ public class ClassPolicyDelegate<P extends ClassPolicy>
      */
     public P get(NodeRef nodeRef, Set<QName> classQNames)
     {
-        return factory.toPolicy(getList(nodeRef, classQNames));
+        Set<ClassBehaviourBinding> bindings = new HashSet<ClassBehaviourBinding>(classQNames.size() * 2);
+        for (QName classQName : classQNames)
+        {
+            bindings.add(new ClassBehaviourBinding(dictionary, nodeRef, classQName));
+        }
+        return factory.createAggregate(bindings);
     }
 
     /**
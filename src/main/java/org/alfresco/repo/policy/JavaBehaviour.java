@@ -132,7 +132,7 @@ public class JavaBehaviour extends BaseBehaviour
      * 
      * @author David Caruana
      */
-    private static class JavaMethodInvocationHandler implements InvocationHandler
+    /*package*/ static class JavaMethodInvocationHandler implements InvocationHandler
     {
         private JavaBehaviour behaviour;
         private Method delegateMethod;
@@ -173,6 +173,20 @@ public class JavaBehaviour extends BaseBehaviour
             }
             
             // Delegate to designated method pointer
+            return dispatch(args);
+        }
+
+        /**
+         * Invoke the behaviour method directly, bypassing the policy interface proxy.
+         * <p>
+         * Used by the aggregate policy handlers of {@link PolicyFactory} to call bound
+         * behaviours without a further proxy hop per behaviour.
+         * 
+         * @param args  the policy method arguments
+         * @return  the behaviour method result
+         */
+        /*package*/ Object dispatch(Object[] args) throws Throwable
+        {
             if (behaviour.isEnabled())
             {
                 try
@@ -224,6 +224,7 @@ import org.alfresco.service.cmr.repository.StoreRef;
     private static class SingleHandler<P extends Policy> implements InvocationHandler
     {
         private P policyInterface;
+        private PolicyTarget target;
         
         /**
          * Construct
@@ -233,6 +234,7 @@ import org.alfresco.service.cmr.repository.StoreRef;
         public SingleHandler(P policyInterface)
         {
             this.policyInterface = policyInterface;
+            this.target = compileTarget(policyInterface);
         }
         
         /* (non-Javadoc)
@@ -247,13 +249,18 @@ import org.alfresco.service.cmr.repository.StoreRef;
             }
             
             // Handle PolicyList level methods
-            if (method.getDeclaringClass().equals(PolicyList.class))
+            Class<?> declaringClass = method.getDeclaringClass();
+            if (declaringClass == PolicyList.class)
             {
                 return method.invoke(this, args);
             }
             
             // Handle Object level methods
-            if (method.getName().equals("toString"))
+            if (declaringClass != Object.class)
+            {
+                // Policy method - the common case
+            }
+            else if (method.getName().equals("toString"))
             {
                 return toString() + ": wrapped " + 1 + " policy";
             }
@@ -266,17 +273,8 @@ import org.alfresco.service.cmr.repository.StoreRef;
                 return equals(args[0]);
             }
 
-            // Invoke each wrapped policy in turn
-            try
-            {
-                Object result = null;
-                result = method.invoke(policyInterface, args);
-                return result;
-            }
-            catch (InvocationTargetException e)
-            {
-                throw e.getTargetException();
-            }
+            // Invoke the wrapped policy
+            return target.invoke(method, args);
         }
         
         public boolean equals(Object obj)
@@ -310,6 +308,7 @@ import org.alfresco.service.cmr.repository.StoreRef;
     private static class MultiHandler<P extends Policy> implements InvocationHandler, PolicyList
     {
         private Collection<P> policyInterfaces;
+        private PolicyTarget[] targets;
        
         /**
          * Construct
@@ -319,6 +318,12 @@ import org.alfresco.service.cmr.repository.StoreRef;
         public MultiHandler(Collection<P> policyInterfaces)
         {
             this.policyInterfaces = Collections.unmodifiableCollection(policyInterfaces);
+            this.targets = new PolicyTarget[policyInterfaces.size()];
+            int i = 0;
+            for (P policyInterface : policyInterfaces)
+            {
+                targets[i++] = compileTarget(policyInterface);
+            }
         }
         
         /* (non-Javadoc)
@@ -333,13 +338,18 @@ import org.alfresco.service.cmr.repository.StoreRef;
             }
             
             // Handle PolicyList level methods
-            if (method.getDeclaringClass().equals(PolicyList.class))
+            Class<?> declaringClass = method.getDeclaringClass();
+            if (declaringClass == PolicyList.class)
             {
                 return method.invoke(this, args);
             }
             
             // Handle Object level methods
-            if (method.getName().equals("toString"))
+            if (declaringClass != Object.class)
+            {
+                // Policy method - the common case
+            }
+            else if (method.getName().equals("toString"))
             {
                 return toString() + ": wrapped " + policyInterfaces.size() + " policies";
             }
@@ -353,19 +363,12 @@ import org.alfresco.service.cmr.repository.StoreRef;
             }
 
             // Invoke each wrapped policy in turn
-            try
-            {
-                Object result = null;
-                for (P policyInterface : policyInterfaces)
-                {
-                    result = method.invoke(policyInterface, args);
-                }
-                return result;
-            }
-            catch (InvocationTargetException e)
+            Object result = null;
+            for (PolicyTarget target : targets)
             {
-                throw e.getTargetException();
+                result = target.invoke(method, args);
             }
+            return result;
         }
 
         /* (non-Javadoc)
@@ -377,6 +380,70 @@ import org.alfresco.service.cmr.repository.StoreRef;
         }
     }
     
+    /**
+     * Resolve how a policy implementation is to be invoked by the aggregate handlers.
+     * <p>
+     * The resolution happens once, when the aggregate policy is built.  Java behaviours
+     * are then called directly on their delegate method and other proxied policies
+     * (e.g. transaction-level behaviours) go straight to their invocation handler,
+     * rather than re-entering the JDK proxy of each bound behaviour on every call.
+     * 
+     * @param policy  the policy implementation
+     * @return  the dispatch target
+     */
+    /*package*/ static PolicyTarget compileTarget(final Object policy)
+    {
+        if (Proxy.isProxyClass(policy.getClass()))
+        {
+            final InvocationHandler handler = Proxy.getInvocationHandler(policy);
+            if (handler instanceof JavaBehaviour.JavaMethodInvocationHandler)
+            {
+                final JavaBehaviour.JavaMethodInvocationHandler javaHandler = (JavaBehaviour.JavaMethodInvocationHandler)handler;
+                return new PolicyTarget()
+                {
+                    public Object invoke(Method method, Object[] args) throws Throwable
+                    {
+                        return javaHandler.dispatch(args);
+                    }
+                };
+            }
+            return new PolicyTarget()
+            {
+                public Object invoke(Method method, Object[] args) throws Throwable
+                {
+                    return handler.invoke(policy, method, args);
+                }
+            };
+        }
+        return new PolicyTarget()
+        {
+            public Object invoke(Method method, Object[] args) throws Throwable
+            {
+                try
+                {
+                    return method.invoke(policy, args);
+                }
+                catch (InvocationTargetException e)
+                {
+                    throw e.getTargetException();
+                }
+            }
+        };
+    }
+    
+    /**
+     * A policy implementation resolved for direct invocation.
+     */
+    /*package*/ interface PolicyTarget
+    {
+        /**
+         * @param method  the policy interface method
+         * @param args  the policy method arguments
+         * @return  the result of the invocation
+         */
+        Object invoke(Method method, Object[] args) throws Throwable;
+    }
+    
     /**
      * Convert each of the arguments to the spoofed (no tenant prefix) reference.
      * 
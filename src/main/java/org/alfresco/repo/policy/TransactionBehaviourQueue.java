@@ -34,9 +34,12 @@ import java.util.Map;
 import java.util.Queue;
 
 import org.alfresco.error.AlfrescoRuntimeException;
+import org.alfresco.repo.policy.Behaviour.NotificationFrequency;
 import org.alfresco.repo.policy.Policy.Arg;
 import org.alfresco.repo.transaction.AlfrescoTransactionSupport;
 import org.alfresco.repo.transaction.TransactionListener;
+import org.alfresco.service.cmr.repository.AssociationRef;
+import org.alfresco.service.cmr.repository.ChildAssociationRef;
 import org.alfresco.util.GUID;
 
 
@@ -44,6 +47,11 @@ import org.alfresco.util.GUID;
  * Transaction Behaviour Queue.
  * 
  * Responsible for keeping a record of behaviours to execute at the end of a transaction.
+ * <p>
+ * Invocations of a behaviour are keyed by the behaviour and the policy's KEY arguments.
+ * Behaviours bound with {@link NotificationFrequency#TRANSACTION_COMMIT_PER_NODE} are keyed
+ * by the behaviour and the node only, so that repeated changes to a node in one transaction
+ * are executed once.
  */
 public class TransactionBehaviourQueue implements TransactionListener
 {
@@ -78,8 +86,12 @@ public class TransactionBehaviourQueue implements TransactionListener
         
         // Determine if behaviour instance has already been queued
         
-        // Identity of ExecutionContext is Behaviour + KEY argument(s)
-        ExecutionInstanceKey key = new  ExecutionInstanceKey(behaviour, definition.getArguments(), args);
+        // Identity of ExecutionContext is Behaviour + KEY argument(s), or Behaviour + node when coalescing per node
+        boolean perNode = NotificationFrequency.TRANSACTION_COMMIT_PER_NODE.equals(behaviour.getNotificationFrequency());
+        Object node = perNode ? getNode(args) : null;
+        ExecutionInstanceKey key = (node == null) ?
+                new ExecutionInstanceKey(behaviour, definition.getArguments(), args) :
+                new ExecutionInstanceKey(behaviour, node);
         
         ExecutionContext executionContext = queueContext.index.get(key);
         
@@ -108,11 +120,12 @@ public class TransactionBehaviourQueue implements TransactionListener
         else
         {
             // Context does already exist
-            // Update behaviour instance execution context, in particular, argument state that is marked END_TRANSACTION
+            // Update behaviour instance execution context, in particular, argument state that is marked END_TRANSACTION.
+            // When coalescing per node, the other KEY arguments are also taken from the latest invocation.
             Arg[] argDefs = definition.getArguments();
             for (int i = 0; i < argDefs.length; i++)
             {
-                if (argDefs[i].equals(Arg.END_VALUE))
+                if (argDefs[i].equals(Arg.END_VALUE) || (node != null && argDefs[i].equals(Arg.KEY)))
                 {
                     executionContext.args[i] = args[i];
                 }
@@ -121,6 +134,30 @@ public class TransactionBehaviourQueue implements TransactionListener
     }
     
 
+    /**
+     * Get the node that per-node invocations are coalesced on, taken from the first argument
+     * 
+     * @param args  the policy arguments
+     * @return  the node (usually a <tt>NodeRef</tt>) or <tt>null</tt> if there is no first argument
+     */
+    private Object getNode(Object[] args)
+    {
+        if (args == null || args.length == 0)
+        {
+            return null;
+        }
+        Object arg = args[0];
+        if (arg instanceof ChildAssociationRef)
+        {
+            return ((ChildAssociationRef) arg).getChildRef();
+        }
+        else if (arg instanceof AssociationRef)
+        {
+            return ((AssociationRef) arg).getSourceRef();
+        }
+        return arg;
+    }
+
     /* (non-Javadoc)
      * @see org.alfresco.repo.transaction.TransactionListener#flush()
      */
@@ -183,6 +220,12 @@ public class TransactionBehaviourQueue implements TransactionListener
             }
         }
         
+        public ExecutionInstanceKey(Behaviour behaviour, Object node)
+        {
+            this.behaviour = behaviour;
+            keys.add(node);
+        }
+        
         Behaviour behaviour;
         ArrayList<Object> keys = new ArrayList<Object>();
         
@@ -146,7 +146,8 @@ public class TransactionInvocationHandlerFactory
                     result = executedBehaviours.get(key);
                 }
             }
-            else if (behaviour.getNotificationFrequency().equals(NotificationFrequency.TRANSACTION_COMMIT))
+            else if (behaviour.getNotificationFrequency().equals(NotificationFrequency.TRANSACTION_COMMIT) ||
+                     behaviour.getNotificationFrequency().equals(NotificationFrequency.TRANSACTION_COMMIT_PER_NODE))
             {
                 // queue policy invocation for end of transaction
                 queue.queue(behaviour, definition, policyInterface, method, args);
@@ -26,8 +26,10 @@
 package org.alfresco.repo.search.impl.querymodel.impl.db;
 
 import java.util.ArrayList;
+import java.util.Collection;
 import java.util.HashMap;
 import java.util.HashSet;
+import java.util.Iterator;
 import java.util.LinkedHashSet;
 import java.util.List;
 import java.util.Map;
@@ -46,14 +48,21 @@ import org.alfresco.repo.search.impl.querymodel.QueryEngineResults;
 import org.alfresco.repo.search.impl.querymodel.QueryModelException;
 import org.alfresco.repo.search.impl.querymodel.QueryModelFactory;
 import org.alfresco.repo.search.impl.querymodel.QueryOptions;
+import org.alfresco.repo.security.permissions.PermissionServiceSPI;
 import org.alfresco.repo.tenant.TenantService;
 import org.alfresco.service.cmr.dictionary.DictionaryService;
+import org.alfresco.service.cmr.repository.NodeRef;
 import org.alfresco.service.cmr.repository.NodeService;
 import org.alfresco.service.cmr.repository.StoreRef;
 import org.alfresco.service.cmr.search.ResultSet;
+import org.alfresco.service.cmr.search.SearchParameters;
+import org.alfresco.service.cmr.security.AccessStatus;
+import org.alfresco.service.cmr.security.PermissionService;
 import org.alfresco.service.namespace.NamespaceService;
 import org.alfresco.service.namespace.QName;
 import org.alfresco.util.Pair;
+import org.apache.ibatis.session.ResultContext;
+import org.apache.ibatis.session.ResultHandler;
 import org.mybatis.spring.SqlSessionTemplate;
 
 /**
@@ -63,6 +72,8 @@ public class DBQueryEngine implements QueryEngine
 {
     private static final String SELECT_BY_DYNAMIC_QUERY = "alfresco.metadata.query.select_byDynamicQuery";
     
+    private static final int PERMISSION_CHECK_BATCH_SIZE = 1000;
+    
     private SqlSessionTemplate template;
 
     private QNameDAO qnameDAO;
@@ -79,6 +90,10 @@ public class DBQueryEngine implements QueryEngine
     
     private OptionalPatchApplicationCheckBootstrapBean metadataIndexCheck2;
 
+    private PermissionService permissionService;
+    
+    private boolean stopWhenPageFilled = true;
+
     public void setMetadataIndexCheck2(OptionalPatchApplicationCheckBootstrapBean metadataIndexCheck2)
     {
         this.metadataIndexCheck2 = metadataIndexCheck2;
@@ -137,6 +152,25 @@ public class DBQueryEngine implements QueryEngine
         this.nodeDAO = nodeDAO;
     }
 
+    /**
+     * @param permissionService used to tell whether a limited selection holds enough readable nodes
+     */
+    public void setPermissionService(PermissionService permissionService)
+    {
+        this.permissionService = permissionService;
+    }
+
+    /**
+     * When a query asks for a page of results, stop reading the matching rows once enough of
+     * them are readable by the current user to fill the page.  Otherwise every matching row is read.
+     * 
+     * @param stopWhenPageFilled <tt>true</tt> to stop reading rows once the page can be filled
+     */
+    public void setStopWhenPageFilled(boolean stopWhenPageFilled)
+    {
+        this.stopWhenPageFilled = stopWhenPageFilled;
+    }
+
     /*
      * (non-Javadoc)
      * @see
@@ -205,20 +239,147 @@ public class DBQueryEngine implements QueryEngine
         dbQuery.setSinceTxId(sinceTxId);
         
         dbQuery.prepare(namespaceService, dictionaryService, qnameDAO, nodeDAO, tenantService, selectorGroup, null, functionContext, metadataIndexCheck2.getPatchApplied());
-        List<Node> nodes = template.selectList(SELECT_BY_DYNAMIC_QUERY, dbQuery);
-        LinkedHashSet<Long> set = new LinkedHashSet<Long>(nodes.size());
-        for(Node node : nodes)
-        {
-            set.add(node.getId());
-        }
-        List<Long> nodeIds = new ArrayList<Long>(set);
-        ResultSet rs =  new DBResultSet(options.getAsSearchParmeters(), nodeIds, nodeDAO, nodeService, tenantService, Integer.MAX_VALUE);
+        NodeIdResultHandler selection = selectNodeIds(dbQuery, options.getAsSearchParmeters());
+        List<Long> nodeIds = new ArrayList<Long>(selection.getNodeIds());
+        ResultSet rs =  new DBResultSet(options.getAsSearchParmeters(), nodeIds, nodeDAO, nodeService, tenantService, Integer.MAX_VALUE, !selection.isComplete());
         ResultSet paged = new PagingLuceneResultSet(rs, options.getAsSearchParmeters(), nodeService);
         
         answer.put(key, paged);
         return new QueryEngineResults(answer);
     }
 
+    /**
+     * Select the ids of the matching nodes, in query order and without duplicates.
+     * <p/>
+     * If only a page of results is wanted, then the rows are read in one select and the nodes are
+     * permission checked in batches as they arrive.  Reading stops as soon as enough readable nodes
+     * have been found to fill the page.  There is no limit in the SQL and the rows are only selected
+     * once, so matches cannot be skipped or repeated whatever the order of the rows.
+     * <p/>
+     * The selection is not {@link NodeIdResultHandler#isComplete() complete} if matches were left
+     * unread, in which case the number of nodes selected is only a lower bound on the number found.
+     */
+    private NodeIdResultHandler selectNodeIds(DBQuery dbQuery, SearchParameters searchParameters)
+    {
+        int maxItems = searchParameters.getMaxItems();
+        long required = 0L;
+        if (maxItems >= 0 && stopWhenPageFilled)
+        {
+            // One more than the page, so that the caller can tell if there are more results
+            required = (long) Math.max(0, searchParameters.getSkipCount()) + maxItems + 1L;
+        }
+        NodeIdResultHandler resultHandler = new NodeIdResultHandler(required);
+        template.select(SELECT_BY_DYNAMIC_QUERY, dbQuery, resultHandler);
+        return resultHandler;
+    }
+    
+    /**
+     * Count the readable nodes, stopping as soon as the required number have been found
+     */
+    private long countReadable(Collection<Long> nodeIds, long required)
+    {
+        if (permissionService == null)
+        {
+            return nodeIds.size();
+        }
+        PermissionServiceSPI bulkPermissionService = (permissionService instanceof PermissionServiceSPI) ? (PermissionServiceSPI) permissionService : null;
+        
+        long readable = 0;
+        List<NodeRef> batch = new ArrayList<NodeRef>(PERMISSION_CHECK_BATCH_SIZE);
+        Iterator<Long> it = nodeIds.iterator();
+        while (it.hasNext() && readable < required)
+        {
+            batch.clear();
+            while (it.hasNext() && batch.size() < PERMISSION_CHECK_BATCH_SIZE)
+            {
+                Pair<Long, NodeRef> nodePair = nodeDAO.getNodePair(it.next());
+                if (nodePair != null)
+                {
+                    batch.add(tenantService.getBaseName(nodePair.getSecond()));
+                }
+            }
+            if (bulkPermissionService != null)
+            {
+                for (AccessStatus status : bulkPermissionService.hasReadPermissions(batch))
+                {
+                    if (status != AccessStatus.DENIED)
+                    {
+                        readable++;
+                    }
+                }
+            }
+            else
+            {
+                for (NodeRef nodeRef : batch)
+                {
+                    if (permissionService.hasReadPermission(nodeRef) != AccessStatus.DENIED)
+                    {
+                        readable++;
+                    }
+                }
+            }
+        }
+        return readable;
+    }
+    
+    /**
+     * Collects the distinct node ids as the rows are read, without holding on to the rows themselves.
+     * If a number of readable nodes is required, the nodes are permission checked in batches while
+     * the rows are read, and reading stops once enough of them are readable.
+     */
+    private class NodeIdResultHandler implements ResultHandler
+    {
+        private final long required;
+        private final LinkedHashSet<Long> nodeIds = new LinkedHashSet<Long>();
+        private final List<Long> uncheckedNodeIds = new ArrayList<Long>();
+        private long readable = 0L;
+        private boolean complete = true;
+        
+        /**
+         * @param required  the number of readable nodes to stop at, or zero to read every row
+         */
+        NodeIdResultHandler(long required)
+        {
+            this.required = required;
+        }
+        
+        @Override
+        public void handleResult(ResultContext context)
+        {
+            Node node = (Node) context.getResultObject();
+            if (!nodeIds.add(node.getId()) || required <= 0L)
+            {
+                return;
+            }
+            uncheckedNodeIds.add(node.getId());
+            if (uncheckedNodeIds.size() >= Math.min(PERMISSION_CHECK_BATCH_SIZE, required - readable))
+            {
+                // The select is still open; the databases either buffer the rest of the rows or
+                // read them through a cursor that other statements on the connection leave alone
+                readable += countReadable(uncheckedNodeIds, required - readable);
+                uncheckedNodeIds.clear();
+                if (readable >= required)
+                {
+                    complete = false;
+                    context.stop();
+                }
+            }
+        }
+        
+        public LinkedHashSet<Long> getNodeIds()
+        {
+            return nodeIds;
+        }
+        
+        /**
+         * @return <tt>true</tt> if every matching row was read
+         */
+        public boolean isComplete()
+        {
+            return complete;
+        }
+    }
+
     /*
      * (non-Javadoc)
      * @see org.alfresco.repo.search.impl.querymodel.QueryEngine#getQueryModelFactory()
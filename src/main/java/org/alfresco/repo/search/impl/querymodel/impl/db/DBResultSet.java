@@ -63,8 +63,20 @@ public class DBResultSet extends AbstractResultSet
     
     private BitSet prefetch;
     
+    private boolean truncated;
+    
     public DBResultSet(SearchParameters searchParameters, List<Long> dbids, NodeDAO nodeDao,  NodeService nodeService, TenantService tenantService, int maximumResultsFromUnlimitedQuery)
     {
+        this(searchParameters, dbids, nodeDao, nodeService, tenantService, maximumResultsFromUnlimitedQuery, false);
+    }
+    
+    /**
+     * @param truncated     <tt>true</tt> if only some of the matching nodes were selected, in which case the
+     *                      {@link #getNumberFound() number found} is the number selected and {@link #hasMore()} is <tt>true</tt>
+     */
+    public DBResultSet(SearchParameters searchParameters, List<Long> dbids, NodeDAO nodeDao,  NodeService nodeService, TenantService tenantService, int maximumResultsFromUnlimitedQuery, boolean truncated)
+    {
+        this.truncated = truncated;
         this.nodeDao = nodeDao;
         this.dbids = dbids;
         this.nodeService = nodeService;
@@ -95,7 +107,7 @@ public class DBResultSet extends AbstractResultSet
         }
         
         this.resultSetMetaData = new SimpleResultSetMetaData(
-                maxResults > 0 && dbids.size() < maxResults ? LimitBy.UNLIMITED : limitBy,
+                maxResults > 0 && dbids.size() < maxResults && !truncated ? LimitBy.UNLIMITED : limitBy,
                 PermissionEvaluationMode.EAGER, searchParameters);
     }
 
@@ -177,7 +189,7 @@ public class DBResultSet extends AbstractResultSet
     @Override
     public boolean hasMore()
     {
-        return false; 
+        return truncated; 
     }
 
     /* (non-Javadoc)
@@ -51,16 +51,74 @@ public abstract class AbstractSolrQueryHTTPClient
 {
     public static final int DEFAULT_SAVEPOST_BUFFER = 4096;
     
+    private SolrQueryLatencyStatistics latencyStatistics;
+    
+    /**
+     * @param latencyStatistics optional recorder of the latency of each request, by endpoint
+     */
+    public void setLatencyStatistics(SolrQueryLatencyStatistics latencyStatistics)
+    {
+        this.latencyStatistics = latencyStatistics;
+    }
+    
+    /**
+     * Record the time taken by a request to SOLR, if latency statistics are being kept
+     * 
+     * @param url           the URL requested
+     * @param startMillis   the time the request was started
+     * @param failed        <tt>true</tt> if the request failed
+     */
+    protected void recordLatency(String url, long startMillis, boolean failed)
+    {
+        if (latencyStatistics != null)
+        {
+            latencyStatistics.record(url, System.currentTimeMillis() - startMillis, failed);
+        }
+    }
+    
+    /**
+     * Ask SOLR to report the time taken by each shard of a distributed query, if shard latency statistics
+     * are being kept
+     * 
+     * @param url           the request URL, which is distributed if it has a <tt>shards</tt> parameter
+     * @return              the URL to request
+     */
+    protected String requestShardLatency(String url)
+    {
+        if (latencyStatistics != null && latencyStatistics.isRecordShardLatency() && url.contains("&shards=") && !url.contains("&" + SolrQueryLatencyStatistics.SHARDS_INFO + "="))
+        {
+            return url + "&" + SolrQueryLatencyStatistics.SHARDS_INFO + "=true";
+        }
+        return url;
+    }
+    
+    /**
+     * Record the time taken by each shard of a distributed query, if latency statistics are being kept
+     * 
+     * @param json          the response
+     */
+    protected void recordShardLatency(JSONObject json)
+    {
+        if (latencyStatistics != null)
+        {
+            latencyStatistics.recordShards(json);
+        }
+    }
+    
     protected JSONObject postQuery(HttpClient httpClient, String url, JSONObject body) throws UnsupportedEncodingException,
     IOException, HttpException, URIException, JSONException
     {
+        url = requestShardLatency(url);
         PostMethod post = new PostMethod(url);
-        if (body.toString().length() > DEFAULT_SAVEPOST_BUFFER)
+        String bodyString = body.toString();
+        if (bodyString.length() > DEFAULT_SAVEPOST_BUFFER)
         {
             post.getParams().setBooleanParameter(HttpMethodParams.USE_EXPECT_CONTINUE, true);
         }
-        StringRequestEntity requestEntity = new StringRequestEntity(body.toString(), "application/json", "UTF-8");
+        StringRequestEntity requestEntity = new StringRequestEntity(bodyString, "application/json", "UTF-8");
         post.setRequestEntity(requestEntity);
+        long startMillis = System.currentTimeMillis();
+        boolean failed = true;
         try
         {
             httpClient.executeMethod(post);
@@ -82,11 +140,14 @@ public abstract class AbstractSolrQueryHTTPClient
             Reader reader = new BufferedReader(new InputStreamReader(post.getResponseBodyAsStream(), post.getResponseCharSet()));
             // TODO - replace with streaming-based solution e.g. SimpleJSON ContentHandler
             JSONObject json = new JSONObject(new JSONTokener(reader));
+            recordShardLatency(json);
+            failed = false;
             return json;
         }
         finally
         {
             post.releaseConnection();
+            recordLatency(url, startMillis, failed);
         }
     }
 }
@@ -1259,7 +1259,9 @@ public class SolrQueryHTTPClient extends AbstractSolrQueryHTTPClient implements
             }
 
             // PostMethod post = new PostMethod(url.toString());
-            GetMethod get = new GetMethod(url.toString());
+            GetMethod get = new GetMethod(requestShardLatency(url.toString()));
+            long startMillis = System.currentTimeMillis();
+            boolean failed = true;
 
             try
             {
@@ -1284,11 +1286,14 @@ public class SolrQueryHTTPClient extends AbstractSolrQueryHTTPClient implements
                 Reader reader = new BufferedReader(new InputStreamReader(get.getResponseBodyAsStream()));
                 // TODO - replace with streaming-based solution e.g. SimpleJSON ContentHandler
                 JSONObject json = new JSONObject(new JSONTokener(reader));
+                recordShardLatency(json);
+                failed = false;
                 return json;
             }
             finally
             {
                 get.releaseConnection();
+                recordLatency(url.toString(), startMillis, failed);
             }
         }
         catch (UnsupportedEncodingException e)
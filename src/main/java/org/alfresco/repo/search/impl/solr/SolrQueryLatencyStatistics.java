@@ -0,0 +1,310 @@
+/*
+ * #%L
+ * Alfresco Repository
+ * %%
+ * Copyright (C) 2005 - 2016 Alfresco Software Limited
+ * %%
+ * This file is part of the Alfresco software. 
+ * If the software was purchased under a paid Alfresco license, the terms of 
+ * the paid license agreement will prevail.  Otherwise, the software is 
+ * provided under the following open source license terms:
+ * 
+ * Alfresco is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * 
+ * Alfresco is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ * 
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with Alfresco. If not, see <http://www.gnu.org/licenses/>.
+ * #L%
+ */
+package org.alfresco.repo.search.impl.solr;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.TreeSet;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+import org.alfresco.repo.management.DynamicMBeanExportOperations;
+import org.alfresco.repo.management.DynamicMBeanRegistrar;
+import org.json.JSONObject;
+
+/**
+ * Records a latency histogram for each SOLR endpoint the repository sends requests to and, for distributed
+ * queries, for each shard from the timings SOLR reports in the <tt>shards.info</tt> section of the response,
+ * so that a slow core or shard can be picked out. Recording is lock free and costs a few atomic increments
+ * per request.
+ * <p>
+ * SOLR only reports the shard timings when asked to, and then adds the information for every shard to each
+ * response, so per shard latency is only recorded when {@link #setRecordShardLatency(boolean) recordShardLatency}
+ * is enabled.
+ * 
+ * @since 5.2
+ */
+public class SolrQueryLatencyStatistics implements SolrQueryLatencyStatisticsMBean
+{
+    private static final long[] BUCKET_UPPER_BOUNDS = { 1, 2, 5, 10, 20, 50, 100, 200, 500, 1000, 2000, 5000, 10000, 30000 };
+
+    /** The response section holding the per shard information of a distributed query */
+    public static final String SHARDS_INFO = "shards.info";
+
+    private final ConcurrentMap<String, Histogram> histograms = new ConcurrentHashMap<String, Histogram>();
+    private final ConcurrentMap<String, Histogram> shardHistograms = new ConcurrentHashMap<String, Histogram>();
+
+    private DynamicMBeanExportOperations mbeanExporter;
+    private String objectName = "Alfresco:Name=SolrQueryLatency";
+    private boolean recordShardLatency = false;
+
+    /**
+     * @param mbeanExporter     optional exporter used to publish the statistics over JMX
+     */
+    public void setMbeanExporter(DynamicMBeanExportOperations mbeanExporter)
+    {
+        this.mbeanExporter = mbeanExporter;
+    }
+
+    /**
+     * @param objectName        the JMX object name to publish the statistics under
+     */
+    public void setObjectName(String objectName)
+    {
+        this.objectName = objectName;
+    }
+
+    /**
+     * @param recordShardLatency    <tt>true</tt> to ask SOLR for the time taken by each shard of a distributed
+     *                              query and record it (default <tt>false</tt>)
+     */
+    public void setRecordShardLatency(boolean recordShardLatency)
+    {
+        this.recordShardLatency = recordShardLatency;
+    }
+
+    /**
+     * @return                      <tt>true</tt> if the time taken by each shard of a distributed query is recorded
+     */
+    public boolean isRecordShardLatency()
+    {
+        return recordShardLatency;
+    }
+
+    public void init()
+    {
+        DynamicMBeanRegistrar.registerMBean(mbeanExporter, this, objectName);
+    }
+
+    /**
+     * Record a request
+     * 
+     * @param url               the URL requested; any request parameters are ignored
+     * @param elapsedMillis     the time taken to make the request and read the response
+     * @param failed            <tt>true</tt> if the request failed
+     */
+    public void record(String url, long elapsedMillis, boolean failed)
+    {
+        getOrCreate(histograms, getEndpoint(url)).record(elapsedMillis, failed);
+    }
+
+    /**
+     * Record the time taken by each shard of a distributed query, as given in the <tt>shards.info</tt>
+     * section of the response.  Nothing is recorded if the response has no such section.
+     * 
+     * @param response          the JSON response to a query
+     */
+    public void recordShards(JSONObject response)
+    {
+        JSONObject shardsInfo = response.optJSONObject(SHARDS_INFO);
+        if (shardsInfo == null)
+        {
+            return;
+        }
+        Iterator<?> shards = shardsInfo.keys();
+        while (shards.hasNext())
+        {
+            String shard = (String) shards.next();
+            JSONObject shardInfo = shardsInfo.optJSONObject(shard);
+            if (shardInfo == null || !shardInfo.has("time"))
+            {
+                continue;
+            }
+            getOrCreate(shardHistograms, shard).record(shardInfo.optLong("time"), shardInfo.has("error"));
+        }
+    }
+
+    private static Histogram getOrCreate(ConcurrentMap<String, Histogram> histograms, String key)
+    {
+        Histogram histogram = histograms.get(key);
+        if (histogram == null)
+        {
+            Histogram newHistogram = new Histogram();
+            histogram = histograms.putIfAbsent(key, newHistogram);
+            if (histogram == null)
+            {
+                histogram = newHistogram;
+            }
+        }
+        return histogram;
+    }
+
+    private static String getEndpoint(String url)
+    {
+        int paramsStart = url.indexOf('?');
+        return paramsStart < 0 ? url : url.substring(0, paramsStart);
+    }
+
+    @Override
+    public String[] getEndpoints()
+    {
+        return new TreeSet<String>(histograms.keySet()).toArray(new String[0]);
+    }
+
+    @Override
+    public String[] getLatencySummaries()
+    {
+        return getSummaries(histograms);
+    }
+
+    @Override
+    public String[] getShards()
+    {
+        return new TreeSet<String>(shardHistograms.keySet()).toArray(new String[0]);
+    }
+
+    @Override
+    public String[] getShardLatencySummaries()
+    {
+        return getSummaries(shardHistograms);
+    }
+
+    private static String[] getSummaries(Map<String, Histogram> histograms)
+    {
+        List<String> summaries = new ArrayList<String>(histograms.size());
+        for (Map.Entry<String, Histogram> entry : new TreeMap<String, Histogram>(histograms).entrySet())
+        {
+            summaries.add(entry.getKey() + " " + entry.getValue());
+        }
+        return summaries.toArray(new String[summaries.size()]);
+    }
+
+    @Override
+    public long[] getBucketUpperBounds()
+    {
+        return BUCKET_UPPER_BOUNDS.clone();
+    }
+
+    @Override
+    public long[] getHistogram(String endpoint)
+    {
+        Histogram histogram = histograms.get(endpoint);
+        return histogram == null ? null : histogram.getCounts();
+    }
+
+    @Override
+    public long[] getShardHistogram(String shard)
+    {
+        Histogram histogram = shardHistograms.get(shard);
+        return histogram == null ? null : histogram.getCounts();
+    }
+
+    @Override
+    public void reset()
+    {
+        histograms.clear();
+        shardHistograms.clear();
+    }
+
+    /**
+     * Request counts bucketed by latency
+     */
+    private static class Histogram
+    {
+        private final AtomicLongArray counts = new AtomicLongArray(BUCKET_UPPER_BOUNDS.length + 1);
+        private final AtomicLong count = new AtomicLong();
+        private final AtomicLong errors = new AtomicLong();
+        private final AtomicLong totalMillis = new AtomicLong();
+        private final AtomicLong maxMillis = new AtomicLong();
+
+        private void record(long elapsedMillis, boolean failed)
+        {
+            int bucket = 0;
+            while (bucket < BUCKET_UPPER_BOUNDS.length && elapsedMillis > BUCKET_UPPER_BOUNDS[bucket])
+            {
+                bucket++;
+            }
+            counts.incrementAndGet(bucket);
+            count.incrementAndGet();
+            totalMillis.addAndGet(elapsedMillis);
+            if (failed)
+            {
+                errors.incrementAndGet();
+            }
+            long max;
+            while (elapsedMillis > (max = maxMillis.get()) && !maxMillis.compareAndSet(max, elapsedMillis))
+            {
+                // retry
+            }
+        }
+
+        private long[] getCounts()
+        {
+            long[] result = new long[counts.length()];
+            for (int i = 0; i < result.length; i++)
+            {
+                result[i] = counts.get(i);
+            }
+            return result;
+        }
+
+        /**
+         * @return      the upper bound of the bucket holding the given fraction of requests, or the
+         *              maximum latency if that is in the overflow bucket
+         */
+        private long getPercentile(long[] snapshot, long total, double fraction)
+        {
+            long threshold = (long) Math.ceil(total * fraction);
+            long cumulative = 0;
+            for (int i = 0; i < BUCKET_UPPER_BOUNDS.length; i++)
+            {
+                cumulative += snapshot[i];
+                if (cumulative >= threshold)
+                {
+                    return BUCKET_UPPER_BOUNDS[i];
+                }
+            }
+            return maxMillis.get();
+        }
+
+        @Override
+        public String toString()
+        {
+            long[] snapshot = getCounts();
+            long total = 0;
+            for (long bucketCount : snapshot)
+            {
+                total += bucketCount;
+            }
+            if (total == 0)
+            {
+                return "count=0";
+            }
+            return "count=" + count.get() +
+                   " errors=" + errors.get() +
+                   " meanMs=" + (totalMillis.get() / Math.max(1L, count.get())) +
+                   " p50Ms<=" + getPercentile(snapshot, total, 0.5) +
+                   " p95Ms<=" + getPercentile(snapshot, total, 0.95) +
+                   " p99Ms<=" + getPercentile(snapshot, total, 0.99) +
+                   " maxMs=" + maxMillis.get();
+        }
+    }
+}
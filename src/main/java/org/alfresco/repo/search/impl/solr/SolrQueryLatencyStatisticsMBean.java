@@ -0,0 +1,81 @@
+/*
+ * #%L
+ * Alfresco Repository
+ * %%
+ * Copyright (C) 2005 - 2016 Alfresco Software Limited
+ * %%
+ * This file is part of the Alfresco software. 
+ * If the software was purchased under a paid Alfresco license, the terms of 
+ * the paid license agreement will prevail.  Otherwise, the software is 
+ * provided under the following open source license terms:
+ * 
+ * Alfresco is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * 
+ * Alfresco is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ * 
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with Alfresco. If not, see <http://www.gnu.org/licenses/>.
+ * #L%
+ */
+package org.alfresco.repo.search.impl.solr;
+
+/**
+ * Management interface exposing the latency of the requests made to each SOLR endpoint and, for distributed
+ * queries, the time taken by each shard as reported by SOLR.
+ * 
+ * @since 5.2
+ */
+public interface SolrQueryLatencyStatisticsMBean
+{
+    /**
+     * @return          the endpoints that have been queried, without request parameters
+     */
+    String[] getEndpoints();
+
+    /**
+     * @return          one line per endpoint giving the request count, error count and the mean, median,
+     *                  95th and 99th percentile and maximum latencies in milliseconds
+     */
+    String[] getLatencySummaries();
+
+    /**
+     * @return          the upper bounds, in milliseconds, of the latency histogram buckets
+     */
+    long[] getBucketUpperBounds();
+
+    /**
+     * @param endpoint  an endpoint as returned by {@link #getEndpoints()}
+     * @return          the number of requests falling into each histogram bucket, the last bucket counting
+     *                  the requests slower than the last upper bound, or <tt>null</tt> if the endpoint is unknown
+     */
+    long[] getHistogram(String endpoint);
+
+    /**
+     * @return          the shards that have answered distributed queries, as named by SOLR
+     */
+    String[] getShards();
+
+    /**
+     * @return          one line per shard in the same form as {@link #getLatencySummaries()}, a shard
+     *                  reporting an error counting as an error
+     */
+    String[] getShardLatencySummaries();
+
+    /**
+     * @param shard     a shard as returned by {@link #getShards()}
+     * @return          the number of responses from the shard falling into each histogram bucket, or
+     *                  <tt>null</tt> if the shard is unknown
+     */
+    long[] getShardHistogram(String shard);
+
+    /**
+     * Discard the statistics gathered so far
+     */
+    void reset();
+}
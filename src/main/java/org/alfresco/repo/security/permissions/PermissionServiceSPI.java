@@ -25,6 +25,7 @@
  */
 package org.alfresco.repo.security.permissions;
 
+import java.util.List;
 import java.util.Set;
 
 import org.alfresco.service.cmr.repository.NodeRef;
@@ -158,4 +159,14 @@ public interface PermissionServiceSPI extends PermissionService
      * @return - the node permission entry
      */
     public NodePermissionEntry getSetPermissions(StoreRef storeRef);
+    
+    /**
+     * Check read permission for a batch of nodes.  The result is the same as calling
+     * {@link #hasReadPermission(NodeRef)} for each node, but nodes that share an ACL
+     * are evaluated against the current authorisations only once.
+     * 
+     * @param nodeRefs the nodes to check; <tt>null</tt> entries are allowed
+     * @return the access status of each node, in the order given
+     */
+    public List<AccessStatus> hasReadPermissions(List<NodeRef> nodeRefs);
 }
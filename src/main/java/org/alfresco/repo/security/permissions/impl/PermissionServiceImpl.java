@@ -28,7 +28,9 @@ package org.alfresco.repo.security.permissions.impl;
 import static org.apache.commons.lang3.BooleanUtils.toBoolean;
 
 import java.io.Serializable;
+import java.util.ArrayList;
 import java.util.Collections;
+import java.util.HashMap;
 import java.util.HashSet;
 import java.util.LinkedHashSet;
 import java.util.List;
@@ -1271,8 +1273,91 @@ public class PermissionServiceImpl extends AbstractLifecycleBean implements Perm
             return AccessStatus.ALLOWED;
         }
 
-        // any dynamic authorities other than those defined in the default permissions model with full
-        // control or read permission force hasPermission check
+        if(isForceHasPermission())
+        {
+            return hasPermission(nodeRef, PermissionService.READ);
+        }
+
+        Long aclID = nodeService.getNodeAclId(nodeRef);
+        if(aclID == null)
+        {
+            // ACLID is null - need to call default permissions evaluation
+            // This will end up calling the old-style ACL code that walks up the ACL tree
+            status = hasPermission(nodeRef, getPermissionReference(null, PermissionService.READ));
+        }
+        else
+        {
+            status = (canRead(aclID) == AccessStatus.ALLOWED ||
+                    adminRead() == AccessStatus.ALLOWED ||
+                    ownerRead(runAsUser, nodeRef) == AccessStatus.ALLOWED) ? AccessStatus.ALLOWED : AccessStatus.DENIED;
+        }
+
+        return status;
+    }
+
+    /**
+     * Bulk form of {@link #hasReadPermission(NodeRef)} that evaluates each distinct ACL only once
+     */
+    @Override
+    @Extend(traitAPI = PermissionServiceTrait.class, extensionAPI = PermissionServiceExtension.class)
+    public List<AccessStatus> hasReadPermissions(List<NodeRef> nodeRefs)
+    {
+        List<AccessStatus> statuses = new ArrayList<AccessStatus>(nodeRefs.size());
+
+        String runAsUser = AuthenticationUtil.getRunAsUser();
+        if(runAsUser == null || AuthenticationUtil.isRunAsUserTheSystemUser() || isForceHasPermission())
+        {
+            // The ACL shortcut does not apply
+            for(NodeRef nodeRef : nodeRefs)
+            {
+                statuses.add(hasReadPermission(nodeRef));
+            }
+            return statuses;
+        }
+
+        // The admin and ACL reader tests only depend on the ACL; ownership has to be checked per node
+        Map<Long, AccessStatus> statusesByAcl = new HashMap<Long, AccessStatus>();
+        for(NodeRef nodeRef : nodeRefs)
+        {
+            if(nodeRef == null || !nodeService.exists(nodeRef))
+            {
+                statuses.add(AccessStatus.ALLOWED);
+                continue;
+            }
+
+            Long aclID = nodeService.getNodeAclId(nodeRef);
+            if(aclID == null)
+            {
+                statuses.add(hasPermission(nodeRef, getPermissionReference(null, PermissionService.READ)));
+                continue;
+            }
+
+            AccessStatus aclStatus = statusesByAcl.get(aclID);
+            if(aclStatus == null)
+            {
+                aclStatus = (canRead(aclID) == AccessStatus.ALLOWED ||
+                        adminRead() == AccessStatus.ALLOWED) ? AccessStatus.ALLOWED : AccessStatus.DENIED;
+                statusesByAcl.put(aclID, aclStatus);
+            }
+            if(aclStatus == AccessStatus.DENIED && ownerRead(runAsUser, nodeRef) == AccessStatus.ALLOWED)
+            {
+                statuses.add(AccessStatus.ALLOWED);
+            }
+            else
+            {
+                statuses.add(aclStatus);
+            }
+        }
+
+        return statuses;
+    }
+
+    /**
+     * Any dynamic authorities other than those defined in the default permissions model with full
+     * control or read permission force a full hasPermission check.
+     */
+    private boolean isForceHasPermission()
+    {
         Boolean forceHasPermission = (Boolean)AlfrescoTransactionSupport.getResource("forceHasPermission");
         if(forceHasPermission == null)
         {
@@ -1293,27 +1378,7 @@ public class PermissionServiceImpl extends AbstractLifecycleBean implements Perm
             }
             AlfrescoTransactionSupport.bindResource("forceHasPermission", forceHasPermission);            
         }
-
-        if(forceHasPermission == Boolean.TRUE)
-        {
-            return hasPermission(nodeRef, PermissionService.READ);
-        }
-
-        Long aclID = nodeService.getNodeAclId(nodeRef);
-        if(aclID == null)
-        {
-            // ACLID is null - need to call default permissions evaluation
-            // This will end up calling the old-style ACL code that walks up the ACL tree
-            status = hasPermission(nodeRef, getPermissionReference(null, PermissionService.READ));
-        }
-        else
-        {
-            status = (canRead(aclID) == AccessStatus.ALLOWED ||
-                    adminRead() == AccessStatus.ALLOWED ||
-                    ownerRead(runAsUser, nodeRef) == AccessStatus.ALLOWED) ? AccessStatus.ALLOWED : AccessStatus.DENIED;
-        }
-
-        return status;
+        return forceHasPermission == Boolean.TRUE;
     }
 
     protected AccessStatus adminRead()
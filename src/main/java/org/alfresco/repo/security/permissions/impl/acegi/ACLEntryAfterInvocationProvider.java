@@ -28,6 +28,7 @@ package org.alfresco.repo.security.permissions.impl.acegi;
 import java.util.ArrayList;
 import java.util.BitSet;
 import java.util.Collection;
+import java.util.Collections;
 import java.util.HashMap;
 import java.util.HashSet;
 import java.util.Iterator;
@@ -52,6 +53,7 @@ import org.alfresco.repo.security.permissions.PermissionCheckCollection;
 import org.alfresco.repo.security.permissions.PermissionCheckValue;
 import org.alfresco.repo.security.permissions.PermissionCheckedCollection.PermissionCheckedCollectionMixin;
 import org.alfresco.repo.security.permissions.PermissionCheckedValue;
+import org.alfresco.repo.security.permissions.PermissionServiceSPI;
 import org.alfresco.repo.security.permissions.impl.SimplePermissionReference;
 import org.alfresco.service.cmr.repository.AssociationRef;
 import org.alfresco.service.cmr.repository.ChildAssociationRef;
@@ -617,6 +619,11 @@ public class ACLEntryAfterInvocationProvider implements AfterInvocationProvider,
         boolean oldBulkFetch = returnedObject.setBulkFetch(true);
         int oldFetchSize = returnedObject.setBulkFetchSize(optimisePermissionsBulkFetchSize);
 
+        // read permissions are evaluated a block of rows at a time, once per distinct ACL
+        PermissionServiceSPI bulkPermissionService = (permissionService instanceof PermissionServiceSPI) ? (PermissionServiceSPI) permissionService : null;
+        List<AccessStatus> readStatuses = Collections.emptyList();
+        int readStatusesStart = 0;
+
         try
         {
            for (int i = 0; i < returnedObject.length(); i++)
@@ -647,9 +654,33 @@ public class ACLEntryAfterInvocationProvider implements AfterInvocationProvider,
                    filteringResultSet.setIncluded(i, false);
                }
    
-               if (filteringResultSet.getIncluded(i) && permissionService.hasReadPermission(nodeRef) == AccessStatus.DENIED)
+               if (filteringResultSet.getIncluded(i))
                {
-                   filteringResultSet.setIncluded(i, false);
+                   AccessStatus readStatus;
+                   if (bulkPermissionService == null)
+                   {
+                       readStatus = permissionService.hasReadPermission(nodeRef);
+                   }
+                   else
+                   {
+                       if (i >= readStatusesStart + readStatuses.size())
+                       {
+                           // Don't evaluate rows that can never be returned
+                           int end = (int) Math.min(returnedObject.length(), Math.min((long) maxChecks, (long) i + getBulkPermissionCheckSize()));
+                           if (maxSize != null)
+                           {
+                               // row i is already counted; one row beyond maxSize marks the result as truncated
+                               end = (int) Math.min(end, (long) i + maxSize.intValue() - filteringResultSet.length() + 2);
+                           }
+                           readStatusesStart = i;
+                           readStatuses = getReadPermissions(bulkPermissionService, returnedObject, i, end);
+                       }
+                       readStatus = readStatuses.get(i - readStatusesStart);
+                   }
+                   if (readStatus == AccessStatus.DENIED)
+                   {
+                       filteringResultSet.setIncluded(i, false);
+                   }
                }
    
                // Bug out if we are limiting by size
@@ -673,6 +704,25 @@ public class ACLEntryAfterInvocationProvider implements AfterInvocationProvider,
         return filteringResultSet;
     }
 
+    private int getBulkPermissionCheckSize()
+    {
+        return optimisePermissionsBulkFetchSize > 0 ? optimisePermissionsBulkFetchSize : 1000;
+    }
+
+    /**
+     * Evaluate read permission for the rows <tt>[start, end)</tt> in one call so that rows sharing an ACL are
+     * only evaluated once
+     */
+    private List<AccessStatus> getReadPermissions(PermissionServiceSPI bulkPermissionService, ResultSet resultSet, int start, int end)
+    {
+        List<NodeRef> nodeRefs = new ArrayList<NodeRef>(end - start);
+        for (int i = start; i < end; i++)
+        {
+            nodeRefs.add(resultSet.getNodeRef(i));
+        }
+        return bulkPermissionService.hasReadPermissions(nodeRefs);
+    }
+
 
     private ResultSet decideOld(Authentication authentication, Object object, ConfigAttributeDefinition config, ResultSet returnedObject) throws AccessDeniedException
 
@@ -25,8 +25,10 @@
  */
 package org.alfresco.repo.security.permissions.noop;
 
+import java.util.ArrayList;
 import java.util.Collections;
 import java.util.HashSet;
+import java.util.List;
 import java.util.Set;
 
 import org.alfresco.repo.security.permissions.NodePermissionEntry;
@@ -284,6 +286,12 @@ public class PermissionServiceNOOPImpl implements PermissionServiceSPI
         return AccessStatus.ALLOWED;
     }
 
+    @Override
+    public List<AccessStatus> hasReadPermissions(List<NodeRef> nodeRefs)
+    {
+        return new ArrayList<AccessStatus>(Collections.nCopies(nodeRefs.size(), AccessStatus.ALLOWED));
+    }
+
     @Override
 	public Set<String> getAuthorisations()
 	{
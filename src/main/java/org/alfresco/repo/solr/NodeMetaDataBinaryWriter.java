@@ -0,0 +1,480 @@
+/*
+ * #%L
+ * Alfresco Repository
+ * %%
+ * Copyright (C) 2005 - 2016 Alfresco Software Limited
+ * %%
+ * This file is part of the Alfresco software. 
+ * If the software was purchased under a paid Alfresco license, the terms of 
+ * the paid license agreement will prevail.  Otherwise, the software is 
+ * provided under the following open source license terms:
+ * 
+ * Alfresco is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * 
+ * Alfresco is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ * 
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with Alfresco. If not, see <http://www.gnu.org/licenses/>.
+ * #L%
+ */
+package org.alfresco.repo.solr;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.Serializable;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+
+import org.alfresco.error.AlfrescoRuntimeException;
+import org.alfresco.repo.solr.SOLRTrackingComponent.NodeMetaDataQueryCallback;
+import org.alfresco.service.cmr.repository.ChildAssociationRef;
+import org.alfresco.service.cmr.repository.ContentData;
+import org.alfresco.service.cmr.repository.MLText;
+import org.alfresco.service.cmr.repository.NodeRef;
+import org.alfresco.service.cmr.repository.Path;
+import org.alfresco.service.cmr.repository.datatype.DefaultTypeConverter;
+import org.alfresco.service.namespace.QName;
+import org.alfresco.util.Pair;
+
+/**
+ * Writes node metadata, as it is produced by
+ * {@link SOLRTrackingComponent#getNodesMetadata(NodeMetaDataParameters, MetaDataResultsFilter, NodeMetaDataQueryCallback)},
+ * to a stream in a compact binary form.  It is an alternative to building the JSON representation of every node.
+ * <p/>
+ * Nodes are written in batches.  The QNames, store references, locales, owners and path and name segments used
+ * by the nodes of a batch are written once, in a dictionary at the start of the batch, and the nodes refer to
+ * them by index.  Integers are unsigned LEB128 varints; signed values (IDs, dates, CRCs) are zig-zag encoded first.
+ * Strings are a varint byte count followed by UTF-8.  A dictionary reference is the varint <tt>index + 1</tt>,
+ * with <tt>0</tt> meaning <tt>null</tt>.
+ * <pre>
+ * stream     := "ANMD" version:byte batch* 0
+ * batch      := nodeCount dictionarySize string{dictionarySize} node{nodeCount}
+ * node       := recordLength record
+ * record     := nodeId fieldMask field*
+ * </pre>
+ * The fields present are flagged in the mask and written in the order of the <tt>FIELD_</tt> constants.
+ * Each node record is length-prefixed so that readers may skip fields, or whole nodes, they do not need.
+ * <p/>
+ * This class is not thread safe.  Call {@link #finish()} once all nodes have been handled.
+ * 
+ * @since 5.2
+ */
+public class NodeMetaDataBinaryWriter implements NodeMetaDataQueryCallback
+{
+    public static final byte[] MAGIC = { 'A', 'N', 'M', 'D' };
+    public static final int VERSION = 1;
+    public static final int DEFAULT_BATCH_SIZE = 256;
+
+    public static final int FIELD_TYPE = 1;
+    public static final int FIELD_ACL_ID = 1 << 1;
+    public static final int FIELD_TXN_ID = 1 << 2;
+    public static final int FIELD_NODE_REF = 1 << 3;
+    public static final int FIELD_OWNER = 1 << 4;
+    public static final int FIELD_TENANT = 1 << 5;
+    public static final int FIELD_ASPECTS = 1 << 6;
+    public static final int FIELD_PROPERTIES = 1 << 7;
+    public static final int FIELD_PATHS = 1 << 8;
+    public static final int FIELD_NAME_PATHS = 1 << 9;
+    public static final int FIELD_PARENT_ASSOCS = 1 << 10;
+    public static final int FIELD_PARENT_ASSOCS_CRC = 1 << 11;
+    public static final int FIELD_CHILD_ASSOCS = 1 << 12;
+    public static final int FIELD_CHILD_IDS = 1 << 13;
+
+    public static final int VALUE_NULL = 0;
+    public static final int VALUE_STRING = 1;
+    public static final int VALUE_LONG = 2;
+    public static final int VALUE_DOUBLE = 3;
+    public static final int VALUE_TRUE = 4;
+    public static final int VALUE_FALSE = 5;
+    public static final int VALUE_DATE = 6;
+    public static final int VALUE_MLTEXT = 7;
+    public static final int VALUE_COLLECTION = 8;
+    public static final int VALUE_CONTENT = 9;
+    public static final int VALUE_NODE_REF = 10;
+    public static final int VALUE_QNAME = 11;
+
+    private final OutputStream out;
+    private final int batchSize;
+
+    private final Map<String, Integer> dictionary = new HashMap<String, Integer>(512);
+    private final List<String> dictionaryEntries = new ArrayList<String>(512);
+    private final ByteArrayOutputStream batch = new ByteArrayOutputStream(64 * 1024);
+    private final ByteArrayOutputStream record = new ByteArrayOutputStream(4 * 1024);
+    private int batchNodeCount = 0;
+    private long nodeCount = 0;
+    private boolean started = false;
+
+    /**
+     * @param out           the stream to write to; it is not closed by this writer
+     */
+    public NodeMetaDataBinaryWriter(OutputStream out)
+    {
+        this(out, DEFAULT_BATCH_SIZE);
+    }
+
+    /**
+     * @param out           the stream to write to; it is not closed by this writer
+     * @param batchSize     the number of nodes sharing a dictionary
+     */
+    public NodeMetaDataBinaryWriter(OutputStream out, int batchSize)
+    {
+        if (batchSize < 1)
+        {
+            throw new IllegalArgumentException("Batch size must be at least 1: " + batchSize);
+        }
+        this.out = out;
+        this.batchSize = batchSize;
+    }
+
+    /**
+     * @return              the number of nodes written so far
+     */
+    public long getNodeCount()
+    {
+        return nodeCount;
+    }
+
+    @Override
+    public boolean handleNodeMetaData(NodeMetaData nodeMetaData)
+    {
+        try
+        {
+            if (!started)
+            {
+                out.write(MAGIC);
+                out.write(VERSION);
+                started = true;
+            }
+            record.reset();
+            writeNode(record, nodeMetaData);
+            writeVarLong(batch, record.size());
+            record.writeTo(batch);
+            nodeCount++;
+            if (++batchNodeCount >= batchSize)
+            {
+                flushBatch();
+            }
+            return true;
+        }
+        catch (IOException e)
+        {
+            throw new AlfrescoRuntimeException("Failed to write metadata for node " + nodeMetaData.getNodeId(), e);
+        }
+    }
+
+    /**
+     * Write any buffered nodes and the end of the stream
+     */
+    public void finish()
+    {
+        try
+        {
+            if (!started)
+            {
+                out.write(MAGIC);
+                out.write(VERSION);
+                started = true;
+            }
+            flushBatch();
+            writeVarLong(out, 0L);
+            out.flush();
+        }
+        catch (IOException e)
+        {
+            throw new AlfrescoRuntimeException("Failed to finish writing node metadata", e);
+        }
+    }
+
+    private void flushBatch() throws IOException
+    {
+        if (batchNodeCount == 0)
+        {
+            return;
+        }
+        writeVarLong(out, batchNodeCount);
+        writeVarLong(out, dictionaryEntries.size());
+        for (String entry : dictionaryEntries)
+        {
+            writeString(out, entry);
+        }
+        batch.writeTo(out);
+
+        batch.reset();
+        dictionary.clear();
+        dictionaryEntries.clear();
+        batchNodeCount = 0;
+    }
+
+    private void writeNode(ByteArrayOutputStream os, NodeMetaData nodeMetaData) throws IOException
+    {
+        int mask = 0;
+        mask |= nodeMetaData.getNodeType() != null ? FIELD_TYPE : 0;
+        mask |= nodeMetaData.getAclId() != null ? FIELD_ACL_ID : 0;
+        mask |= nodeMetaData.getTxnId() != null ? FIELD_TXN_ID : 0;
+        mask |= nodeMetaData.getNodeRef() != null ? FIELD_NODE_REF : 0;
+        mask |= nodeMetaData.getOwner() != null ? FIELD_OWNER : 0;
+        mask |= nodeMetaData.getTenantDomain() != null ? FIELD_TENANT : 0;
+        mask |= nodeMetaData.getAspects() != null ? FIELD_ASPECTS : 0;
+        mask |= nodeMetaData.getProperties() != null ? FIELD_PROPERTIES : 0;
+        mask |= nodeMetaData.getPaths() != null ? FIELD_PATHS : 0;
+        mask |= nodeMetaData.getNamePaths() != null ? FIELD_NAME_PATHS : 0;
+        mask |= nodeMetaData.getParentAssocs() != null ? FIELD_PARENT_ASSOCS : 0;
+        mask |= nodeMetaData.getParentAssocsCrc() != null ? FIELD_PARENT_ASSOCS_CRC : 0;
+        mask |= nodeMetaData.getChildAssocs() != null ? FIELD_CHILD_ASSOCS : 0;
+        mask |= nodeMetaData.getChildIds() != null ? FIELD_CHILD_IDS : 0;
+
+        writeSignedLong(os, nodeMetaData.getNodeId());
+        writeVarLong(os, mask);
+
+        if ((mask & FIELD_TYPE) != 0)
+        {
+            writeQName(os, nodeMetaData.getNodeType());
+        }
+        if ((mask & FIELD_ACL_ID) != 0)
+        {
+            writeSignedLong(os, nodeMetaData.getAclId());
+        }
+        if ((mask & FIELD_TXN_ID) != 0)
+        {
+            writeSignedLong(os, nodeMetaData.getTxnId());
+        }
+        if ((mask & FIELD_NODE_REF) != 0)
+        {
+            writeNodeRef(os, nodeMetaData.getNodeRef());
+        }
+        if ((mask & FIELD_OWNER) != 0)
+        {
+            writeReference(os, nodeMetaData.getOwner());
+        }
+        if ((mask & FIELD_TENANT) != 0)
+        {
+            writeReference(os, nodeMetaData.getTenantDomain());
+        }
+        if ((mask & FIELD_ASPECTS) != 0)
+        {
+            writeVarLong(os, nodeMetaData.getAspects().size());
+            for (QName aspect : nodeMetaData.getAspects())
+            {
+                writeQName(os, aspect);
+            }
+        }
+        if ((mask & FIELD_PROPERTIES) != 0)
+        {
+            writeVarLong(os, nodeMetaData.getProperties().size());
+            for (Map.Entry<QName, Serializable> property : nodeMetaData.getProperties().entrySet())
+            {
+                writeQName(os, property.getKey());
+                writeValue(os, property.getValue());
+            }
+        }
+        if ((mask & FIELD_PATHS) != 0)
+        {
+            writeVarLong(os, nodeMetaData.getPaths().size());
+            for (Pair<Path, QName> path : nodeMetaData.getPaths())
+            {
+                writeVarLong(os, path.getFirst().size());
+                for (Path.Element element : path.getFirst())
+                {
+                    writeReference(os, element.getElementString());
+                }
+                writeQName(os, path.getSecond());
+            }
+        }
+        if ((mask & FIELD_NAME_PATHS) != 0)
+        {
+            writeVarLong(os, nodeMetaData.getNamePaths().size());
+            for (Collection<String> namePath : nodeMetaData.getNamePaths())
+            {
+                writeVarLong(os, namePath.size());
+                for (String name : namePath)
+                {
+                    writeReference(os, name);
+                }
+            }
+        }
+        if ((mask & FIELD_PARENT_ASSOCS) != 0)
+        {
+            writeChildAssocs(os, nodeMetaData.getParentAssocs());
+        }
+        if ((mask & FIELD_PARENT_ASSOCS_CRC) != 0)
+        {
+            writeSignedLong(os, nodeMetaData.getParentAssocsCrc());
+        }
+        if ((mask & FIELD_CHILD_ASSOCS) != 0)
+        {
+            writeChildAssocs(os, nodeMetaData.getChildAssocs());
+        }
+        if ((mask & FIELD_CHILD_IDS) != 0)
+        {
+            writeVarLong(os, nodeMetaData.getChildIds().size());
+            for (Long childId : nodeMetaData.getChildIds())
+            {
+                writeSignedLong(os, childId);
+            }
+        }
+    }
+
+    private void writeChildAssocs(ByteArrayOutputStream os, List<ChildAssociationRef> assocs) throws IOException
+    {
+        writeVarLong(os, assocs.size());
+        for (ChildAssociationRef assoc : assocs)
+        {
+            writeQName(os, assoc.getTypeQName());
+            writeNodeRef(os, assoc.getParentRef());
+            writeQName(os, assoc.getQName());
+            writeNodeRef(os, assoc.getChildRef());
+            os.write(assoc.isPrimary() ? 1 : 0);
+            writeSignedLong(os, assoc.getNthSibling());
+        }
+    }
+
+    private void writeValue(ByteArrayOutputStream os, Serializable value) throws IOException
+    {
+        if (value == null)
+        {
+            os.write(VALUE_NULL);
+        }
+        else if (value instanceof String)
+        {
+            os.write(VALUE_STRING);
+            writeString(os, (String) value);
+        }
+        else if (value instanceof Long || value instanceof Integer || value instanceof Short || value instanceof Byte)
+        {
+            os.write(VALUE_LONG);
+            writeSignedLong(os, ((Number) value).longValue());
+        }
+        else if (value instanceof Double || value instanceof Float)
+        {
+            os.write(VALUE_DOUBLE);
+            long bits = Double.doubleToLongBits(((Number) value).doubleValue());
+            for (int shift = 56; shift >= 0; shift -= 8)
+            {
+                os.write((int) (bits >>> shift));
+            }
+        }
+        else if (value instanceof Boolean)
+        {
+            os.write(((Boolean) value) ? VALUE_TRUE : VALUE_FALSE);
+        }
+        else if (value instanceof Date)
+        {
+            os.write(VALUE_DATE);
+            writeSignedLong(os, ((Date) value).getTime());
+        }
+        else if (value instanceof MLText)
+        {
+            MLText mlText = (MLText) value;
+            os.write(VALUE_MLTEXT);
+            writeVarLong(os, mlText.size());
+            for (Map.Entry<Locale, String> entry : mlText.entrySet())
+            {
+                writeReference(os, entry.getKey() == null ? null : entry.getKey().toString());
+                writeString(os, entry.getValue());
+            }
+        }
+        else if (value instanceof Collection)
+        {
+            Collection<?> values = (Collection<?>) value;
+            os.write(VALUE_COLLECTION);
+            writeVarLong(os, values.size());
+            for (Object element : values)
+            {
+                writeValue(os, (Serializable) element);
+            }
+        }
+        else if (value instanceof ContentData)
+        {
+            os.write(VALUE_CONTENT);
+            writeString(os, ((ContentData) value).getInfoUrl());
+        }
+        else if (value instanceof NodeRef)
+        {
+            os.write(VALUE_NODE_REF);
+            writeNodeRef(os, (NodeRef) value);
+        }
+        else if (value instanceof QName)
+        {
+            os.write(VALUE_QNAME);
+            writeQName(os, (QName) value);
+        }
+        else
+        {
+            os.write(VALUE_STRING);
+            writeString(os, DefaultTypeConverter.INSTANCE.convert(String.class, value));
+        }
+    }
+
+    private void writeNodeRef(ByteArrayOutputStream os, NodeRef nodeRef) throws IOException
+    {
+        if (nodeRef == null)
+        {
+            writeReference(os, null);
+        }
+        else
+        {
+            writeReference(os, nodeRef.getStoreRef().toString());
+            writeString(os, nodeRef.getId());
+        }
+    }
+
+    private void writeQName(ByteArrayOutputStream os, QName qname) throws IOException
+    {
+        writeReference(os, qname == null ? null : qname.toString());
+    }
+
+    /**
+     * Write a reference to a dictionary entry, adding the entry to the batch dictionary if necessary
+     */
+    private void writeReference(ByteArrayOutputStream os, String value) throws IOException
+    {
+        if (value == null)
+        {
+            writeVarLong(os, 0L);
+            return;
+        }
+        Integer index = dictionary.get(value);
+        if (index == null)
+        {
+            index = dictionaryEntries.size();
+            dictionary.put(value, index);
+            dictionaryEntries.add(value);
+        }
+        writeVarLong(os, index + 1L);
+    }
+
+    private static void writeString(OutputStream os, String value) throws IOException
+    {
+        byte[] bytes = (value == null ? "" : value).getBytes(StandardCharsets.UTF_8);
+        writeVarLong(os, bytes.length);
+        os.write(bytes);
+    }
+
+    private static void writeSignedLong(OutputStream os, long value) throws IOException
+    {
+        writeVarLong(os, (value << 1) ^ (value >> 63));
+    }
+
+    private static void writeVarLong(OutputStream os, long value) throws IOException
+    {
+        while ((value & ~0x7FL) != 0L)
+        {
+            os.write((int) ((value & 0x7F) | 0x80));
+            value >>>= 7;
+        }
+        os.write((int) value);
+    }
+}
@@ -422,6 +422,12 @@ public class VirtualPermissionServiceExtension extends
         return getTrait().hasReadPermission(nodeRef);
     }
 
+    @Override
+    public List<AccessStatus> hasReadPermissions(List<NodeRef> nodeRefs)
+    {
+        return getTrait().hasReadPermissions(nodeRefs);
+    }
+
     @Override
     public Set<String> getReaders(Long aclId)
     {
@@ -44,6 +44,7 @@ public class ExporterCrawlerParameters
     private boolean crawlChildNodes = true;
     private boolean crawlAssociations = true;
     private boolean crawlContent = true;
+    private boolean crawlContentStreams = true;
     private boolean crawlNullProperties = true;
     private ReferenceType referenceType = ReferenceType.PATHREF;
     private String[] excludeNamespaceURIs = new String[] { NamespaceService.REPOSITORY_VIEW_1_0_URI };
@@ -111,6 +112,28 @@ public class ExporterCrawlerParameters
         this.crawlContent = crawlContent;
     }
 
+    /**
+     * Open content streams for export
+     * 
+     * @return  true => pass an open stream of crawled content to the exporter
+     */
+    public boolean isCrawlContentStreams()
+    {
+        return crawlContentStreams;
+    }
+
+    /**
+     * Sets whether to open content streams for export.  If false, the exporter is passed
+     * the content data of crawled content with a <code>null</code> stream, and reads the
+     * content by its URL if it needs it.
+     * 
+     * @param crawlContentStreams boolean
+     */
+    public void setCrawlContentStreams(boolean crawlContentStreams)
+    {
+        this.crawlContentStreams = crawlContentStreams;
+    }
+
     /**
      * Crawl and export node at export path
      * 
@@ -48,6 +48,7 @@ import org.junit.runners.Suite;
     org.alfresco.repo.attributes.PropTablesCleanupJobTest.class,
     org.alfresco.repo.cache.DefaultCacheFactoryTest.class,
     org.alfresco.repo.cache.DefaultSimpleCacheTest.class,
+    org.alfresco.repo.cache.BinarySimpleCacheTest.class,
     org.alfresco.repo.cache.lookup.EntityLookupCacheTest.class,
     org.alfresco.repo.calendar.CalendarHelpersTest.class,
     org.alfresco.repo.dictionary.RepoDictionaryDAOTest.class,
@@ -112,6 +113,7 @@ import org.junit.runners.Suite;
     org.alfresco.util.test.junitrules.TemporaryMockOverrideTest.class,
     org.alfresco.repo.search.impl.solr.SolrQueryHTTPClientTest.class,
     org.alfresco.repo.search.impl.solr.SolrStatsResultTest.class,
+    org.alfresco.repo.search.impl.solr.SolrQueryLatencyStatisticsTest.class,
     org.alfresco.repo.search.impl.solr.facet.SolrFacetComparatorTest.class,
     org.alfresco.repo.search.impl.solr.facet.FacetQNameUtilsTest.class,
     org.alfresco.util.BeanExtenderUnitTest.class,
@@ -156,6 +158,7 @@ import org.junit.runners.Suite;
     org.alfresco.repo.action.CompositeActionImplTest.class,
     org.alfresco.repo.action.CompositeActionConditionImplTest.class,
     org.alfresco.repo.audit.AuditableAnnotationTest.class,
+    org.alfresco.repo.audit.AuditEntryJournalTest.class,
     org.alfresco.repo.audit.PropertyAuditFilterTest.class,
     org.alfresco.repo.content.filestore.SpoofedTextContentReaderTest.class,
     org.alfresco.repo.content.ContentDataTest.class,
@@ -164,10 +167,13 @@ import org.junit.runners.Suite;
     org.alfresco.repo.content.transform.TransformerConfigTestSuite.class,
     org.alfresco.service.cmr.repository.TemporalSourceOptionsTest.class,
     org.alfresco.repo.content.metadata.MetadataExtracterLimitsTest.class,
+    org.alfresco.repo.content.metadata.MetadataExtracterSchedulerTest.class,
+    org.alfresco.repo.download.ZipDownloadExporterTest.class,
     org.alfresco.repo.content.caching.quota.StandardQuotaStrategyMockTest.class,
     org.alfresco.repo.content.caching.quota.UnlimitedQuotaStrategyTest.class,
     org.alfresco.repo.content.caching.CachingContentStoreTest.class,
     org.alfresco.repo.content.caching.ContentCacheImplTest.class,
+    org.alfresco.repo.content.caching.StreamingCacheFillTest.class,
     org.alfresco.repo.domain.propval.PropertyTypeConverterTest.class,
     org.alfresco.repo.search.MLAnaysisModeExpansionTest.class,
     org.alfresco.repo.search.DocumentNavigatorTest.class,
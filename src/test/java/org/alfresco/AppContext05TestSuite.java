@@ -73,6 +73,7 @@ import org.junit.runners.Suite;
     org.alfresco.repo.domain.usage.UsageDAOTest.class,
     org.alfresco.repo.domain.solr.SOLRDAOTest.class,
     org.alfresco.repo.domain.tenant.TenantAdminDAOTest.class,
+    org.alfresco.repo.domain.activities.ActivityFeedDAOTest.class,
 
     // REPO-1012 : run AuditDAOTest and PropertyValueCleanupTest near the end
     // because their failure can cause other tests to fail on MS SQL
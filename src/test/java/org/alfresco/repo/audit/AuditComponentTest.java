@@ -1185,6 +1185,122 @@ public class AuditComponentTest extends TestCase
         }
     }
 
+    /**
+     * Audit entries are only written after commit when the asynchronous writer is enabled
+     */
+    public void testAuditAsync() throws Exception
+    {
+        AuditEntryWriter auditEntryWriter = (AuditEntryWriter) ctx.getBean("auditEntryWriter");
+        boolean wasEnabled = auditEntryWriter.isEnabled();
+        int queueSize = auditEntryWriter.getQueueSize();
+        auditEntryWriter.setEnabled(true);
+        try
+        {
+            final Map<String, Serializable> values = new HashMap<String, Serializable>(13);
+            values.put("/3.1/4.1", new Long(41));
+            values.put("/3.1/4.2", "42");
+
+            int before = countAuditEntries(APPLICATION_TEST, user);
+
+            // A rolled back transaction must not leave anything behind
+            RetryingTransactionCallback<Void> rollbackCallback = new RetryingTransactionCallback<Void>()
+            {
+                public Void execute() throws Throwable
+                {
+                    auditComponent.recordAuditValues("/test/one.one/two.one", values);
+                    throw new IllegalStateException("Forced rollback");
+                }
+            };
+            try
+            {
+                transactionService.getRetryingTransactionHelper().doInTransaction(rollbackCallback);
+                fail("Transaction should have rolled back");
+            }
+            catch (IllegalStateException e)
+            {
+                // Expected
+            }
+            auditEntryWriter.flush();
+            assertEquals("Rolled back audit entry was written", before, countAuditEntries(APPLICATION_TEST, user));
+
+            RetryingTransactionCallback<Void> commitCallback = new RetryingTransactionCallback<Void>()
+            {
+                public Void execute() throws Throwable
+                {
+                    Map<String, Serializable> audited = auditComponent.recordAuditValues("/test/one.one/two.one", values);
+                    assertFalse("Values should still be reported as audited", audited.isEmpty());
+                    return null;
+                }
+            };
+            transactionService.getRetryingTransactionHelper().doInTransaction(commitCallback);
+            auditEntryWriter.flush();
+
+            // The background writer may still be completing its own batch
+            int after = before;
+            for (int i = 0; i < 50 && after == before; i++)
+            {
+                after = countAuditEntries(APPLICATION_TEST, user);
+                if (after == before)
+                {
+                    Thread.sleep(100L);
+                }
+            }
+            assertEquals("Committed audit entry was not written", before + 1, after);
+
+            // Audited reads queue their entries without needing a writable transaction
+            transactionService.getRetryingTransactionHelper().doInTransaction(commitCallback, true);
+            auditEntryWriter.flush();
+            int afterRead = after;
+            for (int i = 0; i < 50 && afterRead == after; i++)
+            {
+                afterRead = countAuditEntries(APPLICATION_TEST, user);
+                if (afterRead == after)
+                {
+                    Thread.sleep(100L);
+                }
+            }
+            assertEquals("Audit entry from a read-only transaction was not written", after + 1, afterRead);
+
+            // Once the writer is too far behind, read-write transactions write their own entries
+            auditEntryWriter.setQueueSize(0);
+            transactionService.getRetryingTransactionHelper().doInTransaction(commitCallback);
+            assertEquals("Audit entry should have been written by the audited transaction", afterRead + 1, countAuditEntries(APPLICATION_TEST, user));
+        }
+        finally
+        {
+            auditEntryWriter.setQueueSize(queueSize);
+            auditEntryWriter.setEnabled(wasEnabled);
+        }
+    }
+
+    private int countAuditEntries(String applicationName, String username)
+    {
+        final MutableInt count = new MutableInt(0);
+        AuditQueryCallback countCallback = new AuditQueryCallback()
+        {
+            public boolean valuesRequired()
+            {
+                return false;
+            }
+
+            public boolean handleAuditEntry(Long entryId, String applicationName, String user, long time, Map<String, Serializable> values)
+            {
+                count.increment();
+                return true;
+            }
+
+            public boolean handleAuditEntryError(Long entryId, String errorMsg, Throwable error)
+            {
+                throw new AlfrescoRuntimeException(errorMsg, error);
+            }
+        };
+        AuditQueryParameters params = new AuditQueryParameters();
+        params.setApplicationName(applicationName);
+        params.setUser(username);
+        queryAuditLog(countCallback, params, Integer.MAX_VALUE);
+        return count.intValue();
+    }
+
     public void testAuditTruncatedValues()
     {
         final String rootPath = "/test/one.one/two.one";
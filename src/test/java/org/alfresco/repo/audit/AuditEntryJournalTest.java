@@ -0,0 +1,216 @@
+/*
+ * #%L
+ * Alfresco Repository
+ * %%
+ * Copyright (C) 2005 - 2016 Alfresco Software Limited
+ * %%
+ * This file is part of the Alfresco software. 
+ * If the software was purchased under a paid Alfresco license, the terms of 
+ * the paid license agreement will prevail.  Otherwise, the software is 
+ * provided under the following open source license terms:
+ * 
+ * Alfresco is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * 
+ * Alfresco is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ * 
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with Alfresco. If not, see <http://www.gnu.org/licenses/>.
+ * #L%
+ */
+package org.alfresco.repo.audit;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+
+import org.alfresco.repo.domain.audit.AuditDAO.AuditEntryInfo;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+/**
+ * Tests the {@link AuditEntryJournal} on its own.
+ * 
+ * @since 5.2
+ */
+public class AuditEntryJournalTest
+{
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private File directory;
+    private AuditEntryJournal journal;
+
+    @Before
+    public void setUp() throws Exception
+    {
+        directory = folder.newFolder("journal");
+        journal = new AuditEntryJournal(directory, 1024L);
+        journal.open();
+    }
+
+    @After
+    public void tearDown() throws Exception
+    {
+        journal.close();
+    }
+
+    @Test
+    public void testAppendReadAcknowledge()
+    {
+        journal.append(entries(0, 3));
+        journal.append(entries(3, 2));
+        assertEquals(5L, journal.getPendingCount());
+
+        assertTimes(journal.read(4), 0, 4);
+        assertTimes(journal.read(4), 4, 1);
+        assertTrue(journal.read(4).isEmpty());
+        assertEquals("Entries are pending until acknowledged", 5L, journal.getPendingCount());
+
+        journal.acknowledge();
+        assertEquals(0L, journal.getPendingCount());
+        assertTrue(journal.read(4).isEmpty());
+    }
+
+    @Test
+    public void testSegmentsRollAndAreDeleted()
+    {
+        for (int i = 0; i < 20; i++)
+        {
+            journal.append(entries(i, 1));
+        }
+        assertTrue("Expected several segments", countSegments() > 1);
+
+        assertTimes(journal.read(100), 0, 20);
+        journal.acknowledge();
+        assertEquals("Only the segment being written should be left", 1, countSegments());
+    }
+
+    @Test
+    public void testRewind()
+    {
+        journal.append(entries(0, 4));
+        assertTimes(journal.read(2), 0, 2);
+        journal.acknowledge();
+        assertTimes(journal.read(2), 2, 2);
+
+        journal.rewind();
+        assertTimes(journal.read(10), 2, 2);
+        journal.acknowledge();
+        assertEquals(0L, journal.getPendingCount());
+    }
+
+    @Test
+    public void testReopenReadsUnacknowledgedEntries()
+    {
+        journal.append(entries(0, 5));
+        assertTimes(journal.read(2), 0, 2);
+        journal.acknowledge();
+        assertTimes(journal.read(2), 2, 2);
+        journal.close();
+
+        journal = new AuditEntryJournal(directory, 1024L);
+        journal.open();
+        assertEquals(3L, journal.getPendingCount());
+        assertTimes(journal.read(10), 2, 3);
+
+        journal.append(entries(5, 1));
+        assertTimes(journal.read(10), 5, 1);
+    }
+
+    @Test
+    public void testIncompleteRecordIsIgnored() throws IOException
+    {
+        journal.append(entries(0, 2));
+        journal.close();
+
+        // Cut the last record short, as a crash during the write would
+        File segment = lastSegment();
+        RandomAccessFile file = new RandomAccessFile(segment, "rw");
+        try
+        {
+            file.setLength(file.length() - 3L);
+        }
+        finally
+        {
+            file.close();
+        }
+
+        journal = new AuditEntryJournal(directory, 1024L);
+        journal.open();
+        assertEquals(1L, journal.getPendingCount());
+        journal.append(entries(2, 1));
+        assertEntryTimes(journal.read(10), 0L, 1L, 2L);
+    }
+
+    @Test(expected = RuntimeException.class)
+    public void testDirectoryCannotBeShared()
+    {
+        new AuditEntryJournal(directory, 1024L).open();
+    }
+
+    private static List<AuditEntryInfo> entries(int firstTime, int count)
+    {
+        List<AuditEntryInfo> entries = new ArrayList<AuditEntryInfo>(count);
+        for (int i = 0; i < count; i++)
+        {
+            Map<String, Serializable> values = Collections.<String, Serializable>singletonMap("/test/value", "value-" + (firstTime + i));
+            entries.add(new AuditEntryInfo(1L, firstTime + i, "user", values));
+        }
+        return entries;
+    }
+
+    private static void assertTimes(List<AuditEntryInfo> entries, int firstTime, int count)
+    {
+        assertEquals(count, entries.size());
+        for (int i = 0; i < count; i++)
+        {
+            assertEquals(firstTime + i, entries.get(i).getTime());
+            assertEquals("value-" + (firstTime + i), entries.get(i).getValues().get("/test/value"));
+        }
+    }
+
+    private static void assertEntryTimes(List<AuditEntryInfo> entries, long... times)
+    {
+        assertEquals(times.length, entries.size());
+        for (int i = 0; i < times.length; i++)
+        {
+            assertEquals(times[i], entries.get(i).getTime());
+        }
+    }
+
+    private int countSegments()
+    {
+        return directory.list((dir, name) -> name.endsWith(".journal")).length;
+    }
+
+    private File lastSegment()
+    {
+        File[] segments = directory.listFiles((dir, name) -> name.endsWith(".journal"));
+        File last = null;
+        for (File segment : segments)
+        {
+            if (last == null || segment.getName().compareTo(last.getName()) > 0)
+            {
+                last = segment;
+            }
+        }
+        return last;
+    }
+}
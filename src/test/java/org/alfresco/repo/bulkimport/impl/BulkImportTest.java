@@ -25,16 +25,20 @@
  */
 package org.alfresco.repo.bulkimport.impl;
 
+import org.alfresco.error.AlfrescoRuntimeException;
 import org.alfresco.model.ContentModel;
 import org.alfresco.repo.action.evaluator.NoConditionEvaluator;
 import org.alfresco.repo.action.executer.CopyActionExecuter;
 import org.alfresco.repo.action.executer.MoveActionExecuter;
 import org.alfresco.repo.bulkimport.BulkImportParameters;
+import org.alfresco.repo.bulkimport.ImportableItem;
 import org.alfresco.repo.bulkimport.NodeImporter;
+import org.alfresco.repo.bulkimport.StagingNodeImporter;
 import org.alfresco.repo.content.MimetypeMap;
 import org.alfresco.service.cmr.action.Action;
 import org.alfresco.service.cmr.action.ActionCondition;
 import org.alfresco.service.cmr.model.FileInfo;
+import org.alfresco.service.cmr.repository.ContentData;
 import org.alfresco.service.cmr.repository.ContentReader;
 import org.alfresco.service.cmr.repository.NodeRef;
 import org.alfresco.service.cmr.rule.Rule;
@@ -58,17 +62,24 @@ import java.io.FileNotFoundException;
 import java.io.IOException;
 import java.io.OutputStream;
 import java.io.Serializable;
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
 import java.nio.charset.Charset;
 import java.nio.file.FileAlreadyExistsException;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Collections;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.zip.GZIPInputStream;
 
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertNotNull;
 import static org.junit.Assert.assertTrue;
 import static org.junit.Assert.fail;
@@ -224,6 +235,143 @@ public class BulkImportTest extends AbstractBulkImportTests
                 });
     }
 
+    @Test
+    public void testCopyImportStripingPipelined() throws Throwable
+    {
+        txn = transactionService.getUserTransaction();
+        txn.begin();
+
+        NodeRef folderNode = topLevelFolder.getNodeRef();
+
+        StripingBulkFilesystemImporter stripingImporter = (StripingBulkFilesystemImporter)bulkImporter;
+        stripingImporter.setPipelined(true);
+        try
+        {
+            NodeImporter nodeImporter = streamingNodeImporterFactory.getNodeImporter(ResourceUtils.getFile("classpath:bulkimport"));
+            BulkImportParameters bulkImportParameters = new BulkImportParameters();
+            bulkImportParameters.setTarget(folderNode);
+            bulkImportParameters.setReplaceExisting(true);
+            bulkImportParameters.setDisableRulesService(true);
+            bulkImportParameters.setBatchSize(40);
+            bulkImporter.bulkImport(bulkImportParameters, nodeImporter);
+        }
+        catch(Throwable e)
+        {
+            fail(e.getMessage());
+        }
+        finally
+        {
+            stripingImporter.setPipelined(false);
+        }
+
+        System.out.println(bulkImporter.getStatus());
+        assertEquals(false, bulkImporter.getStatus().inProgress());
+        assertTrue(bulkImporter.getStatus().getNumberOfContentFilesStaged() > 0);
+
+        checkFiles(folderNode, null, 2, 9,
+                new ExpectedFile[]
+                {
+                    new ExpectedFile("quickImg1.xls", MimetypeMap.MIMETYPE_EXCEL),
+                    new ExpectedFile("quickImg1.doc", MimetypeMap.MIMETYPE_WORD),
+                    new ExpectedFile("quick.txt", MimetypeMap.MIMETYPE_TEXT_PLAIN, "The quick brown fox jumps over the lazy dog"),
+                },
+                new ExpectedFolder[]
+                {
+                    new ExpectedFolder("folder1"),
+                    new ExpectedFolder("folder2")
+                });
+
+        List<FileInfo> folders = getFolders(folderNode, "folder2");
+        assertEquals("", 1, folders.size());
+        NodeRef folder2 = folders.get(0).getNodeRef();
+        folders = getFolders(folder2, "folder2.1");
+        assertEquals("", 1, folders.size());
+        NodeRef folder2_1 = folders.get(0).getNodeRef();
+
+        checkFiles(folder2_1, null, 0, 17,
+                new ExpectedFile[]
+                {
+                    new ExpectedFile("quick.png", MimetypeMap.MIMETYPE_IMAGE_PNG),
+                    new ExpectedFile("quick.pdf", MimetypeMap.MIMETYPE_PDF),
+                    new ExpectedFile("quick.odt", MimetypeMap.MIMETYPE_OPENDOCUMENT_TEXT),
+                },
+                new ExpectedFolder[]
+                {
+                });
+    }
+
+    /**
+     * Content staged for items that are never imported is removed when a pipelined import is abandoned
+     */
+    @Test
+    public void testAbortedImportStripingPipelinedLeavesNoStagedContent() throws Throwable
+    {
+        txn = transactionService.getUserTransaction();
+        txn.begin();
+
+        NodeRef folderNode = topLevelFolder.getNodeRef();
+
+        // Stage the items as usual, but fail every import so that the import is abandoned
+        final StagingNodeImporter stagingNodeImporter = (StagingNodeImporter)streamingNodeImporterFactory.getNodeImporter(ResourceUtils.getFile("classpath:bulkimport"));
+        final List<String> stagedContentUrls = Collections.synchronizedList(new ArrayList<String>());
+        NodeImporter nodeImporter = (NodeImporter)Proxy.newProxyInstance(getClass().getClassLoader(), new Class<?>[] { StagingNodeImporter.class }, new InvocationHandler()
+        {
+            @Override
+            public Object invoke(Object proxy, Method method, Object[] args) throws Throwable
+            {
+                if (method.getName().equals("importImportableItem"))
+                {
+                    throw new AlfrescoRuntimeException("Import failed on purpose");
+                }
+                Object result;
+                try
+                {
+                    result = method.invoke(stagingNodeImporter, args);
+                }
+                catch (InvocationTargetException e)
+                {
+                    throw e.getCause();
+                }
+                if (method.getName().equals("stageContent"))
+                {
+                    ContentData stagedContentData = ((ImportableItem)args[0]).getHeadRevision().getStagedContentData();
+                    if (stagedContentData != null)
+                    {
+                        stagedContentUrls.add(stagedContentData.getContentUrl());
+                    }
+                }
+                return result;
+            }
+        });
+
+        StripingBulkFilesystemImporter stripingImporter = (StripingBulkFilesystemImporter)bulkImporter;
+        stripingImporter.setPipelined(true);
+        try
+        {
+            BulkImportParameters bulkImportParameters = new BulkImportParameters();
+            bulkImportParameters.setTarget(folderNode);
+            bulkImportParameters.setReplaceExisting(true);
+            bulkImportParameters.setDisableRulesService(true);
+            bulkImportParameters.setBatchSize(40);
+            bulkImporter.bulkImport(bulkImportParameters, nodeImporter);
+            fail("The import should have failed");
+        }
+        catch(AlfrescoRuntimeException e)
+        {
+            // Expected
+        }
+        finally
+        {
+            stripingImporter.setPipelined(false);
+        }
+
+        assertFalse("No content was staged", stagedContentUrls.isEmpty());
+        for (String stagedContentUrl : stagedContentUrls)
+        {
+            assertFalse("Staged content was left in the store: " + stagedContentUrl, contentService.getRawReader(stagedContentUrl).exists());
+        }
+    }
+
     protected Rule createCopyRule(NodeRef targetNode, boolean isAppliedToChildren)
     {
         Rule rule = new Rule();
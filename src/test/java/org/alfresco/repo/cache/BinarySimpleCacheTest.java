@@ -0,0 +1,264 @@
+/*
+ * #%L
+ * Alfresco Repository
+ * %%
+ * Copyright (C) 2005 - 2016 Alfresco Software Limited
+ * %%
+ * This file is part of the Alfresco software. 
+ * If the software was purchased under a paid Alfresco license, the terms of 
+ * the paid license agreement will prevail.  Otherwise, the software is 
+ * provided under the following open source license terms:
+ * 
+ * Alfresco is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * 
+ * Alfresco is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ * 
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with Alfresco. If not, see <http://www.gnu.org/licenses/>.
+ * #L%
+ */
+package org.alfresco.repo.cache;
+
+import static org.junit.Assert.*;
+
+import java.io.Serializable;
+import java.util.HashSet;
+import java.util.Set;
+
+import org.alfresco.repo.cache.TransactionStats.OpType;
+import org.alfresco.repo.cache.lookup.CacheRegionKey;
+import org.junit.Test;
+import org.mockito.Mockito;
+import org.springframework.context.ApplicationContext;
+
+/**
+ * Tests for the BinarySimpleCache class.
+ */
+public class BinarySimpleCacheTest extends SimpleCacheTestBase<BinarySimpleCache<Integer, String>>
+{
+    @Override
+    protected BinarySimpleCache<Integer, String> createCache()
+    {
+        return new BinarySimpleCache<Integer, String>(100, true, 0, 0, false, getClass().getName());
+    }
+    
+    @Test
+    public void boundedSizeCache() throws Exception
+    {
+        cache = new BinarySimpleCache<Integer, String>(160, false, getClass().getName());
+        for (int i = 0; i < 1000; i++)
+        {
+            cache.put(i, "" + i);
+        }
+        assertTrue("Cache exceeded its size-cap: " + cache.size(), cache.size() <= 160);
+        assertEquals(1000 - cache.size(), cache.getEvictionCount());
+        // The most recent item is always present
+        assertEquals("999", cache.get(999));
+        assertTrue(cache.isUseMaxItems());
+    }
+    
+    @Test
+    public void referencedEntriesSurviveEviction() throws Exception
+    {
+        // Four entries per segment, so the segment holding the first entry fills up quickly
+        BinarySimpleCache<Integer, String> nativeCache = new BinarySimpleCache<Integer, String>(16 * 4, true, getClass().getName());
+        nativeCache.put(1, "1");
+        for (int i = 2; i < 200; i++)
+        {
+            // Keep reading the first entry so that it always has a second chance
+            assertEquals("1", nativeCache.get(1));
+            nativeCache.put(i, "" + i);
+        }
+        assertEquals("1", nativeCache.get(1));
+        assertTrue(nativeCache.getEvictionCount() > 0);
+    }
+    
+    @Test
+    public void defaultMaxItems()
+    {
+        cache = new BinarySimpleCache<Integer, String>(0, true, 0, 0, false, getClass().getName());
+        assertEquals(Integer.MAX_VALUE, cache.getMaxItems());
+        assertTrue(cache.isUseMaxItems());
+    }
+    
+    @Test(expected=IllegalArgumentException.class)
+    public void noNegativeMaxItems()
+    {
+        cache = new BinarySimpleCache<Integer, String>(-1, true, 0, 0, false, getClass().getName());
+    }
+    
+    @Test
+    public void nullValues()
+    {
+        cache.put(101, null);
+        assertTrue(cache.contains(101));
+        assertNull(cache.get(101));
+        cache.put(101, "101");
+        assertEquals("101", cache.get(101));
+        cache.put(101, null);
+        assertTrue(cache.contains(101));
+        assertNull(cache.get(101));
+    }
+    
+    @Test
+    public void valuesGrowAndShrink()
+    {
+        StringBuilder sb = new StringBuilder();
+        for (int i = 0; i < 5000; i++)
+        {
+            sb.append(i);
+            // Force the arena to be compacted repeatedly, with updates that both fit and don't fit in place
+            cache.put(i % 50, sb.toString());
+            cache.put((i + 25) % 50, "" + i);
+            assertEquals(sb.toString(), cache.get(i % 50));
+        }
+        assertEquals(50, cache.size());
+    }
+    
+    @Test
+    public void unboundedCacheGrows()
+    {
+        cache = new BinarySimpleCache<Integer, String>(0, false, 0, 0, true, getClass().getName());
+        for (int i = 0; i < 10000; i++)
+        {
+            cache.put(i, "" + i);
+        }
+        for (int i = 0; i < 10000; i += 2)
+        {
+            cache.remove(i);
+        }
+        assertEquals(5000, cache.size());
+        assertEquals(5000, cache.getKeys().size());
+        for (int i = 0; i < 10000; i++)
+        {
+            assertEquals(i % 2 == 0 ? null : "" + i, cache.get(i));
+        }
+        assertEquals(0, cache.getEvictionCount());
+        cache.clear();
+        assertEquals(0, cache.size());
+        assertFalse(cache.contains(1));
+    }
+    
+    @Test
+    public void regionKeys()
+    {
+        BinarySimpleCache<Serializable, String> regionCache = new BinarySimpleCache<Serializable, String>(100, true, getClass().getName());
+        regionCache.put(new CacheRegionKey("nodes", 1L), "node-1");
+        regionCache.put(new CacheRegionKey("stores", 1L), "store-1");
+        regionCache.put(new CacheRegionKey("nodes", "1"), "node-1-string");
+        regionCache.put(1L, "long-1");
+        
+        assertEquals("node-1", regionCache.get(new CacheRegionKey("nodes", 1L)));
+        assertEquals("store-1", regionCache.get(new CacheRegionKey("stores", 1L)));
+        assertEquals("node-1-string", regionCache.get(new CacheRegionKey("nodes", "1")));
+        assertEquals("long-1", regionCache.get(1L));
+        assertNull(regionCache.get(1));
+        
+        Set<Serializable> keys = new HashSet<Serializable>(regionCache.getKeys());
+        assertTrue(keys.contains(new CacheRegionKey("nodes", 1L)));
+        assertTrue(keys.contains(1L));
+        assertEquals(4, keys.size());
+    }
+    
+    @Test
+    public void sizeCapIsNeverExceeded()
+    {
+        // Caps that do not divide evenly between the segments, including caps smaller than the segment count
+        for (int maxItems : new int[] {1, 5, 17, 100, 1000})
+        {
+            cache = new BinarySimpleCache<Integer, String>(maxItems, false, getClass().getName());
+            for (int i = 0; i < maxItems * 20; i++)
+            {
+                cache.put(i, "" + i);
+                assertTrue("Cache exceeded its size-cap of " + maxItems + ": " + cache.size(), cache.size() <= maxItems);
+            }
+            assertEquals("" + (maxItems * 20 - 1), cache.get(maxItems * 20 - 1));
+        }
+    }
+    
+    @Test
+    public void longStringKeys()
+    {
+        BinarySimpleCache<Serializable, String> stringCache = new BinarySimpleCache<Serializable, String>(100, true, getClass().getName());
+        StringBuilder sb = new StringBuilder();
+        while (sb.length() < 100000)
+        {
+            sb.append("k\u00e9y-\u4e2d-");
+        }
+        String longKey = sb.toString();
+        stringCache.put(longKey, "long");
+        stringCache.put(new CacheRegionKey(longKey, 1L), "long-region");
+        
+        assertEquals("long", stringCache.get(longKey));
+        assertEquals("long-region", stringCache.get(new CacheRegionKey(longKey, 1L)));
+        Set<Serializable> keys = new HashSet<Serializable>(stringCache.getKeys());
+        assertTrue(keys.contains(longKey));
+        assertTrue(keys.contains(new CacheRegionKey(longKey, 1L)));
+    }
+    
+    @Test
+    public void statsAreReported()
+    {
+        InMemoryCacheStatistics cacheStats = new InMemoryCacheStatistics();
+        cacheStats.setApplicationContext(Mockito.mock(ApplicationContext.class));
+        cache.setCacheStats(cacheStats);
+        cache.setCacheStatsEnabled(true);
+        cache.put(1, "1");
+        cache.put(2, "2");
+        cache.get(1);
+        cache.get(3);
+        cache.remove(2);
+        cache.flushCacheStats();
+        
+        String cacheName = cache.getCacheName();
+        assertEquals(2, cacheStats.count(cacheName, OpType.PUT));
+        assertEquals(1, cacheStats.count(cacheName, OpType.GET_HIT));
+        assertEquals(1, cacheStats.count(cacheName, OpType.GET_MISS));
+        assertEquals(1, cacheStats.count(cacheName, OpType.REMOVE));
+        assertEquals(0.5, cacheStats.hitMissRatio(cacheName), 0.001);
+    }
+    
+    @Test
+    public void cachesCanHaveTTL()
+    {
+        cache = new BinarySimpleCache<Integer, String>(0, false, 1, 0, false, getClass().getName());
+        cache.put(1, "1");
+        assertTrue(cache.contains(1));
+        sleep(1500L);
+        assertFalse(cache.contains(1));
+        assertNull(cache.get(1));
+        assertEquals(1, cache.getExpiryCount());
+    }
+    
+    @Test
+    public void cachesCanHaveTTI()
+    {
+        cache = new BinarySimpleCache<Integer, String>(0, false, 0, 2, false, getClass().getName());
+        cache.put(1, "1");
+        sleep(1000L);
+        assertEquals("1", cache.get(1));
+        sleep(1500L);
+        // At least 2.5 seconds have passed, but the item was read in the meantime
+        assertEquals("1", cache.get(1));
+        sleep(2500L);
+        assertNull(cache.get(1));
+    }
+    
+    private void sleep(long miliseconds)
+    {
+        try
+        {
+            Thread.sleep(miliseconds);
+        }
+        catch (InterruptedException error)
+        {
+            throw new RuntimeException(error);
+        }
+    }
+}
@@ -27,6 +27,11 @@ package org.alfresco.repo.cache;
 
 import java.sql.SQLException;
 import java.util.Collection;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
 
 import javax.transaction.Status;
 import javax.transaction.UserTransaction;
@@ -593,6 +598,116 @@ public class CacheTest extends TestCase
         }
     }
     
+    /**
+     * Ensure that updates handed off to the commit executor are all in the shared cache
+     * by the time the transaction has committed.
+     */
+    public void testParallelCommit() throws Exception
+    {
+        ExecutorService commitExecutor = Executors.newFixedThreadPool(2);
+        transactionalCache.setCommitExecutor(commitExecutor);
+        transactionalCache.setParallelCommitThreshold(10);
+        TransactionService transactionService = serviceRegistry.getTransactionService();
+        UserTransaction txn = transactionService.getUserTransaction();
+        try
+        {
+            txn.begin();
+            for (int i = 0; i < 100; i++)
+            {
+                transactionalCache.put("parallel-" + i, Integer.valueOf(i));
+            }
+            txn.commit();
+            
+            for (int i = 0; i < 100; i++)
+            {
+                assertEquals(
+                        "Value not written to shared cache during commit",
+                        Integer.valueOf(i),
+                        TransactionalCache.getSharedCacheValue(backingCache, "parallel-" + i, null));
+            }
+        }
+        finally
+        {
+            try { txn.rollback(); } catch (Throwable ee) {}
+            transactionalCache.setCommitExecutor(null);
+            commitExecutor.shutdown();
+        }
+    }
+    
+    /**
+     * Ensure that a cache first used by another listener's post-commit work does not stop the
+     * commit from waiting for the handed-off updates.  The updates handed off are unaffected by
+     * later post-commit use of the cache.
+     */
+    public void testParallelCommitWithPostCommitCacheUse() throws Exception
+    {
+        ExecutorService commitExecutor = new ThreadPoolExecutor(2, 2, 0L, TimeUnit.MILLISECONDS, new LinkedBlockingQueue<Runnable>())
+        {
+            @Override
+            protected void beforeExecute(Thread t, Runnable r)
+            {
+                // Slow the transfers down so that the commit has to wait for them
+                try
+                {
+                    Thread.sleep(500L);
+                }
+                catch (InterruptedException e)
+                {
+                    Thread.currentThread().interrupt();
+                }
+            }
+        };
+        transactionalCache.setCommitExecutor(commitExecutor);
+        transactionalCache.setParallelCommitThreshold(10);
+        transactionalCacheNoStats.setCommitExecutor(commitExecutor);
+        transactionalCacheNoStats.setParallelCommitThreshold(10);
+        TransactionService transactionService = serviceRegistry.getTransactionService();
+        UserTransaction txn = transactionService.getUserTransaction();
+        try
+        {
+            txn.begin();
+            for (int i = 0; i < 100; i++)
+            {
+                transactionalCache.put("parallel-" + i, Integer.valueOf(i));
+            }
+            PostCommitCacheReader listenerReader = new PostCommitCacheReader(transactionalCacheNoStats, "parallel-0");
+            AlfrescoTransactionSupport.bindListener(listenerReader);
+            PostCommitCacheWriter listenerWriter = new PostCommitCacheWriter(transactionalCache, "parallel-0", "XXX");
+            AlfrescoTransactionSupport.bindListener(listenerWriter);
+            txn.commit();
+            
+            if (listenerReader.e != null)
+            {
+                throw listenerReader.e;
+            }
+            if (listenerWriter.e != null)
+            {
+                throw listenerWriter.e;
+            }
+            for (int i = 0; i < 100; i++)
+            {
+                assertEquals(
+                        "Value not written to shared cache during commit",
+                        Integer.valueOf(i),
+                        TransactionalCache.getSharedCacheValue(backingCache, "parallel-" + i, null));
+            }
+        }
+        catch (Throwable e)
+        {
+            if (txn.getStatus() == Status.STATUS_ACTIVE)
+            {
+                txn.rollback();
+            }
+            throw e;
+        }
+        finally
+        {
+            transactionalCache.setCommitExecutor(null);
+            transactionalCacheNoStats.setCommitExecutor(null);
+            commitExecutor.shutdown();
+        }
+    }
+    
     /** Execute the callback and ensure that the backing cache is left with the expected value */
     private void executeAndCheck(
             RetryingTransactionCallback<Object> callback,
@@ -62,6 +62,16 @@ public class DefaultCacheFactoryTest
         properties.setProperty("cache.withMaxIdle.maxItems", "0");
         properties.setProperty("cache.withMaxIdle.eviction-policy", "NONE");
         properties.setProperty("cache.withMaxIdle.maxIdleSeconds", "7");
+        // cache.binary
+        properties.setProperty("cache.binary.maxItems", "8");
+        properties.setProperty("cache.binary.eviction-policy", "LRU");
+        properties.setProperty("cache.binary.in-memory-format", "BINARY");
+        // cache.native
+        properties.setProperty("cache.native.maxItems", "9");
+        properties.setProperty("cache.native.eviction-policy", "LRU");
+        properties.setProperty("cache.native.in-memory-format", "native");
+        // cache.badFormat
+        properties.setProperty("cache.badFormat.in-memory-format", "SOMETHING");
         
         cacheFactory.setProperties(properties);
     }
@@ -100,4 +110,25 @@ public class DefaultCacheFactoryTest
         assertEquals(0, cache.getTTLSecs());        
         assertEquals(7, cache.getMaxIdleSecs());        
     }
-}
+    
+    @Test
+    public void canCreateBinaryCache()
+    {
+        BinarySimpleCache<String, String> binaryCache = (BinarySimpleCache<String, String>) cacheFactory.createCache("cache.binary");
+        assertEquals("cache.binary", binaryCache.getCacheName());
+        assertEquals(8, binaryCache.getMaxItems());
+        assertTrue(binaryCache.isUseMaxItems());
+        assertFalse(binaryCache.isNativeMemory());
+        
+        binaryCache = (BinarySimpleCache<String, String>) cacheFactory.createCache("cache.native");
+        assertEquals("cache.native", binaryCache.getCacheName());
+        assertEquals(9, binaryCache.getMaxItems());
+        assertTrue(binaryCache.isNativeMemory());
+    }
+    
+    @Test(expected=IllegalArgumentException.class)
+    public void unknownInMemoryFormat()
+    {
+        cacheFactory.createCache("cache.badFormat");
+    }
+}
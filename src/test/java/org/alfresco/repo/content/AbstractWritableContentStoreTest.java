@@ -33,6 +33,7 @@ import java.io.FileOutputStream;
 import java.io.InputStream;
 import java.io.OutputStream;
 import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
 import java.nio.channels.FileChannel;
 import java.nio.channels.ReadableByteChannel;
 import java.util.Locale;
@@ -547,6 +548,30 @@ public abstract class AbstractWritableContentStoreTest extends AbstractReadOnlyC
         assertEquals("Truncated strings don't match", "12345", checkContent);
     }
     
+    @Test
+    public void testTransferToChannel() throws Exception
+    {
+        String content = "0123456789ABCDEFGHIJ";
+        
+        ContentWriter writer = getWriter();
+        writer.setEncoding("UTF-8");
+        writer.putContent(content);
+        
+        // Transfer a range
+        ByteArrayOutputStream os = new ByteArrayOutputStream();
+        long transferred = AbstractContentReader.transferContent(writer.getReader(), Channels.newChannel(os), 5L, 10L);
+        assertEquals("Incorrect number of bytes transferred", 10L, transferred);
+        assertEquals("Transferred range doesn't match", "56789ABCDE", os.toString("UTF-8"));
+        
+        // Transfer everything after a position
+        ContentReader reader = writer.getReader();
+        os = new ByteArrayOutputStream();
+        transferred = AbstractContentReader.transferContent(reader, Channels.newChannel(os), 15L, -1L);
+        assertEquals("Incorrect number of bytes transferred", 5L, transferred);
+        assertEquals("Transferred content doesn't match", "FGHIJ", os.toString("UTF-8"));
+        assertTrue("Reader should be closed after a transfer", reader.isClosed());
+    }
+    
     @Test
     public void testReadAndWriteFile() throws Exception
     {
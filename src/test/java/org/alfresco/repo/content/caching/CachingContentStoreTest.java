@@ -41,18 +41,25 @@ import static org.mockito.Mockito.never;
 import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.when;
 
+import java.io.File;
 import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
 import java.util.Locale;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
 
 import org.alfresco.repo.content.ContentContext;
 import org.alfresco.repo.content.ContentStore;
 import org.alfresco.repo.content.caching.quota.QuotaManagerStrategy;
 import org.alfresco.repo.content.caching.quota.UnlimitedQuotaStrategy;
+import org.alfresco.repo.content.filestore.FileContentWriter;
 import org.alfresco.repo.content.filestore.SpoofedTextContentReader;
 import org.alfresco.service.cmr.repository.ContentIOException;
 import org.alfresco.service.cmr.repository.ContentReader;
 import org.alfresco.service.cmr.repository.ContentStreamListener;
 import org.alfresco.service.cmr.repository.ContentWriter;
+import org.alfresco.util.TempFileProvider;
 import org.junit.Before;
 import org.junit.Test;
 import org.junit.runner.RunWith;
@@ -124,6 +131,94 @@ public class CachingContentStoreTest
     }
     
     
+    @Test
+    // Item isn't in cache, so the reader is served while the cache is filled in the background.
+    public void getReaderForItemMissingFromCacheWithStreamingCacheFill()
+    {
+        FileContentWriter sourceWriter = new FileContentWriter(TempFileProvider.createTempFile("source", ".bin"));
+        sourceWriter.putContent("Content that is being cached");
+        when(backingStore.getReader("url")).thenReturn(sourceWriter.getReader());
+        File cacheFile = TempFileProvider.createTempFile("cache", ".tmp");
+        cacheFile.delete();
+        when(cache.getWriter("url")).thenReturn(new FileContentWriter(cacheFile));
+        
+        final List<Runnable> cacheFills = new ArrayList<Runnable>();
+        cachingStore.setStreamingCacheFill(true);
+        cachingStore.setCacheFillExecutor(new Executor()
+        {
+            @Override
+            public void execute(Runnable command)
+            {
+                cacheFills.add(command);
+            }
+        });
+        
+        ContentReader returnedReader = cachingStore.getReader("url");
+        ContentReader otherReader = cachingStore.getReader("url");
+        
+        // Both readers share the one cache fill
+        assertEquals(1, cacheFills.size());
+        cacheFills.get(0).run();
+        assertEquals("Content that is being cached", returnedReader.getContentString());
+        assertEquals("Content that is being cached", otherReader.getContentString());
+        verify(cache, never()).put(anyString(), any(ContentReader.class));
+        verify(cache, never()).deleteFile("url");
+    }
+    
+    
+    @Test
+    // The cache fill executor is saturated, so the content is read from the backing store and the cache file discarded.
+    public void getReaderForItemMissingFromCacheWithRejectedStreamingCacheFill() throws IOException
+    {
+        when(backingStore.getReader("url")).thenReturn(sourceContent);
+        when(sourceContent.getSize()).thenReturn(1274L);
+        File cacheFile = TempFileProvider.createTempFile("cache", ".tmp");
+        when(cache.getWriter("url")).thenReturn(new FileContentWriter(cacheFile));
+        
+        cachingStore.setStreamingCacheFill(true);
+        cachingStore.setCacheFillExecutor(new Executor()
+        {
+            @Override
+            public void execute(Runnable command)
+            {
+                throw new RejectedExecutionException();
+            }
+        });
+        
+        ContentReader returnedReader = cachingStore.getReader("url");
+        
+        assertSame(sourceContent, returnedReader);
+        assertFalse("Cache file was not deleted", cacheFile.exists());
+    }
+    
+    
+    @Test
+    // The cache writer is not file based, so the cache is filled through it before reading and the quota applied.
+    public void getReaderForItemMissingFromCacheWithStreamingCacheFillAndNonFileWriter()
+    {
+        when(backingStore.getReader("url")).thenReturn(sourceContent);
+        when(sourceContent.getSize()).thenReturn(1274L);
+        ContentWriter cacheWriter = mock(ContentWriter.class);
+        when(cache.getWriter("url")).thenReturn(cacheWriter);
+        when(cache.getReader("url")).thenReturn(cachedContent);
+        
+        QuotaManagerStrategy quota = mock(QuotaManagerStrategy.class);
+        cachingStore.setQuota(quota);
+        when(quota.beforeWritingCacheFile(1274L)).thenReturn(true);
+        when(quota.afterWritingCacheFile(1274L)).thenReturn(true);
+        
+        cachingStore.setStreamingCacheFill(true);
+        cachingStore.setCacheFillExecutor(mock(Executor.class));
+        
+        ContentReader returnedReader = cachingStore.getReader("url");
+        
+        assertSame(cachedContent, returnedReader);
+        verify(cache).getWriter("url");
+        verify(cacheWriter).putContent(sourceContent);
+        verify(quota).afterWritingCacheFile(1274L);
+    }
+    
+    
     @Test
     public void getReaderForItemMissingFromCacheWillGiveUpAfterRetrying()
     {
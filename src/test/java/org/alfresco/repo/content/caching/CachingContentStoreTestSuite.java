@@ -53,6 +53,7 @@ import org.junit.runners.Suite;
     //CachingContentStoreSpringTest.class,
     CachingContentStoreTest.class,
     ContentCacheImplTest.class,
+    StreamingCacheFillTest.class,
     FullTest.class
 })
 public class CachingContentStoreTestSuite
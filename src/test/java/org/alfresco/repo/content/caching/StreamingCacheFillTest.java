@@ -0,0 +1,172 @@
+/*
+ * #%L
+ * Alfresco Repository
+ * %%
+ * Copyright (C) 2005 - 2016 Alfresco Software Limited
+ * %%
+ * This file is part of the Alfresco software. 
+ * If the software was purchased under a paid Alfresco license, the terms of 
+ * the paid license agreement will prevail.  Otherwise, the software is 
+ * provided under the following open source license terms:
+ * 
+ * Alfresco is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * 
+ * Alfresco is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ * 
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with Alfresco. If not, see <http://www.gnu.org/licenses/>.
+ * #L%
+ */
+package org.alfresco.repo.content.caching;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.SeekableByteChannel;
+import java.util.Arrays;
+import java.util.Random;
+
+import org.alfresco.repo.content.filestore.FileContentReader;
+import org.alfresco.repo.content.filestore.FileContentWriter;
+import org.alfresco.service.cmr.repository.ContentIOException;
+import org.alfresco.service.cmr.repository.ContentReader;
+import org.alfresco.util.TempFileProvider;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Tests for {@link StreamingCacheFill}.
+ */
+public class StreamingCacheFillTest
+{
+    private static final int SIZE = 1024 * 1024 + 17;
+    
+    private byte[] content;
+    private ContentReader source;
+    private File cacheFile;
+    
+    @Before
+    public void setUp() throws Exception
+    {
+        content = new byte[SIZE];
+        new Random(42L).nextBytes(content);
+        File sourceFile = TempFileProvider.createTempFile("StreamingCacheFillTest", ".bin");
+        FileOutputStream os = new FileOutputStream(sourceFile);
+        try
+        {
+            os.write(content);
+        }
+        finally
+        {
+            os.close();
+        }
+        source = new FileContentReader(sourceFile);
+        cacheFile = TempFileProvider.createTempFile("StreamingCacheFillTest", ".tmp");
+        cacheFile.delete();
+    }
+    
+    @Test
+    public void readWhileFilling() throws Exception
+    {
+        StreamingCacheFill fill = new StreamingCacheFill("url", source, new FileContentWriter(cacheFile));
+        ContentReader reader = fill.getReader();
+        assertEquals(SIZE, reader.getSize());
+        
+        Thread filler = new Thread(fill);
+        filler.start();
+        
+        InputStream is = reader.getContentInputStream();
+        ByteArrayOutputStream os = new ByteArrayOutputStream(SIZE);
+        try
+        {
+            byte[] buffer = new byte[8192];
+            int read;
+            while ((read = is.read(buffer)) >= 0)
+            {
+                os.write(buffer, 0, read);
+            }
+        }
+        finally
+        {
+            is.close();
+        }
+        filler.join();
+        
+        assertArrayEquals(content, os.toByteArray());
+        assertTrue(fill.isSucceeded());
+        assertEquals(SIZE, fill.getFilled());
+        assertEquals(SIZE, cacheFile.length());
+    }
+    
+    @Test
+    public void rangedRead() throws Exception
+    {
+        StreamingCacheFill fill = new StreamingCacheFill("url", source, new FileContentWriter(cacheFile));
+        ContentReader reader = fill.getReader();
+        SeekableByteChannel channel = (SeekableByteChannel) reader.getReadableChannel();
+        try
+        {
+            channel.position(SIZE - 1000);
+            new Thread(fill).start();
+            
+            ByteBuffer buffer = ByteBuffer.allocate(2000);
+            while (channel.read(buffer) >= 0)
+            {
+            }
+            assertEquals(1000, buffer.position());
+            assertArrayEquals(
+                    Arrays.copyOfRange(content, SIZE - 1000, SIZE),
+                    Arrays.copyOf(buffer.array(), 1000));
+        }
+        finally
+        {
+            channel.close();
+        }
+    }
+    
+    @Test
+    public void readersSeeFailure() throws Exception
+    {
+        ContentReader failingSource = mock(ContentReader.class);
+        when(failingSource.getSize()).thenReturn(1000L);
+        when(failingSource.getReadableChannel()).thenThrow(new ContentIOException("Backing store is unavailable"));
+        
+        StreamingCacheFill fill = new StreamingCacheFill("url", failingSource, new FileContentWriter(cacheFile));
+        ContentReader reader = fill.getReader();
+        fill.run();
+        
+        assertTrue(fill.isDone());
+        assertFalse(fill.isSucceeded());
+        InputStream is = reader.getContentInputStream();
+        try
+        {
+            is.read();
+            fail("Readers must see the failure of the cache fill");
+        }
+        catch (IOException e)
+        {
+            // Expected
+        }
+        finally
+        {
+            is.close();
+        }
+    }
+}
@@ -109,8 +109,8 @@ public class ContentStoreCleanerTest extends TestCase
         listener = new DummyCleanerListener();
         listeners.add(listener);
         listeners.add(new DummyUnsupportiveCleanerListener());
-        // initialise record of deleted URLs
-        deletedUrls = new ArrayList<String>(5);
+        // initialise record of deleted URLs (the cleaner may call the listeners from several threads)
+        deletedUrls = Collections.synchronizedList(new ArrayList<String>(5));
         
         // Construct the test cleaners
         eagerCleaner = (EagerContentStoreCleaner) ctx.getBean("eagerContentStoreCleaner");
@@ -383,6 +383,63 @@ public class ContentStoreCleanerTest extends TestCase
         assertTrue("Content listener was not called", deletedUrls.contains(reader.getContentUrl()));
     }
     
+    /**
+     * Check that orphans are removed when the cleaner works through ID partitions in parallel
+     */
+    public void testParallelRemoval() throws Exception
+    {
+        eagerCleaner.setEagerOrphanCleanup(false);
+        
+        final StoreRef storeRef = nodeService.createStore("test", getName() + "-" + GUID.generate());
+        RetryingTransactionCallback<List<ContentData>> testCallback = new RetryingTransactionCallback<List<ContentData>>()
+        {
+            public List<ContentData> execute() throws Throwable
+            {
+                NodeRef rootNodeRef = nodeService.getRootNode(storeRef);
+                List<ContentData> contentDatas = new ArrayList<ContentData>();
+                for (int i = 0; i < 5; i++)
+                {
+                    Map<QName, Serializable> properties = new HashMap<QName, Serializable>(13);
+                    properties.put(ContentModel.PROP_NAME, (Serializable)("test" + i + ".txt"));
+                    NodeRef contentNodeRef = nodeService.createNode(
+                            rootNodeRef,
+                            ContentModel.ASSOC_CHILDREN,
+                            ContentModel.ASSOC_CHILDREN,
+                            ContentModel.TYPE_CONTENT,
+                            properties).getChildRef();
+                    ContentWriter writer = contentService.getWriter(contentNodeRef, ContentModel.PROP_CONTENT, true);
+                    writer.setMimetype(MimetypeMap.MIMETYPE_TEXT_PLAIN);
+                    writer.putContent("PARALLEL CONTENT " + i);
+                    contentDatas.add(writer.getContentData());
+                    
+                    // Delete the node, bypassing archive
+                    nodeService.addAspect(contentNodeRef, ContentModel.ASPECT_TEMPORARY, null);
+                    nodeService.deleteNode(contentNodeRef);
+                }
+                return contentDatas;
+            }
+        };
+        List<ContentData> contentDatas = transactionService.getRetryingTransactionHelper().doInTransaction(testCallback);
+        
+        // fire the cleaner using several partitions and small batches
+        cleaner.setProtectDays(0);
+        cleaner.setWorkerThreads(3);
+        cleaner.setPartitionSize(10000L);
+        cleaner.setBatchSize(2);
+        cleaner.execute();
+        
+        for (ContentData contentData : contentDatas)
+        {
+            ContentReader reader = contentService.getRawReader(contentData.getContentUrl());
+            assertFalse("Unprotected content was not deleted", reader.exists());
+            assertTrue("Content listener was not called", deletedUrls.contains(reader.getContentUrl()));
+        }
+        assertFalse(cleaner.isRunning());
+        assertTrue("Cleaned URLs were not counted", cleaner.getUrlsDeleted() >= contentDatas.size());
+        assertTrue("No partitions were cleaned", cleaner.getPartitionsCleaned() > 0);
+        assertNotNull(cleaner.getRunEndTime());
+    }
+    
     /**
      * Test forced and immediate shredding of content
      * <p/>
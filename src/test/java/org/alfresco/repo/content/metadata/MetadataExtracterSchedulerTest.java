@@ -0,0 +1,306 @@
+/*
+ * #%L
+ * Alfresco Repository
+ * %%
+ * Copyright (C) 2005 - 2016 Alfresco Software Limited
+ * %%
+ * This file is part of the Alfresco software. 
+ * If the software was purchased under a paid Alfresco license, the terms of 
+ * the paid license agreement will prevail.  Otherwise, the software is 
+ * provided under the following open source license terms:
+ * 
+ * Alfresco is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * 
+ * Alfresco is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ * 
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with Alfresco. If not, see <http://www.gnu.org/licenses/>.
+ * #L%
+ */
+package org.alfresco.repo.content.metadata;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.Serializable;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+import org.alfresco.repo.content.MimetypeMap;
+import org.alfresco.repo.content.filestore.FileContentReader;
+import org.alfresco.repo.content.metadata.MappingMetadataExtracterTest.DummyMappingMetadataExtracter;
+import org.alfresco.repo.content.metadata.MetadataExtracterScheduler.ExtractionSlot;
+import org.alfresco.repo.content.transform.AbstractContentTransformerTest;
+import org.alfresco.service.cmr.repository.ContentReader;
+import org.alfresco.service.namespace.QName;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Tests the per mimetype limits and the rejection of work by the {@link MetadataExtracterScheduler}.
+ * 
+ * @since 5.2
+ */
+public class MetadataExtracterSchedulerTest
+{
+    private ThreadPoolExecutor executor;
+    private MetadataExtracterScheduler scheduler;
+
+    @Before
+    public void setUp() throws Exception
+    {
+        executor = new ThreadPoolExecutor(1, 1, 60, TimeUnit.SECONDS, new ArrayBlockingQueue<Runnable>(1),
+                new ThreadPoolExecutor.AbortPolicy());
+        scheduler = new MetadataExtracterScheduler();
+        scheduler.setExecutorService(executor);
+        scheduler.init();
+    }
+
+    @After
+    public void tearDown() throws Exception
+    {
+        executor.shutdownNow();
+    }
+
+    @Test
+    public void testLimitPerMimetype()
+    {
+        ExtractionSlot pdf1 = scheduler.reserve(MimetypeMap.MIMETYPE_PDF, 2);
+        ExtractionSlot pdf2 = scheduler.reserve(MimetypeMap.MIMETYPE_PDF, 2);
+        assertNotNull(pdf1);
+        assertNotNull(pdf2);
+        assertNull("Limit for PDF reached", scheduler.reserve(MimetypeMap.MIMETYPE_PDF, 2));
+        assertNotNull("Other mimetypes have their own limit", scheduler.reserve(MimetypeMap.MIMETYPE_HTML, 2));
+
+        // Started extraction finishes, caller still waiting: place not yet free
+        assertTrue(pdf1.start());
+        pdf1.release();
+        assertNull(scheduler.reserve(MimetypeMap.MIMETYPE_PDF, 2));
+
+        // Caller gives up as well
+        pdf1.release();
+        assertNotNull(scheduler.reserve(MimetypeMap.MIMETYPE_PDF, 2));
+    }
+
+    @Test
+    public void testTimedOutExtractionKeepsPlace()
+    {
+        ExtractionSlot slot = scheduler.reserve(MimetypeMap.MIMETYPE_PDF, 1);
+        assertTrue(slot.start());
+
+        // Caller times out, but the extraction is still running
+        slot.cancel();
+        slot.release();
+        assertNull(scheduler.reserve(MimetypeMap.MIMETYPE_PDF, 1));
+
+        // Extraction finally stops
+        slot.release();
+        assertNotNull(scheduler.reserve(MimetypeMap.MIMETYPE_PDF, 1));
+    }
+
+    @Test
+    public void testCancelledExtractionDoesNotStart()
+    {
+        ExtractionSlot slot = scheduler.reserve(MimetypeMap.MIMETYPE_PDF, 1);
+        slot.cancel();
+        assertFalse(slot.start());
+        slot.release();
+        assertNotNull(scheduler.reserve(MimetypeMap.MIMETYPE_PDF, 1));
+    }
+
+    @Test
+    public void testQueueFull() throws Exception
+    {
+        final CountDownLatch latch = new CountDownLatch(1);
+        Runnable blocked = new Runnable()
+        {
+            @Override
+            public void run()
+            {
+                try
+                {
+                    latch.await();
+                }
+                catch (InterruptedException e)
+                {
+                    // Shutting down
+                }
+            }
+        };
+        scheduler.execute(blocked);
+        scheduler.execute(blocked);
+        try
+        {
+            scheduler.execute(blocked);
+            fail("Work should have been rejected once the queue is full");
+        }
+        catch (RejectedExecutionException e)
+        {
+            // Expected
+        }
+        finally
+        {
+            latch.countDown();
+        }
+    }
+
+    /**
+     * An extraction that waits in the queue gets its whole timeout once it starts
+     */
+    @Test
+    public void testTimeoutStartsWithExtraction() throws Exception
+    {
+        CountDownLatch latch = occupyPool();
+        SlowExtracter extracter = new SlowExtracter(300L, 500L);
+        Map<QName, Serializable> destination = new HashMap<QName, Serializable>();
+        Thread releaser = releaseLater(latch, 300L);
+        extracter.extract(getQuickReader(), destination);
+        releaser.join();
+
+        assertTrue("Extraction should not have timed out", destination.containsKey(DummyMappingMetadataExtracter.QNAME_A1));
+        assertEquals(0, extracter.getStatistics().getTimeouts());
+    }
+
+    /**
+     * An extraction that never gets a thread is given up and taken out of the queue
+     */
+    @Test
+    public void testQueuedExtractionIsRemovedWhenGivenUp() throws Exception
+    {
+        CountDownLatch latch = occupyPool();
+        try
+        {
+            SlowExtracter extracter = new SlowExtracter(0L, 200L);
+            Map<QName, Serializable> destination = new HashMap<QName, Serializable>();
+            extracter.extract(getQuickReader(), destination);
+
+            assertTrue("Nothing should have been extracted", destination.isEmpty());
+            assertEquals(1, extracter.getStatistics().getTimeouts());
+            assertTrue("The extraction should have been taken out of the queue", executor.getQueue().isEmpty());
+            assertNotNull("The place should have been given back", scheduler.reserve(MimetypeMap.MIMETYPE_TEXT_PLAIN, 1));
+        }
+        finally
+        {
+            latch.countDown();
+        }
+    }
+
+    @Test
+    public void testStatisticsPerExtracter()
+    {
+        MetadataExtracterStatistics statistics = scheduler.getStatistics("extracter.PDFBox");
+        assertSame(statistics, scheduler.getStatistics("extracter.PDFBox"));
+        assertFalse(statistics == scheduler.getStatistics("extracter.Poi"));
+    }
+
+    /**
+     * Keep the pool's only thread busy until the returned latch is released
+     */
+    private CountDownLatch occupyPool() throws InterruptedException
+    {
+        final CountDownLatch latch = new CountDownLatch(1);
+        final CountDownLatch running = new CountDownLatch(1);
+        scheduler.execute(new Runnable()
+        {
+            @Override
+            public void run()
+            {
+                running.countDown();
+                try
+                {
+                    latch.await();
+                }
+                catch (InterruptedException e)
+                {
+                    // Shutting down
+                }
+            }
+        });
+        running.await();
+        return latch;
+    }
+
+    private Thread releaseLater(final CountDownLatch latch, final long delayMs)
+    {
+        Thread releaser = new Thread()
+        {
+            @Override
+            public void run()
+            {
+                try
+                {
+                    Thread.sleep(delayMs);
+                }
+                catch (InterruptedException e)
+                {
+                    // Release now
+                }
+                latch.countDown();
+            }
+        };
+        releaser.start();
+        return releaser;
+    }
+
+    private ContentReader getQuickReader() throws Exception
+    {
+        ContentReader reader = new FileContentReader(AbstractContentTransformerTest.loadQuickTestFile("txt"));
+        reader.setMimetype(MimetypeMap.MIMETYPE_TEXT_PLAIN);
+        return reader;
+    }
+
+    /**
+     * Extracter run by the test's scheduler that takes a while over each extraction
+     */
+    private class SlowExtracter extends DummyMappingMetadataExtracter
+    {
+        private final long extractionMs;
+
+        private SlowExtracter(long extractionMs, long timeoutMs)
+        {
+            this.extractionMs = extractionMs;
+            MetadataExtracterLimits limits = new MetadataExtracterLimits();
+            limits.setTimeoutMs(timeoutMs);
+            setMimetypeLimits(Collections.singletonMap("*", limits));
+            setScheduler(scheduler);
+            register();
+        }
+
+        private MetadataExtracterStatistics getStatistics()
+        {
+            return scheduler.getStatistics(EXTRACTER_NAME);
+        }
+
+        @Override
+        protected Map<String, Serializable> extractRaw(ContentReader reader)
+        {
+            try
+            {
+                Thread.sleep(extractionMs);
+            }
+            catch (InterruptedException e)
+            {
+                Thread.currentThread().interrupt();
+            }
+            return super.extractRaw(reader);
+        }
+    }
+}
@@ -26,6 +26,8 @@
 package org.alfresco.repo.content.transform;
 
 import static org.junit.Assert.*;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.when;
 
 import java.util.ArrayList;
@@ -297,6 +299,41 @@ public class TransformerSelectorImplTest
         
         assertTransformers("", expected, actual);
     }
+    
+    @Test
+    public void configReadOnceTest()
+    {
+        // The priority and threshold of each transformer are only looked up on the first selection
+        mockTransformer(transformer1, 100, PDF, PNG, 10, 22, 3);
+        mockTransformer(transformer2, 100, PDF, PNG);
+        mockTransformer(transformer3,   0, PDF, PNG);
+        mockTransformer(transformer4,  50, PDF, PNG, 10, 44, 3);
+        
+        List<ContentTransformer> expected = Arrays.asList(new ContentTransformer[] {transformer4, transformer1});
+        assertTransformers("first", expected, selector.selectTransformers(PDF, -1, PNG, options));
+        assertTransformers("second", expected, selector.selectTransformers(PDF, -1, PNG, options));
+        
+        verify(transformerConfig, times(1)).getPriority(transformer1, PDF, PNG);
+        verify(transformerConfig, times(1)).getPriority(transformer3, PDF, PNG);
+        verify(transformerConfig, times(1)).getThresholdCount(transformer4, PDF, PNG);
+        verify(transformer3, times(0)).isTransformable(PDF, -1, PNG, options);
+        verify(transformer1, times(2)).isTransformable(PDF, -1, PNG, options);
+    }
+    
+    @Test
+    public void registryChangeTest()
+    {
+        // A new list of transformers from the registry must be picked up
+        mockTransformer(transformer1, 100, PDF, PNG, 10, 22, 3);
+        assertTransformers("before", Arrays.asList(new ContentTransformer[] {transformer1}),
+                selector.selectTransformers(PDF, -1, PNG, options));
+        
+        allTransformers = new ArrayList<ContentTransformer>(allTransformers);
+        when(contentTransformerRegistry.getTransformers()).thenReturn(allTransformers);
+        mockTransformer(transformer2, 50, PDF, PNG, 10, 44, 3);
+        assertTransformers("after", Arrays.asList(new ContentTransformer[] {transformer2, transformer1}),
+                selector.selectTransformers(PDF, -1, PNG, options));
+    }
 }
 
 class DummyTransformerStatistics extends TransformerStatisticsImpl
@@ -0,0 +1,155 @@
+/*
+ * #%L
+ * Alfresco Repository
+ * %%
+ * Copyright (C) 2005 - 2016 Alfresco Software Limited
+ * %%
+ * This file is part of the Alfresco software. 
+ * If the software was purchased under a paid Alfresco license, the terms of 
+ * the paid license agreement will prevail.  Otherwise, the software is 
+ * provided under the following open source license terms:
+ * 
+ * Alfresco is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * 
+ * Alfresco is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ * 
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with Alfresco. If not, see <http://www.gnu.org/licenses/>.
+ * #L%
+ */
+package org.alfresco.repo.domain.activities;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Date;
+import java.util.List;
+import java.util.Map;
+
+import junit.framework.TestCase;
+
+import org.alfresco.repo.transaction.RetryingTransactionHelper;
+import org.alfresco.repo.transaction.RetryingTransactionHelper.RetryingTransactionCallback;
+import org.alfresco.service.ServiceRegistry;
+import org.alfresco.service.cmr.activities.FeedControl;
+import org.alfresco.test_category.OwnJVMTestsCategory;
+import org.alfresco.util.ApplicationContextHelper;
+import org.alfresco.util.GUID;
+import org.alfresco.util.testing.category.DBTests;
+import org.junit.experimental.categories.Category;
+import org.springframework.context.ApplicationContext;
+
+/**
+ * @see ActivityFeedDAO
+ * @see FeedControlDAO
+ * 
+ * @since 5.2
+ */
+@Category({OwnJVMTestsCategory.class, DBTests.class})
+public class ActivityFeedDAOTest extends TestCase
+{
+    private ApplicationContext ctx = ApplicationContextHelper.getApplicationContext();
+
+    private RetryingTransactionHelper txnHelper;
+    private ActivityFeedDAO feedDAO;
+    private FeedControlDAO feedControlDAO;
+    
+    private String siteId;
+    private String userId;
+    
+    @Override
+    public void setUp() throws Exception
+    {
+        ServiceRegistry serviceRegistry = (ServiceRegistry) ctx.getBean(ServiceRegistry.SERVICE_REGISTRY);
+        txnHelper = serviceRegistry.getTransactionService().getRetryingTransactionHelper();
+        
+        feedDAO = (ActivityFeedDAO) ctx.getBean("feedDAO");
+        feedControlDAO = (FeedControlDAO) ctx.getBean("feedControlDAO");
+        
+        siteId = "testSite" + GUID.generate();
+        userId = "testUser" + GUID.generate();
+    }
+    
+    @Override
+    public void tearDown() throws Exception
+    {
+        txnHelper.doInTransaction(new RetryingTransactionCallback<Void>()
+        {
+            public Void execute() throws Throwable
+            {
+                feedDAO.deleteSiteFeedEntries(siteId);
+                feedDAO.deleteUserFeedEntries(userId);
+                feedControlDAO.deleteFeedControl(new FeedControlEntity(userId, new FeedControl(siteId, null)));
+                return null;
+            }
+        });
+    }
+    
+    public void testInsertFeedEntries() throws Exception
+    {
+        // more entries than fit into one multi-row insert
+        final List<ActivityFeedEntity> feedEntries = new ArrayList<ActivityFeedEntity>();
+        for (int i = 0; i < 250; i++)
+        {
+            ActivityFeedEntity feedEntry = new ActivityFeedEntity();
+            
+            feedEntry.setPostDate(new Date(System.currentTimeMillis()-(i*60*1000L)));
+            feedEntry.setSiteNetwork(siteId);
+            feedEntry.setActivityType("testActivityType");
+            feedEntry.setPostUserId(userId);
+            feedEntry.setFeedUserId((i % 2 == 0) ? "" : userId);
+            feedEntry.setFeedDate(new Date());
+            
+            feedEntries.add(feedEntry);
+        }
+        RetryingTransactionCallback<Integer> insertCallback = new RetryingTransactionCallback<Integer>()
+        {
+            public Integer execute() throws Throwable
+            {
+                return feedDAO.insertFeedEntries(feedEntries);
+            }
+        };
+        assertEquals(Integer.valueOf(250), txnHelper.doInTransaction(insertCallback));
+        
+        feedEntries.clear();
+        assertEquals(Integer.valueOf(0), txnHelper.doInTransaction(insertCallback));
+        
+        // Check
+        txnHelper.doInTransaction(new RetryingTransactionCallback<Void>()
+        {
+            public Void execute() throws Throwable
+            {
+                assertEquals(125, feedDAO.selectSiteFeedEntries(siteId, -1).size());
+                assertEquals(125, feedDAO.selectUserFeedEntries(userId, null, false, false, -1L, -1).size());
+                return null;
+            }
+        }, true);
+    }
+    
+    public void testSelectFeedControls() throws Exception
+    {
+        final String otherUserId = "testUser" + GUID.generate();
+        Map<String, List<FeedControlEntity>> feedControls = txnHelper.doInTransaction(new RetryingTransactionCallback<Map<String, List<FeedControlEntity>>>()
+        {
+            public Map<String, List<FeedControlEntity>> execute() throws Throwable
+            {
+                feedControlDAO.insertFeedControl(new FeedControlEntity(userId, new FeedControl(siteId, null)));
+                
+                // user names are not case sensitive by default
+                return feedControlDAO.selectFeedControls(Arrays.asList(userId, userId.toUpperCase(), otherUserId));
+            }
+        });
+        
+        assertEquals(3, feedControls.size());
+        assertEquals(1, feedControls.get(userId).size());
+        assertEquals(siteId, feedControls.get(userId).get(0).getSiteNetwork());
+        assertEquals(1, feedControls.get(userId.toUpperCase()).size());
+        assertEquals(siteId, feedControls.get(userId.toUpperCase()).get(0).getSiteNetwork());
+        assertTrue(feedControls.get(otherUserId).isEmpty());
+    }
+}
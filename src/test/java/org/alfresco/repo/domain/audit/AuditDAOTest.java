@@ -30,6 +30,7 @@ import java.io.IOException;
 import java.io.Serializable;
 import java.net.URL;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collections;
 import java.util.Date;
 import java.util.HashMap;
@@ -726,6 +727,193 @@ public class AuditDAOTest extends TestCase
         scriptCanDeleteOrphanedPropsWork(false);
     }
 
+    /**
+     * Entries of compact applications are stored packed, migrated entries are rewritten and
+     * both are read back unchanged and can be searched on the promoted keys.
+     */
+    public void testCompactAuditEntries() throws Exception
+    {
+        final AuditApplicationInfo appInfo = createAuditApp();
+        final String appName = appInfo.getName();
+        final Map<Long, Map<String, Serializable>> expected = new HashMap<Long, Map<String, Serializable>>();
+        RetryingTransactionCallback<Void> createCallback = new RetryingTransactionCallback<Void>()
+        {
+            public Void execute() throws Throwable
+            {
+                for (int i = 0; i < 5; i++)
+                {
+                    Map<String, Serializable> values = new HashMap<String, Serializable>();
+                    values.put("/a/b/c", i);
+                    values.put("/a/b/d", "D-" + i);
+                    values.put("/a/b/e", null);
+                    Long entryId = auditDAO.createAuditEntry(appInfo.getId(), System.currentTimeMillis(), "compact", values);
+                    expected.put(entryId, values);
+                }
+                return null;
+            }
+        };
+        // Old style entries
+        txnHelper.doInTransaction(createCallback);
+
+        AbstractAuditDAOImpl auditDAOImpl = (AbstractAuditDAOImpl) auditDAO;
+        auditDAOImpl.setCompactApplications(appName);
+        auditDAOImpl.setCompactSearchKeys("/a/b/c");
+        try
+        {
+            // Compact entries
+            txnHelper.doInTransaction(createCallback);
+
+            // Migrate the old entries in small batches
+            Long fromId = null;
+            int batches = 0;
+            while (true)
+            {
+                final Long batchFromId = fromId;
+                Long lastId = txnHelper.doInTransaction(new RetryingTransactionCallback<Long>()
+                {
+                    public Long execute() throws Throwable
+                    {
+                        return auditDAO.compactAuditEntries(appName, batchFromId, 3);
+                    }
+                });
+                if (lastId == null)
+                {
+                    break;
+                }
+                fromId = lastId + 1L;
+                batches++;
+            }
+            assertEquals("Expected only the 5 old entries, in batches of 3", 2, batches);
+
+            // Nothing is left to compact
+            Long lastId = txnHelper.doInTransaction(new RetryingTransactionCallback<Long>()
+            {
+                public Long execute() throws Throwable
+                {
+                    return auditDAO.compactAuditEntries(appName, null, 3);
+                }
+            });
+            assertNull("Compact entries should not be selected again", lastId);
+        }
+        finally
+        {
+            auditDAOImpl.setCompactApplications("");
+            auditDAOImpl.setCompactSearchKeys("");
+        }
+
+        final Map<Long, Map<String, Serializable>> found = new HashMap<Long, Map<String, Serializable>>();
+        final AuditQueryCallback valuesCallback = new AuditQueryCallback()
+        {
+            public boolean valuesRequired()
+            {
+                return true;
+            }
+
+            public boolean handleAuditEntry(
+                    Long entryId,
+                    String applicationName,
+                    String user,
+                    long time,
+                    Map<String, Serializable> values)
+            {
+                found.put(entryId, values);
+                return true;
+            }
+
+            public boolean handleAuditEntryError(Long entryId, String errorMsg, Throwable error)
+            {
+                throw new AlfrescoRuntimeException(errorMsg, error);
+            }
+        };
+        RetryingTransactionCallback<Void> findCallback = new RetryingTransactionCallback<Void>()
+        {
+            public Void execute() throws Throwable
+            {
+                AuditQueryParameters params = new AuditQueryParameters();
+                params.setApplicationName(appName);
+                auditDAO.findAuditEntries(valuesCallback, params, Integer.MAX_VALUE);
+                assertEquals(expected, found);
+
+                // The promoted key is still searchable
+                found.clear();
+                params.addSearchKey("/a/b/c", 3);
+                auditDAO.findAuditEntries(valuesCallback, params, Integer.MAX_VALUE);
+                assertEquals("Expected one old and one compact entry", 2, found.size());
+                return null;
+            }
+        };
+        txnHelper.doInTransaction(findCallback);
+    }
+
+    /**
+     * The oldest entries are deleted in batches along with their values
+     */
+    public void testDeleteOldestAuditEntries() throws Exception
+    {
+        final AuditApplicationInfo appInfo = createAuditApp();
+        RetryingTransactionCallback<Void> createCallback = new RetryingTransactionCallback<Void>()
+        {
+            public Void execute() throws Throwable
+            {
+                for (int i = 1; i <= 5; i++)
+                {
+                    Map<String, Serializable> values = Collections.singletonMap("/a/b/c", (Serializable) i);
+                    auditDAO.createAuditEntry(appInfo.getId(), i * 1000L, "retention", values);
+                }
+                return null;
+            }
+        };
+        txnHelper.doInTransaction(createCallback);
+
+        RetryingTransactionCallback<Integer> deleteCallback = new RetryingTransactionCallback<Integer>()
+        {
+            public Integer execute() throws Throwable
+            {
+                return auditDAO.deleteOldestAuditEntries(appInfo.getId(), 3500L, 2);
+            }
+        };
+        assertEquals(2, (int) txnHelper.doInTransaction(deleteCallback));
+        assertEquals(1, (int) txnHelper.doInTransaction(deleteCallback));
+        assertEquals(0, (int) txnHelper.doInTransaction(deleteCallback));
+
+        final List<Serializable> remaining = new ArrayList<Serializable>();
+        final AuditQueryCallback valuesCallback = new AuditQueryCallback()
+        {
+            public boolean valuesRequired()
+            {
+                return true;
+            }
+
+            public boolean handleAuditEntry(
+                    Long entryId,
+                    String applicationName,
+                    String user,
+                    long time,
+                    Map<String, Serializable> values)
+            {
+                remaining.add(values.get("/a/b/c"));
+                return true;
+            }
+
+            public boolean handleAuditEntryError(Long entryId, String errorMsg, Throwable error)
+            {
+                throw new AlfrescoRuntimeException(errorMsg, error);
+            }
+        };
+        RetryingTransactionCallback<Void> findCallback = new RetryingTransactionCallback<Void>()
+        {
+            public Void execute() throws Throwable
+            {
+                AuditQueryParameters params = new AuditQueryParameters();
+                params.setApplicationName(appInfo.getName());
+                auditDAO.findAuditEntries(valuesCallback, params, Integer.MAX_VALUE);
+                return null;
+            }
+        };
+        txnHelper.doInTransaction(findCallback);
+        assertEquals(Arrays.asList((Serializable) 4, 5), remaining);
+    }
+
     public void testMaxResults() throws Exception
     {
         try
@@ -25,6 +25,8 @@
  */
 package org.alfresco.repo.domain.locks;
 
+import java.util.HashMap;
+import java.util.Map;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.locks.ReentrantLock;
 
@@ -295,6 +297,30 @@ public class LockDAOTest extends TestCase
         }
     }
     
+    public void testRefreshLocks() throws Exception
+    {
+        String tokenAAA = lock(lockAAA, 5000L, true);
+        String tokenAB = lock(lockAB, 5000L, true);
+        final Map<QName, String> lockTokens = new HashMap<QName, String>();
+        lockTokens.put(lockAAA, tokenAAA);
+        lockTokens.put(lockAB, tokenAB);
+        RetryingTransactionCallback<Boolean> refreshCallback = new RetryingTransactionCallback<Boolean>()
+        {
+            @Override
+            public Boolean execute() throws Throwable
+            {
+                return lockDAO.refreshLocks(lockTokens, 5000L);
+            }
+        };
+        assertTrue("All locks should have been refreshed", txnHelper.doInTransaction(refreshCallback));
+        // Lose one of the locks
+        release(lockAB, tokenAB, true);
+        assertFalse("Lost lock was not reported", txnHelper.doInTransaction(refreshCallback));
+        // The lock still held is unaffected
+        refresh(lockAAA, tokenAAA, 5000L, true);
+        release(lockAAA, tokenAAA, true);
+    }
+    
     public void testSharedLockAndRelease() throws Exception
     {
         String tokenAAA = lock(lockAAA, 5000L, true);
@@ -30,6 +30,7 @@ import java.util.ArrayList;
 import java.util.Collection;
 import java.util.Collections;
 import java.util.List;
+import java.util.Map;
 import java.util.Set;
 import java.util.concurrent.atomic.AtomicLong;
 
@@ -288,6 +289,39 @@ public class NodeDAOTest extends TestCase
         }, true);
     }
     
+    public void testGetNodesWithAspectsOrdered() throws Throwable
+    {
+        final List<Long> nodeIds = new ArrayList<Long>(20);
+        final NodeRefQueryCallback callback = new NodeRefQueryCallback()
+        {
+            public boolean handle(Pair<Long, NodeRef> nodePair)
+            {
+                nodeIds.add(nodePair.getFirst());
+                return true;
+            }
+        };
+        int count = transactionService.getRetryingTransactionHelper().doInTransaction(new RetryingTransactionCallback<Integer>()
+        {
+            @Override
+            public Integer execute() throws Throwable
+            {
+                nodeDAO.getNodesWithAspects(
+                        Collections.singleton(ContentModel.ASPECT_AUDITABLE),
+                        1L, null,
+                        20,
+                        callback);
+                return nodeDAO.countNodesWithAspects(
+                        Collections.singleton(ContentModel.ASPECT_AUDITABLE),
+                        1L, null);
+            }
+        }, true);
+        assertEquals("Results not limited", Math.min(20, count), nodeIds.size());
+        for (int i = 1; i < nodeIds.size(); i++)
+        {
+            assertTrue("Results not in ascending node ID order: " + nodeIds, nodeIds.get(i - 1) < nodeIds.get(i));
+        }
+    }
+    
     public void testGetMinMaxNodeId() throws Exception
     {
         Long minNodeId = nodeDAO.getMinNodeId();
@@ -337,6 +371,40 @@ public class NodeDAOTest extends TestCase
         txnHelper.doInTransaction(callback, true);
     }
     
+    /**
+     * Bulk property and aspect fetches must give the same results as the per-node fetches
+     */
+    public void testGetNodePropertiesAndAspectsBulk() throws Throwable
+    {
+        Long minNodeId = nodeDAO.getMinNodeId();
+        final List<Long> nodeIds = new ArrayList<Long>(600);
+        for (long i = 0; i < 600; i++)
+        {
+            nodeIds.add(Long.valueOf(minNodeId.longValue() + i));
+        }
+        RetryingTransactionCallback<Void> callback = new RetryingTransactionCallback<Void>()
+        {
+            public Void execute() throws Throwable
+            {
+                Map<Long, Map<QName, Serializable>> propsByNodeId = nodeDAO.getNodeProperties(nodeIds);
+                Map<Long, Set<QName>> aspectsByNodeId = nodeDAO.getNodeAspects(nodeIds);
+                assertEquals("Bulk properties and aspects must cover the same nodes", propsByNodeId.keySet(), aspectsByNodeId.keySet());
+                for (Long nodeId : nodeIds)
+                {
+                    if (!nodeDAO.exists(nodeId))
+                    {
+                        assertFalse("Missing node should not be returned: " + nodeId, propsByNodeId.containsKey(nodeId));
+                        continue;
+                    }
+                    assertEquals("Bulk properties do not match: " + nodeId, nodeDAO.getNodeProperties(nodeId), propsByNodeId.get(nodeId));
+                    assertEquals("Bulk aspects do not match: " + nodeId, nodeDAO.getNodeAspects(nodeId), aspectsByNodeId.get(nodeId));
+                }
+                return null;
+            }
+        };
+        txnHelper.doInTransaction(callback, true);
+    }
+    
     /**
      * Ensure that the {@link NodeEntity} values cached as root nodes are valid instances.
      * <p/>
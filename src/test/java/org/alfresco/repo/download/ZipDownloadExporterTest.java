@@ -0,0 +1,271 @@
+/*
+ * #%L
+ * Alfresco Repository
+ * %%
+ * Copyright (C) 2005 - 2016 Alfresco Software Limited
+ * %%
+ * This file is part of the Alfresco software. 
+ * If the software was purchased under a paid Alfresco license, the terms of 
+ * the paid license agreement will prevail.  Otherwise, the software is 
+ * provided under the following open source license terms:
+ * 
+ * Alfresco is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * 
+ * Alfresco is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ * 
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with Alfresco. If not, see <http://www.gnu.org/licenses/>.
+ * #L%
+ */
+package org.alfresco.repo.download;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.mockito.Matchers.any;
+import static org.mockito.Matchers.anyBoolean;
+import static org.mockito.Mockito.when;
+
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Enumeration;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import org.alfresco.model.ContentModel;
+import org.alfresco.repo.content.MimetypeMap;
+import org.alfresco.repo.content.filestore.FileContentReader;
+import org.alfresco.repo.content.filestore.FileContentWriter;
+import org.alfresco.repo.security.authentication.AuthenticationUtil;
+import org.alfresco.repo.transaction.RetryingTransactionHelper;
+import org.alfresco.repo.transaction.RetryingTransactionHelper.RetryingTransactionCallback;
+import org.alfresco.service.cmr.coci.CheckOutCheckInService;
+import org.alfresco.service.cmr.repository.ContentData;
+import org.alfresco.service.cmr.repository.ContentService;
+import org.alfresco.service.cmr.repository.NodeRef;
+import org.alfresco.service.cmr.repository.NodeService;
+import org.alfresco.service.cmr.repository.StoreRef;
+import org.alfresco.service.namespace.QName;
+import org.alfresco.util.TempFileProvider;
+import org.apache.commons.compress.archivers.zip.ZipArchiveEntry;
+import org.apache.commons.compress.archivers.zip.ZipFile;
+import org.apache.commons.compress.utils.IOUtils;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.mockito.Mock;
+import org.mockito.runners.MockitoJUnitRunner;
+
+/**
+ * Tests the archive written by the {@link ZipDownloadExporter}, with and without parallel fetch.
+ * 
+ * @since 5.2
+ */
+@RunWith(MockitoJUnitRunner.class)
+public class ZipDownloadExporterTest
+{
+    private static final String URL_PREFIX = "store://download/";
+    private static final String EXPORT_USER = "downloadUser";
+
+    @Mock private CheckOutCheckInService checkOutCheckInService;
+    @Mock private NodeService nodeService;
+    @Mock private RetryingTransactionHelper transactionHelper;
+    @Mock private DownloadStatusUpdateService updateService;
+    @Mock private DownloadStorage downloadStorage;
+    @Mock private ContentService contentService;
+
+    private NodeRef downloadNodeRef = new NodeRef(StoreRef.STORE_REF_WORKSPACE_SPACESSTORE, "download");
+    private Map<String, byte[]> contents = new HashMap<String, byte[]>();
+    private List<String> fetchUsers = Collections.synchronizedList(new ArrayList<String>());
+    private File zipFile;
+    private ExecutorService fetchExecutor;
+
+    @SuppressWarnings("unchecked")
+    @Before
+    public void setUp() throws Exception
+    {
+        zipFile = TempFileProvider.createTempFile(getClass().getSimpleName(), ".zip");
+        fetchExecutor = Executors.newFixedThreadPool(2);
+        when(transactionHelper.doInTransaction(any(RetryingTransactionCallback.class), anyBoolean(), anyBoolean()))
+            .thenAnswer(invocation -> ((RetryingTransactionCallback<?>) invocation.getArguments()[0]).execute());
+    }
+
+    @After
+    public void tearDown() throws Exception
+    {
+        fetchExecutor.shutdownNow();
+        zipFile.delete();
+        AuthenticationUtil.clearCurrentSecurityContext();
+    }
+
+    @Test
+    public void storedMimetypesAreNotCompressed() throws Exception
+    {
+        ZipDownloadExporter exporter = createExporter();
+        exportTree(exporter);
+
+        Map<String, Integer> methods = new HashMap<String, Integer>();
+        for (ZipArchiveEntry entry : readEntries())
+        {
+            methods.put(entry.getName(), entry.getMethod());
+        }
+        assertEquals(Integer.valueOf(ZipArchiveEntry.STORED), methods.get("docs/photo.jpg"));
+        assertEquals(Integer.valueOf(ZipArchiveEntry.DEFLATED), methods.get("docs/sub/notes.txt"));
+        assertEquals(Integer.valueOf(ZipArchiveEntry.DEFLATED), methods.get("docs/readme.txt"));
+        assertContents();
+    }
+
+    @Test
+    public void prefetchedEntriesAreAddedInExportOrder() throws Exception
+    {
+        ZipDownloadExporter exporter = createExporter();
+        exporter.setParallelFetch(contentService, fetchExecutor, 4);
+        // The first file is the slowest to fetch, so everything after it has to wait for it
+        when(contentService.getRawReader(URL_PREFIX + "photo.jpg")).thenAnswer(invocation ->
+        {
+            Thread.sleep(200L);
+            return getReader("photo.jpg");
+        });
+        when(contentService.getRawReader(URL_PREFIX + "notes.txt")).thenAnswer(invocation -> getReader("notes.txt"));
+        when(contentService.getRawReader(URL_PREFIX + "readme.txt")).thenAnswer(invocation -> getReader("readme.txt"));
+        AuthenticationUtil.setRunAsUser(EXPORT_USER);
+        exportTree(exporter);
+
+        List<String> names = new ArrayList<String>();
+        for (ZipArchiveEntry entry : readEntries())
+        {
+            names.add(entry.getName());
+        }
+        assertEquals(Arrays.asList("docs/", "docs/photo.jpg", "docs/sub/", "docs/sub/notes.txt", "docs/readme.txt"), names);
+        assertContents();
+        assertEquals(3L, exporter.getFilesAdded());
+        // The content is fetched as the user running the export
+        assertEquals(Arrays.asList(EXPORT_USER, EXPORT_USER, EXPORT_USER), fetchUsers);
+    }
+
+    private ZipDownloadExporter createExporter()
+    {
+        ZipDownloadExporter exporter = new ZipDownloadExporter(zipFile, checkOutCheckInService, nodeService, transactionHelper,
+                    updateService, downloadStorage, downloadNodeRef, 0L, 3L);
+        exporter.setStoredMimetypes(Collections.singleton(MimetypeMap.MIMETYPE_IMAGE_JPEG));
+        return exporter;
+    }
+
+    /**
+     * Export docs/photo.jpg, docs/sub/notes.txt and docs/readme.txt in that order
+     */
+    private void exportTree(ZipDownloadExporter exporter)
+    {
+        exporter.start(null);
+        NodeRef docs = startFolder(exporter, "docs");
+        exportFile(exporter, "photo.jpg", MimetypeMap.MIMETYPE_IMAGE_JPEG);
+        NodeRef sub = startFolder(exporter, "sub");
+        exportFile(exporter, "notes.txt", MimetypeMap.MIMETYPE_TEXT_PLAIN);
+        exporter.endNode(sub);
+        exportFile(exporter, "readme.txt", MimetypeMap.MIMETYPE_TEXT_PLAIN);
+        exporter.endNode(docs);
+        exporter.end();
+    }
+
+    private NodeRef startFolder(ZipDownloadExporter exporter, String name)
+    {
+        NodeRef nodeRef = createNode(name, ContentModel.TYPE_FOLDER);
+        exporter.startNode(nodeRef);
+        return nodeRef;
+    }
+
+    private void exportFile(ZipDownloadExporter exporter, String name, String mimetype)
+    {
+        NodeRef nodeRef = createNode(name, ContentModel.TYPE_CONTENT);
+        byte[] content = new byte[4096];
+        Arrays.fill(content, (byte) name.charAt(0));
+        contents.put(name, content);
+        ContentData contentData = new ContentData(URL_PREFIX + name, mimetype, content.length, "UTF-8");
+        exporter.startNode(nodeRef);
+        // As crawled for the exporter: streams are only opened if the exporter does not fetch the content itself
+        InputStream contentStream = exporter.isParallelFetch() ? null : new ByteArrayInputStream(content);
+        exporter.content(nodeRef, ContentModel.PROP_CONTENT, contentStream, contentData, 0);
+        exporter.endNode(nodeRef);
+    }
+
+    private NodeRef createNode(String name, QName type)
+    {
+        NodeRef nodeRef = new NodeRef(StoreRef.STORE_REF_WORKSPACE_SPACESSTORE, name);
+        when(nodeService.getProperty(nodeRef, ContentModel.PROP_NAME)).thenReturn(name);
+        when(nodeService.getType(nodeRef)).thenReturn(type);
+        return nodeRef;
+    }
+
+    private FileContentReader getReader(String name)
+    {
+        fetchUsers.add(AuthenticationUtil.getRunAsUser());
+        File file = TempFileProvider.createTempFile(getClass().getSimpleName(), ".bin");
+        FileContentWriter writer = new FileContentWriter(file);
+        writer.putContent(new ByteArrayInputStream(contents.get(name)));
+        return new FileContentReader(file);
+    }
+
+    private List<ZipArchiveEntry> readEntries() throws Exception
+    {
+        List<ZipArchiveEntry> entries = new ArrayList<ZipArchiveEntry>();
+        ZipFile zip = new ZipFile(zipFile);
+        try
+        {
+            Enumeration<ZipArchiveEntry> e = zip.getEntriesInPhysicalOrder();
+            while (e.hasMoreElements())
+            {
+                entries.add(e.nextElement());
+            }
+        }
+        finally
+        {
+            zip.close();
+        }
+        return entries;
+    }
+
+    private void assertContents() throws Exception
+    {
+        ZipFile zip = new ZipFile(zipFile);
+        try
+        {
+            for (Map.Entry<String, byte[]> content : contents.entrySet())
+            {
+                ZipArchiveEntry entry = null;
+                for (String path : Arrays.asList("docs/", "docs/sub/"))
+                {
+                    if (entry == null)
+                    {
+                        entry = zip.getEntry(path + content.getKey());
+                    }
+                }
+                InputStream in = zip.getInputStream(entry);
+                try
+                {
+                    assertArrayEquals(content.getKey(), content.getValue(), IOUtils.toByteArray(in));
+                }
+                finally
+                {
+                    in.close();
+                }
+            }
+        }
+        finally
+        {
+            zip.close();
+        }
+    }
+}
@@ -26,6 +26,7 @@
 package org.alfresco.repo.jscript;
 
 import java.io.InputStream;
+import java.io.Serializable;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
@@ -261,6 +262,61 @@ public class RhinoScriptTest extends TestCase
             });
     }
     
+    public void testCompiledRepositoryScriptCache()
+    {
+        final CompiledScriptCacheStatistics statistics = (CompiledScriptCacheStatistics) ctx.getBean("compiledScriptCacheStatistics");
+        transactionService.getRetryingTransactionHelper().doInTransaction(
+            new RetryingTransactionCallback<Object>()
+            {
+                public Object execute() throws Exception
+                {
+                    StoreRef store = nodeService.createStore(StoreRef.PROTOCOL_WORKSPACE, "rhino_" + System.currentTimeMillis());
+                    NodeRef root = nodeService.getRootNode(store);
+                    NodeRef importNodeRef = createScriptNode(root, "script_import", "var word = \"one\";");
+                    NodeRef scriptNodeRef = createScriptNode(root, "script_main", "<import resource=\"" + importNodeRef + "\">\nword;");
+                    Map<String, Object> model = new HashMap<String, Object>();
+                    
+                    long hits = statistics.getHits();
+                    long misses = statistics.getMisses();
+                    assertEquals("one", scriptService.executeScript(scriptNodeRef, ContentModel.PROP_CONTENT, model));
+                    assertEquals("one", scriptService.executeScript(scriptNodeRef, ContentModel.PROP_CONTENT, model));
+                    assertEquals("First execution should compile", misses + 1, statistics.getMisses());
+                    assertEquals("Second execution should use the compiled script", hits + 1, statistics.getHits());
+                    
+                    // Changing the import must be noticed
+                    writeScript(importNodeRef, "var word = \"two\";");
+                    assertEquals("two", scriptService.executeScript(scriptNodeRef, ContentModel.PROP_CONTENT, model));
+                    
+                    // Changing the script itself gives a new content URL
+                    writeScript(scriptNodeRef, "\"three\";");
+                    assertEquals("three", scriptService.executeScript(scriptNodeRef, ContentModel.PROP_CONTENT, model));
+                    assertEquals("Hits after changes", hits + 1, statistics.getHits());
+                    return null;
+                }
+            });
+    }
+    
+    private NodeRef createScriptNode(NodeRef parent, String name, String script)
+    {
+        Map<QName, Serializable> props = new HashMap<QName, Serializable>();
+        props.put(ContentModel.PROP_NAME, name);
+        NodeRef nodeRef = nodeService.createNode(
+                parent,
+                BaseNodeServiceTest.ASSOC_TYPE_QNAME_TEST_CHILDREN,
+                QName.createQName(BaseNodeServiceTest.NAMESPACE, name),
+                ContentModel.TYPE_CONTENT,
+                props).getChildRef();
+        writeScript(nodeRef, script);
+        return nodeRef;
+    }
+    
+    private void writeScript(NodeRef nodeRef, String script)
+    {
+        ContentWriter writer = contentService.getWriter(nodeRef, ContentModel.PROP_CONTENT, true);
+        writer.setMimetype("application/x-javascript");
+        writer.putContent(script);
+    }
+    
     public void testScriptActions()
     {
         transactionService.getRetryingTransactionHelper().doInTransaction(
@@ -27,7 +27,9 @@ package org.alfresco.repo.policy;
 
 import java.util.ArrayList;
 import java.util.Collection;
+import java.util.HashSet;
 import java.util.List;
+import java.util.Set;
 import java.util.concurrent.ThreadPoolExecutor;
 
 import junit.framework.TestCase;
@@ -359,6 +361,48 @@ public class PolicyComponentTest extends TestCase
         String folderResult4 = folderPolicy4.test("folder");
         assertEquals("Folder: folder", folderResult4);
     }
+    
+    
+    @SuppressWarnings("unchecked")
+    public void testAggregateCache()
+    {
+        // Register Policy
+        ClassPolicyDelegate<TestClassPolicy> delegate = policyComponent.registerClassPolicy(TestClassPolicy.class);
+        
+        // Bind Behaviour
+        QName policyName = QName.createQName(TEST_NAMESPACE, "test");
+        Behaviour baseBehaviour = new JavaBehaviour(this, "baseTest");
+        policyComponent.bindClassBehaviour(policyName, BASE_TYPE, baseBehaviour);
+        Behaviour aspectBehaviour = new JavaBehaviour(this, "aspectTest");
+        policyComponent.bindClassBehaviour(policyName, TEST_ASPECT, aspectBehaviour);
+
+        // Invoke aggregate policy for a type and aspect
+        Set<QName> classes = new HashSet<QName>();
+        classes.add(FILE_TYPE);
+        classes.add(TEST_ASPECT);
+        TestClassPolicy policy = delegate.get(classes);
+        assertTrue(policy instanceof PolicyList);
+        assertEquals(2, ((PolicyList<TestClassPolicy>)policy).getPolicies().size());
+        String result = policy.test("file");
+        assertTrue(result.equals("Base: file") || result.equals("Aspect: file"));
+        
+        // Retrieve aggregate again, using an equal set
+        Set<QName> classes2 = new HashSet<QName>(classes);
+        TestClassPolicy policy2 = delegate.get(classes2);
+        assertTrue(policy == policy2);
+        
+        // Bind new behaviour (forcing aggregate cache reset)
+        Behaviour fileBehaviour = new JavaBehaviour(this, "fileTest");
+        policyComponent.bindClassBehaviour(policyName, FILE_TYPE, fileBehaviour);
+        TestClassPolicy policy3 = delegate.get(classes);
+        assertTrue(policy3 != policy2);
+        assertEquals(3, ((PolicyList<TestClassPolicy>)policy3).getPolicies().size());
+        
+        // A single behaviour is invoked directly through the aggregate
+        Set<QName> aspectOnly = new HashSet<QName>();
+        aspectOnly.add(TEST_ASPECT);
+        assertEquals("Aspect: aspect", delegate.get(aspectOnly).test("aspect"));
+    }
 
 
     public void testPropertyDelegate()
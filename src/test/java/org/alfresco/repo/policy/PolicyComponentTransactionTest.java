@@ -431,6 +431,48 @@ public class PolicyComponentTransactionTest extends TestCase
         }
     }
 
+    public void testPerNodeTransactionPolicy()
+        throws Exception
+    {
+        ClassPolicyDelegate<CoalesceTestPolicy> coalesceDelegate = policyComponent.registerClassPolicy(CoalesceTestPolicy.class);
+
+        // Bind Behaviour
+        QName policyName = QName.createQName(TEST_NAMESPACE, "coalesce");
+        Behaviour baseBehaviour = new JavaBehaviour(this, "coalesceTransactionTest", NotificationFrequency.TRANSACTION_COMMIT_PER_NODE);
+        policyComponent.bindClassBehaviour(policyName, BASE_TYPE, baseBehaviour);
+        
+        UserTransaction userTransaction1 = trxService.getUserTransaction();
+        try
+        {
+            userTransaction1.begin();
+            
+            List<TestResult> results = new ArrayList<TestResult>();
+                    
+            // Invoke Behaviour - the first key identifies the node
+            CoalesceTestPolicy basePolicy = coalesceDelegate.get(BASE_TYPE);
+            basePolicy.coalesce("1", "2", "value1a", "value2a", results);
+            basePolicy.coalesce("2", "1", "value1b", "value2b", results);
+            basePolicy.coalesce("1", "3", "value1c", "value2c", results);
+            basePolicy.coalesce("1", "4", "value1d", "value2d", results);
+            assertEquals(0, results.size());
+            
+            // First start value, last end value and last remaining key for each node
+            TestResult result1 = new TestResult("coalesceTransactionTest", "1", "4", "value1a", "value2d");
+            TestResult result2 = new TestResult("coalesceTransactionTest", "2", "1", "value1b", "value2b");
+            
+            userTransaction1.commit();
+
+            assertEquals(2, results.size());
+            assertEquals(result1, results.get(0));
+            assertEquals(result2, results.get(1));
+        }
+        catch(Exception e)
+        {
+            try { userTransaction1.rollback(); } catch (IllegalStateException ee) {}
+            throw e;
+        }
+    }
+    
     /**
      * Test for MNT-13836
      * @throws Exception
@@ -1151,6 +1193,13 @@ public class PolicyComponentTransactionTest extends TestCase
         return result.toString();
     }
     
+    public String coalesceTransactionTest(String key1, String key2, String arg1, String arg2, List<TestResult> results)
+    {
+        TestResult result = new TestResult("coalesceTransactionTest", key1, key2, arg1, arg2);
+        results.add(result);
+        return result.toString();
+    }
+    
     public String sideEffectTest(String key1, String key2, String arg1, String arg2, List<TestResult> results)
     {
         TestResult result = new TestResult("sideEffectTest", key1, key2, arg1, arg2);
@@ -1185,6 +1234,17 @@ public class PolicyComponentTransactionTest extends TestCase
         static Arg ARG_3 = Arg.END_VALUE;
     }
     
+    public interface CoalesceTestPolicy extends ClassPolicy
+    {
+        public String coalesce(String key1, String key2, String arg1, String arg2, List<TestResult> results);
+        
+        static String NAMESPACE = TEST_NAMESPACE;
+        static Arg ARG_0 = Arg.KEY;
+        static Arg ARG_1 = Arg.KEY;
+        static Arg ARG_2 = Arg.START_VALUE;
+        static Arg ARG_3 = Arg.END_VALUE;
+    }
+    
     public interface SideEffectTestPolicy extends ClassPolicy
     {
         public String sideEffect(String key1, String key2, String arg1, String arg2, List<TestResult> resultTest);
@@ -28,6 +28,7 @@ package org.alfresco.repo.search.impl.querymodel.impl.db;
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertTrue;
 import static org.junit.Assert.fail;
 
 import java.io.InputStream;
@@ -721,6 +722,30 @@ public class DBQueryTest  implements DictionaryListener
     }
     
     
+    @Test
+    public void testPaging()
+    {
+        HashSet<NodeRef> found = new HashSet<NodeRef>();
+        for (int skipCount = 0; skipCount < 8; skipCount += 3)
+        {
+            SearchParameters sp = new SearchParameters();
+            sp.setLanguage(SearchService.LANGUAGE_CMIS_ALFRESCO);
+            sp.setQueryConsistency(QueryConsistency.TRANSACTIONAL);
+            sp.setQuery("SELECT * FROM cmis:document order by cmis:name asc");
+            sp.addStore(rootNodeRef.getStoreRef());
+            sp.setSkipCount(skipCount);
+            sp.setMaxItems(3);
+            ResultSet results = serviceRegistry.getSearchService().query(sp);
+            assertEquals(skipCount < 6 ? 3 : 2, results.length());
+            for (ResultSetRow row : results)
+            {
+                assertTrue(found.add(row.getNodeRef()));
+            }
+            results.close();
+        }
+        assertEquals(8, found.size());
+    }
+    
     @Test
     public void testOtherCMIS()
     {
@@ -0,0 +1,102 @@
+/*
+ * #%L
+ * Alfresco Repository
+ * %%
+ * Copyright (C) 2005 - 2016 Alfresco Software Limited
+ * %%
+ * This file is part of the Alfresco software. 
+ * If the software was purchased under a paid Alfresco license, the terms of 
+ * the paid license agreement will prevail.  Otherwise, the software is 
+ * provided under the following open source license terms:
+ * 
+ * Alfresco is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * 
+ * Alfresco is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ * 
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with Alfresco. If not, see <http://www.gnu.org/licenses/>.
+ * #L%
+ */
+package org.alfresco.repo.search.impl.solr;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import org.alfresco.util.testing.category.LuceneTests;
+import org.json.JSONObject;
+import org.junit.Test;
+import org.junit.experimental.categories.Category;
+
+/**
+ * Tests the per endpoint SOLR latency histograms
+ *
+ * @since 5.2
+ */
+@Category(LuceneTests.class)
+public class SolrQueryLatencyStatisticsTest
+{
+    private static final String SHARD_1 = "http://localhost:8983/solr/shard1/afts";
+    private static final String SHARD_2 = "http://localhost:8984/solr/shard2/afts";
+
+    @Test
+    public void testRecordByEndpoint()
+    {
+        SolrQueryLatencyStatistics statistics = new SolrQueryLatencyStatistics();
+        statistics.record(SHARD_1 + "?wt=json&fl=DBID", 3, false);
+        statistics.record(SHARD_1 + "?wt=json&fl=DBID,score", 40, false);
+        statistics.record(SHARD_2 + "?wt=json", 60000, true);
+
+        assertArrayEquals(new String[] { SHARD_1, SHARD_2 }, statistics.getEndpoints());
+
+        long[] bounds = statistics.getBucketUpperBounds();
+        long[] shard1 = statistics.getHistogram(SHARD_1);
+        assertEquals(bounds.length + 1, shard1.length);
+        assertEquals(1, shard1[2]);   // 3ms is in the 5ms bucket
+        assertEquals(1, shard1[5]);   // 40ms is in the 50ms bucket
+        long[] shard2 = statistics.getHistogram(SHARD_2);
+        assertEquals(1, shard2[bounds.length]);
+
+        String[] summaries = statistics.getLatencySummaries();
+        assertEquals(2, summaries.length);
+        assertTrue(summaries[0], summaries[0].startsWith(SHARD_1 + " count=2 errors=0 meanMs=21 p50Ms<=5 "));
+        assertTrue(summaries[1], summaries[1].contains("errors=1") && summaries[1].endsWith("maxMs=60000"));
+
+        statistics.reset();
+        assertEquals(0, statistics.getEndpoints().length);
+        assertNull(statistics.getHistogram(SHARD_1));
+    }
+
+    @Test
+    public void testRecordByShard() throws Exception
+    {
+        SolrQueryLatencyStatistics statistics = new SolrQueryLatencyStatistics();
+        statistics.recordShards(new JSONObject("{\"response\":{\"numFound\":0}}"));
+        assertEquals(0, statistics.getShards().length);
+
+        JSONObject response = new JSONObject(
+                "{\"shards.info\":{" +
+                "\"localhost:8983/solr/shard1\":{\"numFound\":3,\"time\":40}," +
+                "\"localhost:8984/solr/shard2\":{\"error\":\"Server refused connection\",\"time\":3}}," +
+                "\"response\":{\"numFound\":3}}");
+        statistics.recordShards(response);
+
+        assertArrayEquals(new String[] { "localhost:8983/solr/shard1", "localhost:8984/solr/shard2" }, statistics.getShards());
+        assertEquals(1, statistics.getShardHistogram("localhost:8983/solr/shard1")[5]);
+        assertEquals(1, statistics.getShardHistogram("localhost:8984/solr/shard2")[2]);
+        String[] summaries = statistics.getShardLatencySummaries();
+        assertTrue(summaries[0], summaries[0].contains("errors=0"));
+        assertTrue(summaries[1], summaries[1].contains("errors=1"));
+        assertEquals(0, statistics.getEndpoints().length);
+
+        statistics.reset();
+        assertNull(statistics.getShardHistogram("localhost:8983/solr/shard1"));
+    }
+}
@@ -447,6 +447,40 @@ public class PermissionServiceTest extends AbstractPermissionTest
         assertTrue("", authorisations.contains("andy"));
     }
 
+    /*
+     * Tests that bulk read permission evaluation gives the same result as checking each node in turn
+     */
+    public void testBulkReadPermissions()
+    {
+        personService.getPerson("andy");
+        runAs("admin");
+
+        NodeRef readable = nodeService.createNode(rootNodeRef, ContentModel.ASSOC_CHILDREN, QName.createQName("{namespace}readable"), ContentModel.TYPE_FOLDER).getChildRef();
+        permissionService.setPermission(readable, "andy", PermissionService.READ, true);
+        NodeRef hidden = nodeService.createNode(rootNodeRef, ContentModel.ASSOC_CHILDREN, QName.createQName("{namespace}hidden"), ContentModel.TYPE_FOLDER).getChildRef();
+        permissionService.setInheritParentPermissions(hidden, false);
+
+        // Interleave children that share the two ACLs
+        List<NodeRef> nodeRefs = new ArrayList<NodeRef>();
+        for (int i = 0; i < 10; i++)
+        {
+            NodeRef parent = (i % 2 == 0) ? readable : hidden;
+            nodeRefs.add(nodeService.createNode(parent, ContentModel.ASSOC_CHILDREN, QName.createQName("{namespace}child" + i), ContentModel.TYPE_FOLDER).getChildRef());
+        }
+        nodeRefs.add(null);
+
+        runAs("andy");
+        List<AccessStatus> statuses = permissionServiceImpl.hasReadPermissions(nodeRefs);
+        assertEquals(nodeRefs.size(), statuses.size());
+        for (int i = 0; i < nodeRefs.size(); i++)
+        {
+            assertEquals("Bulk evaluation differs for " + nodeRefs.get(i), permissionServiceImpl.hasReadPermission(nodeRefs.get(i)), statuses.get(i));
+        }
+        assertEquals(AccessStatus.ALLOWED, statuses.get(0));
+        assertEquals(AccessStatus.DENIED, statuses.get(1));
+        assertEquals(AccessStatus.ALLOWED, statuses.get(10));
+    }
+
     public void testMove()
     {
         runAs("admin");
@@ -25,9 +25,14 @@
  */
 package org.alfresco.repo.solr;
 
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.IOException;
 import java.io.InputStream;
 import java.io.Serializable;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collection;
 import java.util.HashMap;
 import java.util.HashSet;
@@ -394,6 +399,88 @@ public class SOLRTrackingComponentTest extends TestCase
         //        assertEquals("Unxpected number of nodes", 3, bt.getSuccessCount());
     }
 
+    public void testGetNodeMetaDataBinary() throws Exception
+    {
+        long startTime = System.currentTimeMillis();
+
+        SOLRTest st = new SOLRTest100Nodes(txnHelper, fileFolderService, nodeDAO, qnameDAO, nodeService, dictionaryService, rootNodeRef, "testGetNodeMetaDataBinary", true, true);
+        List<Long> createdTransactions = st.buildTransactions();
+
+        List<Transaction> txns = getTransactions(null, startTime-1000, null, null, 100);
+        List<Transaction> checkedTransactions = checkTransactions(txns, createdTransactions, new int[] {100}, new int[] {0});
+
+        NodeParameters nodeParameters = new NodeParameters();
+        nodeParameters.setTransactionIds(getTransactionIds(checkedTransactions));
+        getNodes(nodeParameters, st);
+        assertEquals(100, st.getNodeIds().size());
+
+        final NodeMetaDataParameters nodeMetaDataParams = new NodeMetaDataParameters();
+        nodeMetaDataParams.setNodeIds(st.getNodeIds());
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        final NodeMetaDataBinaryWriter writer = new NodeMetaDataBinaryWriter(bytes, 30);
+        txnHelper.doInTransaction(new RetryingTransactionCallback<Void>()
+        {
+            @Override
+            public Void execute() throws Throwable
+            {
+                solrTrackingComponent.getNodesMetadata(nodeMetaDataParams, null, writer);
+                return null;
+            }
+        }, true, true);
+        writer.finish();
+        assertEquals(st.getNodeIds().size(), writer.getNodeCount());
+
+        // Walk the stream, reading only the node ID and type of each record
+        DataInputStream in = new DataInputStream(new ByteArrayInputStream(bytes.toByteArray()));
+        byte[] magic = new byte[4];
+        in.readFully(magic);
+        assertTrue(Arrays.equals(NodeMetaDataBinaryWriter.MAGIC, magic));
+        assertEquals(NodeMetaDataBinaryWriter.VERSION, in.read());
+
+        Set<Long> nodeIds = new HashSet<Long>();
+        int batches = 0;
+        long nodeCount;
+        while ((nodeCount = readVarLong(in)) > 0)
+        {
+            batches++;
+            List<String> dictionary = new ArrayList<String>();
+            for (long i = readVarLong(in); i > 0; i--)
+            {
+                byte[] entry = new byte[(int) readVarLong(in)];
+                in.readFully(entry);
+                dictionary.add(new String(entry, "UTF-8"));
+            }
+            for (long i = 0; i < nodeCount; i++)
+            {
+                byte[] record = new byte[(int) readVarLong(in)];
+                in.readFully(record);
+                DataInputStream recordIn = new DataInputStream(new ByteArrayInputStream(record));
+                long zigZagId = readVarLong(recordIn);
+                nodeIds.add((zigZagId >>> 1) ^ -(zigZagId & 1));
+                long mask = readVarLong(recordIn);
+                assertTrue((mask & NodeMetaDataBinaryWriter.FIELD_TYPE) != 0);
+                QName type = QName.createQName(dictionary.get((int) readVarLong(recordIn) - 1));
+                assertNotNull(dictionaryService.getType(type));
+            }
+        }
+        assertEquals(4, batches);
+        assertEquals(new HashSet<Long>(st.getNodeIds()), nodeIds);
+    }
+
+    private static long readVarLong(DataInputStream in) throws IOException
+    {
+        long value = 0L;
+        for (int shift = 0; ; shift += 7)
+        {
+            int b = in.readUnsignedByte();
+            value |= (long) (b & 0x7F) << shift;
+            if ((b & 0x80) == 0)
+            {
+                return value;
+            }
+        }
+    }
+
     public void testNodeMetaDataManyNodes() throws Exception
     {
         long fromCommitTime = System.currentTimeMillis();